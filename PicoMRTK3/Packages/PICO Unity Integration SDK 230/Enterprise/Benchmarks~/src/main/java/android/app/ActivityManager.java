@@ -0,0 +1,33 @@
+package android.app;
+
+import java.util.List;
+
+public class ActivityManager {
+    public static class MemoryInfo {
+        public long availMem;
+        public long totalMem;
+        public long threshold;
+        public boolean lowMemory;
+    }
+
+    public static class RunningAppProcessInfo {
+        public static final int IMPORTANCE_FOREGROUND = 100;
+        public static final int IMPORTANCE_FOREGROUND_SERVICE = 125;
+        public static final int IMPORTANCE_VISIBLE = 200;
+        public static final int IMPORTANCE_PERCEPTIBLE = 230;
+        public static final int IMPORTANCE_SERVICE = 300;
+        public static final int IMPORTANCE_CACHED = 400;
+
+        public String processName;
+        public int pid;
+        public int importance;
+        public String[] pkgList;
+    }
+
+    public void getMemoryInfo(MemoryInfo outInfo) {
+    }
+
+    public List<RunningAppProcessInfo> getRunningAppProcesses() {
+        return null;
+    }
+}
@@ -0,0 +1,6 @@
+package android.bluetooth;
+
+import android.os.Parcelable;
+
+public class BluetoothDevice implements Parcelable {
+}
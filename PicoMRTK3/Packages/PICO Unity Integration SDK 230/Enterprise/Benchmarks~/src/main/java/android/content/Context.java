@@ -0,0 +1,21 @@
+package android.content;
+
+public abstract class Context {
+    public static final int BIND_AUTO_CREATE = 0x0001;
+    public static final int MODE_PRIVATE = 0x0000;
+    public static final String ACTIVITY_SERVICE = "activity";
+
+    public abstract String getPackageName();
+
+    public abstract Context getApplicationContext();
+
+    public abstract boolean bindService(Intent service, ServiceConnection conn, int flags);
+
+    public abstract void unbindService(ServiceConnection conn);
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract android.content.pm.PackageManager getPackageManager();
+
+    public abstract Object getSystemService(String name);
+}
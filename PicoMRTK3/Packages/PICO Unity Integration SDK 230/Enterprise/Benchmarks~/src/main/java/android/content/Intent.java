@@ -0,0 +1,24 @@
+package android.content;
+
+public class Intent {
+    private ComponentName component;
+    private String packageName;
+
+    public Intent setComponent(ComponentName component) {
+        this.component = component;
+        return this;
+    }
+
+    public ComponentName getComponent() {
+        return component;
+    }
+
+    public Intent setPackage(String packageName) {
+        this.packageName = packageName;
+        return this;
+    }
+
+    public String getPackage() {
+        return packageName;
+    }
+}
@@ -0,0 +1,17 @@
+package android.content.pm;
+
+public abstract class PackageManager {
+
+    public static class NameNotFoundException extends Exception {
+        public NameNotFoundException() {
+        }
+
+        public NameNotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract PackageInfo getPackageArchiveInfo(String archiveFilePath, int flags);
+
+    public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+}
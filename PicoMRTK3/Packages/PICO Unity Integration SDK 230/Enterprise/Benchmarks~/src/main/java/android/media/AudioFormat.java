@@ -0,0 +1,6 @@
+package android.media;
+
+import android.os.Parcelable;
+
+public final class AudioFormat implements Parcelable {
+}
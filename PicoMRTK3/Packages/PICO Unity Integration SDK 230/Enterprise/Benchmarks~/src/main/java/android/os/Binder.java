@@ -0,0 +1,54 @@
+package android.os;
+
+/**
+ * In-process Binder: stubs are called directly, so transactions are never marshalled.
+ */
+public class Binder implements IBinder {
+    private IInterface owner;
+    private String descriptor;
+
+    public void attachInterface(IInterface owner, String descriptor) {
+        this.owner = owner;
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public IInterface queryLocalInterface(String descriptor) {
+        return descriptor != null && descriptor.equals(this.descriptor) ? owner : null;
+    }
+
+    @Override
+    public final boolean transact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        return onTransact(code, data, reply, flags);
+    }
+
+    protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        return false;
+    }
+
+    @Override
+    public void linkToDeath(DeathRecipient recipient, int flags) {
+    }
+
+    @Override
+    public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+        return true;
+    }
+
+    @Override
+    public boolean isBinderAlive() {
+        return true;
+    }
+
+    @Override
+    public boolean pingBinder() {
+        return true;
+    }
+
+    public static final long clearCallingIdentity() {
+        return 0;
+    }
+
+    public static final void restoreCallingIdentity(long token) {
+    }
+}
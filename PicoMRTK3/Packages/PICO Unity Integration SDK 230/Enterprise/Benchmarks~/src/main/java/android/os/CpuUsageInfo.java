@@ -0,0 +1,19 @@
+package android.os;
+
+public final class CpuUsageInfo implements Parcelable {
+    private final long active;
+    private final long total;
+
+    public CpuUsageInfo(long active, long total) {
+        this.active = active;
+        this.total = total;
+    }
+
+    public long getActive() {
+        return active;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,20 @@
+package android.os;
+
+import java.util.concurrent.RejectedExecutionException;
+
+public class Handler {
+    private final Looper looper;
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public final boolean post(Runnable r) {
+        try {
+            looper.executor.execute(r);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package android.os;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The main looper is a single daemon thread.
+ */
+public final class Looper {
+    private static final Looper MAIN = new Looper("main");
+
+    final ExecutorService executor;
+
+    private Looper(final String name) {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Never used for marshalling off-device; exists so the AIDL classes of the service library load.
+ */
+public final class Parcel {
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+    }
+}
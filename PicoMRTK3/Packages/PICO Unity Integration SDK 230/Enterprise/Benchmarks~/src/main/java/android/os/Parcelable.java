@@ -0,0 +1,18 @@
+package android.os;
+
+public interface Parcelable {
+    int PARCELABLE_WRITE_RETURN_VALUE = 0x0001;
+
+    interface Creator<T> {
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+
+    default int describeContents() {
+        return 0;
+    }
+
+    default void writeToParcel(Parcel dest, int flags) {
+    }
+}
@@ -0,0 +1,10 @@
+package android.os;
+
+public class RemoteException extends Exception {
+    public RemoteException() {
+    }
+
+    public RemoteException(String message) {
+        super(message);
+    }
+}
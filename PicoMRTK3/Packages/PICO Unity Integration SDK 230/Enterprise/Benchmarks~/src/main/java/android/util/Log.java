@@ -0,0 +1,45 @@
+package android.util;
+
+/**
+ * Writes warnings and errors to stderr; verbose, debug and info output is dropped unless the
+ * {@code tob.log.verbose} system property is set.
+ */
+public final class Log {
+    private static final boolean VERBOSE = Boolean.getBoolean("tob.log.verbose");
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return VERBOSE ? print("V", tag, msg, null) : 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return VERBOSE ? print("D", tag, msg, null) : 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return VERBOSE ? print("I", tag, msg, null) : 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return print("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return print("W", tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return print("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return print("E", tag, msg, tr);
+    }
+
+    private static int print(String level, String tag, String msg, Throwable tr) {
+        System.err.println(level + "/" + tag + ": " + msg + (tr != null ? " " + tr : ""));
+        return 0;
+    }
+}
@@ -0,0 +1,6 @@
+package android.view;
+
+import android.os.Parcelable;
+
+public class Surface implements Parcelable {
+}
@@ -0,0 +1,64 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.pvr.tobservice.enums.PBS_DeviceControlEnum;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one callback based call from the public method to the user callback: stub creation or
+ * pooling, and the dispatcher hop when not in blocking mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackDispatchBenchmark {
+
+    @Param({"false", "true"})
+    public boolean multiplexing;
+
+    @Param({"true", "false"})
+    public boolean blocking;
+
+    private ToBServiceUtils service;
+    private volatile int completed;
+    private final IntCallback callback = new IntCallback() {
+        @Override
+        public void CallBack(int result) {
+            completed++;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        service = ToBServiceUtils.getInstance();
+        new FakeToBService().attach(service);
+        service.setCallbackMultiplexing(multiplexing);
+        service.setBlockingMode(blocking);
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        int expected = completed + 1;
+        service.pbsControlSetDeviceAction(PBS_DeviceControlEnum.DEVICE_CONTROL_REBOOT, callback);
+        while (completed < expected) {
+            Thread.yield();
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,59 @@
+package com.picoxr.tobservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of collecting one frame's worth of callback results through the mailbox: posting
+ * {@code batch} results and draining them into the packed array handed to Unity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackMailboxBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int batch;
+
+    @Param({"int", "string"})
+    public String kind;
+
+    private CallbackMailbox mailbox;
+    private CallbackMailbox.Receiver[] receivers;
+
+    @Setup
+    public void setUp() {
+        mailbox = new CallbackMailbox();
+        receivers = new CallbackMailbox.Receiver[batch];
+        for (int i = 0; i < batch; i++) {
+            receivers[i] = mailbox.receiver(i + 1);
+        }
+    }
+
+    @Benchmark
+    public long[] postAndDrain() {
+        boolean strings = "string".equals(kind);
+        for (int i = 0; i < batch; i++) {
+            if (strings) {
+                receivers[i].CallBack("{\"status\":\"ok\"}");
+            } else {
+                receivers[i].CallBack(i);
+            }
+        }
+        return mailbox.drain();
+    }
+}
@@ -0,0 +1,271 @@
+package com.picoxr.tobservice;
+
+import android.os.CpuUsageInfo;
+import android.os.RemoteException;
+
+import com.pvr.tobservice.enums.PBS_ControllerPairTimeEnum;
+import com.pvr.tobservice.enums.PBS_WifiDisplayModel;
+import com.pvr.tobservice.interfaces.IBoolCallback;
+import com.pvr.tobservice.interfaces.IGetControllerPairTimeCallback;
+import com.pvr.tobservice.interfaces.IIntCallback;
+import com.pvr.tobservice.interfaces.IStringCallback;
+import com.pvr.tobservice.interfaces.IToBServiceProxy;
+import com.pvr.tobservice.interfaces.IWDJsonCallback;
+import com.pvr.tobservice.interfaces.IWDModelsCallback;
+import com.pvr.tobservice.model.MarkerInfo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-process stand-in for the ToB system service. Every {@link IToBServiceProxy} method succeeds:
+ * callbacks passed as arguments are answered with the configured results and return values are
+ * derived from the method's return type. Callbacks run inline on the calling thread; subclasses
+ * change that through {@link #beforeCall} and {@link #deliver}.
+ */
+public class FakeToBService implements InvocationHandler {
+
+    protected interface Delivery {
+        void run() throws RemoteException;
+    }
+
+    private final IToBServiceProxy proxy;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong cpuTicks = new AtomicLong();
+    private volatile int intResult;
+    private volatile boolean boolResult = true;
+    private volatile String stringResult = "{}";
+    private volatile int enumOrdinal;
+    private volatile int cpuCores = 8;
+    private volatile List<PBS_WifiDisplayModel> wifiDisplays = Collections.emptyList();
+    private volatile Consumer<MarkerInfo[]> markerCallback;
+    private volatile IWDModelsCallback wifiDisplayCallback;
+    private volatile IWDJsonCallback wifiDisplayJsonCallback;
+
+    public FakeToBService() {
+        proxy = (IToBServiceProxy) Proxy.newProxyInstance(IToBServiceProxy.class.getClassLoader(),
+                new Class<?>[]{IToBServiceProxy.class}, this);
+    }
+
+    public IToBServiceProxy getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Makes {@code service} use this fake as its bound service.
+     */
+    public void attach(ToBServiceUtils service) {
+        service.setServiceBinder(proxy);
+    }
+
+    public void setIntResult(int intResult) {
+        this.intResult = intResult;
+    }
+
+    public void setBoolResult(boolean boolResult) {
+        this.boolResult = boolResult;
+    }
+
+    public void setStringResult(String stringResult) {
+        this.stringResult = stringResult;
+    }
+
+    /**
+     * Ordinal returned by getters whose result is an enum, clamped to the enum's range.
+     */
+    public void setEnumOrdinal(int enumOrdinal) {
+        this.enumOrdinal = enumOrdinal;
+    }
+
+    public void setCpuCores(int cpuCores) {
+        this.cpuCores = cpuCores;
+    }
+
+    public void setWifiDisplays(List<PBS_WifiDisplayModel> wifiDisplays) {
+        this.wifiDisplays = wifiDisplays;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Delivers markers to the callback registered through {@code setMarkerInfoCallback}.
+     */
+    public boolean emitMarkers(MarkerInfo[] markers) {
+        Consumer<MarkerInfo[]> callback = markerCallback;
+        if (callback == null) {
+            return false;
+        }
+        callback.accept(markers);
+        return true;
+    }
+
+    /**
+     * Delivers a scan result to the registered Wi-Fi Display callbacks.
+     */
+    public boolean emitWifiDisplays(List<PBS_WifiDisplayModel> models) throws RemoteException {
+        IWDModelsCallback callback = wifiDisplayCallback;
+        IWDJsonCallback jsonCallback = wifiDisplayJsonCallback;
+        if (callback != null) {
+            callback.callback(models);
+        }
+        if (jsonCallback != null) {
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < models.size(); i++) {
+                json.append(i > 0 ? "," : "").append(models.get(i).toJson());
+            }
+            jsonCallback.callback(json.append(']').toString());
+        }
+        return callback != null || jsonCallback != null;
+    }
+
+    /**
+     * Called before every service method; throwing fails the call with a {@link RemoteException}.
+     */
+    protected void beforeCall(String method) throws RemoteException {
+    }
+
+    /**
+     * Runs a callback of {@code method}; inline by default.
+     */
+    protected void deliver(String method, Delivery delivery) throws RemoteException {
+        delivery.run();
+    }
+
+    @Override
+    public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                default:
+                    return "FakeToBService";
+            }
+        }
+        String name = method.getName();
+        if (name.equals("asBinder")) {
+            return null;
+        }
+        calls.incrementAndGet();
+        beforeCall(name);
+        if (args != null) {
+            for (Object arg : args) {
+                answer(name, arg);
+            }
+        }
+        return result(name, method.getReturnType());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void answer(final String method, Object arg) throws RemoteException {
+        if (arg instanceof IIntCallback) {
+            final IIntCallback callback = (IIntCallback) arg;
+            final int result = intResult;
+            deliver(method, new Delivery() {
+                @Override
+                public void run() throws RemoteException {
+                    callback.callback(result);
+                }
+            });
+        } else if (arg instanceof IBoolCallback) {
+            final IBoolCallback callback = (IBoolCallback) arg;
+            final boolean result = boolResult;
+            deliver(method, new Delivery() {
+                @Override
+                public void run() throws RemoteException {
+                    callback.callBack(result);
+                }
+            });
+        } else if (arg instanceof IStringCallback) {
+            final IStringCallback callback = (IStringCallback) arg;
+            final String result = stringResult;
+            deliver(method, new Delivery() {
+                @Override
+                public void run() throws RemoteException {
+                    callback.callback(result);
+                }
+            });
+        } else if (arg instanceof IGetControllerPairTimeCallback) {
+            final IGetControllerPairTimeCallback callback = (IGetControllerPairTimeCallback) arg;
+            final PBS_ControllerPairTimeEnum result = enumValue(PBS_ControllerPairTimeEnum.class);
+            deliver(method, new Delivery() {
+                @Override
+                public void run() throws RemoteException {
+                    callback.callBack(result);
+                }
+            });
+        } else if (arg instanceof IWDModelsCallback) {
+            wifiDisplayCallback = (IWDModelsCallback) arg;
+        } else if (arg instanceof IWDJsonCallback) {
+            wifiDisplayJsonCallback = (IWDJsonCallback) arg;
+        } else if (arg instanceof Consumer) {
+            if (method.equals("setMarkerInfoCallback")) {
+                markerCallback = (Consumer<MarkerInfo[]>) arg;
+            } else {
+                final Consumer<Integer> callback = (Consumer<Integer>) arg;
+                final int result = intResult;
+                deliver(method, new Delivery() {
+                    @Override
+                    public void run() {
+                        callback.accept(result);
+                    }
+                });
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object result(String method, Class<?> type) {
+        if (type == void.class) {
+            return null;
+        } else if (type == int.class) {
+            return intResult;
+        } else if (type == boolean.class) {
+            return boolResult;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == String.class) {
+            return stringResult;
+        } else if (type == float[].class) {
+            return new float[cpuCores];
+        } else if (type == int[].class) {
+            return new int[0];
+        } else if (type == CpuUsageInfo[].class) {
+            return cpuUsages();
+        } else if (type == PBS_WifiDisplayModel.class) {
+            List<PBS_WifiDisplayModel> models = wifiDisplays;
+            return models.isEmpty() ? null : models.get(0);
+        } else if (type.isEnum()) {
+            return enumValue((Class) type);
+        }
+        return null;
+    }
+
+    private CpuUsageInfo[] cpuUsages() {
+        long tick = cpuTicks.incrementAndGet();
+        CpuUsageInfo[] usages = new CpuUsageInfo[cpuCores];
+        for (int i = 0; i < usages.length; i++) {
+            // Core i is busy for (i + 1) of every (cores + 1) ticks.
+            usages[i] = new CpuUsageInfo(tick * 100 * (i + 1), tick * 100 * (usages.length + 1));
+        }
+        return usages;
+    }
+
+    private <E extends Enum<E>> E enumValue(Class<E> type) {
+        E[] values = type.getEnumConstants();
+        if (values.length == 0) {
+            return null;
+        }
+        return values[Math.max(0, Math.min(enumOrdinal, values.length - 1))];
+    }
+}
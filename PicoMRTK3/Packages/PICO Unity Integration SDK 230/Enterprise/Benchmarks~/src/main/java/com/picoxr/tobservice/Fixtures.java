@@ -0,0 +1,46 @@
+package com.picoxr.tobservice;
+
+import com.pvr.tobservice.enums.PBS_WifiDisplayModel;
+import com.pvr.tobservice.model.MarkerInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic service payloads for the benchmarks and load tests.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static MarkerInfo[] markers(int count) {
+        MarkerInfo[] markers = new MarkerInfo[count];
+        for (int i = 0; i < count; i++) {
+            MarkerInfo marker = new MarkerInfo();
+            marker.iMarkerId = i;
+            marker.markerType = 1;
+            marker.validFlag = 1;
+            marker.dTimestamp = 1000.0 + i;
+            marker.posX = 0.1 * i;
+            marker.posY = 1.5;
+            marker.posZ = -0.2 * i;
+            marker.rotationX = 0;
+            marker.rotationY = 0.7071;
+            marker.rotationZ = 0;
+            marker.rotationW = 0.7071;
+            marker.reserve = new int[4];
+            markers[i] = marker;
+        }
+        return markers;
+    }
+
+    static List<PBS_WifiDisplayModel> wifiDisplays(int count) {
+        List<PBS_WifiDisplayModel> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            models.add(new PBS_WifiDisplayModel(String.format("02:00:00:00:%02x:%02x", i >> 8, i & 0xff),
+                    "Miracast sink " + i, true, true, i % 4 == 0, PBS_WifiDisplayModel.STATUS_AVAILABLE,
+                    "available", ""));
+        }
+        return models;
+    }
+}
@@ -0,0 +1,70 @@
+package com.picoxr.tobservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getter round trips through the wrapper: synchronous, through the property cache, as an async
+ * request, and the CPU usage read from the sampler instead of the service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetterBenchmark {
+
+    @Param({"0", "60000"})
+    public long cacheTtlMs;
+
+    private ToBServiceUtils service;
+    private final float[] cpuUsages = new float[CpuUsageSampler.MAX_CORES];
+
+    @Setup
+    public void setUp() {
+        service = ToBServiceUtils.getInstance();
+        new FakeToBService().attach(service);
+        service.setPropertyCacheTtl(cacheTtlMs);
+        service.startCpuUsageSampler(10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.stopCpuUsageSampler();
+        service.setPropertyCacheTtl(0);
+    }
+
+    @Benchmark
+    public int screenOffDelay() {
+        return service.pbsPropertyGetScreenOffDelay(0);
+    }
+
+    @Benchmark
+    public Integer screenOffDelayAsync() throws ExecutionException, InterruptedException {
+        return service.pbsPropertyGetScreenOffDelayAsync(0, null).get();
+    }
+
+    @Benchmark
+    public float[] cpuUsages() {
+        return service.pbsGetCpuUsages();
+    }
+
+    @Benchmark
+    public int sampledCpuUsages() {
+        return service.pbsGetSampledCpuUsages(cpuUsages);
+    }
+}
@@ -0,0 +1,73 @@
+package com.picoxr.tobservice;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent log-linear histogram of microsecond values: 16 sub-buckets per power of two, so
+ * reported percentiles are within about 6% of the recorded value.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int SIZE = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicLongArray totals = new AtomicLongArray(2);
+
+    void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(micros));
+        totals.incrementAndGet(0);
+        long max;
+        while (micros > (max = totals.get(1))) {
+            if (totals.compareAndSet(1, max, micros)) {
+                break;
+            }
+        }
+    }
+
+    long count() {
+        return totals.get(0);
+    }
+
+    long maxMicros() {
+        return totals.get(1);
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the {@code fraction} quantile, in microseconds
+     */
+    long percentileMicros(double fraction) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,415 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.picoxr.tobservice.interfaces.StringCallback;
+import com.pvr.tobservice.enums.PBS_DeviceControlEnum;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives {@link ToBServiceUtils} from several threads against a {@link SimulatedToBService} and
+ * checks that every callback based call completes exactly once or is accounted for by the simulation
+ * (dropped callbacks). Calls that fail with an error or while unbound complete through their
+ * callback with the failure result, so they count as completed; the wrapper metrics only say how
+ * many of the completions were failures.
+ * <p>
+ * Each worker keeps at most {@code --max-in-flight} calls outstanding. Calls that have not completed
+ * after {@code --timeout-ms} are abandoned so that a lost callback cannot stall the worker; a
+ * completion that arrives afterwards is counted as late.
+ * <pre>
+ * gradle loadTest -PloadArgs='--threads 8 --seconds 10 --latency-us 200 --failure-rate 0.01'
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int ABANDONED = 2;
+
+    private static final int OP_INT = 0;
+    private static final int OP_BOOL = 1;
+    private static final int OP_STRING = 2;
+    private static final int OP_SYNC_GETTER = 3;
+    private static final int OP_ASYNC_GETTER = 4;
+    private static final int OPS = 5;
+    private static final String[] OP_NAMES = {"int", "bool", "string", "syncGetter", "asyncGetter"};
+    private static final int[] CALLBACK_METHODS = {
+            ToBMethod.CONTROL_SET_DEVICE_ACTION,
+            ToBMethod.CONTROL_CLEAR_AUTO_CONNECT_WIFI,
+            ToBMethod.GET_SWITCH_LARGE_SPACE_STATUS,
+    };
+
+    static final class Options {
+        int threads = 4;
+        int seconds = 5;
+        long latencyMicros = 100;
+        long jitterMicros = 50;
+        long callbackLatencyMicros = 50;
+        long callbackJitterMicros = 50;
+        double failureRate;
+        double dropRate;
+        int callbackThreads = 2;
+        boolean blocking;
+        boolean multiplexing;
+        int churnMs;
+        int maxInFlight = 16;
+        int timeoutMs = 1000;
+        String trace;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--blocking")) {
+                    options.blocking = true;
+                    continue;
+                }
+                if (name.equals("--multiplexing")) {
+                    options.multiplexing = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--threads":
+                        options.threads = Integer.parseInt(value);
+                        break;
+                    case "--seconds":
+                        options.seconds = Integer.parseInt(value);
+                        break;
+                    case "--latency-us":
+                        options.latencyMicros = Long.parseLong(value);
+                        break;
+                    case "--jitter-us":
+                        options.jitterMicros = Long.parseLong(value);
+                        break;
+                    case "--callback-latency-us":
+                        options.callbackLatencyMicros = Long.parseLong(value);
+                        break;
+                    case "--callback-jitter-us":
+                        options.callbackJitterMicros = Long.parseLong(value);
+                        break;
+                    case "--failure-rate":
+                        options.failureRate = Double.parseDouble(value);
+                        break;
+                    case "--drop-rate":
+                        options.dropRate = Double.parseDouble(value);
+                        break;
+                    case "--callback-threads":
+                        options.callbackThreads = Integer.parseInt(value);
+                        break;
+                    case "--churn-ms":
+                        options.churnMs = Integer.parseInt(value);
+                        break;
+                    case "--max-in-flight":
+                        options.maxInFlight = Integer.parseInt(value);
+                        break;
+                    case "--timeout-ms":
+                        options.timeoutMs = Integer.parseInt(value);
+                        break;
+                    case "--trace":
+                        options.trace = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + name);
+                }
+            }
+            return options;
+        }
+    }
+
+    private final Options options;
+    private final ToBServiceUtils service;
+    private final SimulatedToBService simulation = new SimulatedToBService();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPS];
+    private final AtomicLong[] issued = new AtomicLong[OPS];
+    private final AtomicLong[] completed = new AtomicLong[OPS];
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final AtomicLong lateCallbacks = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private final AtomicLong rebinds = new AtomicLong();
+    private volatile boolean running = true;
+    private long unexplained;
+
+    LoadGenerator(Options options) {
+        this.options = options;
+        for (int i = 0; i < OPS; i++) {
+            latencies[i] = new LatencyHistogram();
+            issued[i] = new AtomicLong();
+            completed[i] = new AtomicLong();
+        }
+        simulation.setLatency(options.latencyMicros, options.jitterMicros);
+        simulation.setCallbackLatency(options.callbackLatencyMicros, options.callbackJitterMicros);
+        simulation.setFailureRate(options.failureRate);
+        simulation.setDropRate(options.dropRate);
+        simulation.setCallbackThreads(options.callbackThreads);
+        service = ToBServiceUtils.getInstance();
+        service.setBlockingMode(options.blocking);
+        service.setCallbackMultiplexing(options.multiplexing);
+        service.setPropertyCacheTtl(0);
+        simulation.attach(service);
+        service.getMetrics().reset();
+    }
+
+    /**
+     * One outstanding call of a worker. Exactly one of completion and abandonment wins the state.
+     */
+    private final class Call {
+        final Worker worker;
+        final int op;
+        final long sequence;
+        final long startNanos = System.nanoTime();
+        final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Call(Worker worker, int op, long sequence) {
+            this.worker = worker;
+            this.op = op;
+            this.sequence = sequence;
+        }
+
+        void complete() {
+            if (state.compareAndSet(PENDING, COMPLETED)) {
+                latencies[op].recordNanos(System.nanoTime() - startNanos);
+                completed[op].incrementAndGet();
+                worker.onComplete(this);
+            } else if (state.get() == COMPLETED) {
+                duplicates.incrementAndGet();
+            } else {
+                late.incrementAndGet();
+                if (op <= OP_STRING) {
+                    lateCallbacks.incrementAndGet();
+                }
+            }
+        }
+
+        boolean abandon() {
+            if (state.compareAndSet(PENDING, ABANDONED)) {
+                abandoned.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final class Worker extends Thread {
+        final Semaphore permits = new Semaphore(options.maxInFlight);
+        final ConcurrentHashMap<Long, Call> outstanding = new ConcurrentHashMap<>();
+        final AtomicLong lastCompleted = new AtomicLong(-1);
+        long sequence;
+
+        Worker(int index) {
+            super("LoadGenerator-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    if (!permits.tryAcquire(options.timeoutMs, TimeUnit.MILLISECONDS)) {
+                        abandonExpired();
+                        continue;
+                    }
+                    long next = sequence++;
+                    issue(new Call(this, (int) (next % OPS), next));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void onComplete(Call call) {
+            outstanding.remove(call.sequence);
+            long last;
+            while (call.sequence > (last = lastCompleted.get())) {
+                if (lastCompleted.compareAndSet(last, call.sequence)) {
+                    break;
+                }
+            }
+            if (call.sequence < last) {
+                outOfOrder.incrementAndGet();
+            }
+            permits.release();
+        }
+
+        void abandonExpired() {
+            long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(options.timeoutMs);
+            Iterator<Call> iterator = outstanding.values().iterator();
+            while (iterator.hasNext()) {
+                Call call = iterator.next();
+                if (call.startNanos - deadline < 0 && call.abandon()) {
+                    iterator.remove();
+                    permits.release();
+                }
+            }
+        }
+
+        void issue(final Call call) {
+            issued[call.op].incrementAndGet();
+            outstanding.put(call.sequence, call);
+            switch (call.op) {
+                case OP_INT:
+                    service.pbsControlSetDeviceAction(PBS_DeviceControlEnum.DEVICE_CONTROL_REBOOT, new IntCallback() {
+                        @Override
+                        public void CallBack(int result) {
+                            call.complete();
+                        }
+                    });
+                    break;
+                case OP_BOOL:
+                    service.pbsControlClearAutoConnectWIFI(new BoolCallback() {
+                        @Override
+                        public void CallBack(Boolean result) {
+                            call.complete();
+                        }
+                    });
+                    break;
+                case OP_STRING:
+                    service.pbsGetSwitchLargeSpaceStatus(new StringCallback() {
+                        @Override
+                        public void CallBack(String result) {
+                            call.complete();
+                        }
+                    }, 0);
+                    break;
+                case OP_SYNC_GETTER:
+                    service.pbsPropertyGetScreenOffDelay(0);
+                    call.complete();
+                    break;
+                default:
+                    service.pbsPropertyGetScreenOffDelayAsync(0, new IntCallback() {
+                        @Override
+                        public void CallBack(int result) {
+                            call.complete();
+                        }
+                    });
+                    break;
+            }
+        }
+    }
+
+    void run() throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < options.threads; i++) {
+            workers.add(new Worker(i));
+        }
+        if (options.trace != null && !service.startTraceRecording(options.trace, 64)) {
+            throw new IllegalStateException("cannot record to " + options.trace);
+        }
+        long start = System.nanoTime();
+        for (Worker worker : workers) {
+            worker.start();
+        }
+        long end = start + TimeUnit.SECONDS.toNanos(options.seconds);
+        boolean bound = true;
+        while (System.nanoTime() < end) {
+            if (options.churnMs > 0) {
+                Thread.sleep(options.churnMs);
+                if (bound) {
+                    service.setServiceBinder(null);
+                } else {
+                    simulation.attach(service);
+                    rebinds.incrementAndGet();
+                }
+                bound = !bound;
+            } else {
+                Thread.sleep(Math.min(100, Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+            }
+        }
+        running = false;
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (!bound) {
+            simulation.attach(service);
+        }
+        // Let callbacks that are still on their way arrive before the books are closed.
+        long drainEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.timeoutMs);
+        while (System.nanoTime() < drainEnd && outstanding(workers) > 0) {
+            Thread.sleep(10);
+        }
+        for (Worker worker : workers) {
+            worker.abandonExpired();
+        }
+        report(elapsed, outstanding(workers));
+        if (options.trace != null) {
+            System.out.println(service.getTraceRecorderMetrics());
+            service.stopTraceRecording();
+        }
+        simulation.shutdown();
+    }
+
+    private static int outstanding(List<Worker> workers) {
+        int count = 0;
+        for (Worker worker : workers) {
+            count += worker.outstanding.size();
+        }
+        return count;
+    }
+
+    private void report(long elapsedNanos, int stillOutstanding) {
+        double seconds = elapsedNanos / 1e9;
+        long totalIssued = 0;
+        long totalCompleted = 0;
+        System.out.printf(Locale.ROOT, "%-12s %10s %10s %10s %8s %8s %8s %8s %8s%n",
+                "op", "issued", "completed", "ops/s", "p50us", "p90us", "p99us", "p999us", "maxus");
+        for (int op = 0; op < OPS; op++) {
+            LatencyHistogram histogram = latencies[op];
+            totalIssued += issued[op].get();
+            totalCompleted += completed[op].get();
+            System.out.printf(Locale.ROOT, "%-12s %10d %10d %10.0f %8d %8d %8d %8d %8d%n",
+                    OP_NAMES[op], issued[op].get(), completed[op].get(), completed[op].get() / seconds,
+                    histogram.percentileMicros(0.50), histogram.percentileMicros(0.90),
+                    histogram.percentileMicros(0.99), histogram.percentileMicros(0.999), histogram.maxMicros());
+        }
+        ToBMetrics metrics = service.getMetrics();
+        long callbackIssued = 0;
+        long callbackCompleted = 0;
+        long errors = 0;
+        long notBound = 0;
+        for (int op = OP_INT; op <= OP_STRING; op++) {
+            callbackIssued += issued[op].get();
+            callbackCompleted += completed[op].get();
+            errors += metrics.get(CALLBACK_METHODS[op], ToBMetrics.ERRORS_INDEX);
+            notBound += metrics.get(CALLBACK_METHODS[op], ToBMetrics.NOT_BOUND_INDEX);
+        }
+        // Errors and unbound calls are already among the completions, failed through their callback.
+        long unexplained = callbackIssued - callbackCompleted - lateCallbacks.get() - simulation.getDroppedCallbacks();
+        System.out.printf(Locale.ROOT, "total: %d issued, %d completed, %.0f ops/s%n",
+                totalIssued, totalCompleted, totalCompleted / seconds);
+        System.out.printf(Locale.ROOT,
+                "callbacks: %d failed with errors, %d failed not bound, %d dropped by service, %d injected failures, %d unexplained%n",
+                errors, notBound, simulation.getDroppedCallbacks(), simulation.getInjectedFailures(), unexplained);
+        System.out.printf(Locale.ROOT,
+                "ordering: %d duplicates, %d late, %d abandoned, %d out of order, %d outstanding, %d rebinds%n",
+                duplicates.get(), late.get(), abandoned.get(), outOfOrder.get(), stillOutstanding, rebinds.get());
+        System.out.println(metrics.toJson());
+        this.unexplained = unexplained;
+        if (duplicates.get() > 0 || unexplained != 0) {
+            System.out.println("FAILED: callbacks were duplicated or lost without being accounted for");
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        LoadGenerator generator = new LoadGenerator(options);
+        generator.run();
+        if (generator.duplicates.get() > 0 || generator.unexplained != 0) {
+            System.exit(1);
+        }
+    }
+}
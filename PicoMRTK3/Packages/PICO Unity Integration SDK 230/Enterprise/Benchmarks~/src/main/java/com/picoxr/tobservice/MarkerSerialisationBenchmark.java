@@ -0,0 +1,91 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.picoxr.tobservice.interfaces.StringCallback;
+import com.pvr.tobservice.model.MarkerInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One marker update from the service callback to data the caller can read: the JSON string of
+ * {@code setMarkerInfoCallback} against the direct buffer of {@code setMarkerInfoBufferCallback}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkerSerialisationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Markers {
+        @Param({"1", "8", "32"})
+        public int count;
+
+        MarkerInfo[] markers;
+        FakeToBService fake;
+
+        void attach() {
+            markers = Fixtures.markers(count);
+            fake = new FakeToBService();
+            fake.attach(ToBServiceUtils.getInstance());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class JsonState extends Markers {
+        Blackhole blackhole;
+
+        @Setup
+        public void setUp(final Blackhole blackhole) {
+            attach();
+            this.blackhole = blackhole;
+            ToBServiceUtils.getInstance().setMarkerInfoCallback(new StringCallback() {
+                @Override
+                public void CallBack(String json) {
+                    JsonState.this.blackhole.consume(json);
+                }
+            });
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BufferState extends Markers {
+        double[] records;
+
+        @Setup
+        public void setUp() {
+            attach();
+            records = new double[count * MarkerInfoBuffer.RECORD_DOUBLES];
+            ToBServiceUtils.getInstance().setMarkerInfoBufferCallback(count, new IntCallback() {
+                @Override
+                public void CallBack(int sequence) {
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public boolean json(JsonState state) {
+        return state.fake.emitMarkers(state.markers);
+    }
+
+    @Benchmark
+    public int buffer(BufferState state) {
+        state.fake.emitMarkers(state.markers);
+        return ToBServiceUtils.getInstance().readMarkerInfos(state.records);
+    }
+}
@@ -0,0 +1,219 @@
+package com.picoxr.tobservice;
+
+import android.os.IInterface;
+import android.os.RemoteException;
+
+import com.pvr.tobservice.interfaces.IToBServiceProxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in for the ToB system service that answers each call the way the recorded service did:
+ * it blocks for the recorded binder latency, fails with the recorded status and calls back after
+ * the recorded callback latency. Results are not recorded, so it returns the type's default. The
+ * call being replayed is set per thread through {@link #expect}; calls without one return at once.
+ * <p>
+ * The body notes when it started and how long it took in the {@link Call}, so the replay measures
+ * the stand-in itself and not the reflection proxy around it.
+ */
+public class ReplayToBService implements InvocationHandler {
+
+    /**
+     * One recorded binder call.
+     */
+    static final class Call {
+        final Method method;
+        final Object[] args;
+        final long durationNanos;
+        final int status;
+        /** Recorded callback latency, -1 if the call had no callback or it never arrived. */
+        final long callbackLatencyNanos;
+        /** When the stand-in body started, set by the replaying thread. */
+        long startedNanos = -1;
+        /** How long the stand-in body took, -1 if it did not run. */
+        long replayedNanos = -1;
+
+        Call(Method method, Object[] args, long durationNanos, int status, long callbackLatencyNanos) {
+            this.method = method;
+            this.args = args;
+            this.durationNanos = durationNanos;
+            this.status = status;
+            this.callbackLatencyNanos = callbackLatencyNanos;
+        }
+    }
+
+    private static final long PARK_SLACK_NANOS = measureParkSlack();
+    /** Yielding only hands the single CPU to the threads that have to run. */
+    private static final boolean SPIN = Runtime.getRuntime().availableProcessors() > 1;
+
+    private final IToBServiceProxy proxy;
+    private final ThreadLocal<Call> current = new ThreadLocal<>();
+    private final ScheduledExecutorService callbackThreads;
+
+    public ReplayToBService(int callbackThreads) {
+        proxy = (IToBServiceProxy) Proxy.newProxyInstance(IToBServiceProxy.class.getClassLoader(),
+                new Class<?>[]{IToBServiceProxy.class}, this);
+        final AtomicInteger index = new AtomicInteger();
+        this.callbackThreads = Executors.newScheduledThreadPool(Math.max(1, callbackThreads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Binder:" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public IToBServiceProxy getProxy() {
+        return proxy;
+    }
+
+    void expect(Call call) {
+        current.set(call);
+    }
+
+    public void shutdown() {
+        callbackThreads.shutdownNow();
+    }
+
+    @Override
+    public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                default:
+                    return "ReplayToBService";
+            }
+        }
+        long start = System.nanoTime();
+        Call call = current.get();
+        current.remove();
+        if (call == null || !call.method.getName().equals(method.getName())) {
+            return defaultValue(method.getReturnType());
+        }
+        call.startedNanos = start;
+        try {
+            return answer(call, method, args, start);
+        } finally {
+            call.replayedNanos = System.nanoTime() - start;
+        }
+    }
+
+    private Object answer(Call call, Method method, Object[] args, long start) throws RemoteException {
+        waitUntil(start + call.durationNanos);
+        if (call.status == TraceRecorder.STATUS_REMOTE_EXCEPTION) {
+            throw new RemoteException(method.getName() + ": recorded failure");
+        } else if (call.status == TraceRecorder.STATUS_RUNTIME_EXCEPTION) {
+            throw new IllegalStateException(method.getName() + ": recorded failure");
+        }
+        if (args != null && call.callbackLatencyNanos >= 0) {
+            // The recorded latency is measured from the start of the call, which has already taken its duration.
+            long delay = Math.max(0, call.callbackLatencyNanos - call.durationNanos);
+            for (final Object arg : args) {
+                if (arg instanceof IInterface || arg instanceof Consumer) {
+                    callbackThreads.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            callBack(arg);
+                        }
+                    }, delay, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        return defaultValue(method.getReturnType());
+    }
+
+    /**
+     * Parks for the bulk of the wait, ending early by the measured timer slack of a parked thread,
+     * and yields for the rest on a multiprocessor, so recorded latencies are reproduced without a
+     * bias. On a single CPU the park alone ends at the deadline on average.
+     */
+    static void waitUntil(long deadline) {
+        long slack = PARK_SLACK_NANOS;
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (remaining > slack) {
+                LockSupport.parkNanos(remaining - slack);
+            } else if (SPIN) {
+                Thread.yield();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the median amount by which a 1 ms park overshoots
+     */
+    private static long measureParkSlack() {
+        long[] overshoot = new long[64];
+        for (int i = 0; i < overshoot.length; i++) {
+            long start = System.nanoTime();
+            LockSupport.parkNanos(1000000);
+            overshoot[i] = Math.max(0, System.nanoTime() - start - 1000000);
+        }
+        Arrays.sort(overshoot);
+        return overshoot[overshoot.length / 2];
+    }
+
+    /**
+     * Calls the callback method of {@code callback} with default arguments.
+     */
+    static void callBack(Object callback) {
+        for (Class<?> type : callback.getClass().getInterfaces()) {
+            for (Method method : type.getMethods()) {
+                if (method.getDeclaringClass() == IInterface.class || method.isDefault()
+                        || java.lang.reflect.Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                Class<?>[] parameters = method.getParameterTypes();
+                Object[] values = new Object[parameters.length];
+                for (int i = 0; i < parameters.length; i++) {
+                    values[i] = defaultValue(parameters[i]);
+                }
+                try {
+                    method.invoke(callback, values);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+        }
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+package com.picoxr.tobservice;
+
+import android.os.RemoteException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link FakeToBService} with the timing of a real system service: every call blocks the calling
+ * thread for the binder latency, can fail with a {@link RemoteException}, and callbacks arrive after
+ * their own latency on a pool of binder threads, so they can overtake each other. Callbacks can
+ * also be dropped to model a service that never answers.
+ * <p>
+ * Latencies are a base value plus a uniformly distributed jitter, both in microseconds.
+ */
+public class SimulatedToBService extends FakeToBService {
+    private volatile long latencyMicros;
+    private volatile long jitterMicros;
+    private volatile long callbackLatencyMicros;
+    private volatile long callbackJitterMicros;
+    private volatile double failureRate;
+    private volatile double dropRate;
+    private ExecutorService callbackThreads;
+    private final AtomicLong injectedFailures = new AtomicLong();
+    private final AtomicLong droppedCallbacks = new AtomicLong();
+    private final AtomicLong deliveredCallbacks = new AtomicLong();
+
+    public void setLatency(long latencyMicros, long jitterMicros) {
+        this.latencyMicros = latencyMicros;
+        this.jitterMicros = jitterMicros;
+    }
+
+    public void setCallbackLatency(long latencyMicros, long jitterMicros) {
+        this.callbackLatencyMicros = latencyMicros;
+        this.callbackJitterMicros = jitterMicros;
+    }
+
+    /**
+     * @param failureRate probability that a call fails with a {@link RemoteException}
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @param dropRate probability that a callback is never delivered
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    /**
+     * @param threads number of binder threads delivering callbacks, 0 delivers them inline
+     */
+    public synchronized void setCallbackThreads(int threads) {
+        if (callbackThreads != null) {
+            callbackThreads.shutdown();
+            callbackThreads = null;
+        }
+        if (threads > 0) {
+            final AtomicInteger index = new AtomicInteger();
+            callbackThreads = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Binder:" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    public void shutdown() {
+        setCallbackThreads(0);
+    }
+
+    public long getInjectedFailures() {
+        return injectedFailures.get();
+    }
+
+    public long getDroppedCallbacks() {
+        return droppedCallbacks.get();
+    }
+
+    public long getDeliveredCallbacks() {
+        return deliveredCallbacks.get();
+    }
+
+    @Override
+    protected void beforeCall(String method) throws RemoteException {
+        pause(latencyMicros, jitterMicros);
+        double rate = failureRate;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            injectedFailures.incrementAndGet();
+            throw new RemoteException(method + ": injected failure");
+        }
+    }
+
+    @Override
+    protected void deliver(final String method, final Delivery delivery) throws RemoteException {
+        double rate = dropRate;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            droppedCallbacks.incrementAndGet();
+            return;
+        }
+        ExecutorService threads;
+        synchronized (this) {
+            threads = callbackThreads;
+        }
+        if (threads == null) {
+            pause(callbackLatencyMicros, callbackJitterMicros);
+            deliveredCallbacks.incrementAndGet();
+            delivery.run();
+            return;
+        }
+        try {
+            threads.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pause(callbackLatencyMicros, callbackJitterMicros);
+                    deliveredCallbacks.incrementAndGet();
+                    try {
+                        delivery.run();
+                    } catch (RemoteException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            droppedCallbacks.incrementAndGet();
+        }
+    }
+
+    static void pause(long baseMicros, long jitterMicros) {
+        long micros = baseMicros;
+        if (jitterMicros > 0) {
+            micros += ThreadLocalRandom.current().nextLong(jitterMicros + 1);
+        }
+        if (micros <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + micros * 1000;
+        // Park for the bulk of long pauses and spin the rest, so short latencies stay accurate.
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (remaining > 100000) {
+                LockSupport.parkNanos(remaining - 50000);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.picoxr.tobservice;
+
+import android.os.IInterface;
+
+import com.pvr.tobservice.interfaces.IToBServiceProxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a {@link TraceRecorder} trace against a {@link ReplayToBService}. Every binder call is
+ * issued at its own recorded start time from a pool of threads sized to the recorded concurrency,
+ * so a call never waits for an earlier call of the same thread to overrun; the stand-in answers with
+ * the recorded latency, status and callback latency, and default arguments and results.
+ * <p>
+ * Recorded callbacks carry the wrapper method only, so each is matched to the latest successful
+ * binder call of that method with a callback parameter that started before it. The report compares
+ * recorded and replayed latencies per method and the schedule skew, the delay between a call's
+ * recorded start and the start of the stand-in body. Both are measured inside the stand-in, and the
+ * median cost of entering it through the reflection proxy is measured at startup and taken off the
+ * schedule. With
+ * {@code --max-skew-ms} or {@code --max-drift-pct} the run fails when a limit is exceeded, which
+ * turns a field trace into a regression test.
+ * <pre>
+ * gradle replay -PreplayArgs='build/load.trace --speed 1 --max-skew-ms 5'
+ * </pre>
+ */
+public final class TraceReplay {
+
+    static final class Options {
+        File trace;
+        double speed = 1;
+        long maxSkewMs = -1;
+        double maxDriftPercent = -1;
+        int callbackThreads = 2;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (!name.startsWith("--")) {
+                    options.trace = new File(name);
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--speed":
+                        options.speed = Double.parseDouble(value);
+                        break;
+                    case "--max-skew-ms":
+                        options.maxSkewMs = Long.parseLong(value);
+                        break;
+                    case "--max-drift-pct":
+                        options.maxDriftPercent = Double.parseDouble(value);
+                        break;
+                    case "--callback-threads":
+                        options.callbackThreads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + name);
+                }
+            }
+            if (options.trace == null) {
+                throw new IllegalArgumentException("usage: TraceReplay <trace> [--speed x] [--max-skew-ms n]"
+                        + " [--max-drift-pct p] [--callback-threads n]");
+            }
+            if (options.speed <= 0) {
+                throw new IllegalArgumentException("--speed must be positive");
+            }
+            return options;
+        }
+    }
+
+    /**
+     * A recorded binder call and what happened when it was replayed.
+     */
+    private static final class Invoke {
+        final long timeNanos;
+        final int thread;
+        final String name;
+        final int method;
+        final ReplayToBService.Call call;
+        /** Parameter positions that take a callback. */
+        final boolean[] callbacks;
+        final AtomicLong callbackNanos = new AtomicLong(-1);
+
+        Invoke(long timeNanos, int thread, String name, int method, ReplayToBService.Call call, boolean[] callbacks) {
+            this.timeNanos = timeNanos;
+            this.thread = thread;
+            this.name = name;
+            this.method = method;
+            this.call = call;
+            this.callbacks = callbacks;
+        }
+    }
+
+    private static final class MethodStats {
+        long count;
+        long recordedNanos;
+        long replayedNanos;
+        long callbacks;
+        long callbacksArrived;
+        long recordedCallbackNanos;
+        long replayedCallbackNanos;
+    }
+
+    private final Options options;
+    private final ReplayToBService service;
+    private final List<Invoke> invokes = new ArrayList<>();
+    private final LatencyHistogram skew = new LatencyHistogram();
+    private long records;
+    private long wrapperCalls;
+    private long wrapperErrors;
+    private long notBound;
+    private long unmatchedCallbacks;
+    private int unknownMethods;
+    private final Set<Integer> threads = new HashSet<>();
+    private long entryNanos;
+
+    TraceReplay(Options options) {
+        this.options = options;
+        service = new ReplayToBService(options.callbackThreads);
+    }
+
+    void load() throws IOException {
+        final Map<String, Method> methods = new HashMap<>();
+        for (Method method : IToBServiceProxy.class.getMethods()) {
+            methods.put(method.getName(), method);
+        }
+        final List<TraceRecorder.Record> invokeRecords = new ArrayList<>();
+        final Map<Integer, List<long[]>> callbacks = new HashMap<>();
+        records = TraceRecorder.read(options.trace, new TraceRecorder.Visitor() {
+            @Override
+            public void visit(TraceRecorder.Record record) {
+                switch (record.type) {
+                    case TraceRecorder.TYPE_INVOKE:
+                        invokeRecords.add(copy(record));
+                        break;
+                    case TraceRecorder.TYPE_CALLBACK:
+                        List<long[]> latencies = callbacks.get(record.method);
+                        if (latencies == null) {
+                            latencies = new ArrayList<>();
+                            callbacks.put(record.method, latencies);
+                        }
+                        latencies.add(new long[]{record.timeNanos, record.durationNanos});
+                        break;
+                    case TraceRecorder.TYPE_CALL:
+                        wrapperCalls++;
+                        break;
+                    case TraceRecorder.TYPE_ERROR:
+                        wrapperErrors++;
+                        break;
+                    case TraceRecorder.TYPE_NOT_BOUND:
+                        notBound++;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        Collections.sort(invokeRecords, new Comparator<TraceRecorder.Record>() {
+            @Override
+            public int compare(TraceRecorder.Record a, TraceRecorder.Record b) {
+                return Long.compare(a.timeNanos, b.timeNanos);
+            }
+        });
+        // Calls that can have been answered: they succeeded and take a callback. Per method, in start order.
+        Map<Integer, List<Integer>> answerable = new HashMap<>();
+        for (int i = 0; i < invokeRecords.size(); i++) {
+            TraceRecorder.Record record = invokeRecords.get(i);
+            Method method = methods.get(record.name);
+            if (method == null || record.status != TraceRecorder.STATUS_OK || !takesCallback(method)) {
+                continue;
+            }
+            List<Integer> list = answerable.get(record.method);
+            if (list == null) {
+                list = new ArrayList<>();
+                answerable.put(record.method, list);
+            }
+            list.add(i);
+        }
+        long[] callbackLatencies = new long[invokeRecords.size()];
+        Arrays.fill(callbackLatencies, -1);
+        for (Map.Entry<Integer, List<long[]>> entry : callbacks.entrySet()) {
+            List<Integer> list = answerable.get(entry.getKey());
+            for (long[] callback : entry.getValue()) {
+                // A callback record is stamped with the creation of its stub, just after its call started,
+                // so it belongs to the latest unanswered call that started before it. Failed calls and calls
+                // whose callback never came are left out that way.
+                int at = list == null ? -1 : latestBefore(invokeRecords, list, callback[0]);
+                while (at >= 0 && callbackLatencies[list.get(at)] >= 0) {
+                    at--;
+                }
+                if (at < 0) {
+                    unmatchedCallbacks++;
+                } else {
+                    callbackLatencies[list.get(at)] = callback[1];
+                }
+            }
+        }
+        for (int i = 0; i < invokeRecords.size(); i++) {
+            TraceRecorder.Record record = invokeRecords.get(i);
+            Method method = methods.get(record.name);
+            if (method == null) {
+                unknownMethods++;
+                continue;
+            }
+            Object[] args = arguments(method);
+            boolean[] callbackSlots = new boolean[args.length];
+            for (int slot = 0; slot < args.length; slot++) {
+                callbackSlots[slot] = method.getParameterTypes()[slot].isInterface();
+            }
+            invokes.add(new Invoke(record.timeNanos, record.thread, record.name, record.method,
+                    new ReplayToBService.Call(method, args, record.durationNanos, record.status, callbackLatencies[i]),
+                    callbackSlots));
+            threads.add(record.thread);
+        }
+    }
+
+    private static boolean takesCallback(Method method) {
+        for (Class<?> type : method.getParameterTypes()) {
+            if (type.isInterface()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the position in {@code indices} of the last record that started at or before
+     * {@code timeNanos}, or -1
+     */
+    private static int latestBefore(List<TraceRecorder.Record> records, List<Integer> indices, long timeNanos) {
+        int low = 0;
+        int high = indices.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (records.get(indices.get(middle)).timeNanos <= timeNanos) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private static TraceRecorder.Record copy(TraceRecorder.Record record) {
+        TraceRecorder.Record copy = new TraceRecorder.Record();
+        copy.type = record.type;
+        copy.thread = record.thread;
+        copy.timeNanos = record.timeNanos;
+        copy.method = record.method;
+        copy.name = record.name;
+        copy.durationNanos = record.durationNanos;
+        copy.status = record.status;
+        return copy;
+    }
+
+    private static Object[] arguments(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            args[i] = ReplayToBService.defaultValue(types[i]);
+        }
+        return args;
+    }
+
+    /**
+     * A callback argument that notes when it was called.
+     */
+    private static Object probe(Class<?> type, final Invoke invoke) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object self, Method method, Object[] args) {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.getName().equals("equals") ? self == args[0]
+                            : method.getName().equals("hashCode") ? System.identityHashCode(self) : "probe";
+                }
+                if (method.getDeclaringClass() == IInterface.class) {
+                    return null;
+                }
+                invoke.callbackNanos.compareAndSet(-1, System.nanoTime() - invoke.call.startedNanos);
+                return ReplayToBService.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    /**
+     * Warms up the replay path with the calls of the trace, without their latencies, and measures
+     * the median delay between calling the stand-in through {@link Method#invoke} and the start of
+     * its body. Without a warm-up the JIT and the reflection accessors compile during the replay
+     * and show up as latency.
+     */
+    void calibrate() throws InterruptedException {
+        List<Invoke> models = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Invoke invoke : invokes) {
+            if (seen.add(invoke.name)) {
+                models.add(invoke);
+            }
+        }
+        if (models.isEmpty()) {
+            return;
+        }
+        long[] samples = new long[4000];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < samples.length; i++) {
+                Invoke model = models.get(i % models.size());
+                ReplayToBService.Call call = model.call;
+                Invoke warmUp = new Invoke(model.timeNanos, model.thread, model.name, model.method,
+                        new ReplayToBService.Call(call.method, call.args, 0, TraceRecorder.STATUS_OK,
+                                call.callbackLatencyNanos >= 0 ? 0 : -1), model.callbacks);
+                samples[i] = replay(warmUp, 0);
+            }
+            // Let the callbacks run and the compiler catch up.
+            Thread.sleep(100);
+        }
+        Arrays.sort(samples);
+        entryNanos = samples[samples.length / 2];
+    }
+
+    boolean run() throws InterruptedException {
+        final long origin = invokes.isEmpty() ? 0 : invokes.get(0).timeNanos;
+        final long[] scheduled = new long[invokes.size()];
+        for (int i = 0; i < scheduled.length; i++) {
+            scheduled[i] = (long) ((invokes.get(i).timeNanos - origin) / options.speed);
+        }
+        // Workers claim calls ahead of their time, so a call that overruns must not hold up the next ones.
+        int poolSize = Math.min(256, overlap(scheduled) * 2 + 4);
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+        final AtomicInteger next = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < poolSize; t++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < scheduled.length) {
+                        Invoke invoke = invokes.get(index);
+                        replay(invoke, start + scheduled[index]);
+                        skew.recordNanos(Math.max(0, invoke.call.startedNanos - start - scheduled[index]));
+                    }
+                }
+            }, "Replay:" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        // Give callbacks that are still scheduled time to arrive.
+        long longest = 0;
+        for (Invoke invoke : invokes) {
+            longest = Math.max(longest, invoke.call.callbackLatencyNanos);
+        }
+        long drainEnd = System.nanoTime() + longest + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < drainEnd && pendingCallbacks() > 0) {
+            Thread.sleep(5);
+        }
+        service.shutdown();
+        long recordedSpan = 0;
+        for (Invoke invoke : invokes) {
+            recordedSpan = Math.max(recordedSpan, invoke.timeNanos - origin + invoke.call.durationNanos);
+        }
+        System.out.printf(Locale.ROOT, "replay: %d threads, proxy entry %d ns taken off the schedule%n", poolSize,
+                entryNanos);
+        return report(recordedSpan, elapsed);
+    }
+
+    /**
+     * @return the largest number of calls running at once on the replay schedule
+     */
+    private int overlap(long[] scheduled) {
+        long[] ends = new long[scheduled.length];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = scheduled[i] + invokes.get(i).call.durationNanos;
+        }
+        Arrays.sort(ends);
+        int most = 0;
+        int ended = 0;
+        for (int i = 0; i < scheduled.length; i++) {
+            while (ended < ends.length && ends[ended] <= scheduled[i]) {
+                ended++;
+            }
+            most = Math.max(most, i + 1 - ended);
+        }
+        return most;
+    }
+
+    /**
+     * Calls the stand-in once {@code scheduled} less the proxy entry delay has come.
+     *
+     * @return the delay between calling the proxy and the start of the stand-in body
+     */
+    private long replay(Invoke invoke, long scheduled) {
+        ReplayToBService.Call call = invoke.call;
+        Object[] args = call.args.clone();
+        Class<?>[] types = call.method.getParameterTypes();
+        for (int i = 0; i < args.length; i++) {
+            if (invoke.callbacks[i] && call.callbackLatencyNanos >= 0) {
+                args[i] = probe(types[i], invoke);
+            }
+        }
+        service.expect(call);
+        ReplayToBService.waitUntil(scheduled - entryNanos);
+        long entered = System.nanoTime();
+        try {
+            call.method.invoke(service.getProxy(), args);
+        } catch (InvocationTargetException e) {
+            // Recorded failures are replayed as such.
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return call.startedNanos - entered;
+    }
+
+    private long pendingCallbacks() {
+        long pending = 0;
+        for (Invoke invoke : invokes) {
+            if (invoke.call.callbackLatencyNanos >= 0 && invoke.callbackNanos.get() < 0) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private boolean report(long recordedSpan, long replayedSpan) {
+        Map<String, MethodStats> stats = new LinkedHashMap<>();
+        long recordedTotal = 0;
+        long replayedTotal = 0;
+        for (Invoke invoke : invokes) {
+            MethodStats method = stats.get(invoke.name);
+            if (method == null) {
+                method = new MethodStats();
+                stats.put(invoke.name, method);
+            }
+            method.count++;
+            method.recordedNanos += invoke.call.durationNanos;
+            method.replayedNanos += invoke.call.replayedNanos;
+            recordedTotal += invoke.call.durationNanos;
+            replayedTotal += invoke.call.replayedNanos;
+            if (invoke.call.callbackLatencyNanos >= 0) {
+                method.callbacks++;
+                long arrived = invoke.callbackNanos.get();
+                if (arrived >= 0) {
+                    method.callbacksArrived++;
+                    method.recordedCallbackNanos += invoke.call.callbackLatencyNanos;
+                    method.replayedCallbackNanos += arrived;
+                }
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-36s %8s %10s %10s %10s %10s %10s%n", "binder method", "calls",
+                "recUs", "replayUs", "callbacks", "recCbUs", "replayCbUs");
+        long missing = 0;
+        for (Map.Entry<String, MethodStats> entry : stats.entrySet()) {
+            MethodStats method = entry.getValue();
+            missing += method.callbacks - method.callbacksArrived;
+            System.out.printf(Locale.ROOT, "%-36s %8d %10d %10d %10s %10d %10d%n", entry.getKey(), method.count,
+                    method.recordedNanos / method.count / 1000, method.replayedNanos / method.count / 1000,
+                    method.callbacksArrived + "/" + method.callbacks,
+                    method.callbacksArrived > 0 ? method.recordedCallbackNanos / method.callbacksArrived / 1000 : 0,
+                    method.callbacksArrived > 0 ? method.replayedCallbackNanos / method.callbacksArrived / 1000 : 0);
+        }
+        double drift = recordedTotal > 0 ? 100.0 * (replayedTotal - recordedTotal) / recordedTotal : 0;
+        System.out.printf(Locale.ROOT, "trace: %d records, %d binder calls from %d threads, %d wrapper calls, %d errors,"
+                        + " %d not bound, %d unknown methods, %d unmatched callbacks%n", records, invokes.size(),
+                threads.size(), wrapperCalls, wrapperErrors, notBound, unknownMethods, unmatchedCallbacks);
+        System.out.printf(Locale.ROOT, "span: recorded %d ms, replayed %d ms at speed %.2f%n",
+                TimeUnit.NANOSECONDS.toMillis(recordedSpan), TimeUnit.NANOSECONDS.toMillis(replayedSpan), options.speed);
+        System.out.printf(Locale.ROOT, "binder time: recorded %d us, replayed %d us, drift %.1f%%%n",
+                recordedTotal / 1000, replayedTotal / 1000, drift);
+        System.out.printf(Locale.ROOT, "start skew: p50 %d us, p99 %d us, max %d us; %d callbacks missing%n",
+                skew.percentileMicros(0.5), skew.percentileMicros(0.99), skew.maxMicros(), missing);
+        boolean passed = true;
+        if (options.maxSkewMs >= 0 && skew.maxMicros() > options.maxSkewMs * 1000) {
+            System.out.println("FAILED: start skew above " + options.maxSkewMs + " ms");
+            passed = false;
+        }
+        if (options.maxDriftPercent >= 0 && Math.abs(drift) > options.maxDriftPercent) {
+            System.out.println("FAILED: binder time drift above " + options.maxDriftPercent + "%");
+            passed = false;
+        }
+        if (missing > 0) {
+            System.out.println("FAILED: recorded callbacks did not arrive");
+            passed = false;
+        }
+        return passed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        TraceReplay replay = new TraceReplay(Options.parse(args));
+        replay.load();
+        replay.calibrate();
+        if (!replay.run()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.picoxr.tobservice;
+
+import android.os.RemoteException;
+
+import com.picoxr.tobservice.interfaces.StringCallback;
+import com.pvr.tobservice.enums.PBS_WifiDisplayModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Wi-Fi Display scan result: the full JSON array of {@code pbsSetWDModelsCallback} against the
+ * delta of {@code pbsSetWDModelsDeltaCallback} for an unchanged scan and for a scan where one device
+ * changed its status.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WifiDisplaySerialisationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Scan {
+        @Param({"4", "32"})
+        public int devices;
+
+        List<PBS_WifiDisplayModel> models;
+        FakeToBService fake;
+        Blackhole blackhole;
+        int toggle;
+
+        void attach(Blackhole blackhole) {
+            this.blackhole = blackhole;
+            models = Fixtures.wifiDisplays(devices);
+            fake = new FakeToBService();
+            fake.attach(ToBServiceUtils.getInstance());
+            ToBServiceUtils.getInstance().setBlockingMode(true);
+        }
+
+        StringCallback sink() {
+            return new StringCallback() {
+                @Override
+                public void CallBack(String json) {
+                    blackhole.consume(json);
+                }
+            };
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FullState extends Scan {
+        @Setup
+        public void setUp(Blackhole blackhole) {
+            attach(blackhole);
+            ToBServiceUtils.getInstance().pbsSetWDModelsCallback(sink());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeltaState extends Scan {
+        @Setup
+        public void setUp(Blackhole blackhole) throws RemoteException {
+            attach(blackhole);
+            ToBServiceUtils.getInstance().pbsSetWDModelsDeltaCallback(0, sink());
+            fake.emitWifiDisplays(models);
+        }
+    }
+
+    @Benchmark
+    public boolean full(FullState state) throws RemoteException {
+        return state.fake.emitWifiDisplays(state.models);
+    }
+
+    @Benchmark
+    public boolean deltaUnchanged(DeltaState state) throws RemoteException {
+        return state.fake.emitWifiDisplays(state.models);
+    }
+
+    @Benchmark
+    public boolean deltaOneChanged(DeltaState state) throws RemoteException {
+        PBS_WifiDisplayModel model = state.models.get(0);
+        model.setStatusCode((state.toggle++ & 1) == 0
+                ? PBS_WifiDisplayModel.STATUS_IN_USE : PBS_WifiDisplayModel.STATUS_AVAILABLE);
+        return state.fake.emitWifiDisplays(state.models);
+    }
+}
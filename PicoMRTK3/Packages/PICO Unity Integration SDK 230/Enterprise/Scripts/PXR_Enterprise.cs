@@ -279,6 +279,61 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_ControlAPPManager(packageControl, path, callback);
         }
 
+        /// <summary>
+        /// Installs or uninstalls app silently, giving up if the service has not answered within the timeout.
+        /// @note This is a protected API. You need to add `<meta-data android:name="pico_advance_interface" android:value="0"/>`
+        /// to the app's AndroidManifest.xml file for calling this API, after which the app is unable to be published on the PICO Store.
+        /// </summary>
+        /// <param name="packageControl">The action. Enumerations:
+        /// * `PACKAGE_SILENCE_INSTALL`: silent installation
+        /// * `PACKAGE_SILENCE_UNINSTALL`: silent uninstallation
+        /// </param>
+        /// <param name="path">The path to the app package for silent installation or the name of the app package for silent uninstallation.</param>
+        /// <param name="callback">Callback:
+        /// * `0`: success
+        /// * `1`: failure
+        /// * `2`: no permission to perform this operation
+        /// * `-1`: timed out, a result arriving later is dropped
+        /// </param>
+        /// <param name="timeoutMs">The time to wait for the result, in milliseconds.</param>
+        /// <returns>The id of the call, which can be passed to `CancelCall`.</returns>
+        public static int ControlAPPManager(PackageControlEnum packageControl, string path, Action<int> callback, long timeoutMs)
+        {
+            return PXR_EnterprisePlugin.UPxr_ControlAPPManager(packageControl, path, callback, timeoutMs);
+        }
+
+        /// <summary>
+        /// Silently installs a batch of app packages.
+        /// The packages are verified in parallel with SHA-256 and installed one at a time while the rest are still being verified.
+        /// A package is skipped when it is unchanged since it was last installed by this method, when the same version is already installed, or when it is identical to another package of the batch.
+        /// @note This is a protected API. You need to add `<meta-data android:name="pico_advance_interface" android:value="0"/>`
+        /// to the app's AndroidManifest.xml file for calling this API, after which the app is unable to be published on the PICO Store.
+        /// </summary>
+        /// <param name="source">A directory whose `.apk` files are installed, or a JSON manifest: either an array of paths, or `{"force":false,"packages":[{"path":"a.apk","sha256":"..."}]}`. Relative paths are resolved against the manifest's directory. A package whose `sha256` is given but does not match fails.</param>
+        /// <param name="force">Whether to install packages even if they are unchanged.</param>
+        /// <param name="installTimeoutMs">An installation that takes longer than this is reported as timed out. `0` waits forever.</param>
+        /// <param name="progress">A JSON object for every finished package with `path`, `status` (`installed`, `unchanged`, `duplicate`, `failed` or `timeout`), `sha256`, `verifyMs`, `queueMs`, `installMs`, `done` and `total`.</param>
+        /// <param name="callback">A JSON summary when all packages are finished, with `success`, `totalMs`, the number of `installed`, `unchanged`, `duplicates` and `failed` packages, and `packages`, the list of per-package results.</param>
+        public static void InstallPackages(string source, bool force, long installTimeoutMs, Action<string> progress, Action<string> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_InstallPackages(source, force, installTimeoutMs, progress, callback);
+        }
+
+        /// <summary>
+        /// Applies a set of device settings in one batch. Steps without an ordering constraint are dispatched together, and a step starts once every step it depends on has completed.
+        /// Besides the `after` names, known constraints are added automatically: keys are reset before key settings, and the country code is set and Wi-Fi cleared before Wi-Fi is set up. Two writes of the same setting keep their order.
+        /// </summary>
+        /// <param name="profileJson">The profile, e.g., `{"continueOnFailure":false,"steps":[{"name":"country","method":"pbsSetSystemCountryCode","args":{"countryCode":"US"}},{"name":"wifi","method":"pbsControlSetAutoConnectWIFI","args":{"ssid":"..","pwd":".."},"after":["country"]}]}`.
+        /// Supported methods: `pbsPropertySetHomeKey`, `pbsPropertySetHomeKeyAll`, `pbsPropertyDisablePowerKey`, `pbsPropertySetScreenOffDelay`, `pbsSetControllerPairTime`, `pbsControlSetAutoConnectWIFI`,
+        /// `pbsControlSetAutoConnectWIFIWithErrorCodeCallback`, `pbsControlClearAutoConnectWIFI`, `pbsSetSystemCountryCode`, `pbsResetAllKeyToDefault`, `pbsWriteConfigFileToDataLocal`, `pbsPropertySetPowerOnOffLogo` and `pbsControlAPPManger`.
+        /// Enum arguments are given by the name of the Java enum constant. By default a step whose dependency failed is skipped; set `continueOnFailure` to run it anyway.</param>
+        /// <param name="timeoutMs">Steps still running after this time are reported as timed out. `0` waits until every step has completed.</param>
+        /// <param name="callback">A JSON object with `success`, `totalMs` and `steps`, which lists every step's `name`, `method`, `status` (`ok`, `failed`, `skipped` or `timeout`), `result` code, `startMs` and `durationMs`.</param>
+        public static void ApplyProvisioningProfile(string profileJson, int timeoutMs, Action<string> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_ApplyProvisioningProfile(profileJson, timeoutMs, callback);
+        }
+
         /// <summary>
         /// Sets a Wi-Fi that the device is automatically connected to.
         /// </summary>
@@ -425,6 +480,16 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_PropertySetScreenOffDelay(timeEnum, callback);
         }
 
+        /// <summary>
+        /// Same as `PropertySetScreenOffDelay`, but for values that change often: while a request is in progress only the latest value is kept, and every callback receives the result of the value that was finally set.
+        /// </summary>
+        /// <param name="timeEnum">The screen off timeout, see `PropertySetScreenOffDelay`.</param>
+        /// <param name="callback">The result of the value that was finally set, see `PropertySetScreenOffDelay`.</param>
+        public static void PropertySetScreenOffDelayCoalesced(ScreenOffDelayTimeEnum timeEnum, Action<int> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_PropertySetScreenOffDelayCoalesced(timeEnum, callback);
+        }
+
         /// <summary>
         /// Sets the time the system sleeps when the device is not in use.
         /// </summary>
@@ -655,6 +720,33 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_WriteConfigFileToDataLocal(path, content, callback);
         }
 
+        /// <summary>
+        /// Writes a configuration file like `WriteConfigFileToDataLocal`, but skips the write when the content is unchanged since the last sync of the same path.
+        /// Content longer than 128K characters is written as `path.part0`, `path.part1`, ... followed by the manifest `path.manifest`, which lists the number of parts.
+        /// </summary>
+        /// <param name="path">The path to the configuration file, e.g., `/data/local/tmp/config.txt`.</param>
+        /// <param name="content">The content of the configuration file.</param>
+        /// <param name="callback">The result:
+        /// * `0`: written
+        /// * `1`: unchanged, nothing was written
+        /// * `-1`: failed to be written
+        /// </param>
+        public static void SyncConfigFile(string path, string content, Action<int> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_SyncConfigFile(path, content, callback);
+        }
+
+        /// <summary>
+        /// Same as `SyncConfigFile`, but streams the content from a local file instead of passing it as a string.
+        /// </summary>
+        /// <param name="path">The path to the configuration file, e.g., `/data/local/tmp/config.txt`.</param>
+        /// <param name="sourcePath">The local file to read the content from, e.g., a file in `Application.persistentDataPath`.</param>
+        /// <param name="callback">The result, see `SyncConfigFile`.</param>
+        public static void SyncConfigFileFrom(string path, string sourcePath, Action<int> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_SyncConfigFileFrom(path, sourcePath, callback);
+        }
+
         /// <summary>
         /// Resets all buttons to default configuration.
         /// </summary>
@@ -703,6 +795,120 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_KillBackgroundAppsWithWhiteList(packageNames);
         }
 
+        /// <summary>
+        /// Starts watching available memory. When the headroom to the system's low memory threshold drops below `minHeadroomMB`, the least important background apps outside the allowlist are force quit, at most `maxKills` apps and one reclamation per `cooldownMs`. Apps are force quit by PID only. This app is never force quit.
+        /// @note This is a protected API, see `KillBackgroundAppsWithWhiteList`. Single apps can only be picked by a system or privileged app; other apps see only their own processes and reclaim memory only through `whiteListFallback`.
+        /// </summary>
+        /// <param name="whiteList">Package names of the apps that are never force quit.</param>
+        /// <param name="minHeadroomMB">The headroom in MB below which memory is reclaimed.</param>
+        /// <param name="cooldownMs">The minimum time between two reclamations, in milliseconds.</param>
+        /// <param name="maxKills">The maximum number of apps force quit per reclamation.</param>
+        /// <param name="intervalMs">How often available memory is checked, in milliseconds.</param>
+        /// <param name="whiteListFallback">If other apps' processes are not visible to this app, whether to force quit all background apps outside the allowlist instead. `false` skips the reclamation.</param>
+        /// <param name="callback">Receives a JSON record of every reclamation, with the apps force quit and the memory freed in bytes. Can be `null`.</param>
+        public static void StartMemoryReclaimer(string[] whiteList, int minHeadroomMB, int cooldownMs, int maxKills, int intervalMs, bool whiteListFallback, Action<string> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_StartMemoryReclaimer(whiteList, minHeadroomMB, cooldownMs, maxKills, intervalMs, whiteListFallback, callback);
+        }
+
+        /// <summary>
+        /// Stops watching available memory.
+        /// </summary>
+        public static void StopMemoryReclaimer()
+        {
+            PXR_EnterprisePlugin.UPxr_StopMemoryReclaimer();
+        }
+
+        /// <summary>
+        /// Gets the reclamation counters and the 32 most recent reclamation records.
+        /// </summary>
+        /// <returns>The JSON string of the counters and records.</returns>
+        public static string GetMemoryReclaimerMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetMemoryReclaimerMetrics();
+        }
+
+        /// <summary>
+        /// Sets the device state that is fetched concurrently each time the service is bound, instead of
+        /// reading it call by call after `BindEnterpriseService`. Call it before binding.
+        /// </summary>
+        /// <param name="items">A combination of flags, `0` disables the prefetch:
+        /// * `1`: device info, all `SystemInfoEnum` values
+        /// * `2`: screen-off delay
+        /// * `4`: sleep delay
+        /// * `8`: power key status
+        /// * `16`: enter key status
+        /// * `32`: volume key status
+        /// * `64`: back key status
+        /// * `128`: current launcher
+        /// * `256`: system language
+        /// * `512`: controller battery
+        /// * `1024`: controller connection state
+        /// * `2048`: power off with USB cable
+        /// * `4096`: volume keys as home and enter
+        /// * `8192`: screencast audio output
+        /// * `16384`: connected Wi-Fi Display
+        /// * `32767`: all of the above
+        /// </param>
+        /// <param name="callback">Receives the JSON snapshot once, when the first prefetch completes. Can be `null`.</param>
+        public static void SetStartupPrefetch(int items, Action<string> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_SetStartupPrefetch(items, callback);
+        }
+
+        /// <summary>
+        /// Gets the device state of the last completed prefetch.
+        /// </summary>
+        /// <returns>The JSON string keyed by item name, items that failed are `null`; `null` if no prefetch has completed.</returns>
+        public static string GetStartupSnapshot()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetStartupSnapshot();
+        }
+
+        /// <summary>
+        /// Gets the prefetch metrics: the time from binding until the state was ready, the summed time of the
+        /// individual calls and the slowest item, in milliseconds.
+        /// </summary>
+        /// <returns>The JSON string of the metrics.</returns>
+        public static string GetStartupPrefetchMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetStartupPrefetchMetrics();
+        }
+
+        /// <summary>
+        /// Starts recording every service call, its arguments, result and latency, and every callback into a
+        /// binary ring file. When the file is full the oldest records are overwritten. The trace can be replayed
+        /// against a stand-in service with the benchmark tools.
+        /// </summary>
+        /// <param name="path">The path of the trace file, for example under `Application.persistentDataPath`.</param>
+        /// <param name="capacityMB">The size of the ring file in MB.</param>
+        /// <returns>Whether the recording started:
+        /// * `true`: success
+        /// * `false`: failure, for example the file could not be created
+        /// </returns>
+        public static bool StartTraceRecording(string path, int capacityMB)
+        {
+            return PXR_EnterprisePlugin.UPxr_StartTraceRecording(path, capacityMB);
+        }
+
+        /// <summary>
+        /// Stops the trace recording and flushes the trace file.
+        /// </summary>
+        public static void StopTraceRecording()
+        {
+            PXR_EnterprisePlugin.UPxr_StopTraceRecording();
+        }
+
+        /// <summary>
+        /// Gets the trace recorder metrics: the file, its capacity, the records and bytes written, whether the
+        /// ring has wrapped and the records dropped.
+        /// </summary>
+        /// <returns>The JSON string of the metrics; `null` if no recording is running.</returns>
+        public static string GetTraceRecorderMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetTraceRecorderMetrics();
+        }
+
         /// <summary>
         /// Freezes the screen to the front. The screen will turn around with the HMD.
         /// @note Supported by G2 4K and Neo2 devices.
@@ -811,6 +1017,59 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_SetWDModelsCallback(models);
         }
 
+        /// <summary>
+        /// Sets the callback for the scanning result in delta form. Only the devices added, changed or removed since the previous result are returned, keyed by MAC address, and identical scans are not reported. Can be used together with `SetWDModelsCallback`.
+        /// </summary>
+        /// <param name="coalesceMs">Scans within this window in milliseconds are merged into one delta. `0` reports every scan that changed.</param>
+        /// <param name="callback">
+        /// Returns the JSON string `{"seq":1,"added":[...],"changed":[...],"removed":["address",...]}`, where each added or changed entry has the format of `WifiDisplayModel`.
+        /// </param>
+        public static void SetWDModelsDeltaCallback(int coalesceMs, Action<string> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_SetWDModelsDeltaCallback(coalesceMs, callback);
+        }
+
+        /// <summary>
+        /// Gets all devices currently known to the delta callback.
+        /// </summary>
+        /// <returns>The JSON array of the devices, or `null` if `SetWDModelsDeltaCallback` was not called.</returns>
+        public static string GetWDModelsSnapshot()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetWDModelsSnapshot();
+        }
+
+        /// <summary>
+        /// Subscribes to service events without replacing the callback set by `SetWDModelsCallback`, `SetWDJsonCallback` or `SetMarkerInfoCallback`, or other subscribers. Each subscriber is called on its own thread through its own queue, so a slow subscriber only loses its own events.
+        /// </summary>
+        /// <param name="topic">`0`: bind result (`"true"` or `"false"`); `1`: marker infos; `2`: Wi-Fi Display scan result; `3`: Wi-Fi Display JSON.</param>
+        /// <param name="policy">What happens when the queue is full. `0`: drop the oldest event; `1`: keep only the latest event; `2`: drop the new event.</param>
+        /// <param name="capacity">The queue length for policies `0` and `2`.</param>
+        /// <param name="callback">Receives the events in the format of the matching callback.</param>
+        /// <returns>The subscription ID, or `-1` if the arguments are invalid.</returns>
+        public static int SubscribeEvents(int topic, int policy, int capacity, Action<string> callback)
+        {
+            return PXR_EnterprisePlugin.UPxr_SubscribeEvents(topic, policy, capacity, callback);
+        }
+
+        /// <summary>
+        /// Removes a subscriber added by `SubscribeEvents`.
+        /// </summary>
+        /// <param name="id">The subscription ID.</param>
+        /// <returns>`false` if there is no such subscriber.</returns>
+        public static bool UnsubscribeEvents(int id)
+        {
+            return PXR_EnterprisePlugin.UPxr_UnsubscribeEvents(id);
+        }
+
+        /// <summary>
+        /// Gets the queue depth, delivered, dropped and failed event counts and the callback latencies of every event subscriber.
+        /// </summary>
+        /// <returns>The JSON string `{"subscribers":[...]}`.</returns>
+        public static string GetEventBusMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetEventBusMetrics();
+        }
+
         /// <summary>
         /// Sets the callback for the scanning result, which returns the JSON string that contains the devices previously connected for screencast and the devices currently found for screencast.
         /// </summary>
@@ -856,6 +1115,25 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_SwitchLargeSpaceScene(open, callback);
         }
 
+        /// <summary>
+        /// Switches the large space scene on, giving up if the service has not answered within the timeout.
+        /// @note Supported by 6Dof devices.
+        /// </summary>
+        /// <param name="open">Whether to switch the large space scene on:
+        /// * `true`: switch on
+        /// * `false`: not to switch on
+        /// </param>
+        /// <param name="callback">Callback:
+        /// * `true`: success
+        /// * `false`: failure or timed out
+        /// </param>
+        /// <param name="timeoutMs">The time to wait for the result, in milliseconds.</param>
+        /// <returns>The id of the call, which can be passed to `CancelCall`.</returns>
+        public static int SwitchLargeSpaceScene(bool open, Action<bool> callback, long timeoutMs)
+        {
+            return PXR_EnterprisePlugin.UPxr_SwitchLargeSpaceScene(open, callback, timeoutMs);
+        }
+
         /// <summary>
         /// Gets the status of the large space scene.
         /// @note Supported by 6Dof devices.
@@ -895,6 +1173,21 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_ExportMaps(callback);
         }
 
+        /// <summary>
+        /// Exports maps, giving up if the service has not answered within the timeout.
+        /// @note Supported by 6Dof devices.
+        /// </summary>
+        /// <param name="callback">Returns the result:
+        /// * `true`: exported
+        /// * `false`: failed to export or timed out
+        /// </param>
+        /// <param name="timeoutMs">The time to wait for the result, in milliseconds.</param>
+        /// <returns>The id of the call, which can be passed to `CancelCall`.</returns>
+        public static int ExportMaps(Action<bool> callback, long timeoutMs)
+        {
+            return PXR_EnterprisePlugin.UPxr_ExportMaps(callback, timeoutMs);
+        }
+
         /// <summary>
         /// Imports maps. Need to copy maps to the /maps folder.
         /// @note Supported by 6Dof devices.
@@ -908,6 +1201,82 @@ namespace Unity.XR.PXR
             PXR_EnterprisePlugin.UPxr_ImportMaps(callback);
         }
 
+        /// <summary>
+        /// Imports maps, giving up if the service has not answered within the timeout.
+        /// @note Supported by 6Dof devices.
+        /// </summary>
+        /// <param name="callback">Returns the result:
+        /// * `true`: imported
+        /// * `false`: failed to import or timed out
+        /// </param>
+        /// <param name="timeoutMs">The time to wait for the result, in milliseconds.</param>
+        /// <returns>The id of the call, which can be passed to `CancelCall`.</returns>
+        public static int ImportMaps(Action<bool> callback, long timeoutMs)
+        {
+            return PXR_EnterprisePlugin.UPxr_ImportMaps(callback, timeoutMs);
+        }
+
+        /// <summary>
+        /// Cancels a call made with a timeout. Its callback is not called and a result arriving later is dropped.
+        /// </summary>
+        /// <param name="id">The id returned by the call.</param>
+        /// <returns>Whether the call was cancelled:
+        /// * `true`: cancelled
+        /// * `false`: the call already completed, timed out or was cancelled
+        /// </returns>
+        public static bool CancelCall(int id)
+        {
+            return PXR_EnterprisePlugin.UPxr_CancelCall(id);
+        }
+
+        /// <summary>
+        /// Gets the metrics of the calls made with a timeout: per method the calls made, completed, timed out,
+        /// answered after the timeout and cancelled, and the latest answer after a timeout in milliseconds.
+        /// </summary>
+        /// <returns>The JSON string of the metrics.</returns>
+        public static string GetCallDeadlineMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetCallDeadlineMetrics();
+        }
+
+        /// <summary>
+        /// Sets whether to collect the results of one-shot callbacks in a mailbox on the Java side. In mailbox mode
+        /// the pending results are fetched once per frame in a single call and the callbacks are invoked on the main
+        /// thread, instead of crossing from Java into C# for every result. Callbacks that receive more than one
+        /// result, such as event subscriptions, are always delivered directly.
+        /// </summary>
+        /// <param name="enabled">Whether to use the mailbox for calls made from now on:
+        /// * `true`: use the mailbox
+        /// * `false`: deliver results directly (default)
+        /// </param>
+        public static void SetCallbackMailbox(bool enabled)
+        {
+            PXR_EnterprisePlugin.UPxr_SetCallbackMailbox(enabled);
+        }
+
+        /// <summary>
+        /// Sets whether to collect the results of one-shot callbacks in a mailbox, see `SetCallbackMailbox(bool)`, and
+        /// how long a callback waits for its result there. A callback without a result in time is called with -1,
+        /// `false` or `null` and released.
+        /// </summary>
+        /// <param name="enabled">Whether to use the mailbox for calls made from now on.</param>
+        /// <param name="timeoutMs">The time in milliseconds a mailbox callback waits for its result. The default is
+        /// 30000.</param>
+        public static void SetCallbackMailbox(bool enabled, int timeoutMs)
+        {
+            PXR_EnterprisePlugin.UPxr_SetCallbackMailbox(enabled, timeoutMs);
+        }
+
+        /// <summary>
+        /// Gets the callback mailbox metrics: its capacity, the results posted and drained, how many of them did not
+        /// fit in the preallocated ring, the drains and the largest number of results fetched by one drain.
+        /// </summary>
+        /// <returns>The JSON string of the metrics.</returns>
+        public static string GetCallbackMailboxMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetCallbackMailboxMetrics();
+        }
+
         /// <summary>
         /// Gets each CPU's utilization for the current device.
         /// </summary>
@@ -917,6 +1286,24 @@ namespace Unity.XR.PXR
             return PXR_EnterprisePlugin.UPxr_GetCpuUsages();
         }
 
+        /// <summary>
+        /// Gets the call counts, error counts and latency histograms of all enterprise service methods.
+        /// </summary>
+        /// <returns>57 values per method, ordered by method id: calls, errors, not-bound calls, binder call count, sum and max in nanoseconds, callback count, sum and max in nanoseconds, then 24 binder and 24 callback latency buckets. Bucket `i` counts latencies below 2^(i+1) microseconds.</returns>
+        public static long[] GetServiceMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetMetricsSnapshot();
+        }
+
+        /// <summary>
+        /// Gets the service method metrics as JSON, with mean, max and percentile latencies in microseconds.
+        /// </summary>
+        /// <returns>The metrics of every method that was called.</returns>
+        public static string GetServiceMetricsJson()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetMetricsJson();
+        }
+
         /// <summary>
         /// Gets device temperature in Celsius.
         /// </summary>
@@ -938,6 +1325,47 @@ namespace Unity.XR.PXR
             return PXR_EnterprisePlugin.UPxr_GetDeviceTemperatures(type, source);
         }
 
+        /// <summary>
+        /// Starts watching CPU temperature and CPU load, and derives a throttle level from them so that rendering quality can be reduced before the system throttles the SoC. The level rises as soon as the predicted temperature gets close to the throttling threshold or the load is high, and falls one step at a time once the device has cooled down. Replaces a governor that is already running.
+        /// </summary>
+        /// <param name="intervalMs">How often temperature and load are sampled, in milliseconds.</param>
+        /// <param name="callback">Receives the new throttle level whenever it changes. Can be `null`.</param>
+        public static void StartThermalGovernor(int intervalMs, Action<int> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_StartThermalGovernor(intervalMs, callback);
+        }
+
+        /// <summary>
+        /// Stops the thermal governor. The last throttle level is kept.
+        /// </summary>
+        public static void StopThermalGovernor()
+        {
+            PXR_EnterprisePlugin.UPxr_StopThermalGovernor();
+        }
+
+        /// <summary>
+        /// Gets the throttle level of the thermal governor. Cheap enough to call every frame.
+        /// </summary>
+        /// <returns>
+        /// * `0`: no throttling needed, also returned if `StartThermalGovernor` was not called
+        /// * `1`: light
+        /// * `2`: moderate
+        /// * `3`: severe, throttling by the system is imminent
+        /// </returns>
+        public static int GetThrottleLevel()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetThrottleLevel();
+        }
+
+        /// <summary>
+        /// Gets the inputs of the thermal governor.
+        /// </summary>
+        /// <returns>A JSON string with the level, the smoothed temperature, its trend per minute, the predicted headroom to the throttling threshold, the load and the number of level changes. `null` if the governor was never started.</returns>
+        public static string GetThermalGovernorMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetThermalGovernorMetrics();
+        }
+
         /// <summary>
         /// Captures the current screen.
         /// @note Not supported by G2 4K devices.
@@ -1390,6 +1818,23 @@ namespace Unity.XR.PXR
             return PXR_EnterprisePlugin.UPxr_PICOCastInit(callback);
         }
 
+        /// <summary>
+        /// Initializes the screencast service, giving up if the service has not answered within the timeout.
+        /// @note Supported by PICO Neo3 Pro (system version 4.8.0 or later) and PICO 4 Enterprise (system version OTA0-5.2.8 or later).
+        /// </summary>
+        /// <param name="callback">The callback:
+        /// * `0`: disconnect
+        /// * `1`: connect
+        /// * `2`: no microphone permission
+        /// * `-1`: timed out, a result arriving later is dropped
+        /// </param>
+        /// <param name="timeoutMs">The time to wait for the result, in milliseconds.</param>
+        /// <returns>The id of the call, which can be passed to `CancelCall`.</returns>
+        public static int PICOCastInit(Action<int> callback, long timeoutMs)
+        {
+            return PXR_EnterprisePlugin.UPxr_PICOCastInit(callback, timeoutMs);
+        }
+
         /// <summary>
         /// Sets whether to show the screencast authorization window.
         /// @note Supported by PICO Neo3 Pro (system version 4.8.0 or later) and PICO 4 Enterprise (system version OTA0-5.2.8 or later).
@@ -1770,6 +2215,49 @@ namespace Unity.XR.PXR
             return PXR_EnterprisePlugin.UPxr_GetControllerConnectState();
         }
 
+        /// <summary>
+        /// Starts tracking the battery levels and connection status of both controllers in the background, so they can be read every frame with `GetControllerState` instead of calling `GetControllerBattery` and `GetControllerConnectState`. The state is sampled at `minIntervalMs` after a change, and the interval doubles with every unchanged sample up to `maxIntervalMs`. Replaces a tracker that is already running.
+        /// </summary>
+        /// <param name="minIntervalMs">The sampling interval right after a change, in milliseconds.</param>
+        /// <param name="maxIntervalMs">The longest sampling interval while nothing changes, in milliseconds.</param>
+        /// <param name="callback">Receives the new state, in the format of `GetControllerState`, only when a battery level or the connection status changed. Can be `null`.</param>
+        public static void StartControllerStateTracker(int minIntervalMs, int maxIntervalMs, Action<long> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_StartControllerStateTracker(minIntervalMs, maxIntervalMs, callback);
+        }
+
+        /// <summary>
+        /// Stops the controller state tracker. The last state is kept.
+        /// </summary>
+        public static void StopControllerStateTracker()
+        {
+            PXR_EnterprisePlugin.UPxr_StopControllerStateTracker();
+        }
+
+        /// <summary>
+        /// Gets the last controller state seen by the controller state tracker. Cheap enough to call every frame.
+        /// </summary>
+        /// <returns>The packed state, `0` if `StartControllerStateTracker` was not called:
+        /// * bits 0-7: the left controller's battery level, 1 to 5
+        /// * bits 8-15: the right controller's battery level, 1 to 5
+        /// * bits 16-23: the connection status, as returned by `GetControllerConnectState`
+        /// * bit 24: set once the state was read successfully
+        /// * bits 32-63: the number of changes so far
+        /// </returns>
+        public static long GetControllerState()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetControllerState();
+        }
+
+        /// <summary>
+        /// Gets the counters of the controller state tracker.
+        /// </summary>
+        /// <returns>A JSON string with the current state, the number of samples and failed samples, the current interval and the samples polling at the minimum interval would have taken. `null` if the tracker was never started.</returns>
+        public static string GetControllerStateTrackerMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetControllerStateTrackerMetrics();
+        }
+
         /// <summary>
         /// Gets the apps that are hidden in the library.
         /// @note Supported by PICO Neo3 Pro and PICO 4 Enterprise with system version 5.4.0 or later.
@@ -1931,6 +2419,17 @@ namespace Unity.XR.PXR
         {
             PXR_EnterprisePlugin.UPxr_SetIPD(ipd,callback);
         }
+
+        /// <summary>
+        /// Same as `SetIPD`, but meant to be called every frame, for example from a slider: while a request is in progress only the latest value is kept, and every callback receives the result of the value that was finally set.
+        /// @note Supported by PICO 4 Enterprise with system version 5.7.0 or later.
+        /// </summary>
+        /// <param name="ipd">The IPD to set. Valid value range: [62,72]. Unit: millimeters.</param>
+        /// <param name="callback">The result of the value that was finally set, see `SetIPD`. `-1` if the service could not be reached.</param>
+        public static void SetIPDCoalesced(float ipd, Action<int> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_SetIPDCoalesced(ipd, callback);
+        }
         /// <summary>
         /// Gets the device configured for miracast.
         /// </summary>
@@ -1956,6 +2455,62 @@ namespace Unity.XR.PXR
         {
             return PXR_EnterprisePlugin.UPxr_SetPicoCastMediaFormat(mediaFormat);
         }
+
+        /// <summary>
+        /// Same as `SetPicoCastMediaFormat`, but for values that change often: while a request is in progress only the latest value is kept, and every callback receives the result of the value that was finally set.
+        /// </summary>
+        /// <param name="mediaFormat">The mediaFormat object to set. Currently, only support settings the bitrate.</param>
+        /// <param name="callback">
+        /// * `0`: success
+        /// * `1`: failure
+        /// * `-1`: the service could not be reached
+        /// </param>
+        public static void SetPicoCastMediaFormatCoalesced(PicoCastMediaFormat mediaFormat, Action<int> callback)
+        {
+            PXR_EnterprisePlugin.UPxr_SetPicoCastMediaFormatCoalesced(mediaFormat, callback);
+        }
+
+        /// <summary>
+        /// Starts adjusting the PicoCast bitrate to CPU load and CPU temperature: it is lowered by a quarter when either is above its high threshold, and raised by `step` when both stayed below their low thresholds for a while. Replaces a controller that is already running.
+        /// </summary>
+        /// <param name="initialBitrate">The bitrate to start with.</param>
+        /// <param name="minBitrate">The lowest bitrate the controller sets.</param>
+        /// <param name="maxBitrate">The highest bitrate the controller sets.</param>
+        /// <param name="step">The bitrate added per increase.</param>
+        /// <param name="intervalMs">How often CPU load and temperature are sampled, in milliseconds.</param>
+        public static void StartPicoCastBitrateController(int initialBitrate, int minBitrate, int maxBitrate, int step, int intervalMs)
+        {
+            PXR_EnterprisePlugin.UPxr_StartPicoCastBitrateController(initialBitrate, minBitrate, maxBitrate, step, intervalMs);
+        }
+
+        /// <summary>
+        /// Sets the thresholds of the bitrate controller. The defaults are 0.85 and 0.6 for CPU load, and 45 and 40 degrees Celsius.
+        /// </summary>
+        /// <param name="cpuHigh">The average CPU load (0 to 1) above which the bitrate is lowered.</param>
+        /// <param name="cpuLow">The average CPU load below which the bitrate may be raised.</param>
+        /// <param name="tempHigh">The temperature in Celsius above which the bitrate is lowered.</param>
+        /// <param name="tempLow">The temperature in Celsius below which the bitrate may be raised.</param>
+        public static void SetPicoCastBitrateThresholds(float cpuHigh, float cpuLow, float tempHigh, float tempLow)
+        {
+            PXR_EnterprisePlugin.UPxr_SetPicoCastBitrateThresholds(cpuHigh, cpuLow, tempHigh, tempLow);
+        }
+
+        /// <summary>
+        /// Stops the bitrate controller. The last bitrate stays in effect.
+        /// </summary>
+        public static void StopPicoCastBitrateController()
+        {
+            PXR_EnterprisePlugin.UPxr_StopPicoCastBitrateController();
+        }
+
+        /// <summary>
+        /// Gets the state of the bitrate controller.
+        /// </summary>
+        /// <returns>A JSON string with the current bitrate, the counts of increases, decreases and holds, the last CPU load and temperature, and the 16 most recent bitrate changes. `null` if the controller was never started.</returns>
+        public static string GetPicoCastBitrateMetrics()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetPicoCastBitrateMetrics();
+        }
         /// <summary>
         /// Gets the pose and ID of the marker.
         /// @note Supported by 6Dof devices.
@@ -1978,5 +2533,54 @@ namespace Unity.XR.PXR
         {
             return PXR_EnterprisePlugin.UPxr_setMarkerInfoCallback(trackingMode,cameraYOffset,markerInfos);
         }
+
+        /// <summary>
+        /// Smooths the marker poses returned by `SetMarkerInfoCallback` with a One-Euro filter and keeps their velocity for `GetPredictedMarkerInfos`.
+        /// </summary>
+        /// <param name="maxMarkers">The number of markers tracked at the same time. `0` removes the filter.</param>
+        /// <param name="timestampUnitSeconds">The length of one `dTimestamp` unit in seconds.</param>
+        /// <param name="minCutoff">The cutoff frequency in Hz when the marker is at rest. Lower values are smoother, `1` is a good start.</param>
+        /// <param name="beta">How fast the cutoff rises with speed. Higher values lag less when the marker moves, `0.5` is a good start.</param>
+        /// <param name="maxPredictionMs">The prediction horizon limit in milliseconds.</param>
+        public static void SetMarkerPoseFilter(int maxMarkers, double timestampUnitSeconds, double minCutoff, double beta, double maxPredictionMs)
+        {
+            PXR_EnterprisePlugin.UPxr_SetMarkerPoseFilter(maxMarkers, timestampUnitSeconds, minCutoff, beta, maxPredictionMs);
+        }
+
+        /// <summary>
+        /// Gets the filtered marker poses extrapolated to a time ahead of now, e.g. the display time of the next frame. Requires `SetMarkerPoseFilter`.
+        /// </summary>
+        /// <param name="aheadMs">How far ahead of now to predict, in milliseconds.</param>
+        /// <returns>11 values per marker in service coordinates: iMarkerId, markerType, validFlag, dTimestamp, posX, posY, posZ, rotationX, rotationY, rotationZ, rotationW.
+        /// The array holds `maxMarkers` records; records with validFlag `0` are unused, or belong to markers the service reported
+        /// as not tracked or that have not been seen for half a second.</returns>
+        public static double[] GetPredictedMarkerInfos(double aheadMs)
+        {
+            return PXR_EnterprisePlugin.UPxr_GetPredictedMarkerInfos(aheadMs);
+        }
+
+        /// <summary>
+        /// Same as `SetMarkerInfoCallback`, but the markers are kept in a reusable binary buffer instead of being sent as JSON, so receiving them allocates nothing and `GetMarkerInfos` reads them without parsing.
+        /// </summary>
+        /// <param name="maxMarkers">The number of markers kept; further markers of an update are dropped.</param>
+        /// <param name="callback">Receives the sequence number of every update. Can be `null` to only poll `GetMarkerInfos`, e.g. once per frame.</param>
+        /// <returns>
+        /// * `0`: success
+        /// * `1`: failure
+        /// </returns>
+        public static int SetMarkerInfoBufferCallback(int maxMarkers, Action<int> callback)
+        {
+            return PXR_EnterprisePlugin.UPxr_SetMarkerInfoBufferCallback(maxMarkers, callback);
+        }
+
+        /// <summary>
+        /// Gets the latest markers received since `SetMarkerInfoBufferCallback`.
+        /// </summary>
+        /// <returns>11 values per marker in service coordinates: iMarkerId, markerType, validFlag, dTimestamp, posX, posY, posZ, rotationX, rotationY, rotationZ, rotationW.
+        /// The array holds `maxMarkers` records; records with validFlag `0` are unused or belong to markers the service reported as not tracked.</returns>
+        public static double[] GetMarkerInfos()
+        {
+            return PXR_EnterprisePlugin.UPxr_GetMarkerInfos();
+        }
     }
 }
\ No newline at end of file
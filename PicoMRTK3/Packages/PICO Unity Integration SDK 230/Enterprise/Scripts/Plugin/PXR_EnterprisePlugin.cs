@@ -42,6 +42,279 @@ namespace Unity.XR.PXR
             AndroidJavaObject enumjo = enumjs.GetStatic<AndroidJavaObject>(enumType.ToString());
             return enumjo;
         }
+
+        // The deadline overloads of ToBServiceUtils return a DeadlineWatchdog.Deadline, only its id is kept.
+        private static int GetDeadlineId(AndroidJavaObject deadline)
+        {
+            if (deadline == null)
+            {
+                return 0;
+            }
+            int id = deadline.Call<int>("getId");
+            deadline.Dispose();
+            return id;
+        }
+
+        // In mailbox mode one-shot results are collected by ToBServiceUtils and drained once per frame by
+        // PXR_EnterpriseTools, instead of calling into an AndroidJavaProxy for every result.
+        private static bool callbackMailbox;
+        private static int nextMailboxToken;
+        private static readonly Dictionary<int, Delegate> mailboxCallbacks = new Dictionary<int, Delegate>();
+        private static char[] mailboxChars = new char[64];
+
+        // Every entry has a deadline, like the calls of DeadlineWatchdog. A callback that has no result by then is
+        // called with the timeout result (-1, false or null) and released, so calls the service never answers do
+        // not keep their callbacks. Deadlines are queued in registration order, which is expiry order while the
+        // timeout is unchanged; entries that already got their result are skipped when their deadline comes up.
+        public const int DefaultMailboxTimeoutMs = 30000;
+        private static int mailboxTimeoutMs = DefaultMailboxTimeoutMs;
+        private static readonly Queue<MailboxDeadline> mailboxDeadlines = new Queue<MailboxDeadline>();
+
+        private struct MailboxDeadline
+        {
+            public int Token;
+            public int ExpiryTicks;
+        }
+
+        private static object ToIntCallback(Action<int> callback)
+        {
+#if PICO_PLATFORM
+            if (callbackMailbox)
+            {
+                return NewMailboxCallback(callback);
+            }
+#endif
+            return new IntCallback(callback);
+        }
+
+        private static object ToBoolCallback(Action<bool> callback)
+        {
+#if PICO_PLATFORM
+            if (callbackMailbox)
+            {
+                return NewMailboxCallback(callback);
+            }
+#endif
+            return new BoolCallback(callback);
+        }
+
+        private static object ToStringCallback(Action<string> callback)
+        {
+#if PICO_PLATFORM
+            if (callbackMailbox)
+            {
+                return NewMailboxCallback(callback);
+            }
+#endif
+            return new StringCallback(callback);
+        }
+
+#if PICO_PLATFORM
+        private static object NewMailboxCallback(Delegate callback)
+        {
+            int token;
+            lock (mailboxCallbacks)
+            {
+                nextMailboxToken = nextMailboxToken == int.MaxValue ? 1 : nextMailboxToken + 1;
+                token = nextMailboxToken;
+                mailboxCallbacks[token] = callback;
+                mailboxDeadlines.Enqueue(new MailboxDeadline
+                {
+                    Token = token,
+                    ExpiryTicks = unchecked(Environment.TickCount + mailboxTimeoutMs)
+                });
+            }
+            AndroidJavaObject receiver = null;
+            try
+            {
+                receiver = tobHelper.Call<AndroidJavaObject>("newMailboxCallback", token);
+            }
+            finally
+            {
+                if (receiver == null)
+                {
+                    // Rejected by the Java side, nothing will be posted under this token.
+                    lock (mailboxCallbacks)
+                    {
+                        mailboxCallbacks.Remove(token);
+                    }
+                }
+            }
+            if (receiver == null)
+            {
+                return ToDirectCallback(callback);
+            }
+            return receiver;
+        }
+
+        private static object ToDirectCallback(Delegate callback)
+        {
+            if (callback is Action<int>)
+            {
+                return new IntCallback((Action<int>) callback);
+            }
+            if (callback is Action<bool>)
+            {
+                return new BoolCallback((Action<bool>) callback);
+            }
+            return new StringCallback((Action<string>) callback);
+        }
+#endif
+
+        public static void UPxr_SetCallbackMailbox(bool enabled)
+        {
+            UPxr_SetCallbackMailbox(enabled, DefaultMailboxTimeoutMs);
+        }
+
+        public static void UPxr_SetCallbackMailbox(bool enabled, int timeoutMs)
+        {
+            if (timeoutMs <= 0)
+            {
+                throw new ArgumentOutOfRangeException("timeoutMs", "timeoutMs must be positive");
+            }
+            if (enabled)
+            {
+                // The drain runs in its Update.
+                PXR_EnterpriseTools tools = PXR_EnterpriseTools.Instance;
+            }
+            mailboxTimeoutMs = timeoutMs;
+            callbackMailbox = enabled;
+        }
+
+        public static string UPxr_GetCallbackMailboxMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getCallbackMailboxMetrics");
+#endif
+            return result;
+        }
+
+        // Records are packed by CallbackMailbox: (token << 32) | kind, then the int or bool value, or the string
+        // length (-1 for null) followed by its chars, four per long starting with the low 16 bits.
+        public static void UPxr_DrainCallbackMailbox()
+        {
+#if PICO_PLATFORM
+            lock (mailboxCallbacks)
+            {
+                if (mailboxCallbacks.Count == 0)
+                {
+                    mailboxDeadlines.Clear();
+                    return;
+                }
+            }
+            long[] data = tobHelper.Call<long[]>("drainCallbackMailbox");
+            int i = 0;
+            while (data != null && i + 1 < data.Length)
+            {
+                int token = (int) (data[i] >> 32);
+                int kind = (int) (data[i] & 0xff);
+                long value = data[i + 1];
+                i += 2;
+                string text = null;
+                if (kind == 2 && value >= 0)
+                {
+                    int length = (int) value;
+                    if (mailboxChars.Length < length)
+                    {
+                        mailboxChars = new char[length];
+                    }
+                    for (int c = 0; c < length; c++)
+                    {
+                        mailboxChars[c] = (char) (data[i + (c >> 2)] >> ((c & 3) << 4));
+                    }
+                    text = new string(mailboxChars, 0, length);
+                    i += (length + 3) / 4;
+                }
+                Delegate callback;
+                lock (mailboxCallbacks)
+                {
+                    if (!mailboxCallbacks.TryGetValue(token, out callback))
+                    {
+                        continue;
+                    }
+                    mailboxCallbacks.Remove(token);
+                }
+                if (callback is Action<int>)
+                {
+                    ((Action<int>) callback)((int) value);
+                }
+                else if (callback is Action<bool>)
+                {
+                    ((Action<bool>) callback)(value != 0);
+                }
+                else if (callback is Action<string>)
+                {
+                    ((Action<string>) callback)(text);
+                }
+            }
+            ExpireMailboxCallbacks();
+#endif
+        }
+
+#if PICO_PLATFORM
+        private static void ExpireMailboxCallbacks()
+        {
+            int now = Environment.TickCount;
+            while (true)
+            {
+                Delegate callback;
+                lock (mailboxCallbacks)
+                {
+                    if (mailboxDeadlines.Count == 0 || unchecked(now - mailboxDeadlines.Peek().ExpiryTicks) < 0)
+                    {
+                        return;
+                    }
+                    int token = mailboxDeadlines.Dequeue().Token;
+                    if (!mailboxCallbacks.TryGetValue(token, out callback))
+                    {
+                        continue;
+                    }
+                    mailboxCallbacks.Remove(token);
+                }
+                PLog.w(TAG, "no mailbox result within " + mailboxTimeoutMs + " ms");
+                if (callback is Action<int>)
+                {
+                    ((Action<int>) callback)(-1);
+                }
+                else if (callback is Action<bool>)
+                {
+                    ((Action<bool>) callback)(false);
+                }
+                else if (callback is Action<string>)
+                {
+                    ((Action<string>) callback)(null);
+                }
+            }
+        }
+#endif
+
+        // The int overloads of ToBServiceUtils take the ordinal of the Java enum, which saves the class and field
+        // lookups of GetEnumType on every call. The C# values equal the Java ordinals except for these two enums.
+        private static int GetEnumOrdinal(ControllerPairTimeEnum timeEnum)
+        {
+            switch (timeEnum)
+            {
+                case ControllerPairTimeEnum.DEFAULT:
+                    return 0;
+                case ControllerPairTimeEnum.FIFTEEN:
+                    return 1;
+                case ControllerPairTimeEnum.SIXTY:
+                    return 2;
+                case ControllerPairTimeEnum.ONE_HUNDRED_AND_TWENTY:
+                    return 3;
+                case ControllerPairTimeEnum.SIX_HUNDRED:
+                    return 4;
+                default:
+                    return 5;
+            }
+        }
+
+        private static int GetEnumOrdinal(ScreencastAudioOutputEnum audioOutput)
+        {
+            // AUDIO_ERROR only exists in C#.
+            return (int) audioOutput - 1;
+        }
         
         public static void UPxr_InitEnterpriseService()
         {
@@ -99,35 +372,58 @@ namespace Unity.XR.PXR
         public static void UPxr_ControlSetDeviceAction(DeviceControlEnum deviceControl, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsControlSetDeviceAction", GetEnumType(deviceControl), new IntCallback(callback));
+            tobHelper.Call("pbsControlSetDeviceAction", (int) deviceControl, ToIntCallback(callback));
 #endif
         }
 
         public static void UPxr_ControlAPPManager(PackageControlEnum packageControl, string path, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsControlAPPManger", GetEnumType(packageControl), path, 0,  new IntCallback(callback));
+            tobHelper.Call("pbsControlAPPManger", (int) packageControl, path, 0,  ToIntCallback(callback));
+#endif
+        }
+
+        public static int UPxr_ControlAPPManager(PackageControlEnum packageControl, string path, Action<int> callback, long timeoutMs)
+        {
+            int id = 0;
+#if PICO_PLATFORM
+            id = GetDeadlineId(tobHelper.Call<AndroidJavaObject>("pbsControlAPPManger", (int) packageControl, path, 0, ToIntCallback(callback), timeoutMs));
+#endif
+            return id;
+        }
+
+        public static void UPxr_InstallPackages(string source, bool force, long installTimeoutMs, Action<string> progress, Action<string> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("installPackages", source, force, 0, installTimeoutMs, new StringCallback(progress), new StringCallback(callback));
+#endif
+        }
+
+        public static void UPxr_ApplyProvisioningProfile(string profileJson, int timeoutMs, Action<string> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("applyProvisioningProfile", profileJson, timeoutMs, ToStringCallback(callback));
 #endif
         }
 
         public static void UPxr_ControlSetAutoConnectWIFI(string ssid, string pwd, Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsControlSetAutoConnectWIFI", ssid, pwd, 0, new BoolCallback(callback));
+            tobHelper.Call("pbsControlSetAutoConnectWIFI", ssid, pwd, 0, ToBoolCallback(callback));
 #endif
         }
 
         public static void UPxr_ControlClearAutoConnectWIFI(Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsControlClearAutoConnectWIFI", new BoolCallback(callback));
+            tobHelper.Call("pbsControlClearAutoConnectWIFI", ToBoolCallback(callback));
 #endif
         }
 
         public static void UPxr_PropertySetHomeKey(HomeEventEnum eventEnum, HomeFunctionEnum function, Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsPropertySetHomeKey", GetEnumType(eventEnum), GetEnumType(function),  new BoolCallback(callback));
+            tobHelper.Call("pbsPropertySetHomeKey", (int) eventEnum, (int) function,  ToBoolCallback(callback));
 #endif
         }
 
@@ -135,33 +431,35 @@ namespace Unity.XR.PXR
         {
 #if PICO_PLATFORM
               
-                tobHelper.Call("pbsPropertySetHomeKeyAll", GetEnumType(eventEnum), GetEnumType(function), timesetup, pkg, className, new BoolCallback(callback));
+                tobHelper.Call("pbsPropertySetHomeKeyAll", (int) eventEnum, (int) function, timesetup, pkg, className, ToBoolCallback(callback));
 #endif
         }
 
         public static void UPxr_PropertyDisablePowerKey(bool isSingleTap, bool enable, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsPropertyDisablePowerKey", isSingleTap, enable,  new IntCallback(callback));
+            tobHelper.Call("pbsPropertyDisablePowerKey", isSingleTap, enable,  ToIntCallback(callback));
 #endif
         }
 
         public static void UPxr_PropertySetScreenOffDelay(ScreenOffDelayTimeEnum timeEnum, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsPropertySetScreenOffDelay", GetEnumType(timeEnum), new IntCallback(callback));
+            tobHelper.Call("pbsPropertySetScreenOffDelay", (int) timeEnum, ToIntCallback(callback));
 #endif
         }
 
-        public static void UPxr_PropertySetSleepDelay(SleepDelayTimeEnum timeEnum)
+        public static void UPxr_PropertySetScreenOffDelayCoalesced(ScreenOffDelayTimeEnum timeEnum, Action<int> callback)
         {
 #if PICO_PLATFORM
-            if (IToBService == null)
-            {
-                return;
-            }
+            tobHelper.Call("pbsPropertySetScreenOffDelayCoalesced", (int) timeEnum, ToIntCallback(callback));
+#endif
+        }
 
-            IToBService.Call("pbsPropertySetSleepDelay", GetEnumType(timeEnum));
+        public static void UPxr_PropertySetSleepDelay(SleepDelayTimeEnum timeEnum)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("pbsPropertySetSleepDelay", (int) timeEnum);
 #endif
         }
 
@@ -190,14 +488,14 @@ namespace Unity.XR.PXR
         public static void UPxr_SetControllerPairTime(ControllerPairTimeEnum timeEnum, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsSetControllerPairTime", GetEnumType(timeEnum),new IntCallback(callback), 0);
+            tobHelper.Call("pbsSetControllerPairTime", GetEnumOrdinal(timeEnum), ToIntCallback(callback), 0);
 #endif
         }
 
         public static void UPxr_GetControllerPairTime(Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsGetControllerPairTime",new IntCallback(callback), 0);
+            tobHelper.Call("pbsGetControllerPairTime",ToIntCallback(callback), 0);
 #endif
         }
 
@@ -314,14 +612,28 @@ namespace Unity.XR.PXR
         public static void UPxr_WriteConfigFileToDataLocal(string path, string content, Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsWriteConfigFileToDataLocal", path, content, new BoolCallback(callback));
+            tobHelper.Call("pbsWriteConfigFileToDataLocal", path, content, ToBoolCallback(callback));
+#endif
+        }
+
+        public static void UPxr_SyncConfigFile(string path, string content, Action<int> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("syncConfigFile", path, content, ToIntCallback(callback));
+#endif
+        }
+
+        public static void UPxr_SyncConfigFileFrom(string path, string sourcePath, Action<int> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("syncConfigFileFrom", path, sourcePath, ToIntCallback(callback));
 #endif
         }
 
         public static void UPxr_ResetAllKeyToDefault(Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsResetAllKeyToDefault", new BoolCallback(callback));
+            tobHelper.Call("pbsResetAllKeyToDefault", ToBoolCallback(callback));
 #endif
         }
 
@@ -339,25 +651,90 @@ namespace Unity.XR.PXR
         public static void UPxr_KillAppsByPidOrPackageName(int[] pids, string[] packageNames)
         {
 #if PICO_PLATFORM
-            if (IToBService == null)
-            {
-                return;
-            }
-            IToBService.Call("pbsKillAppsByPidOrPackageName", pids, packageNames, 0);
+            tobHelper.Call("pbsKillAppsByPidOrPackageName", pids, packageNames, 0);
 #endif
         }
 
         public static void UPxr_KillBackgroundAppsWithWhiteList(string[] packageNames)
         {
 #if PICO_PLATFORM
-            if (IToBService == null)
-            {
-                return;
-            }
-            IToBService.Call("pbsKillBackgroundAppsWithWhiteList",packageNames, 0);
+            tobHelper.Call("pbsKillBackgroundAppsWithWhiteList", packageNames, 0);
 #endif
         }
 
+        public static void UPxr_StartMemoryReclaimer(string[] whiteList, int minHeadroomMB, int cooldownMs, int maxKills, int intervalMs, bool whiteListFallback, Action<string> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("startMemoryReclaimer", whiteList, minHeadroomMB, cooldownMs, maxKills, intervalMs, whiteListFallback, callback != null ? new StringCallback(callback) : null);
+#endif
+        }
+
+        public static void UPxr_StopMemoryReclaimer()
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("stopMemoryReclaimer");
+#endif
+        }
+
+        public static string UPxr_GetMemoryReclaimerMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getMemoryReclaimerMetrics");
+#endif
+            return result;
+        }
+
+        public static void UPxr_SetStartupPrefetch(int items, Action<string> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("setStartupPrefetch", items, callback != null ? new StringCallback(callback) : null);
+#endif
+        }
+
+        public static string UPxr_GetStartupSnapshot()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getStartupSnapshot");
+#endif
+            return result;
+        }
+
+        public static string UPxr_GetStartupPrefetchMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getStartupPrefetchMetrics");
+#endif
+            return result;
+        }
+
+        public static bool UPxr_StartTraceRecording(string path, int capacityMB)
+        {
+            bool result = false;
+#if PICO_PLATFORM
+            result = tobHelper.Call<bool>("startTraceRecording", path, capacityMB);
+#endif
+            return result;
+        }
+
+        public static void UPxr_StopTraceRecording()
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("stopTraceRecording");
+#endif
+        }
+
+        public static string UPxr_GetTraceRecorderMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getTraceRecorderMetrics");
+#endif
+            return result;
+        }
+
         public static void UPxr_FreezeScreen(bool freeze)
         {
 #if PICO_PLATFORM
@@ -474,6 +851,49 @@ namespace Unity.XR.PXR
 #endif
         }
 
+        public static void UPxr_SetWDModelsDeltaCallback(int coalesceMs, Action<string> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("pbsSetWDModelsDeltaCallback", coalesceMs, new StringCallback(callback));
+#endif
+        }
+
+        public static string UPxr_GetWDModelsSnapshot()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("pbsGetWDModelsSnapshot");
+#endif
+            return result;
+        }
+
+        public static int UPxr_SubscribeEvents(int topic, int policy, int capacity, Action<string> callback)
+        {
+            int result = -1;
+#if PICO_PLATFORM
+            result = tobHelper.Call<int>("subscribeEvents", topic, policy, capacity, new StringCallback(callback));
+#endif
+            return result;
+        }
+
+        public static bool UPxr_UnsubscribeEvents(int id)
+        {
+            bool result = false;
+#if PICO_PLATFORM
+            result = tobHelper.Call<bool>("unsubscribeEvents", id);
+#endif
+            return result;
+        }
+
+        public static string UPxr_GetEventBusMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getEventBusMetrics");
+#endif
+            return result;
+        }
+
         public static void UPxr_SetWDJsonCallback(Action<string> callback)
         {
 #if PICO_PLATFORM
@@ -504,14 +924,23 @@ namespace Unity.XR.PXR
         public static void UPxr_SwitchLargeSpaceScene(bool open, Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsSwitchLargeSpaceScene", new BoolCallback(callback), open, 0);
+            tobHelper.Call("pbsSwitchLargeSpaceScene", ToBoolCallback(callback), open, 0);
+#endif
+        }
+
+        public static int UPxr_SwitchLargeSpaceScene(bool open, Action<bool> callback, long timeoutMs)
+        {
+            int id = 0;
+#if PICO_PLATFORM
+            id = GetDeadlineId(tobHelper.Call<AndroidJavaObject>("pbsSwitchLargeSpaceScene", ToBoolCallback(callback), open, 0, timeoutMs));
 #endif
+            return id;
         }
 
         public static void UPxr_GetSwitchLargeSpaceStatus(Action<string> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsGetSwitchLargeSpaceStatus",new StringCallback(callback), 0);
+            tobHelper.Call("pbsGetSwitchLargeSpaceStatus",ToStringCallback(callback), 0);
 #endif
         }
 
@@ -532,17 +961,53 @@ namespace Unity.XR.PXR
         {
 #if PICO_PLATFORM
             
-                tobHelper.Call("pbsExportMaps", new BoolCallback(callback),0);
+                tobHelper.Call("pbsExportMaps", ToBoolCallback(callback),0);
+#endif
+        }
+
+        public static int UPxr_ExportMaps(Action<bool> callback, long timeoutMs)
+        {
+            int id = 0;
+#if PICO_PLATFORM
+            id = GetDeadlineId(tobHelper.Call<AndroidJavaObject>("pbsExportMaps", ToBoolCallback(callback), 0, timeoutMs));
 #endif
+            return id;
         }
 
         public static void UPxr_ImportMaps(Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsImportMaps", new BoolCallback(callback), 0);
+            tobHelper.Call("pbsImportMaps", ToBoolCallback(callback), 0);
 #endif
         }
 
+        public static int UPxr_ImportMaps(Action<bool> callback, long timeoutMs)
+        {
+            int id = 0;
+#if PICO_PLATFORM
+            id = GetDeadlineId(tobHelper.Call<AndroidJavaObject>("pbsImportMaps", ToBoolCallback(callback), 0, timeoutMs));
+#endif
+            return id;
+        }
+
+        public static bool UPxr_CancelCall(int id)
+        {
+            bool result = false;
+#if PICO_PLATFORM
+            result = tobHelper.Call<bool>("cancelCall", id);
+#endif
+            return result;
+        }
+
+        public static string UPxr_GetCallDeadlineMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getCallDeadlineMetrics");
+#endif
+            return result;
+        }
+
         public static float[] UPxr_GetCpuUsages()
         {
             float[] data = null;
@@ -552,6 +1017,24 @@ namespace Unity.XR.PXR
             return data;
         }
 
+        public static long[] UPxr_GetMetricsSnapshot()
+        {
+            long[] data = null;
+#if PICO_PLATFORM
+            data = tobHelper.Call<long[]>("getMetricsSnapshot");
+#endif
+            return data;
+        }
+
+        public static string UPxr_GetMetricsJson()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getMetricsJson");
+#endif
+            return result;
+        }
+
         public static float[] UPxr_GetDeviceTemperatures(int type, int source)
         {
             float[] data = null;
@@ -567,6 +1050,70 @@ namespace Unity.XR.PXR
             return data;
         }
 
+        public static void UPxr_StartThermalGovernor(int intervalMs, Action<int> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("startThermalGovernor", intervalMs, callback != null ? new IntCallback(callback) : null);
+#endif
+        }
+
+        public static void UPxr_StopThermalGovernor()
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("stopThermalGovernor");
+#endif
+        }
+
+        public static int UPxr_GetThrottleLevel()
+        {
+            int result = 0;
+#if PICO_PLATFORM
+            result = tobHelper.Call<int>("getThrottleLevel");
+#endif
+            return result;
+        }
+
+        public static string UPxr_GetThermalGovernorMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getThermalGovernorMetrics");
+#endif
+            return result;
+        }
+
+        public static void UPxr_StartControllerStateTracker(int minIntervalMs, int maxIntervalMs, Action<long> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("startControllerStateTracker", minIntervalMs, maxIntervalMs, callback != null ? new LongCallback(callback) : null);
+#endif
+        }
+
+        public static void UPxr_StopControllerStateTracker()
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("stopControllerStateTracker");
+#endif
+        }
+
+        public static long UPxr_GetControllerState()
+        {
+            long result = 0;
+#if PICO_PLATFORM
+            result = tobHelper.Call<long>("getControllerState");
+#endif
+            return result;
+        }
+
+        public static string UPxr_GetControllerStateTrackerMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getControllerStateTrackerMetrics");
+#endif
+            return result;
+        }
+
         public static void UPxr_Capture()
         {
 #if PICO_PLATFORM
@@ -584,7 +1131,7 @@ namespace Unity.XR.PXR
         public static void UPxr_ControlSetAutoConnectWIFIWithErrorCodeCallback(String ssid, String pwd, int ext, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsControlSetAutoConnectWIFIWithErrorCodeCallback",ssid,pwd,ext,new IntCallback(callback));
+            tobHelper.Call("pbsControlSetAutoConnectWIFIWithErrorCodeCallback",ssid,pwd,ext,ToIntCallback(callback));
 #endif
         }
 
@@ -635,11 +1182,7 @@ namespace Unity.XR.PXR
         public static void UPxr_SwitchVolumeToHomeAndEnter(SwitchEnum switchEnum, int ext)
         {
 #if PICO_PLATFORM
-            if (IToBService == null)
-            {
-                return ;
-            }
-            IToBService.Call("pbsSwitchVolumeToHomeAndEnter", GetEnumType(switchEnum), ext);
+            tobHelper.Call("pbsSwitchVolumeToHomeAndEnter", (int) switchEnum, ext);
 #endif
         }
 
@@ -902,7 +1445,7 @@ namespace Unity.XR.PXR
         {
 #if PICO_PLATFORM
             
-                tobHelper.Call("pbsGetSwitchSystemFunctionStatus", GetEnumType(systemFunction),new IntCallback(callback),0);
+                tobHelper.Call("pbsGetSwitchSystemFunctionStatus", (int) systemFunction, ToIntCallback(callback),0);
 #endif
         }
 
@@ -939,11 +1482,20 @@ namespace Unity.XR.PXR
             int value = 0;
 #if PICO_PLATFORM
             
-                value = tobHelper.Call<int>("pbsPicoCastInit",new IntCallback(callback),0);
+                value = tobHelper.Call<int>("pbsPicoCastInit",ToIntCallback(callback),0);
 #endif
             return value;
         }
 
+        public static int UPxr_PICOCastInit(Action<int> callback, long timeoutMs)
+        {
+            int id = 0;
+#if PICO_PLATFORM
+            id = GetDeadlineId(tobHelper.Call<AndroidJavaObject>("pbsPicoCastInit", ToIntCallback(callback), 0, timeoutMs));
+#endif
+            return id;
+        }
+
         public static int UPxr_PICOCastSetShowAuthorization(int authZ)
         {
             int value = 0;
@@ -1212,12 +1764,7 @@ namespace Unity.XR.PXR
         {
             int value = 0;
 #if PICO_PLATFORM
-            if (IToBService == null)
-            {
-                return value;
-            }
-
-            value = IToBService.Call<int>("pbsSetScreenCastAudioOutput",GetEnumType(screencastAudioOutput),0);
+            value = tobHelper.Call<int>("pbsSetScreenCastAudioOutput", GetEnumOrdinal(screencastAudioOutput), 0);
 #endif
             return value;
         }
@@ -1248,12 +1795,7 @@ namespace Unity.XR.PXR
         {
             int value = 0;
 #if PICO_PLATFORM
-            if (IToBService == null)
-            {
-                return value;
-            }
-
-            value = IToBService.Call<int>("pbsCustomizeSettingsTabStatus", GetEnumType(customizeSettingsTabEnum), GetEnumType(switchEnum), 0);
+            value = tobHelper.Call<int>("pbsCustomizeSettingsTabStatus", (int) customizeSettingsTabEnum, (int) switchEnum, 0);
 #endif
             return value;
         }
@@ -1263,7 +1805,7 @@ namespace Unity.XR.PXR
             SwitchEnum switchEnum = SwitchEnum.S_OFF;
 #if PICO_PLATFORM
                 int num = 0;
-                num = tobHelper.Call<int>("pbsGetCustomizeSettingsTabStatus",GetEnumType(customizeSettingsTabEnum),0);
+                num = tobHelper.Call<int>("pbsGetCustomizeSettingsTabStatus", (int) customizeSettingsTabEnum, 0);
                 if (num == 0)
                 {
                     switchEnum = SwitchEnum.S_ON;
@@ -1299,13 +1841,20 @@ namespace Unity.XR.PXR
         public static void UPxr_SetPowerOnOffLogo(PowerOnOffLogoEnum powerOnOffLogoEnum, String path, Action<bool> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsPropertySetPowerOnOffLogo",GetEnumType(powerOnOffLogoEnum),path,0, new BoolCallback(callback));
+            tobHelper.Call("pbsPropertySetPowerOnOffLogo", (int) powerOnOffLogoEnum, path,0, ToBoolCallback(callback));
 #endif
         }
         public static void UPxr_SetIPD(float ipd, Action<int> callback)
         {
 #if PICO_PLATFORM
-            tobHelper.Call("pbsSetIPD",ipd, new IntCallback(callback));
+            tobHelper.Call("pbsSetIPD",ipd, ToIntCallback(callback));
+#endif
+        }
+
+        public static void UPxr_SetIPDCoalesced(float ipd, Action<int> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("pbsSetIPDCoalesced", ipd, ToIntCallback(callback));
 #endif
         }
         
@@ -1329,6 +1878,43 @@ namespace Unity.XR.PXR
 #endif
             return value;
         }
+
+        public static void UPxr_SetPicoCastMediaFormatCoalesced(PicoCastMediaFormat mediaFormat, Action<int> callback)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("setPicoCastMediaFormatCoalesced", mediaFormat.bitrate, 0, ToIntCallback(callback));
+#endif
+        }
+
+        public static void UPxr_StartPicoCastBitrateController(int initialBitrate, int minBitrate, int maxBitrate, int step, int intervalMs)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("startPicoCastBitrateController", initialBitrate, minBitrate, maxBitrate, step, intervalMs);
+#endif
+        }
+
+        public static void UPxr_SetPicoCastBitrateThresholds(float cpuHigh, float cpuLow, float tempHigh, float tempLow)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("setPicoCastBitrateThresholds", cpuHigh, cpuLow, tempHigh, tempLow);
+#endif
+        }
+
+        public static void UPxr_StopPicoCastBitrateController()
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("stopPicoCastBitrateController");
+#endif
+        }
+
+        public static string UPxr_GetPicoCastBitrateMetrics()
+        {
+            string result = null;
+#if PICO_PLATFORM
+            result = tobHelper.Call<string>("getPicoCastBitrateMetrics");
+#endif
+            return result;
+        }
         
         public static int UPxr_setMarkerInfoCallback(TrackingOriginModeFlags trackingMode,float cameraYOffset,Action<List<MarkerInfo>>  mediaFormat)
         {
@@ -1339,5 +1925,39 @@ namespace Unity.XR.PXR
 #endif
             return value;
         }
+
+        public static void UPxr_SetMarkerPoseFilter(int maxMarkers, double timestampUnitSeconds, double minCutoff, double beta, double maxPredictionMs)
+        {
+#if PICO_PLATFORM
+            tobHelper.Call("setMarkerPoseFilter", maxMarkers, timestampUnitSeconds, minCutoff, beta, maxPredictionMs);
+#endif
+        }
+
+        public static double[] UPxr_GetPredictedMarkerInfos(double aheadMs)
+        {
+            double[] data = null;
+#if PICO_PLATFORM
+            data = tobHelper.Call<double[]>("getPredictedMarkerInfos", aheadMs);
+#endif
+            return data;
+        }
+
+        public static int UPxr_SetMarkerInfoBufferCallback(int maxMarkers, Action<int> callback)
+        {
+            int value = -1;
+#if PICO_PLATFORM
+            value = tobHelper.Call<int>("setMarkerInfoBufferCallback", maxMarkers, callback != null ? ToIntCallback(callback) : null);
+#endif
+            return value;
+        }
+
+        public static double[] UPxr_GetMarkerInfos()
+        {
+            double[] data = null;
+#if PICO_PLATFORM
+            data = tobHelper.Call<double[]>("getMarkerInfos");
+#endif
+            return data;
+        }
     }
 }
\ No newline at end of file
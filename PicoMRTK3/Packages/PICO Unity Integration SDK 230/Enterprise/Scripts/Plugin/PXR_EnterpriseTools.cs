@@ -57,6 +57,7 @@ namespace Unity.XR.PXR
 
         void Update()
         {
+            PXR_EnterprisePlugin.UPxr_DrainCallbackMailbox();
             if (_actions.Count > 0)
             {
                 lock (_actions)
@@ -0,0 +1,494 @@
+package com.picoxr.tobservice;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.picoxr.tobservice.interfaces.StringCallback;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Installs a batch of APKs through {@code pbsControlAPPManger(PACKAGE_SILENCE_INSTALL)}.
+ * <p>
+ * Every APK is hashed with SHA-256 on a pool of verifier threads, reading the file through memory
+ * mapped windows. A package is skipped when its hash matches the one recorded at its last install,
+ * or when the installed version code equals the APK's; identical APKs in the batch are installed
+ * once. Verified packages are queued for the service as soon as they are ready, so installs run
+ * while the remaining files are still being hashed. The service gets one install at a time.
+ * <p>
+ * A progress JSON is reported after every package and one summary JSON with per-package timings
+ * when the batch is done.
+ */
+class BulkInstaller {
+    private static final String PREFERENCES = "tob_bulk_install";
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    static final int STATUS_PENDING = 0;
+    static final int STATUS_VERIFYING = 1;
+    static final int STATUS_QUEUED = 2;
+    static final int STATUS_INSTALLING = 3;
+    static final int STATUS_INSTALLED = 4;
+    static final int STATUS_UNCHANGED = 5;
+    static final int STATUS_DUPLICATE = 6;
+    static final int STATUS_FAILED = 7;
+    static final int STATUS_TIMEOUT = 8;
+    private static final String[] STATUS_NAMES = {"pending", "verifying", "queued", "installing", "installed",
+            "unchanged", "duplicate", "failed", "timeout"};
+
+    interface Installer {
+        /**
+         * Installs the APK at {@code path}; {@code done} receives 0 on success.
+         */
+        void install(String path, IntCallback done);
+    }
+
+    private static final class Item {
+        final String path;
+        final String expectedSha256;
+        int status = STATUS_PENDING;
+        String sha256;
+        String packageName;
+        long versionCode = -1;
+        int result;
+        String error;
+        long verifyStartNanos;
+        long verifiedNanos;
+        long installStartNanos;
+        long endNanos;
+
+        Item(String path, String expectedSha256) {
+            this.path = path;
+            this.expectedSha256 = expectedSha256;
+        }
+    }
+
+    private static ScheduledExecutorService timer;
+
+    private final Installer installer;
+    private final Context context;
+    private final Item[] items;
+    private final boolean force;
+    private final long installTimeoutMs;
+    private final StringCallback progress;
+    private final StringCallback callback;
+    private final Map<String, Item> bySha256 = new HashMap<>();
+    private final ArrayDeque<Item> installQueue = new ArrayDeque<>();
+    private ExecutorService verifiers;
+    private Item installing;
+    private int remaining;
+    private long beginNanos;
+    private boolean finished;
+
+    BulkInstaller(Installer installer, Context context, List<String> paths, List<String> sha256s, boolean force,
+                  long installTimeoutMs, StringCallback progress, StringCallback callback) {
+        this.installer = installer;
+        this.context = context;
+        this.force = force;
+        this.installTimeoutMs = installTimeoutMs;
+        this.progress = progress;
+        this.callback = callback;
+        items = new Item[paths.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(paths.get(i), sha256s != null ? sha256s.get(i) : null);
+        }
+        remaining = items.length;
+    }
+
+    /**
+     * Resolves {@code source}: a directory is installed as all its {@code .apk} files in name order,
+     * a file is read as a manifest, either a JSON array of paths or
+     * {@code {"force":false,"packages":[{"path":"..","sha256":".."}]}} where {@code sha256} is optional
+     * and verified when present.
+     */
+    static BulkInstaller create(Installer installer, Context context, String source, boolean force,
+                                long installTimeoutMs, StringCallback progress, StringCallback callback)
+            throws IOException, JSONException {
+        List<String> paths = new ArrayList<>();
+        List<String> sha256s = new ArrayList<>();
+        File file = new File(source);
+        if (file.isDirectory()) {
+            File[] apks = file.listFiles();
+            if (apks == null) {
+                throw new IOException("cannot list " + source);
+            }
+            Arrays.sort(apks);
+            for (File apk : apks) {
+                if (apk.isFile() && apk.getName().endsWith(".apk")) {
+                    paths.add(apk.getPath());
+                    sha256s.add(null);
+                }
+            }
+        } else {
+            String text = readText(file).trim();
+            JSONArray packages;
+            if (text.startsWith("[")) {
+                packages = new JSONArray(text);
+            } else {
+                JSONObject manifest = new JSONObject(text);
+                force |= manifest.optBoolean("force", false);
+                packages = manifest.getJSONArray("packages");
+            }
+            for (int i = 0; i < packages.length(); i++) {
+                Object entry = packages.get(i);
+                if (entry instanceof JSONObject) {
+                    JSONObject item = (JSONObject) entry;
+                    paths.add(resolve(file, item.getString("path")));
+                    String sha256 = item.optString("sha256", "");
+                    sha256s.add(sha256.isEmpty() ? null : sha256.toLowerCase());
+                } else {
+                    paths.add(resolve(file, entry.toString()));
+                    sha256s.add(null);
+                }
+            }
+        }
+        return new BulkInstaller(installer, context, paths, sha256s, force, installTimeoutMs, progress, callback);
+    }
+
+    private static String resolve(File manifest, String path) {
+        File file = new File(path);
+        if (file.isAbsolute() || manifest.getParentFile() == null) {
+            return path;
+        }
+        return new File(manifest.getParentFile(), path).getPath();
+    }
+
+    private static String readText(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int length = 0;
+            int n;
+            while (length < bytes.length && (n = in.read(bytes, length, bytes.length - length)) > 0) {
+                length += n;
+            }
+            return new String(bytes, 0, length, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param parallelism verifier threads, 0 picks one per core up to 4
+     */
+    void start(int parallelism) {
+        beginNanos = System.nanoTime();
+        if (items.length == 0) {
+            finish();
+            return;
+        }
+        if (parallelism <= 0) {
+            parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+        }
+        final AtomicInteger index = new AtomicInteger();
+        verifiers = Executors.newFixedThreadPool(Math.min(parallelism, items.length), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ToBBulkInstallVerify-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final Item item : items) {
+            verifiers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    verify(item);
+                }
+            });
+        }
+        verifiers.shutdown();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void verify(Item item) {
+        synchronized (this) {
+            item.status = STATUS_VERIFYING;
+            item.verifyStartNanos = System.nanoTime();
+        }
+        String sha256 = null;
+        String error = null;
+        try {
+            sha256 = sha256(new File(item.path));
+        } catch (IOException e) {
+            error = e.toString();
+        }
+        String packageName = null;
+        long versionCode = -1;
+        long installedVersionCode = -1;
+        PackageManager packageManager = context != null ? context.getPackageManager() : null;
+        if (sha256 != null && packageManager != null) {
+            PackageInfo archive = packageManager.getPackageArchiveInfo(item.path, 0);
+            if (archive != null) {
+                packageName = archive.packageName;
+                versionCode = archive.versionCode;
+                try {
+                    installedVersionCode = packageManager.getPackageInfo(packageName, 0).versionCode;
+                } catch (PackageManager.NameNotFoundException e) {
+                    installedVersionCode = -1;
+                }
+            }
+        }
+        int status;
+        synchronized (this) {
+            item.verifiedNanos = System.nanoTime();
+            item.sha256 = sha256;
+            item.packageName = packageName;
+            item.versionCode = versionCode;
+            if (sha256 == null) {
+                item.error = error;
+                status = STATUS_FAILED;
+            } else if (item.expectedSha256 != null && !item.expectedSha256.equals(sha256)) {
+                item.error = "sha256 mismatch";
+                status = STATUS_FAILED;
+            } else if (bySha256.containsKey(sha256)) {
+                status = STATUS_DUPLICATE;
+            } else if (!force && (sha256.equals(lastInstalled(item)) || (versionCode >= 0 && versionCode == installedVersionCode))) {
+                bySha256.put(sha256, item);
+                status = STATUS_UNCHANGED;
+            } else {
+                bySha256.put(sha256, item);
+                status = STATUS_QUEUED;
+            }
+            item.status = status;
+            if (status == STATUS_QUEUED) {
+                installQueue.add(item);
+            } else {
+                item.endNanos = item.verifiedNanos;
+                remaining--;
+            }
+        }
+        if (status != STATUS_QUEUED) {
+            report(item);
+        }
+        installNext();
+    }
+
+    private void installNext() {
+        final Item item;
+        boolean done;
+        synchronized (this) {
+            done = remaining == 0;
+            if (installing != null || installQueue.isEmpty()) {
+                item = null;
+            } else {
+                item = installQueue.poll();
+                item.status = STATUS_INSTALLING;
+                item.installStartNanos = System.nanoTime();
+                installing = item;
+            }
+        }
+        if (item == null) {
+            if (done) {
+                finish();
+            }
+            return;
+        }
+        if (installTimeoutMs > 0) {
+            timer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onInstalled(item, -1, STATUS_TIMEOUT);
+                }
+            }, installTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        installer.install(item.path, new IntCallback() {
+            @Override
+            public void CallBack(int result) {
+                onInstalled(item, result, result == 0 ? STATUS_INSTALLED : STATUS_FAILED);
+            }
+        });
+    }
+
+    private void onInstalled(Item item, int result, int status) {
+        synchronized (this) {
+            if (item.status != STATUS_INSTALLING) {
+                return;
+            }
+            item.endNanos = System.nanoTime();
+            item.result = result;
+            item.status = status;
+            installing = null;
+            remaining--;
+            if (status == STATUS_INSTALLED) {
+                recordInstalled(item);
+            }
+        }
+        report(item);
+        installNext();
+    }
+
+    private void report(Item item) {
+        if (progress == null) {
+            return;
+        }
+        String json;
+        synchronized (this) {
+            try {
+                JSONObject root = itemJson(item);
+                root.put("done", items.length - remaining);
+                root.put("total", items.length);
+                json = root.toString();
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        progress.CallBack(json);
+    }
+
+    private void finish() {
+        String json;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            json = toJson();
+        }
+        if (callback != null) {
+            callback.CallBack(json);
+        }
+    }
+
+    private String toJson() {
+        try {
+            int[] counts = new int[STATUS_NAMES.length];
+            JSONArray array = new JSONArray();
+            for (Item item : items) {
+                counts[item.status]++;
+                array.put(itemJson(item));
+            }
+            JSONObject root = new JSONObject();
+            root.put("success", counts[STATUS_FAILED] + counts[STATUS_TIMEOUT] == 0);
+            root.put("totalMs", (System.nanoTime() - beginNanos) / 1e6);
+            root.put("installed", counts[STATUS_INSTALLED]);
+            root.put("unchanged", counts[STATUS_UNCHANGED]);
+            root.put("duplicates", counts[STATUS_DUPLICATE]);
+            root.put("failed", counts[STATUS_FAILED] + counts[STATUS_TIMEOUT]);
+            root.put("packages", array);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private JSONObject itemJson(Item item) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("path", item.path);
+        json.put("status", STATUS_NAMES[item.status]);
+        if (item.sha256 != null) {
+            json.put("sha256", item.sha256);
+        }
+        if (item.packageName != null) {
+            json.put("packageName", item.packageName);
+            json.put("versionCode", item.versionCode);
+        }
+        if (item.installStartNanos != 0) {
+            json.put("result", item.result);
+        }
+        if (item.error != null) {
+            json.put("error", item.error);
+        }
+        if (item.verifiedNanos != 0) {
+            json.put("verifyMs", (item.verifiedNanos - item.verifyStartNanos) / 1e6);
+        }
+        if (item.installStartNanos != 0) {
+            json.put("queueMs", (item.installStartNanos - item.verifiedNanos) / 1e6);
+            if (item.endNanos != 0) {
+                json.put("installMs", (item.endNanos - item.installStartNanos) / 1e6);
+            }
+        }
+        return json;
+    }
+
+    private String key(Item item) {
+        return item.packageName != null ? item.packageName : new File(item.path).getName();
+    }
+
+    private String lastInstalled(Item item) {
+        SharedPreferences preferences = preferences();
+        return preferences != null ? preferences.getString(key(item), null) : null;
+    }
+
+    private void recordInstalled(Item item) {
+        SharedPreferences preferences = preferences();
+        if (preferences != null) {
+            preferences.edit().putString(key(item), item.sha256).apply();
+        }
+    }
+
+    private SharedPreferences preferences() {
+        return context != null ? context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE) : null;
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBBulkInstallTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * Hashes {@code file} through read-only mappings of at most {@link #MAP_WINDOW} bytes, so large
+     * APKs are digested straight from the page cache without copying them into the Java heap.
+     */
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                digest.update(window);
+            }
+        } finally {
+            in.close();
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
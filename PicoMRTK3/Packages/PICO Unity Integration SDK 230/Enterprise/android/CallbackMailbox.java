@@ -0,0 +1,245 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.BooleanCallback;
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.picoxr.tobservice.interfaces.StringCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects callback results for Unity to pick up in one call per frame instead of one proxy call
+ * per result.
+ * <p>
+ * A {@link Receiver} stands in for the caller's callback and posts its result with the caller's
+ * token into a preallocated ring. Posting is lock-free: a binder thread claims a slot with a CAS on
+ * the tail and publishes it through the slot's sequence number. When the ring is full, results go
+ * to an overflow queue instead of being dropped. {@link #drain()} is the single consumer.
+ * <p>
+ * Drained records are packed into one {@code long[]}: a header
+ * {@code (token << 32) | kind}, then the int value, 0/1 for a bool, or the length of the string
+ * (-1 for null) followed by its UTF-16 chars, four per long starting with the low 16 bits.
+ */
+public class CallbackMailbox {
+    public static final int KIND_INT = 0;
+    public static final int KIND_BOOL = 1;
+    public static final int KIND_STRING = 2;
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * Callback that posts its results to the mailbox under a token chosen by the caller.
+     */
+    public static final class Receiver implements IntCallback, BooleanCallback, StringCallback {
+        private final CallbackMailbox mailbox;
+        private final int token;
+
+        Receiver(CallbackMailbox mailbox, int token) {
+            this.mailbox = mailbox;
+            this.token = token;
+        }
+
+        public int getToken() {
+            return token;
+        }
+
+        @Override
+        public void CallBack(int result) {
+            mailbox.post(token, KIND_INT, result, null);
+        }
+
+        @Override
+        public void CallBack(boolean result) {
+            mailbox.post(token, KIND_BOOL, result ? 1 : 0, null);
+        }
+
+        @Override
+        public void CallBack(String result) {
+            mailbox.post(token, KIND_STRING, 0, result);
+        }
+    }
+
+    private static final class Overflow {
+        final int token;
+        final int kind;
+        final int value;
+        final String string;
+
+        Overflow(int token, int kind, int value, String string) {
+            this.token = token;
+            this.kind = kind;
+            this.value = value;
+            this.string = string;
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] tokens;
+    private final int[] kinds;
+    private final int[] values;
+    private final String[] strings;
+    private final AtomicLong tail = new AtomicLong();
+    private final ArrayDeque<Overflow> overflow = new ArrayDeque<>();
+    private volatile boolean overflowed;
+    private final AtomicLong overflowPosts = new AtomicLong();
+    // Consumer side, guarded by this.
+    private long head;
+    private long drains;
+    private long drainedOverflow;
+    private int maxBatch;
+    private long[] scratch = new long[256];
+
+    public CallbackMailbox() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity slots of the ring, rounded up to a power of two
+     */
+    public CallbackMailbox(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        tokens = new int[size];
+        kinds = new int[size];
+        values = new int[size];
+        strings = new String[size];
+    }
+
+    public Receiver receiver(int token) {
+        return new Receiver(this, token);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    void post(int token, int kind, int value, String string) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    tokens[slot] = token;
+                    kinds[slot] = kind;
+                    values[slot] = value;
+                    strings[slot] = string;
+                    sequences.set(slot, position + 1);
+                    return;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not freed this slot yet, the ring is full.
+                synchronized (overflow) {
+                    overflow.add(new Overflow(token, kind, value, string));
+                    overflowed = true;
+                }
+                overflowPosts.incrementAndGet();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes every published result, ring first, then overflow.
+     *
+     * @return the packed records, an empty array if there were none
+     */
+    public synchronized long[] drain() {
+        int length = 0;
+        int count = 0;
+        while (true) {
+            int slot = (int) (head & mask);
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            length = append(length, tokens[slot], kinds[slot], values[slot], strings[slot]);
+            strings[slot] = null;
+            sequences.set(slot, head + capacity);
+            head++;
+            count++;
+        }
+        if (overflowed) {
+            synchronized (overflow) {
+                Overflow entry;
+                while ((entry = overflow.poll()) != null) {
+                    length = append(length, entry.token, entry.kind, entry.value, entry.string);
+                    drainedOverflow++;
+                    count++;
+                }
+                overflowed = false;
+            }
+        }
+        drains++;
+        maxBatch = Math.max(maxBatch, count);
+        return length == 0 ? EMPTY : Arrays.copyOf(scratch, length);
+    }
+
+    private int append(int length, int token, int kind, int value, String string) {
+        int chars = kind == KIND_STRING && string != null ? string.length() : 0;
+        int end = length + 2 + (chars + 3) / 4;
+        if (end > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(end, scratch.length * 2));
+        }
+        scratch[length] = ((long) token << 32) | kind;
+        scratch[length + 1] = kind == KIND_STRING ? (string != null ? chars : -1) : value;
+        for (int i = length + 2; i < end; i++) {
+            scratch[i] = 0;
+        }
+        for (int c = 0; c < chars; c++) {
+            scratch[length + 2 + (c >> 2)] |= (long) string.charAt(c) << ((c & 3) << 4);
+        }
+        return end;
+    }
+
+    /**
+     * @return the results waiting to be drained
+     */
+    public synchronized long getPending() {
+        long overflowPending;
+        synchronized (overflow) {
+            overflowPending = overflow.size();
+        }
+        return tail.get() - head + overflowPending;
+    }
+
+    /**
+     * @return the capacity, the results posted and drained, how many of them overflowed the ring,
+     * the drains and the largest number of results taken by one drain
+     */
+    public synchronized String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("capacity", capacity);
+            root.put("posted", tail.get() + overflowPosts.get());
+            root.put("drained", head + drainedOverflow);
+            root.put("overflowed", overflowPosts.get());
+            root.put("drains", drains);
+            root.put("maxBatch", maxBatch);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.picoxr.tobservice;
+
+import android.os.RemoteException;
+
+import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.BooleanCallback;
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.picoxr.tobservice.interfaces.StringCallback;
+import com.pvr.tobservice.interfaces.IBoolCallback;
+import com.pvr.tobservice.interfaces.IIntCallback;
+import com.pvr.tobservice.interfaces.IStringCallback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes one-shot service callbacks through long-lived Binder stubs instead of a new stub per call.
+ * <p>
+ * The AIDL callbacks carry no request id, so a single stub per type cannot tell concurrent results
+ * apart. Each stub is therefore tagged with the id of the request it currently serves and returned
+ * to a per-type pool once its result arrived; the waiting caller is looked up in a
+ * {@link RequestTable}.
+ * <p>
+ * The first result claims the request id, so a duplicate result that arrives before the stub is
+ * reused is dropped and counted as stale. After reuse a late result cannot be told apart from the
+ * new request's, so a stub is only reused once it has been idle for {@link #REUSE_DELAY_MS}, oldest
+ * first. The pools grow to the number of calls issued within that delay, up to 64 per type.
+ */
+public class CallbackMultiplexer {
+    private static final int MAX_POOLED = 64;
+    /** Time a stub stays in its pool before it serves another request. */
+    public static final long REUSE_DELAY_MS = 2000;
+    private static final long REUSE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(REUSE_DELAY_MS);
+
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final RequestTable<Object> waiters = new RequestTable<>();
+    private final StubPool<IntStub> intStubs = new StubPool<>(new IntStub[MAX_POOLED]);
+    private final StubPool<BoolStub> boolStubs = new StubPool<>(new BoolStub[MAX_POOLED]);
+    private final StubPool<StringStub> stringStubs = new StubPool<>(new StringStub[MAX_POOLED]);
+    private final AtomicInteger createdStubs = new AtomicInteger();
+    private final AtomicInteger staleCallbacks = new AtomicInteger();
+    private final ToBMetrics metrics;
+
+    public CallbackMultiplexer() {
+        this(null);
+    }
+
+    /**
+     * @param metrics receives the callback latency of every stub, may be null
+     */
+    public CallbackMultiplexer(ToBMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public IIntCallback.Stub intStub(IntCallback callback) {
+        return intStub(-1, System.nanoTime(), callback);
+    }
+
+    /**
+     * @param method     {@link ToBMethod} id the callback latency is recorded for
+     * @param startNanos time the call was issued
+     */
+    public IIntCallback.Stub intStub(int method, long startNanos, IntCallback callback) {
+        IntStub stub = intStubs.acquire();
+        if (stub == null) {
+            stub = new IntStub();
+            createdStubs.incrementAndGet();
+        }
+        stub.method = method;
+        stub.startNanos = startNanos;
+        stub.requestId.set(register(callback));
+        return stub;
+    }
+
+    public IBoolCallback.Stub boolStub(BoolCallback callback) {
+        return boolStub(-1, System.nanoTime(), callback);
+    }
+
+    /**
+     * @param method     {@link ToBMethod} id the callback latency is recorded for
+     * @param startNanos time the call was issued
+     */
+    public IBoolCallback.Stub boolStub(int method, long startNanos, BoolCallback callback) {
+        BoolStub stub = boolStubs.acquire();
+        if (stub == null) {
+            stub = new BoolStub();
+            createdStubs.incrementAndGet();
+        }
+        stub.method = method;
+        stub.startNanos = startNanos;
+        stub.requestId.set(register(callback));
+        return stub;
+    }
+
+    public IStringCallback.Stub stringStub(StringCallback callback) {
+        return stringStub(-1, System.nanoTime(), callback);
+    }
+
+    /**
+     * @param method     {@link ToBMethod} id the callback latency is recorded for
+     * @param startNanos time the call was issued
+     */
+    public IStringCallback.Stub stringStub(int method, long startNanos, StringCallback callback) {
+        StringStub stub = stringStubs.acquire();
+        if (stub == null) {
+            stub = new StringStub();
+            createdStubs.incrementAndGet();
+        }
+        stub.method = method;
+        stub.startNanos = startNanos;
+        stub.requestId.set(register(callback));
+        return stub;
+    }
+
+    /**
+     * Drops the waiter of a stub whose call never reached the service and returns it to its pool.
+     */
+    public void release(Object stub) {
+        if (stub instanceof IntStub) {
+            IntStub intStub = (IntStub) stub;
+            int id = intStub.requestId.getAndSet(0);
+            if (id != 0) {
+                waiters.remove(id);
+                intStubs.release(intStub);
+            }
+        } else if (stub instanceof BoolStub) {
+            BoolStub boolStub = (BoolStub) stub;
+            int id = boolStub.requestId.getAndSet(0);
+            if (id != 0) {
+                waiters.remove(id);
+                boolStubs.release(boolStub);
+            }
+        } else if (stub instanceof StringStub) {
+            StringStub stringStub = (StringStub) stub;
+            int id = stringStub.requestId.getAndSet(0);
+            if (id != 0) {
+                waiters.remove(id);
+                stringStubs.release(stringStub);
+            }
+        }
+    }
+
+    public int getInFlight() {
+        return waiters.size();
+    }
+
+    public int getCreatedStubs() {
+        return createdStubs.get();
+    }
+
+    /**
+     * @return results dropped because their request was already answered or released
+     */
+    public int getStaleCallbacks() {
+        return staleCallbacks.get();
+    }
+
+    private void recordCallback(int method, long startNanos) {
+        if (metrics != null) {
+            metrics.recordCallback(method, System.nanoTime() - startNanos);
+        }
+    }
+
+    private int register(Object callback) {
+        int id;
+        do {
+            id = nextRequestId.incrementAndGet() & Integer.MAX_VALUE;
+        } while (id == 0);
+        waiters.put(id, callback);
+        return id;
+    }
+
+    private final class IntStub extends IIntCallback.Stub {
+        int method;
+        long startNanos;
+        final AtomicInteger requestId = new AtomicInteger();
+
+        @Override
+        public void callback(int result) throws RemoteException {
+            int id = requestId.getAndSet(0);
+            if (id == 0) {
+                staleCallbacks.incrementAndGet();
+                return;
+            }
+            IntCallback callback = (IntCallback) waiters.remove(id);
+            recordCallback(method, startNanos);
+            intStubs.release(this);
+            if (callback != null) {
+                callback.CallBack(result);
+            }
+        }
+    }
+
+    private final class BoolStub extends IBoolCallback.Stub {
+        int method;
+        long startNanos;
+        final AtomicInteger requestId = new AtomicInteger();
+
+        @Override
+        public void callBack(boolean result) throws RemoteException {
+            int id = requestId.getAndSet(0);
+            if (id == 0) {
+                staleCallbacks.incrementAndGet();
+                return;
+            }
+            BoolCallback callback = (BoolCallback) waiters.remove(id);
+            recordCallback(method, startNanos);
+            boolStubs.release(this);
+            if (callback instanceof BooleanCallback) {
+                ((BooleanCallback) callback).CallBack(result);
+            } else if (callback != null) {
+                callback.CallBack(result);
+            }
+        }
+    }
+
+    private final class StringStub extends IStringCallback.Stub {
+        int method;
+        long startNanos;
+        final AtomicInteger requestId = new AtomicInteger();
+
+        @Override
+        public void callback(String result) throws RemoteException {
+            int id = requestId.getAndSet(0);
+            if (id == 0) {
+                staleCallbacks.incrementAndGet();
+                return;
+            }
+            StringCallback callback = (StringCallback) waiters.remove(id);
+            recordCallback(method, startNanos);
+            stringStubs.release(this);
+            if (callback != null) {
+                callback.CallBack(result);
+            }
+        }
+    }
+
+    /**
+     * FIFO of idle stubs that hands a stub out again only after {@link #REUSE_DELAY_NANOS}.
+     */
+    private static final class StubPool<T> {
+        private final T[] stubs;
+        private final long[] releasedNanos;
+        private int head;
+        private int size;
+
+        StubPool(T[] stubs) {
+            this.stubs = stubs;
+            releasedNanos = new long[stubs.length];
+        }
+
+        synchronized T acquire() {
+            if (size == 0 || System.nanoTime() - releasedNanos[head] < REUSE_DELAY_NANOS) {
+                return null;
+            }
+            T stub = stubs[head];
+            stubs[head] = null;
+            head = (head + 1) % stubs.length;
+            size--;
+            return stub;
+        }
+
+        synchronized void release(T stub) {
+            if (size < stubs.length) {
+                int tail = (head + size) % stubs.length;
+                stubs[tail] = stub;
+                releasedNanos[tail] = System.nanoTime();
+                size++;
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Last-write-wins front end for a setter-style service call. At most one call is outstanding and at
+ * most one value is pending; a value submitted while a call is in flight replaces the pending one.
+ * The callbacks of replaced values receive the result of the value that replaced them, so every
+ * caller gets exactly one completion.
+ * <p>
+ * A call that does not complete within the timeout, or that is outstanding when the service
+ * disconnects, completes its callers with -1. The service may still apply it, so the next value is
+ * held back until the late result arrives or the grace period passes; otherwise the abandoned call
+ * could overwrite a newer value.
+ * <p>
+ * Values are passed as a {@code long} so that callers can encode floats, enum ordinals or packed
+ * arguments without boxing.
+ */
+public class CoalescingSetter {
+    public static final int DEFAULT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_GRACE_MS = 1000;
+
+    private static ScheduledExecutorService timer;
+
+    public interface Issuer {
+        /**
+         * Starts the service call for {@code value}; {@code done} must be called exactly once with its result.
+         */
+        void issue(long value, IntCallback done);
+    }
+
+    private final String name;
+    private final Issuer issuer;
+    private final ArrayList<IntCallback> inFlightCallbacks = new ArrayList<>();
+    private final ArrayList<IntCallback> pendingCallbacks = new ArrayList<>();
+    private boolean inFlight;
+    private boolean hasPending;
+    private long pendingValue;
+    private long inFlightValue;
+    private long lastValue;
+    private int lastResult;
+    private long submitted;
+    private long issued;
+    private long superseded;
+    private long timedOut;
+    private int timeoutMs = DEFAULT_TIMEOUT_MS;
+    private int graceMs = DEFAULT_GRACE_MS;
+    private int generation;
+    /** The outstanding call was given up on and its callers completed; it blocks the next one. */
+    private boolean abandoned;
+    private ScheduledFuture<?> timeoutTask;
+
+    /**
+     * Completion of one issued call; results of a call that was already given up on are ignored.
+     */
+    private final class Completion implements IntCallback, Runnable {
+        final int generation;
+
+        Completion(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void CallBack(int result) {
+            onComplete(generation, result, false, false);
+        }
+
+        @Override
+        public void run() {
+            onComplete(generation, -1, true, true);
+        }
+    }
+
+    public CoalescingSetter(String name, Issuer issuer) {
+        this.name = name;
+        this.issuer = issuer;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void submit(long value, IntCallback callback) {
+        Completion completion;
+        synchronized (this) {
+            submitted++;
+            if (inFlight) {
+                if (hasPending) {
+                    superseded++;
+                }
+                hasPending = true;
+                pendingValue = value;
+                if (callback != null) {
+                    pendingCallbacks.add(callback);
+                }
+                return;
+            }
+            inFlight = true;
+            inFlightValue = value;
+            if (callback != null) {
+                inFlightCallbacks.add(callback);
+            }
+            issued++;
+            completion = arm();
+        }
+        issuer.issue(value, completion);
+    }
+
+    /**
+     * @param timeoutMs time after which an outstanding call completes with -1, 0 waits forever
+     */
+    public synchronized void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @param graceMs time a call that was given up on keeps blocking the next one unless its result
+     *                arrives earlier, 0 issues the next value right away
+     */
+    public synchronized void setGraceMs(int graceMs) {
+        this.graceMs = graceMs;
+    }
+
+    /**
+     * Gives up on the outstanding call, e.g. because the service disconnected and its result may
+     * never arrive. Its callers receive -1 and the pending value, if any, is issued after the grace
+     * period.
+     */
+    public void reset() {
+        int current;
+        synchronized (this) {
+            if (!inFlight) {
+                return;
+            }
+            current = generation;
+        }
+        onComplete(current, -1, false, true);
+    }
+
+    /**
+     * Starts tracking a new in-flight call. Must hold the lock.
+     */
+    private Completion arm() {
+        Completion completion = new Completion(++generation);
+        if (timeoutMs > 0) {
+            timeoutTask = timer().schedule(completion, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return completion;
+    }
+
+    /**
+     * @param timeout the timeout or grace timer fired
+     * @param abandon give up on the call: complete its callers now and hold the next value back
+     *                until the late result arrives or the grace period passes
+     */
+    private void onComplete(int completed, int result, boolean timeout, boolean abandon) {
+        IntCallback[] done = null;
+        boolean issueNext = false;
+        long next = 0;
+        Completion completion = null;
+        synchronized (this) {
+            if (!inFlight || completed != generation || (abandoned && abandon && !timeout)) {
+                return;
+            }
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+                timeoutTask = null;
+            }
+            if (!abandoned) {
+                if (timeout) {
+                    timedOut++;
+                }
+                lastValue = inFlightValue;
+                lastResult = result;
+                done = inFlightCallbacks.isEmpty() ? null : inFlightCallbacks.toArray(new IntCallback[0]);
+                inFlightCallbacks.clear();
+            } else if (!timeout) {
+                // The late result of the abandoned call.
+                lastResult = result;
+            }
+            if (abandon && !abandoned && graceMs > 0) {
+                abandoned = true;
+                timeoutTask = timer().schedule(new Completion(generation), graceMs, TimeUnit.MILLISECONDS);
+            } else {
+                // Later completions of this call are stale.
+                generation++;
+                abandoned = false;
+                issueNext = hasPending;
+                if (issueNext) {
+                    next = pendingValue;
+                    inFlightValue = next;
+                    hasPending = false;
+                    issued++;
+                    inFlightCallbacks.addAll(pendingCallbacks);
+                    pendingCallbacks.clear();
+                    completion = arm();
+                } else {
+                    inFlight = false;
+                }
+            }
+        }
+        if (done != null) {
+            for (IntCallback callback : done) {
+                callback.CallBack(result);
+            }
+        }
+        if (issueNext) {
+            issuer.issue(next, completion);
+        }
+    }
+
+    public synchronized boolean isInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the value of the last completed call
+     */
+    public synchronized long getLastValue() {
+        return lastValue;
+    }
+
+    public synchronized int getLastResult() {
+        return lastResult;
+    }
+
+    public synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    public synchronized long getIssued() {
+        return issued;
+    }
+
+    /**
+     * @return values that were replaced before they reached the service
+     */
+    public synchronized long getSuperseded() {
+        return superseded;
+    }
+
+    /**
+     * @return calls that completed with -1 because no result arrived within the timeout
+     */
+    public synchronized long getTimedOut() {
+        return timedOut;
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBSetterTimeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,500 @@
+package com.picoxr.tobservice;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.IntCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes config files through {@code pbsWriteConfigFileToDataLocal} only when their content changed.
+ * <p>
+ * The SHA-256 of every written file is kept per path, in the app's shared preferences when a context
+ * is known, and a sync whose content hashes to the stored digest completes without touching the
+ * service. Content longer than the chunk size is not sent as one binder transaction: the service
+ * has no append, so it is written as {@code path.part0 .. path.partN-1} followed by the manifest
+ * {@code path.manifest} ({@code {"sha256":..,"parts":n,"chars":..}}) as the commit record. Readers
+ * of chunked files concatenate the parts listed in the manifest.
+ * <p>
+ * Syncs run one at a time on a background thread; each chunk waits for the previous one to be
+ * confirmed, so memory use is bounded by the chunk size for file and stream sources.
+ */
+public class ConfigSync {
+    private static final String TAG = "ConfigSync";
+    private static final String PREFERENCES = "tob_config_sync";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final int RESULT_WRITTEN = 0;
+    public static final int RESULT_UNCHANGED = 1;
+    public static final int RESULT_FAILED = -1;
+
+    /**
+     * 128K chars is at most 256 KB in a parcel, well below the 1 MB binder transaction buffer.
+     */
+    public static final int DEFAULT_CHUNK_CHARS = 128 * 1024;
+    public static final long DEFAULT_CHUNK_TIMEOUT_MS = 10000;
+
+    interface Writer {
+        void write(String path, String content, BoolCallback callback);
+    }
+
+    private final Writer writer;
+    private final Map<String, String> digests = new HashMap<>();
+    private ExecutorService executor;
+    private SharedPreferences preferences;
+    private volatile int chunkChars = DEFAULT_CHUNK_CHARS;
+    private volatile long chunkTimeoutMs = DEFAULT_CHUNK_TIMEOUT_MS;
+    private long syncs;
+    private long unchanged;
+    private long written;
+    private long failed;
+    private long chunks;
+
+    ConfigSync(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Persists digests in the shared preferences of {@code context} so unchanged files are also
+     * skipped after a restart. Without a context digests only live as long as the process.
+     */
+    public synchronized void setContext(Context context) {
+        if (context == null || preferences != null) {
+            return;
+        }
+        preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    public void setChunkChars(int chunkChars) {
+        this.chunkChars = Math.max(1024, chunkChars);
+    }
+
+    public void setChunkTimeoutMs(long chunkTimeoutMs) {
+        this.chunkTimeoutMs = chunkTimeoutMs;
+    }
+
+    /**
+     * Forgets the digest of {@code path} so the next sync writes it.
+     */
+    public synchronized void invalidate(String path) {
+        digests.remove(path);
+        if (preferences != null) {
+            preferences.edit().remove(path).apply();
+        }
+    }
+
+    public void sync(String path, String content, IntCallback callback) {
+        submit(path, new StringSource(content), callback);
+    }
+
+    public void sync(String path, File file, IntCallback callback) {
+        submit(path, new FileSource(file, null, false), callback);
+    }
+
+    /**
+     * {@code stream} is read on the sync thread and closed when it has been consumed.
+     */
+    public void sync(String path, final InputStream stream, IntCallback callback) {
+        submit(path, new Source() {
+            private Source spooled;
+
+            @Override
+            String sha256() throws IOException {
+                spooled = spool(stream);
+                return spooled.sha256();
+            }
+
+            @Override
+            long length() {
+                return spooled.length();
+            }
+
+            @Override
+            Reader open() throws IOException {
+                return spooled.open();
+            }
+
+            @Override
+            void close() {
+                if (spooled != null) {
+                    spooled.close();
+                }
+            }
+        }, callback);
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * @return syncs skipped because the content matched the stored digest
+     */
+    public synchronized long getUnchanged() {
+        return unchanged;
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return chunk and manifest writes of chunked syncs
+     */
+    public synchronized long getChunks() {
+        return chunks;
+    }
+
+    private void submit(final String path, final Source source, final IntCallback callback) {
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                int result;
+                try {
+                    result = syncNow(path, source);
+                } catch (IOException e) {
+                    Log.e(TAG, "sync " + path + " failed", e);
+                    result = RESULT_FAILED;
+                } finally {
+                    source.close();
+                }
+                synchronized (ConfigSync.this) {
+                    syncs++;
+                    if (result == RESULT_UNCHANGED) {
+                        unchanged++;
+                    } else if (result == RESULT_WRITTEN) {
+                        written++;
+                    } else {
+                        failed++;
+                    }
+                }
+                if (callback != null) {
+                    callback.CallBack(result);
+                }
+            }
+        });
+    }
+
+    private int syncNow(String path, Source source) throws IOException {
+        String digest = source.sha256();
+        String stored = storedDigest(path);
+        int storedParts = 0;
+        if (stored != null) {
+            int separator = stored.indexOf(':');
+            if (separator > 0 && stored.substring(0, separator).equals(digest)) {
+                return RESULT_UNCHANGED;
+            }
+            try {
+                storedParts = separator > 0 ? Integer.parseInt(stored.substring(separator + 1)) : 0;
+            } catch (NumberFormatException e) {
+                storedParts = 0;
+            }
+        }
+        int limit = chunkChars;
+        int parts;
+        Reader reader = source.open();
+        try {
+            if (source.length() <= limit) {
+                String content = readChunk(reader, new char[limit]);
+                if (!write(path, content == null ? "" : content)) {
+                    return RESULT_FAILED;
+                }
+                parts = 0;
+                // A file that used to be chunked keeps its old parts; an empty manifest retires them.
+                if (storedParts > 0 && !write(manifestPath(path), manifest(digest, 0, content == null ? 0 : content.length()))) {
+                    return RESULT_FAILED;
+                }
+            } else {
+                char[] buffer = new char[limit];
+                long chars = 0;
+                parts = 0;
+                String chunk;
+                while ((chunk = readChunk(reader, buffer)) != null) {
+                    if (!write(path + ".part" + parts, chunk)) {
+                        return RESULT_FAILED;
+                    }
+                    synchronized (this) {
+                        chunks++;
+                    }
+                    chars += chunk.length();
+                    parts++;
+                }
+                if (!write(manifestPath(path), manifest(digest, parts, chars))) {
+                    return RESULT_FAILED;
+                }
+                synchronized (this) {
+                    chunks++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        storeDigest(path, digest + ":" + parts);
+        return RESULT_WRITTEN;
+    }
+
+    private static String manifestPath(String path) {
+        return path + ".manifest";
+    }
+
+    private static String manifest(String digest, int parts, long chars) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("sha256", digest);
+            json.put("parts", parts);
+            json.put("chars", chars);
+            return json.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes one chunk and waits for the service to confirm it.
+     */
+    private boolean write(String path, String content) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] ok = new boolean[1];
+        writer.write(path, content, new BoolCallback() {
+            @Override
+            public void CallBack(Boolean result) {
+                ok[0] = result != null && result;
+                latch.countDown();
+            }
+        });
+        try {
+            if (!latch.await(chunkTimeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.e(TAG, "write " + path + ": no answer within " + chunkTimeoutMs + " ms");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!ok[0]) {
+            Log.e(TAG, "write " + path + " failed");
+        }
+        return ok[0];
+    }
+
+    /**
+     * Fills {@code buffer} from {@code reader}, never ending a chunk between the two halves of a
+     * surrogate pair.
+     *
+     * @return the chunk, or null at the end of the input
+     */
+    private static String readChunk(Reader reader, char[] buffer) throws IOException {
+        int length = 0;
+        int n;
+        while (length < buffer.length && (n = reader.read(buffer, length, buffer.length - length)) > 0) {
+            length += n;
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length == buffer.length && Character.isHighSurrogate(buffer[length - 1])) {
+            length--;
+            return new String(buffer, 0, length) + carry(reader, buffer[length]);
+        }
+        return new String(buffer, 0, length);
+    }
+
+    private static String carry(Reader reader, char high) throws IOException {
+        int low = reader.read();
+        return low < 0 ? String.valueOf(high) : new String(new char[]{high, (char) low});
+    }
+
+    private synchronized String storedDigest(String path) {
+        String digest = digests.get(path);
+        if (digest == null && preferences != null) {
+            digest = preferences.getString(path, null);
+            if (digest != null) {
+                digests.put(path, digest);
+            }
+        }
+        return digest;
+    }
+
+    private synchronized void storeDigest(String path, String digest) {
+        digests.put(path, digest);
+        if (preferences != null) {
+            preferences.edit().putString(path, digest).apply();
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBConfigSync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            out[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /**
+     * Copies {@code stream} to a temporary file, hashing it on the way, so it can be compared
+     * before anything is sent and then read again in chunks.
+     */
+    private static Source spool(InputStream stream) throws IOException {
+        File file = File.createTempFile("tobconfig", ".tmp");
+        MessageDigest digest = sha256Digest();
+        byte[] buffer = new byte[8192];
+        boolean complete = false;
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                int n;
+                while ((n = stream.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+            complete = true;
+        } finally {
+            stream.close();
+            if (!complete) {
+                file.delete();
+            }
+        }
+        return new FileSource(file, hex(digest.digest()), true);
+    }
+
+    private abstract static class Source {
+        abstract String sha256() throws IOException;
+
+        /**
+         * @return an upper bound of the content length in chars
+         */
+        abstract long length();
+
+        abstract Reader open() throws IOException;
+
+        void close() {
+        }
+    }
+
+    private static final class StringSource extends Source {
+        private final String content;
+
+        StringSource(String content) {
+            this.content = content != null ? content : "";
+        }
+
+        @Override
+        String sha256() {
+            return hex(sha256Digest().digest(content.getBytes(UTF_8)));
+        }
+
+        @Override
+        long length() {
+            return content.length();
+        }
+
+        @Override
+        Reader open() {
+            return new StringReader(content);
+        }
+    }
+
+    private static final class FileSource extends Source {
+        private final File file;
+        private final boolean temporary;
+        private String digest;
+
+        FileSource(File file, String digest, boolean temporary) {
+            this.file = file;
+            this.digest = digest;
+            this.temporary = temporary;
+        }
+
+        @Override
+        String sha256() throws IOException {
+            if (digest == null) {
+                MessageDigest sha256 = sha256Digest();
+                byte[] buffer = new byte[8192];
+                InputStream in = new FileInputStream(file);
+                try {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        sha256.update(buffer, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+                digest = hex(sha256.digest());
+            }
+            return digest;
+        }
+
+        @Override
+        long length() {
+            // UTF-8 never needs fewer bytes than UTF-16 chars.
+            return file.length();
+        }
+
+        @Override
+        Reader open() throws IOException {
+            return new InputStreamReader(new FileInputStream(file), UTF_8);
+        }
+
+        @Override
+        void close() {
+            if (temporary && !file.delete()) {
+                Log.w(TAG, "could not delete " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.LongCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the battery levels and connection state of both controllers, so the app can read them
+ * every frame without a binder call.
+ * <p>
+ * The service is sampled adaptively: right after a change at the minimum interval, then at twice
+ * the previous interval for every unchanged sample, up to the maximum. The state is packed into
+ * one volatile long (see {@link #getState()}) that is only written by the tracker thread, and the
+ * callback receives it only when a value actually changed. Failed samples leave the state as it is.
+ */
+public class ControllerStateTracker {
+    private static final String TAG = "ControllerStateTracker";
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 250;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 8000;
+
+    /** Left controller battery level, 1 to 5, 0 if unknown. */
+    public static final int LEFT_BATTERY_SHIFT = 0;
+    /** Right controller battery level, 1 to 5, 0 if unknown. */
+    public static final int RIGHT_BATTERY_SHIFT = 8;
+    /** {@code pbsGetControllerConnectState}: bit 0 left, bit 1 right connected. */
+    public static final int CONNECT_STATE_SHIFT = 16;
+    /** Set once a sample succeeded. */
+    public static final long VALID = 1L << 24;
+    /** Number of transitions so far, in the upper 32 bits. */
+    public static final int TRANSITIONS_SHIFT = 32;
+    private static final long VALUES_MASK = (1L << 32) - 1;
+
+    private final ToBServiceUtils service;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private volatile long state;
+    private volatile LongCallback callback;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private int round;
+    private long intervalMs;
+    private long startedMs;
+    private long samples;
+    private long failures;
+    private long changedAtMs;
+
+    ControllerStateTracker(ToBServiceUtils service, long minIntervalMs, long maxIntervalMs) {
+        if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException("invalid intervals: " + minIntervalMs + ", " + maxIntervalMs);
+        }
+        this.service = service;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+    }
+
+    /**
+     * @param callback receives the packed state on every transition on the tracker thread, may be null
+     */
+    public void setCallback(LongCallback callback) {
+        this.callback = callback;
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBControllerState");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        startedMs = System.nanoTime() / 1000000L;
+        schedule(0);
+    }
+
+    /**
+     * Stops sampling; the state is kept until the tracker is started again.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    /**
+     * Samples at once and restarts at the minimum interval, e.g. after the service was bound again.
+     */
+    synchronized void onBind() {
+        if (task != null) {
+            task.cancel(false);
+            schedule(0);
+        }
+    }
+
+    private void schedule(long delayMs) {
+        // A sample already running when the tracker is restarted must not schedule another chain.
+        final int current = ++round;
+        task = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                long next;
+                try {
+                    next = sample();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "sample failed", e);
+                    next = maxIntervalMs;
+                }
+                synchronized (ControllerStateTracker.this) {
+                    if (current == round && task != null) {
+                        schedule(next);
+                    }
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the delay until the next sample in ms
+     */
+    long sample() {
+        int[] battery = service.pbsGetControllerBattery(0);
+        int connectState = battery != null ? service.pbsGetControllerConnectState(0) : -1;
+        if (battery == null || connectState < 0) {
+            synchronized (this) {
+                samples++;
+                failures++;
+                return intervalMs = Math.min(maxIntervalMs, Math.max(minIntervalMs, intervalMs * 2));
+            }
+        }
+        long values = VALID | level(battery, 0) << LEFT_BATTERY_SHIFT | level(battery, 1) << RIGHT_BATTERY_SHIFT
+                | (long) (connectState & 0xff) << CONNECT_STATE_SHIFT;
+        long previous = state;
+        boolean changed = (previous & VALUES_MASK) != values;
+        long transitions = (previous >>> TRANSITIONS_SHIFT) + (changed ? 1 : 0);
+        long next = values | transitions << TRANSITIONS_SHIFT;
+        long delay;
+        synchronized (this) {
+            samples++;
+            if (changed) {
+                changedAtMs = System.nanoTime() / 1000000L;
+                intervalMs = minIntervalMs;
+            } else {
+                intervalMs = Math.min(maxIntervalMs, Math.max(minIntervalMs, intervalMs * 2));
+            }
+            delay = intervalMs;
+        }
+        state = next;
+        LongCallback listener = callback;
+        if (changed && listener != null) {
+            listener.CallBack(next);
+        }
+        return delay;
+    }
+
+    private static long level(int[] battery, int index) {
+        return index < battery.length ? Math.max(0, Math.min(0xff, battery[index])) : 0;
+    }
+
+    /**
+     * @return the packed state, see the {@code *_SHIFT} constants and {@link #VALID}; a volatile
+     * read, no IPC or locking
+     */
+    public long getState() {
+        return state;
+    }
+
+    public static int leftBattery(long state) {
+        return (int) (state >>> LEFT_BATTERY_SHIFT) & 0xff;
+    }
+
+    public static int rightBattery(long state) {
+        return (int) (state >>> RIGHT_BATTERY_SHIFT) & 0xff;
+    }
+
+    public static int connectState(long state) {
+        return (int) (state >>> CONNECT_STATE_SHIFT) & 0xff;
+    }
+
+    public static boolean isValid(long state) {
+        return (state & VALID) != 0;
+    }
+
+    public static long transitions(long state) {
+        return state >>> TRANSITIONS_SHIFT;
+    }
+
+    /**
+     * @return the current state, the sampling counters and, for comparison, the samples polling at
+     * the minimum interval would have taken since the start
+     */
+    public synchronized String toJson() {
+        try {
+            long current = state;
+            long now = System.nanoTime() / 1000000L;
+            JSONObject root = new JSONObject();
+            root.put("running", task != null);
+            root.put("valid", isValid(current));
+            root.put("leftBattery", leftBattery(current));
+            root.put("rightBattery", rightBattery(current));
+            root.put("connectState", connectState(current));
+            root.put("transitions", transitions(current));
+            root.put("samples", samples);
+            root.put("failures", failures);
+            root.put("intervalMs", intervalMs);
+            root.put("minIntervalSamples", startedMs > 0 ? (now - startedMs) / minIntervalMs + 1 : 0);
+            root.put("stateAgeMs", changedAtMs > 0 ? now - changedAtMs : 0);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
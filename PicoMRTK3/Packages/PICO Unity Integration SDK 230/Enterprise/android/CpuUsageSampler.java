@@ -0,0 +1,216 @@
+package com.picoxr.tobservice;
+
+import android.annotation.SuppressLint;
+import android.os.CpuUsageInfo;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.pvr.tobservice.interfaces.IToBServiceProxy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Samples {@code pbsGetCpuUsages} on its own thread and publishes per-core utilisation for the
+ * last interval, computed from the difference of two consecutive {@link CpuUsageInfo} snapshots.
+ */
+public class CpuUsageSampler {
+    private static final String TAG = "CpuUsageSampler";
+    public static final int MAX_CORES = 32;
+
+    private final ToBServiceUtils service;
+    private final long[] lastActive = new long[MAX_CORES];
+    private final long[] lastTotal = new long[MAX_CORES];
+    private final float[] usages = new float[MAX_CORES];
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile int coreCount;
+    /** Cores of the baseline snapshot, sampler thread only. */
+    private int baselineCount;
+    private volatile float average;
+    // Written by the sampler thread and by stop().
+    private volatile boolean hasBaseline;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private long intervalMs;
+    private int users;
+    private boolean startedForUsers;
+
+    CpuUsageSampler(ToBServiceUtils service) {
+        this.service = service;
+    }
+
+    public synchronized void start(long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive: " + intervalMs);
+        }
+        startedForUsers = false;
+        if (task != null) {
+            if (this.intervalMs == intervalMs) {
+                return;
+            }
+            task.cancel(false);
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBCpuUsageSampler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        this.intervalMs = intervalMs;
+        task = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        hasBaseline = false;
+        startedForUsers = false;
+    }
+
+    /**
+     * Starts sampling on behalf of a component that reads the sampler, unless it is already running.
+     * Each call is paired with {@link #release()}, which stops sampling once the last such component
+     * is done, unless it was started through {@link #start(long)}.
+     */
+    synchronized void acquire(long intervalMs) {
+        users++;
+        if (task == null) {
+            start(intervalMs);
+            startedForUsers = true;
+        }
+    }
+
+    synchronized void release() {
+        if (users > 0 && --users == 0 && startedForUsers) {
+            stop();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public int getCoreCount() {
+        return coreCount;
+    }
+
+    public float getAverage() {
+        return average;
+    }
+
+    public int getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Copies the utilisation (0..1) of each core for the last interval into {@code dst}.
+     *
+     * @return the number of cores copied, 0 before the second sample, or -1 if no consistent
+     * snapshot could be taken
+     */
+    public int read(float[] dst) {
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int before = sequence.get();
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            if (before == 0) {
+                return 0;
+            }
+            int count = Math.min(coreCount, dst.length);
+            System.arraycopy(usages, 0, dst, 0, count);
+            // The copy must be done before the sequence is checked again.
+            SeqFences.loadLoadFence();
+            if (sequence.get() == before) {
+                return count;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressLint("NewApi")
+    void sample() {
+        ToBMetrics metrics = service.getMetrics();
+        metrics.recordCall(ToBMethod.GET_CPU_USAGES);
+        IToBServiceProxy binder = service.boundService();
+        if (binder == null) {
+            // Not logged, the sampler keeps polling until the service is back.
+            metrics.recordNotBound(ToBMethod.GET_CPU_USAGES);
+            hasBaseline = false;
+            return;
+        }
+        CpuUsageInfo[] cpus;
+        long start = System.nanoTime();
+        try {
+            cpus = binder.pbsGetCpuUsages();
+            metrics.recordBinder(ToBMethod.GET_CPU_USAGES, System.nanoTime() - start);
+        } catch (RemoteException e) {
+            metrics.recordError(ToBMethod.GET_CPU_USAGES);
+            Log.e(TAG, "sample: pbsGetCpuUsages failed", e);
+            hasBaseline = false;
+            return;
+        }
+        if (cpus == null) {
+            return;
+        }
+        int count = Math.min(cpus.length, MAX_CORES);
+        if (!hasBaseline || count != baselineCount) {
+            for (int i = 0; i < count; i++) {
+                lastActive[i] = cpus[i] != null ? cpus[i].getActive() : 0;
+                lastTotal[i] = cpus[i] != null ? cpus[i].getTotal() : 0;
+            }
+            baselineCount = count;
+            hasBaseline = true;
+            return;
+        }
+
+        sequence.incrementAndGet();
+        // The odd sequence must be visible before any usage changes.
+        SeqFences.storeStoreFence();
+        try {
+            float sum = 0;
+            for (int i = 0; i < count; i++) {
+                if (cpus[i] == null) {
+                    usages[i] = 0;
+                    continue;
+                }
+                long active = cpus[i].getActive();
+                long total = cpus[i].getTotal();
+                long deltaTotal = total - lastTotal[i];
+                if (deltaTotal > 0) {
+                    usages[i] = Math.max(0f, Math.min(1f, (float) (active - lastActive[i]) / deltaTotal));
+                }
+                lastActive[i] = active;
+                lastTotal[i] = total;
+                sum += usages[i];
+            }
+            average = count > 0 ? sum / count : 0;
+            // Readers size their copy by it, so it only changes together with the usages.
+            coreCount = count;
+        } finally {
+            // A failed sample must not leave the sequence odd, or readers would never succeed.
+            sequence.incrementAndGet();
+        }
+    }
+}
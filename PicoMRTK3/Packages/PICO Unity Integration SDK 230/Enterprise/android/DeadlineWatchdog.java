@@ -0,0 +1,401 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.BooleanCallback;
+import com.picoxr.tobservice.interfaces.IntCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts a deadline on one-shot service callbacks.
+ * <p>
+ * A {@link Deadline} is passed to the service call in place of the caller's callback and forwards
+ * the first result to it. If no result arrives in time, the caller gets a timeout result instead
+ * ({@link #TIMEOUT_RESULT} or {@code false}) and a result arriving later is counted as late and
+ * dropped; a cancelled call delivers nothing. Either way the caller's callback is released.
+ * <p>
+ * All deadlines are kept in one hashed timer wheel of {@link #WHEEL_SIZE} buckets of
+ * {@link #DEFAULT_TICK_MS}, advanced by a single thread, so arming and completing a deadline is a
+ * constant-time list operation and there is no timer per call. Deadlines beyond one turn of the
+ * wheel stay in their bucket until their tick comes up. The thread waits while nothing is armed.
+ */
+public class DeadlineWatchdog {
+    private static final String TAG = "DeadlineWatchdog";
+
+    /** Result delivered to an {@link IntCallback} whose call timed out. */
+    public static final int TIMEOUT_RESULT = -1;
+    public static final long DEFAULT_TICK_MS = 10;
+    public static final int WHEEL_SIZE = 512;
+
+    static final int ARMED_INDEX = 0;
+    static final int COMPLETED_INDEX = 1;
+    static final int TIMED_OUT_INDEX = 2;
+    static final int LATE_INDEX = 3;
+    static final int CANCELLED_INDEX = 4;
+    static final int MAX_LATE_NS_INDEX = 5;
+    static final int STRIDE = 6;
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int TIMED_OUT = 2;
+    private static final int CANCELLED = 3;
+
+    /**
+     * Handle of a call with a deadline. It is also the callback handed to the service.
+     */
+    public static final class Deadline implements IntCallback, BooleanCallback {
+        private static final AtomicIntegerFieldUpdater<Deadline> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Deadline.class, "state");
+
+        private final DeadlineWatchdog watchdog;
+        private final int id;
+        private final int method;
+        private final long timeoutMs;
+        private final long expiryNanos;
+        private final boolean boolResult;
+        private volatile int state;
+        private Object callback;
+        // Wheel links, guarded by the watchdog.
+        private long expiryTick;
+        private Deadline prev;
+        private Deadline next;
+        private boolean linked;
+
+        Deadline(DeadlineWatchdog watchdog, int id, int method, long timeoutMs, Object callback, boolean boolResult) {
+            this.watchdog = watchdog;
+            this.id = id;
+            this.method = method;
+            this.timeoutMs = timeoutMs;
+            this.expiryNanos = System.nanoTime() + timeoutMs * 1000000L;
+            this.callback = callback;
+            this.boolResult = boolResult;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public boolean isPending() {
+            return state == PENDING;
+        }
+
+        public boolean isTimedOut() {
+            return state == TIMED_OUT;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        /**
+         * Stops waiting for the result; the callback is released and not called.
+         *
+         * @return false if the call already completed, timed out or was cancelled
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            watchdog.retire(this, CANCELLED_INDEX);
+            return true;
+        }
+
+        @Override
+        public void CallBack(int result) {
+            Object listener = complete();
+            if (listener != null) {
+                ((IntCallback) listener).CallBack(result);
+            }
+        }
+
+        @Override
+        public void CallBack(boolean result) {
+            Object listener = complete();
+            if (listener instanceof BooleanCallback) {
+                ((BooleanCallback) listener).CallBack(result);
+            } else if (listener != null) {
+                ((BoolCallback) listener).CallBack(result);
+            }
+        }
+
+        private Object complete() {
+            if (STATE.compareAndSet(this, PENDING, COMPLETED)) {
+                return watchdog.retire(this, COMPLETED_INDEX);
+            }
+            if (state == TIMED_OUT) {
+                watchdog.recordLate(method, System.nanoTime() - expiryNanos);
+            }
+            return null;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, PENDING, TIMED_OUT)) {
+                return;
+            }
+            Object listener = watchdog.retire(this, TIMED_OUT_INDEX);
+            Log.w(TAG, ToBMethod.name(method) + ": no callback within " + timeoutMs + " ms");
+            // The callback may implement both interfaces, the method decides which result it expects.
+            if (listener == null) {
+                return;
+            } else if (!boolResult) {
+                ((IntCallback) listener).CallBack(TIMEOUT_RESULT);
+            } else if (listener instanceof BooleanCallback) {
+                ((BooleanCallback) listener).CallBack(false);
+            } else {
+                ((BoolCallback) listener).CallBack(false);
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final Deadline[] wheel = new Deadline[WHEEL_SIZE];
+    private final RequestTable<Deadline> pending = new RequestTable<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicLongArray counters = new AtomicLongArray(ToBMethod.COUNT * STRIDE);
+    private long tick;
+    private int armed;
+    private Thread worker;
+
+    public DeadlineWatchdog() {
+        this(DEFAULT_TICK_MS);
+    }
+
+    /**
+     * @param tickMs resolution of the deadlines
+     */
+    public DeadlineWatchdog(long tickMs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs must be positive: " + tickMs);
+        }
+        this.tickNanos = tickMs * 1000000L;
+    }
+
+    /**
+     * @param method    {@link ToBMethod} id the deadline is counted for
+     * @param timeoutMs time until {@link #TIMEOUT_RESULT} is delivered, rounded up to the next tick
+     * @param callback  may be null
+     */
+    public Deadline armInt(int method, long timeoutMs, IntCallback callback) {
+        return arm(method, timeoutMs, callback, false);
+    }
+
+    /**
+     * @param method    {@link ToBMethod} id the deadline is counted for
+     * @param timeoutMs time until false is delivered, rounded up to the next tick
+     * @param callback  may be null
+     */
+    public Deadline armBool(int method, long timeoutMs, BoolCallback callback) {
+        return arm(method, timeoutMs, callback, true);
+    }
+
+    private Deadline arm(int method, long timeoutMs, Object callback, boolean boolResult) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("timeoutMs must be positive: " + timeoutMs);
+        }
+        int id;
+        do {
+            id = nextId.incrementAndGet() & Integer.MAX_VALUE;
+        } while (id == 0);
+        Deadline deadline = new Deadline(this, id, method, timeoutMs, callback, boolResult);
+        pending.put(id, deadline);
+        counters.incrementAndGet(method * STRIDE + ARMED_INDEX);
+        synchronized (this) {
+            long now = (System.nanoTime() - startNanos) / tickNanos;
+            if (armed == 0) {
+                // The wheel is empty and the worker is waiting, so skip the ticks it did not advance.
+                tick = Math.max(tick, now);
+            }
+            long expiry = (deadline.expiryNanos - startNanos + tickNanos - 1) / tickNanos;
+            deadline.expiryTick = Math.max(expiry, tick + 1);
+            link(deadline);
+            if (worker == null) {
+                worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, "ToBDeadlines");
+                worker.setDaemon(true);
+                worker.start();
+            } else if (armed == 1) {
+                notifyAll();
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Cancels the call with the id of {@link Deadline#getId()}.
+     *
+     * @return false if there is no pending call with this id
+     */
+    public boolean cancel(int id) {
+        Deadline deadline = pending.get(id);
+        return deadline != null && deadline.cancel();
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Unlinks a deadline that left the pending state and returns its callback.
+     */
+    private Object retire(Deadline deadline, int counter) {
+        synchronized (this) {
+            unlink(deadline);
+        }
+        pending.remove(deadline.id);
+        counters.incrementAndGet(deadline.method * STRIDE + counter);
+        // Only the caller that moved the deadline out of the pending state gets here.
+        Object listener = deadline.callback;
+        deadline.callback = null;
+        return listener;
+    }
+
+    private void recordLate(int method, long lateNanos) {
+        counters.incrementAndGet(method * STRIDE + LATE_INDEX);
+        int index = method * STRIDE + MAX_LATE_NS_INDEX;
+        long max;
+        do {
+            max = counters.get(index);
+        } while (lateNanos > max && !counters.compareAndSet(index, max, lateNanos));
+    }
+
+    private void link(Deadline deadline) {
+        int bucket = (int) (deadline.expiryTick & (WHEEL_SIZE - 1));
+        Deadline head = wheel[bucket];
+        deadline.prev = null;
+        deadline.next = head;
+        if (head != null) {
+            head.prev = deadline;
+        }
+        wheel[bucket] = deadline;
+        deadline.linked = true;
+        armed++;
+    }
+
+    private void unlink(Deadline deadline) {
+        if (!deadline.linked) {
+            return;
+        }
+        if (deadline.prev != null) {
+            deadline.prev.next = deadline.next;
+        } else {
+            wheel[(int) (deadline.expiryTick & (WHEEL_SIZE - 1))] = deadline.next;
+        }
+        if (deadline.next != null) {
+            deadline.next.prev = deadline.prev;
+        }
+        deadline.prev = null;
+        deadline.next = null;
+        deadline.linked = false;
+        armed--;
+    }
+
+    private void work() {
+        while (true) {
+            long next;
+            synchronized (this) {
+                while (armed == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                next = startNanos + (tick + 1) * tickNanos;
+            }
+            long remaining = next - System.nanoTime();
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                continue;
+            }
+            Deadline expired = advance();
+            // Callbacks run outside the lock, a slow one only delays the following ticks.
+            while (expired != null) {
+                Deadline following = expired.next;
+                expired.next = null;
+                try {
+                    expired.expire();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, ToBMethod.name(expired.method) + ": timeout callback failed", e);
+                }
+                expired = following;
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel to the current time and returns the deadlines that expired, chained
+     * through {@code next}.
+     */
+    private synchronized Deadline advance() {
+        long now = (System.nanoTime() - startNanos) / tickNanos;
+        Deadline expired = null;
+        while (tick < now && armed > 0) {
+            tick++;
+            Deadline deadline = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+            while (deadline != null) {
+                Deadline following = deadline.next;
+                if (deadline.expiryTick <= tick) {
+                    unlink(deadline);
+                    deadline.next = expired;
+                    expired = deadline;
+                }
+                deadline = following;
+            }
+        }
+        tick = Math.max(tick, now);
+        return expired;
+    }
+
+    /**
+     * @return the pending calls and, per method with armed deadlines, the armed, completed,
+     * timed out, late and cancelled counts and the latest late callback in ms
+     */
+    public String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("tickMs", tickNanos / 1000000L);
+            root.put("pending", pending.size());
+            JSONObject methods = new JSONObject();
+            for (int method = 0; method < ToBMethod.COUNT; method++) {
+                int base = method * STRIDE;
+                if (counters.get(base + ARMED_INDEX) == 0) {
+                    continue;
+                }
+                JSONObject entry = new JSONObject();
+                entry.put("armed", counters.get(base + ARMED_INDEX));
+                entry.put("completed", counters.get(base + COMPLETED_INDEX));
+                entry.put("timedOut", counters.get(base + TIMED_OUT_INDEX));
+                entry.put("late", counters.get(base + LATE_INDEX));
+                entry.put("cancelled", counters.get(base + CANCELLED_INDEX));
+                entry.put("maxLateMs", counters.get(base + MAX_LATE_NS_INDEX) / 1000000L);
+                methods.put(ToBMethod.name(method), entry);
+            }
+            root.put("methods", methods);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.picoxr.tobservice;
+
+import com.pvr.tobservice.model.MarkerInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed layout, reusable marker buffer shared with Unity.
+ * <p>
+ * Header (little endian): sequence(int), count(int), capacity(int), recordSize(int),
+ * writeTimeNanos(long), dropped(int), reserved(int).
+ * Record: iMarkerId(int), markerType(int), validFlag(int), reserve0(int), dTimestamp(double),
+ * posX, posY, posZ, rotationX, rotationY, rotationZ, rotationW (double).
+ * <p>
+ * The sequence is odd while a write is in progress; a reader copies the records and retries when
+ * the sequence changed or was odd. Unity reads through {@link ToBServiceUtils#getMarkerInfos()},
+ * which runs {@link #read(double[])}; a native reader of the direct buffer has to follow the same
+ * protocol with its own barriers.
+ */
+public class MarkerInfoBuffer {
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 80;
+    public static final int RECORD_DOUBLES = 11;
+
+    public static final int OFFSET_SEQUENCE = 0;
+    public static final int OFFSET_COUNT = 4;
+    public static final int OFFSET_CAPACITY = 8;
+    public static final int OFFSET_RECORD_SIZE = 12;
+    public static final int OFFSET_WRITE_TIME = 16;
+    public static final int OFFSET_DROPPED = 24;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public MarkerInfoBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        buffer = ByteBuffer.allocateDirect(HEADER_SIZE + capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_RECORD_SIZE, RECORD_SIZE);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Called from the service callback thread only.
+     */
+    public int write(MarkerInfo[] markerInfos, long timeNanos) {
+        int total = markerInfos == null ? 0 : markerInfos.length;
+        int count = Math.min(total, capacity);
+        int seq = sequence.get() + 1;
+        sequence.set(seq);
+        buffer.putInt(OFFSET_SEQUENCE, seq);
+        // The odd sequence must be visible before any record changes.
+        SeqFences.storeStoreFence();
+
+        for (int i = 0; i < count; i++) {
+            MarkerInfo info = markerInfos[i];
+            int base = HEADER_SIZE + i * RECORD_SIZE;
+            buffer.putInt(base, info.iMarkerId);
+            buffer.putInt(base + 4, info.markerType);
+            buffer.putInt(base + 8, info.validFlag);
+            buffer.putInt(base + 12, info.reserve != null && info.reserve.length > 0 ? info.reserve[0] : 0);
+            buffer.putDouble(base + 16, info.dTimestamp);
+            buffer.putDouble(base + 24, info.posX);
+            buffer.putDouble(base + 32, info.posY);
+            buffer.putDouble(base + 40, info.posZ);
+            buffer.putDouble(base + 48, info.rotationX);
+            buffer.putDouble(base + 56, info.rotationY);
+            buffer.putDouble(base + 64, info.rotationZ);
+            buffer.putDouble(base + 72, info.rotationW);
+        }
+        buffer.putInt(OFFSET_COUNT, count);
+        buffer.putLong(OFFSET_WRITE_TIME, timeNanos);
+        buffer.putInt(OFFSET_DROPPED, total - count);
+
+        seq++;
+        // The records must be complete before the even sequence is visible.
+        SeqFences.storeStoreFence();
+        buffer.putInt(OFFSET_SEQUENCE, seq);
+        sequence.set(seq);
+        return seq;
+    }
+
+    /**
+     * Copies the latest markers as {@link #RECORD_DOUBLES} doubles per marker: iMarkerId, markerType,
+     * validFlag, dTimestamp, posX, posY, posZ, rotationX, rotationY, rotationZ, rotationW.
+     *
+     * @return the number of markers copied, or -1 if no consistent snapshot could be taken
+     */
+    public int read(double[] dst) {
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int before = sequence.get();
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            int count = Math.min(buffer.getInt(OFFSET_COUNT), dst.length / RECORD_DOUBLES);
+            for (int i = 0; i < count; i++) {
+                int base = HEADER_SIZE + i * RECORD_SIZE;
+                int out = i * RECORD_DOUBLES;
+                dst[out] = buffer.getInt(base);
+                dst[out + 1] = buffer.getInt(base + 4);
+                dst[out + 2] = buffer.getInt(base + 8);
+                for (int j = 0; j < 8; j++) {
+                    dst[out + 3 + j] = buffer.getDouble(base + 16 + j * 8);
+                }
+            }
+            // The copy must be done before the sequence is checked again.
+            SeqFences.loadLoadFence();
+            if (sequence.get() == before) {
+                return count;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,348 @@
+package com.picoxr.tobservice;
+
+import com.pvr.tobservice.model.MarkerInfo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Smooths marker poses with a One-Euro filter and extrapolates them to a target time.
+ * <p>
+ * State is kept per marker id in a fixed table of primitive arrays; when the table is full the
+ * least recently seen marker is replaced. Position uses the speed, rotation the angular speed
+ * to raise the cutoff, so markers at rest are steady and moving markers lag little. Prediction
+ * applies the filtered linear and angular velocity, limited to a maximum horizon.
+ * <p>
+ * {@link #update} is called from the service callback thread only and readers use the same
+ * sequence protocol as {@link MarkerInfoBuffer}. Neither allocates.
+ */
+public class MarkerPoseFilter {
+    public static final double DEFAULT_MIN_CUTOFF = 1.0;
+    public static final double DEFAULT_BETA = 0.5;
+    public static final double DEFAULT_DERIVATIVE_CUTOFF = 1.0;
+    public static final double DEFAULT_MAX_PREDICTION = 0.05;
+    /** A marker not seen for this long restarts from its next raw pose and is read as invalid. */
+    private static final double RESET_GAP = 0.5;
+
+    private static final int TIME = 0;
+    private static final int POS = 1;
+    private static final int VEL = 4;
+    private static final int ROT = 7;
+    private static final int ANG = 11;
+    private static final int STRIDE = 14;
+
+    private final int capacity;
+    private final double secondsPerUnit;
+    private final int[] ids;
+    private final int[] types;
+    private final long[] arrivals;
+    /** Last validFlag reported for the marker. */
+    private final boolean[] valid;
+    private final double[] state;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile double minCutoff = DEFAULT_MIN_CUTOFF;
+    private volatile double beta = DEFAULT_BETA;
+    private volatile double derivativeCutoff = DEFAULT_DERIVATIVE_CUTOFF;
+    private volatile double maxPrediction = DEFAULT_MAX_PREDICTION;
+    /** Written by the callback thread only, read without the sequence to bound the copy. */
+    private volatile int count;
+
+    /**
+     * @param capacity       number of markers tracked at the same time
+     * @param secondsPerUnit length of one {@code dTimestamp} unit in seconds, e.g. 1e-9 for nanoseconds
+     */
+    public MarkerPoseFilter(int capacity, double secondsPerUnit) {
+        if (capacity <= 0 || secondsPerUnit <= 0) {
+            throw new IllegalArgumentException("capacity and secondsPerUnit must be positive");
+        }
+        this.capacity = capacity;
+        this.secondsPerUnit = secondsPerUnit;
+        ids = new int[capacity];
+        types = new int[capacity];
+        arrivals = new long[capacity];
+        valid = new boolean[capacity];
+        state = new double[capacity * STRIDE];
+    }
+
+    /**
+     * @param minCutoff        cutoff in Hz at rest, lower is smoother
+     * @param beta             cutoff increase per m/s or rad/s, higher lags less when moving
+     * @param derivativeCutoff cutoff in Hz of the velocity estimate
+     */
+    public void setParameters(double minCutoff, double beta, double derivativeCutoff) {
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+    }
+
+    /**
+     * @param seconds prediction beyond this horizon is clamped to it, 0 disables prediction
+     */
+    public void setMaxPrediction(double seconds) {
+        maxPrediction = Math.max(0, seconds);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Filters the valid markers and writes the smoothed poses back into {@code markerInfos}. Tracked
+     * markers reported invalid keep their state but are read as invalid until they are valid again.
+     */
+    public void update(MarkerInfo[] markerInfos, long arrivalNanos) {
+        if (markerInfos == null) {
+            return;
+        }
+        sequence.incrementAndGet();
+        // The odd sequence must be visible before any state changes.
+        SeqFences.storeStoreFence();
+        try {
+            for (MarkerInfo info : markerInfos) {
+                if (info == null) {
+                    continue;
+                }
+                if (info.validFlag != 0) {
+                    update(info, arrivalNanos);
+                } else {
+                    int slot = find(info.iMarkerId);
+                    if (slot >= 0) {
+                        valid[slot] = false;
+                    }
+                }
+            }
+        } finally {
+            // The state must be complete before the even sequence is visible.
+            SeqFences.storeStoreFence();
+            sequence.incrementAndGet();
+        }
+    }
+
+    private void update(MarkerInfo info, long arrivalNanos) {
+        double time = info.dTimestamp * secondsPerUnit;
+        int slot = slot(info.iMarkerId);
+        int base = slot * STRIDE;
+        double dt = time - state[base + TIME];
+        types[slot] = info.markerType;
+        valid[slot] = true;
+        if (arrivals[slot] == 0 || dt < 0 || dt > RESET_GAP) {
+            reset(base, info, time);
+            arrivals[slot] = arrivalNanos;
+            return;
+        }
+        if (dt == 0) {
+            // Repeated sample: keep the filtered pose.
+            writeBack(base, info);
+            return;
+        }
+        arrivals[slot] = arrivalNanos;
+        state[base + TIME] = time;
+
+        double derivativeAlpha = alpha(derivativeCutoff, dt);
+        double speed = 0;
+        for (int i = 0; i < 3; i++) {
+            double velocity = (value(info, POS + i) - state[base + POS + i]) / dt;
+            double filtered = state[base + VEL + i] + derivativeAlpha * (velocity - state[base + VEL + i]);
+            state[base + VEL + i] = filtered;
+            speed += filtered * filtered;
+        }
+        double positionAlpha = alpha(minCutoff + beta * Math.sqrt(speed), dt);
+        for (int i = 0; i < 3; i++) {
+            state[base + POS + i] += positionAlpha * (value(info, POS + i) - state[base + POS + i]);
+        }
+
+        double length = Math.sqrt(info.rotationX * info.rotationX + info.rotationY * info.rotationY
+                + info.rotationZ * info.rotationZ + info.rotationW * info.rotationW);
+        if (length < 1e-9) {
+            writeBack(base, info);
+            return;
+        }
+        double qx = info.rotationX / length;
+        double qy = info.rotationY / length;
+        double qz = info.rotationZ / length;
+        double qw = info.rotationW / length;
+        double px = state[base + ROT];
+        double py = state[base + ROT + 1];
+        double pz = state[base + ROT + 2];
+        double pw = state[base + ROT + 3];
+        if (qx * px + qy * py + qz * pz + qw * pw < 0) {
+            qx = -qx;
+            qy = -qy;
+            qz = -qz;
+            qw = -qw;
+        }
+        double angularSpeed = 0;
+        // Angular velocity in the reference frame from raw * conjugate(previous filtered).
+        double dx = qw * -px + qx * pw + qy * -pz - qz * -py;
+        double dy = qw * -py - qx * -pz + qy * pw + qz * -px;
+        double dz = qw * -pz + qx * -py - qy * -px + qz * pw;
+        double dw = qw * pw - qx * -px - qy * -py - qz * -pz;
+        double sin = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double scale = sin > 1e-9 ? 2 * Math.atan2(sin, dw) / (sin * dt) : 2 / dt;
+        for (int i = 0; i < 3; i++) {
+            double component = (i == 0 ? dx : i == 1 ? dy : dz) * scale;
+            double filtered = state[base + ANG + i] + derivativeAlpha * (component - state[base + ANG + i]);
+            state[base + ANG + i] = filtered;
+            angularSpeed += filtered * filtered;
+        }
+        double rotationAlpha = alpha(minCutoff + beta * Math.sqrt(angularSpeed), dt);
+        px += rotationAlpha * (qx - px);
+        py += rotationAlpha * (qy - py);
+        pz += rotationAlpha * (qz - pz);
+        pw += rotationAlpha * (qw - pw);
+        double norm = Math.sqrt(px * px + py * py + pz * pz + pw * pw);
+        state[base + ROT] = px / norm;
+        state[base + ROT + 1] = py / norm;
+        state[base + ROT + 2] = pz / norm;
+        state[base + ROT + 3] = pw / norm;
+        writeBack(base, info);
+    }
+
+    private int find(int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(int id) {
+        int oldest = 0;
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+            if (arrivals[i] < arrivals[oldest]) {
+                oldest = i;
+            }
+        }
+        int slot = count < capacity ? count++ : oldest;
+        ids[slot] = id;
+        arrivals[slot] = 0;
+        return slot;
+    }
+
+    private void reset(int base, MarkerInfo info, double time) {
+        state[base + TIME] = time;
+        for (int i = 0; i < 3; i++) {
+            state[base + POS + i] = value(info, POS + i);
+            state[base + VEL + i] = 0;
+            state[base + ANG + i] = 0;
+        }
+        double norm = Math.sqrt(info.rotationX * info.rotationX + info.rotationY * info.rotationY
+                + info.rotationZ * info.rotationZ + info.rotationW * info.rotationW);
+        if (norm < 1e-9) {
+            norm = 1;
+        }
+        state[base + ROT] = info.rotationX / norm;
+        state[base + ROT + 1] = info.rotationY / norm;
+        state[base + ROT + 2] = info.rotationZ / norm;
+        state[base + ROT + 3] = info.rotationW / norm;
+    }
+
+    private void writeBack(int base, MarkerInfo info) {
+        info.posX = state[base + POS];
+        info.posY = state[base + POS + 1];
+        info.posZ = state[base + POS + 2];
+        info.rotationX = state[base + ROT];
+        info.rotationY = state[base + ROT + 1];
+        info.rotationZ = state[base + ROT + 2];
+        info.rotationW = state[base + ROT + 3];
+    }
+
+    private static double value(MarkerInfo info, int index) {
+        return index == POS ? info.posX : index == POS + 1 ? info.posY : info.posZ;
+    }
+
+    private static double alpha(double cutoff, double dt) {
+        double tau = 1.0 / (2 * Math.PI * cutoff);
+        return 1.0 / (1.0 + tau / dt);
+    }
+
+    /**
+     * Writes the poses of all tracked markers, extrapolated to {@code targetTimestamp}, as
+     * {@link MarkerInfoBuffer#RECORD_DOUBLES} doubles per marker in the layout of
+     * {@link MarkerInfoBuffer#read(double[])}. validFlag is the last one reported for the marker, and
+     * 0 once it has not been seen for {@link #RESET_GAP} seconds; dTimestamp is the time the pose was
+     * predicted for, which is the target unless the prediction was clamped.
+     *
+     * @param targetTimestamp time in {@code dTimestamp} units the poses are predicted for
+     * @return the number of markers written, or -1 if no consistent snapshot could be taken
+     */
+    public int read(double targetTimestamp, double[] dst) {
+        return read(targetTimestamp * secondsPerUnit, 0, dst);
+    }
+
+    /**
+     * Like {@link #read(double, double[])}, for a target given relative to now: each marker is
+     * predicted by the time since its last sample arrived plus {@code aheadSeconds}, for callers
+     * without access to the marker clock.
+     */
+    public int readAhead(double aheadSeconds, double[] dst) {
+        return read(Double.NaN, aheadSeconds, dst);
+    }
+
+    private int read(double target, double aheadSeconds, double[] dst) {
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int before = sequence.get();
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            long now = System.nanoTime();
+            int n = Math.min(count, dst.length / MarkerInfoBuffer.RECORD_DOUBLES);
+            for (int i = 0; i < n; i++) {
+                int base = i * STRIDE;
+                double time = state[base + TIME];
+                double age = (now - arrivals[i]) * 1e-9;
+                double dt = Double.isNaN(target) ? age + aheadSeconds : target - time;
+                dt = Math.max(0, Math.min(dt, maxPrediction));
+                predict(base, dt, dst, i * MarkerInfoBuffer.RECORD_DOUBLES);
+                dst[i * MarkerInfoBuffer.RECORD_DOUBLES] = ids[i];
+                dst[i * MarkerInfoBuffer.RECORD_DOUBLES + 1] = types[i];
+                dst[i * MarkerInfoBuffer.RECORD_DOUBLES + 2] = valid[i] && age <= RESET_GAP ? 1 : 0;
+                dst[i * MarkerInfoBuffer.RECORD_DOUBLES + 3] = (time + dt) / secondsPerUnit;
+            }
+            // The copy must be done before the sequence is checked again.
+            SeqFences.loadLoadFence();
+            if (sequence.get() == before) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    private void predict(int base, double dt, double[] dst, int out) {
+        for (int i = 0; i < 3; i++) {
+            dst[out + 4 + i] = state[base + POS + i] + state[base + VEL + i] * dt;
+        }
+        double qx = state[base + ROT];
+        double qy = state[base + ROT + 1];
+        double qz = state[base + ROT + 2];
+        double qw = state[base + ROT + 3];
+        double ax = state[base + ANG] * dt;
+        double ay = state[base + ANG + 1] * dt;
+        double az = state[base + ANG + 2] * dt;
+        double angle = Math.sqrt(ax * ax + ay * ay + az * az);
+        if (angle > 1e-9) {
+            double s = Math.sin(angle / 2) / angle;
+            double rx = ax * s;
+            double ry = ay * s;
+            double rz = az * s;
+            double rw = Math.cos(angle / 2);
+            // Rotation by the angular velocity applied in the reference frame: r * q.
+            double x = rw * qx + rx * qw + ry * qz - rz * qy;
+            double y = rw * qy - rx * qz + ry * qw + rz * qx;
+            double z = rw * qz + rx * qy - ry * qx + rz * qw;
+            double w = rw * qw - rx * qx - ry * qy - rz * qz;
+            qx = x;
+            qy = y;
+            qz = z;
+            qw = w;
+        }
+        dst[out + 7] = qx;
+        dst[out + 8] = qy;
+        dst[out + 9] = qz;
+        dst[out + 10] = qw;
+    }
+}
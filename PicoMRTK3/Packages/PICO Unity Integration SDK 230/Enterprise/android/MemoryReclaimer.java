@@ -0,0 +1,349 @@
+package com.picoxr.tobservice;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.StringCallback;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reclaims memory from background apps when the available memory gets close to the system's low
+ * memory threshold.
+ * <p>
+ * Every interval the headroom ({@code availMem - threshold} of {@link ActivityManager.MemoryInfo})
+ * is checked. Below the minimum, the least important background processes outside the whitelist
+ * are killed, at most {@link #setLimits maxKills} per reclamation and at most one reclamation per
+ * cooldown. If no other processes are visible to this app and {@link #setWhiteListFallback} is
+ * enabled, all background apps outside the whitelist are killed through the service instead. The
+ * app itself and foreground, visible and perceptible processes are never picked. Each reclamation
+ * is recorded with the memory available before it and after a settle time.
+ * <p>
+ * Candidates come from {@link ActivityManager#getRunningAppProcesses}, which since API 22 lists
+ * only the caller's own processes unless the app is a system or privileged app. An ordinary app
+ * therefore sees no candidates: targeted kills only work for privileged apps, and other apps
+ * reclaim nothing unless the whitelist fallback is enabled.
+ */
+public class MemoryReclaimer {
+    private static final String TAG = "MemoryReclaimer";
+
+    interface Killer {
+        boolean killApps(int[] pids, String[] packageNames);
+
+        boolean killBackgroundApps(String[] whiteList);
+    }
+
+    public static final int MODE_TARGETED = 0;
+    public static final int MODE_WHITELIST = 1;
+
+    public static final long DEFAULT_MIN_HEADROOM_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_COOLDOWN_MS = 30000;
+    public static final int DEFAULT_MAX_KILLS = 3;
+    public static final long DEFAULT_SETTLE_MS = 1500;
+    private static final int HISTORY = 32;
+    private static final String[] MODE_NAMES = {"targeted", "whitelist"};
+    /** Targeted kills go by pid only, so the service does not also kill the whole package. */
+    private static final String[] NO_PACKAGES = new String[0];
+
+    private final Killer killer;
+    private volatile Context context;
+    private volatile String[] whiteList = new String[0];
+    private volatile long minHeadroomBytes = DEFAULT_MIN_HEADROOM_BYTES;
+    private volatile long cooldownMs = DEFAULT_COOLDOWN_MS;
+    private volatile int maxKills = DEFAULT_MAX_KILLS;
+    private volatile long settleMs = DEFAULT_SETTLE_MS;
+    private volatile boolean whiteListFallback;
+    private volatile StringCallback callback;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    private long lastReclaimMs = Long.MIN_VALUE / 2;
+    private long checks;
+    private long lowChecks;
+    private long rateLimited;
+    private long reclaims;
+    private long failures;
+    private long noCandidates;
+    private long totalFreed;
+    private final JSONObject[] history = new JSONObject[HISTORY];
+
+    MemoryReclaimer(Killer killer) {
+        this.killer = killer;
+    }
+
+    void setContext(Context context) {
+        this.context = context != null ? context.getApplicationContext() : null;
+    }
+
+    /**
+     * @param whiteList package names that are never killed, the app itself is always kept
+     */
+    public void setWhiteList(String[] whiteList) {
+        this.whiteList = whiteList != null ? whiteList.clone() : new String[0];
+    }
+
+    /**
+     * @param minHeadroomBytes reclaim when {@code availMem - threshold} drops below this
+     * @param cooldownMs       minimum time between two reclamations
+     * @param maxKills         processes killed per targeted reclamation
+     */
+    public void setLimits(long minHeadroomBytes, long cooldownMs, int maxKills) {
+        this.minHeadroomBytes = minHeadroomBytes;
+        this.cooldownMs = Math.max(0, cooldownMs);
+        this.maxKills = Math.max(1, maxKills);
+    }
+
+    /**
+     * @param enabled kill every background app outside the whitelist when no single process can be
+     *                picked, off by default
+     */
+    public void setWhiteListFallback(boolean enabled) {
+        whiteListFallback = enabled;
+    }
+
+    /**
+     * @param callback receives every reclamation record as JSON on the reclaimer thread, may be null
+     */
+    public void setCallback(StringCallback callback) {
+        this.callback = callback;
+    }
+
+    public synchronized void start(long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive: " + intervalMs);
+        }
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBMemoryReclaimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        task = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "check failed", e);
+                }
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    void check() {
+        ActivityManager manager = activityManager();
+        if (manager == null) {
+            return;
+        }
+        long headroom;
+        long availableBefore;
+        synchronized (this) {
+            checks++;
+            manager.getMemoryInfo(memoryInfo);
+            availableBefore = memoryInfo.availMem;
+            headroom = memoryInfo.availMem - memoryInfo.threshold;
+            if (headroom >= minHeadroomBytes && !memoryInfo.lowMemory) {
+                return;
+            }
+            lowChecks++;
+            long now = System.nanoTime() / 1000000L;
+            if (now - lastReclaimMs < cooldownMs) {
+                rateLimited++;
+                return;
+            }
+            lastReclaimMs = now;
+        }
+        reclaim(manager, availableBefore, headroom);
+    }
+
+    private void reclaim(ActivityManager manager, long availableBefore, long headroom) {
+        String[] keep = keepList();
+        List<ActivityManager.RunningAppProcessInfo> candidates = candidates(manager, keep);
+        int mode;
+        boolean issued;
+        String[] killed;
+        if (!candidates.isEmpty()) {
+            mode = MODE_TARGETED;
+            int count = Math.min(maxKills, candidates.size());
+            int[] pids = new int[count];
+            killed = new String[count];
+            for (int i = 0; i < count; i++) {
+                ActivityManager.RunningAppProcessInfo process = candidates.get(i);
+                pids[i] = process.pid;
+                killed[i] = process.pkgList != null && process.pkgList.length > 0 ? process.pkgList[0] : process.processName;
+            }
+            issued = killer.killApps(pids, NO_PACKAGES);
+        } else if (whiteListFallback) {
+            mode = MODE_WHITELIST;
+            killed = new String[0];
+            issued = killer.killBackgroundApps(keep);
+        } else {
+            synchronized (this) {
+                noCandidates++;
+            }
+            Log.w(TAG, "reclaim: no background process visible to kill");
+            return;
+        }
+        if (issued) {
+            try {
+                Thread.sleep(settleMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        JSONObject record;
+        synchronized (this) {
+            manager.getMemoryInfo(memoryInfo);
+            long freed = issued ? memoryInfo.availMem - availableBefore : 0;
+            if (issued) {
+                reclaims++;
+                totalFreed += Math.max(0, freed);
+            } else {
+                failures++;
+            }
+            try {
+                record = new JSONObject();
+                record.put("time", System.currentTimeMillis());
+                record.put("mode", MODE_NAMES[mode]);
+                record.put("issued", issued);
+                JSONArray names = new JSONArray();
+                for (String name : killed) {
+                    names.put(name);
+                }
+                record.put("killed", names);
+                record.put("headroomBefore", headroom);
+                record.put("availableBefore", availableBefore);
+                record.put("availableAfter", memoryInfo.availMem);
+                record.put("freed", freed);
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+            history[(int) ((reclaims + failures - 1) % HISTORY)] = record;
+        }
+        Log.i(TAG, "reclaim: " + record);
+        StringCallback listener = callback;
+        if (listener != null) {
+            listener.CallBack(record.toString());
+        }
+    }
+
+    private String[] keepList() {
+        String[] configured = whiteList;
+        Context appContext = context;
+        String[] keep = Arrays.copyOf(configured, configured.length + 1);
+        keep[configured.length] = appContext != null ? appContext.getPackageName() : "";
+        return keep;
+    }
+
+    private static List<ActivityManager.RunningAppProcessInfo> candidates(ActivityManager manager, String[] keep) {
+        List<ActivityManager.RunningAppProcessInfo> running = manager.getRunningAppProcesses();
+        List<ActivityManager.RunningAppProcessInfo> result = new ArrayList<>();
+        if (running == null) {
+            return result;
+        }
+        int self = android.os.Process.myPid();
+        for (ActivityManager.RunningAppProcessInfo process : running) {
+            if (process.pid == self || process.importance < ActivityManager.RunningAppProcessInfo.IMPORTANCE_SERVICE
+                    || isKept(process, keep)) {
+                continue;
+            }
+            result.add(process);
+        }
+        // Cached processes first, they are the cheapest to lose.
+        Collections.sort(result, new Comparator<ActivityManager.RunningAppProcessInfo>() {
+            @Override
+            public int compare(ActivityManager.RunningAppProcessInfo a, ActivityManager.RunningAppProcessInfo b) {
+                return b.importance - a.importance;
+            }
+        });
+        return result;
+    }
+
+    private static boolean isKept(ActivityManager.RunningAppProcessInfo process, String[] keep) {
+        for (String name : keep) {
+            if (name.equals(process.processName) || (process.processName != null && process.processName.startsWith(name + ":"))) {
+                return true;
+            }
+            if (process.pkgList != null) {
+                for (String pkg : process.pkgList) {
+                    if (name.equals(pkg)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private ActivityManager activityManager() {
+        Context appContext = context;
+        if (appContext == null) {
+            Log.e(TAG, "check: no context, bindTobService was not called");
+            return null;
+        }
+        return (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+    }
+
+    /**
+     * @return the counters and up to 32 recent reclamations, oldest first; memory is in bytes
+     */
+    public synchronized String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("running", task != null);
+            root.put("checks", checks);
+            root.put("lowChecks", lowChecks);
+            root.put("rateLimited", rateLimited);
+            root.put("reclaims", reclaims);
+            root.put("failures", failures);
+            root.put("noCandidates", noCandidates);
+            root.put("totalFreed", totalFreed);
+            JSONArray records = new JSONArray();
+            long total = reclaims + failures;
+            for (long i = Math.max(0, total - HISTORY); i < total; i++) {
+                records.put(history[(int) (i % HISTORY)]);
+            }
+            root.put("history", records);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop PicoCast bitrate: every interval the average CPU load of {@link CpuUsageSampler} and
+ * the highest current temperature of {@code pbsGetDeviceTemperatures} are compared with a high and
+ * a low threshold each.
+ * <p>
+ * Above a high threshold the bitrate is cut by {@link #DEFAULT_DECREASE_FACTOR}, at most once per
+ * down hold time. Below both low thresholds for several samples in a row it is raised by one step,
+ * at most once per up hold time. Between the thresholds it is held, so it does not oscillate
+ * around a single limit. Bitrates go through the coalescing setter of
+ * {@link ToBServiceUtils#setPicoCastMediaFormatCoalesced}.
+ */
+public class PicoCastBitrateController {
+    private static final String TAG = "PicoCastBitrate";
+
+    public static final int DECISION_HOLD = 0;
+    public static final int DECISION_DECREASE = 1;
+    public static final int DECISION_INCREASE = 2;
+
+    public static final double DEFAULT_DECREASE_FACTOR = 0.75;
+    public static final float DEFAULT_CPU_HIGH = 0.85f;
+    public static final float DEFAULT_CPU_LOW = 0.6f;
+    public static final float DEFAULT_TEMP_HIGH = 45f;
+    public static final float DEFAULT_TEMP_LOW = 40f;
+    public static final long DEFAULT_DOWN_HOLD_MS = 2000;
+    public static final long DEFAULT_UP_HOLD_MS = 10000;
+    public static final int DEFAULT_UP_SAMPLES = 3;
+    private static final int HISTORY = 16;
+    private static final String[] DECISION_NAMES = {"hold", "decrease", "increase"};
+
+    private final ToBServiceUtils service;
+    private final int minBitrate;
+    private final int maxBitrate;
+    private final int step;
+    private final long intervalMs;
+    private volatile float cpuHigh = DEFAULT_CPU_HIGH;
+    private volatile float cpuLow = DEFAULT_CPU_LOW;
+    private volatile float tempHigh = DEFAULT_TEMP_HIGH;
+    private volatile float tempLow = DEFAULT_TEMP_LOW;
+    private volatile long downHoldMs = DEFAULT_DOWN_HOLD_MS;
+    private volatile long upHoldMs = DEFAULT_UP_HOLD_MS;
+    private volatile int upSamples = DEFAULT_UP_SAMPLES;
+    private volatile int temperatureType = ToBServiceUtils.DEVICE_TEMPERATURE_CPU;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private volatile int bitrate;
+    private long lastChange;
+    private int quietSamples;
+    private float lastCpu;
+    private float lastTemperature;
+    private long samples;
+    private long increases;
+    private long decreases;
+    private long holds;
+    private long failures;
+    private final long[] historyTime = new long[HISTORY];
+    private final int[] historyDecision = new int[HISTORY];
+    private final int[] historyBitrate = new int[HISTORY];
+    private final float[] historyCpu = new float[HISTORY];
+    private final float[] historyTemperature = new float[HISTORY];
+    private int historyCount;
+
+    private final IntCallback setResult = new IntCallback() {
+        @Override
+        public void CallBack(int result) {
+            if (result != 0) {
+                synchronized (PicoCastBitrateController.this) {
+                    failures++;
+                }
+                Log.e(TAG, "setPicoCastMediaFormat returned " + result);
+            }
+        }
+    };
+
+    /**
+     * @param step       bitrate added per increase
+     * @param intervalMs sampling period, also used for the CPU sampler if it is not running
+     */
+    public PicoCastBitrateController(ToBServiceUtils service, int minBitrate, int maxBitrate, int step, long intervalMs) {
+        if (minBitrate <= 0 || maxBitrate < minBitrate || step <= 0 || intervalMs <= 0) {
+            throw new IllegalArgumentException("invalid bitrate bounds, step or interval");
+        }
+        this.service = service;
+        this.minBitrate = minBitrate;
+        this.maxBitrate = maxBitrate;
+        this.step = step;
+        this.intervalMs = intervalMs;
+        bitrate = maxBitrate;
+    }
+
+    /**
+     * @param cpuHigh  average CPU load (0..1) above which the bitrate is lowered
+     * @param cpuLow   average CPU load below which it may be raised
+     * @param tempHigh temperature in Celsius above which the bitrate is lowered
+     * @param tempLow  temperature below which it may be raised
+     */
+    public void setThresholds(float cpuHigh, float cpuLow, float tempHigh, float tempLow) {
+        if (cpuLow > cpuHigh || tempLow > tempHigh) {
+            throw new IllegalArgumentException("low thresholds must not exceed high thresholds");
+        }
+        this.cpuHigh = cpuHigh;
+        this.cpuLow = cpuLow;
+        this.tempHigh = tempHigh;
+        this.tempLow = tempLow;
+    }
+
+    /**
+     * @param downHoldMs minimum time between a change and a decrease
+     * @param upHoldMs   minimum time between a change and an increase
+     * @param upSamples  consecutive samples below the low thresholds needed for an increase
+     */
+    public void setRateLimits(long downHoldMs, long upHoldMs, int upSamples) {
+        this.downHoldMs = downHoldMs;
+        this.upHoldMs = upHoldMs;
+        this.upSamples = Math.max(1, upSamples);
+    }
+
+    /**
+     * @param type one of the {@code ToBServiceUtils.DEVICE_TEMPERATURE_*} types
+     */
+    public void setTemperatureType(int type) {
+        temperatureType = type;
+    }
+
+    /**
+     * Applies {@code initialBitrate}, clamped to the bounds, and starts adjusting it.
+     */
+    public synchronized void start(int initialBitrate) {
+        if (task != null) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBBitrateController");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        bitrate = clamp(initialBitrate);
+        lastChange = now();
+        quietSamples = 0;
+        service.getCpuUsageSampler().acquire(intervalMs);
+        service.setPicoCastMediaFormatCoalesced(bitrate, 0, setResult);
+        task = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "tick failed", e);
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops adjusting; the last bitrate stays in effect.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+            service.getCpuUsageSampler().release();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    void tick() {
+        CpuUsageSampler sampler = service.getCpuUsageSampler();
+        float cpu = sampler.getSequence() != 0 ? sampler.getAverage() : Float.NaN;
+        float temperature = maxTemperature(service.pbsGetDeviceTemperatures(temperatureType,
+                ToBServiceUtils.TEMPERATURE_CURRENT));
+        if (decide(cpu, temperature, now()) != DECISION_HOLD) {
+            service.setPicoCastMediaFormatCoalesced(bitrate, 0, setResult);
+        }
+    }
+
+    /**
+     * One control step; NaN inputs are treated as unknown and neither raise nor lower the bitrate.
+     *
+     * @return one of the {@code DECISION_*} values, {@link #getBitrate()} is the new bitrate
+     */
+    synchronized int decide(float cpu, float temperature, long nowMs) {
+        samples++;
+        lastCpu = cpu;
+        lastTemperature = temperature;
+        boolean high = cpu > cpuHigh || temperature > tempHigh;
+        boolean low = !Float.isNaN(cpu) && cpu < cpuLow && (Float.isNaN(temperature) || temperature < tempLow);
+        int decision = DECISION_HOLD;
+        int next = bitrate;
+        if (high) {
+            quietSamples = 0;
+            if (nowMs - lastChange >= downHoldMs && bitrate > minBitrate) {
+                next = clamp((int) (bitrate * DEFAULT_DECREASE_FACTOR));
+                decision = DECISION_DECREASE;
+            }
+        } else if (low) {
+            quietSamples++;
+            if (quietSamples >= upSamples && nowMs - lastChange >= upHoldMs && bitrate < maxBitrate) {
+                next = clamp(bitrate + step);
+                decision = DECISION_INCREASE;
+                quietSamples = 0;
+            }
+        } else {
+            quietSamples = 0;
+        }
+        if (decision == DECISION_HOLD) {
+            holds++;
+            return decision;
+        }
+        if (decision == DECISION_DECREASE) {
+            decreases++;
+        } else {
+            increases++;
+        }
+        bitrate = next;
+        lastChange = nowMs;
+        int slot = (int) ((increases + decreases - 1) % HISTORY);
+        historyTime[slot] = nowMs;
+        historyDecision[slot] = decision;
+        historyBitrate[slot] = next;
+        historyCpu[slot] = cpu;
+        historyTemperature[slot] = temperature;
+        historyCount = Math.min(historyCount + 1, HISTORY);
+        return decision;
+    }
+
+    private int clamp(int value) {
+        return Math.max(minBitrate, Math.min(maxBitrate, value));
+    }
+
+    private static float maxTemperature(float[] temperatures) {
+        if (temperatures == null || temperatures.length == 0) {
+            return Float.NaN;
+        }
+        float max = Float.NaN;
+        for (float temperature : temperatures) {
+            if (!(temperature <= max)) {
+                max = temperature;
+            }
+        }
+        return max;
+    }
+
+    private static Object number(float value) {
+        return Float.isNaN(value) ? JSONObject.NULL : (Object) (double) value;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /**
+     * @return the counters, the last inputs and up to 16 recent bitrate changes, oldest first;
+     * {@code ageMs} is the time since the change
+     */
+    public synchronized String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("running", task != null);
+            root.put("bitrate", bitrate);
+            root.put("minBitrate", minBitrate);
+            root.put("maxBitrate", maxBitrate);
+            root.put("samples", samples);
+            root.put("increases", increases);
+            root.put("decreases", decreases);
+            root.put("holds", holds);
+            root.put("failures", failures);
+            root.put("cpu", number(lastCpu));
+            root.put("temperature", number(lastTemperature));
+            JSONArray history = new JSONArray();
+            long changes = increases + decreases;
+            long nowMs = now();
+            for (int i = historyCount; i > 0; i--) {
+                int slot = (int) ((changes - i) % HISTORY);
+                JSONObject item = new JSONObject();
+                item.put("ageMs", nowMs - historyTime[slot]);
+                item.put("decision", DECISION_NAMES[historyDecision[slot]]);
+                item.put("bitrate", historyBitrate[slot]);
+                item.put("cpu", number(historyCpu[slot]));
+                item.put("temperature", number(historyTemperature[slot]));
+                history.put(item);
+            }
+            root.put("history", history);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.picoxr.tobservice;
+
+/**
+ * Read-through cache for the synchronous property getters of {@link ToBServiceUtils}, keyed by
+ * property and enum argument. Every write or invalidation bumps the generation of its key, so a
+ * getter that raced with a setter never stores the value it read before the write.
+ * <p>
+ * Disabled while the TTL is 0.
+ */
+public class PropertyCache {
+    public static final long MISS = Long.MIN_VALUE;
+
+    public static final int SCREEN_OFF_DELAY = 1;
+    public static final int SLEEP_DELAY = 2;
+    public static final int POWER_OFF_WITH_USB_CABLE = 3;
+    public static final int VOLUME_CHANGE_TO_HOME_AND_ENTER = 4;
+    public static final int SCREEN_CAST_AUDIO_OUTPUT = 5;
+    public static final int CUSTOMIZE_SETTINGS_TAB_STATUS = 6;
+
+    private static final int CAPACITY = 64;
+
+    private final long[] keys = new long[CAPACITY];
+    private final int[] values = new int[CAPACITY];
+    private final long[] expiry = new long[CAPACITY];
+    private final int[] generations = new int[CAPACITY];
+    private final boolean[] valid = new boolean[CAPACITY];
+    private int size;
+    private volatile long ttlNanos;
+    private long hits;
+    private long misses;
+
+    public static long key(int property, int argument) {
+        return ((long) property << 32) | (argument & 0xffffffffL);
+    }
+
+    public void setTtlMillis(long ttlMs) {
+        ttlNanos = ttlMs * 1000000L;
+        if (ttlMs <= 0) {
+            invalidateAll();
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlNanos / 1000000L;
+    }
+
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * @return the cached value, or {@link #MISS}
+     */
+    public synchronized long get(long key) {
+        if (ttlNanos <= 0) {
+            return MISS;
+        }
+        int slot = find(key);
+        if (slot >= 0 && valid[slot] && expiry[slot] - System.nanoTime() > 0) {
+            hits++;
+            return values[slot];
+        }
+        misses++;
+        return MISS;
+    }
+
+    /**
+     * Call before reading the service; pass the result to {@link #complete}.
+     */
+    public synchronized int beginLoad(long key) {
+        int slot = find(key);
+        return slot >= 0 ? generations[slot] : 0;
+    }
+
+    public synchronized void complete(long key, int generation, int value) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        int slot = slot(key);
+        if (slot < 0 || generations[slot] != generation) {
+            return;
+        }
+        store(slot, value);
+    }
+
+    /**
+     * Write-through from a setter whose new value is known.
+     */
+    public synchronized void put(long key, int value) {
+        int slot = slot(key);
+        if (slot < 0) {
+            return;
+        }
+        generations[slot]++;
+        if (ttlNanos > 0) {
+            store(slot, value);
+        } else {
+            valid[slot] = false;
+        }
+    }
+
+    public synchronized void invalidate(long key) {
+        int slot = slot(key);
+        if (slot >= 0) {
+            generations[slot]++;
+            valid[slot] = false;
+        }
+    }
+
+    /**
+     * Invalidates every entry of {@code property}, whatever its argument.
+     */
+    public synchronized void invalidateProperty(int property) {
+        for (int i = 0; i < size; i++) {
+            if ((int) (keys[i] >>> 32) == property) {
+                generations[i]++;
+                valid[i] = false;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < size; i++) {
+            generations[i]++;
+            valid[i] = false;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void store(int slot, int value) {
+        values[slot] = value;
+        expiry[slot] = System.nanoTime() + ttlNanos;
+        valid[slot] = true;
+    }
+
+    private int find(long key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        int slot = find(key);
+        if (slot < 0 && size < CAPACITY) {
+            slot = size++;
+            keys[slot] = key;
+            valid[slot] = false;
+        }
+        return slot;
+    }
+}
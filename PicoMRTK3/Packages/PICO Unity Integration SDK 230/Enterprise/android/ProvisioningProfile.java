@@ -0,0 +1,305 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.pvr.tobservice.enums.PBS_ControllerPairTimeEnum;
+import com.pvr.tobservice.enums.PBS_HomeEventEnum;
+import com.pvr.tobservice.enums.PBS_HomeFunctionEnum;
+import com.pvr.tobservice.enums.PBS_PackageControlEnum;
+import com.pvr.tobservice.enums.PBS_PowerOnOffLogoEnum;
+import com.pvr.tobservice.enums.PBS_ScreenOffDelayTimeEnum;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Declarative set of device settings applied by {@link ToBServiceUtils#applyProvisioningProfile}.
+ * Steps without an ordering constraint are dispatched together; a step starts once every step it
+ * depends on has completed. Besides the explicit {@code after} names, known service constraints
+ * are added automatically (see {@link #IMPLICIT_ORDER}).
+ * <p>
+ * JSON form: {@code {"steps":[{"name":"wifi","method":"pbsControlSetAutoConnectWIFI",
+ * "args":{"ssid":"..","pwd":".."},"after":["country"]}]}}
+ */
+public class ProvisioningProfile {
+
+    /**
+     * Pairs of methods where every step of the first must complete before a step of the second starts.
+     */
+    static final String[][] IMPLICIT_ORDER = {
+            {"pbsResetAllKeyToDefault", "pbsPropertySetHomeKey"},
+            {"pbsResetAllKeyToDefault", "pbsPropertySetHomeKeyAll"},
+            {"pbsResetAllKeyToDefault", "pbsPropertyDisablePowerKey"},
+            {"pbsSetSystemCountryCode", "pbsControlSetAutoConnectWIFI"},
+            {"pbsSetSystemCountryCode", "pbsControlSetAutoConnectWIFIWithErrorCodeCallback"},
+            {"pbsControlClearAutoConnectWIFI", "pbsControlSetAutoConnectWIFI"},
+            {"pbsControlClearAutoConnectWIFI", "pbsControlSetAutoConnectWIFIWithErrorCodeCallback"},
+    };
+
+    public interface Completion {
+        void complete(int result, boolean ok);
+    }
+
+    public abstract static class Step {
+        final String name;
+        final String method;
+        final Set<String> after = new LinkedHashSet<>();
+
+        protected Step(String name, String method) {
+            this.name = name;
+            this.method = method;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public Step after(String... names) {
+            after.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        protected abstract void run(ToBServiceUtils service, Completion completion);
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private boolean continueOnFailure;
+
+    public ProvisioningProfile add(Step step) {
+        for (Step existing : steps) {
+            if (existing.name.equals(step.name)) {
+                throw new IllegalArgumentException("duplicate step name: " + step.name);
+            }
+        }
+        steps.add(step);
+        return this;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * By default a step whose dependency failed is skipped.
+     */
+    public ProvisioningProfile setContinueOnFailure(boolean continueOnFailure) {
+        this.continueOnFailure = continueOnFailure;
+        return this;
+    }
+
+    public boolean isContinueOnFailure() {
+        return continueOnFailure;
+    }
+
+    public static ProvisioningProfile fromJson(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        ProvisioningProfile profile = new ProvisioningProfile();
+        profile.setContinueOnFailure(root.optBoolean("continueOnFailure", false));
+        JSONArray array = root.getJSONArray("steps");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            String method = item.getString("method");
+            String name = item.optString("name", method + "#" + i);
+            JSONObject args = item.optJSONObject("args");
+            if (args == null) {
+                args = new JSONObject();
+            }
+            Step step = stepFromJson(name, method, args);
+            JSONArray after = item.optJSONArray("after");
+            if (after != null) {
+                for (int j = 0; j < after.length(); j++) {
+                    step.after(after.getString(j));
+                }
+            }
+            profile.add(step);
+        }
+        return profile;
+    }
+
+    private static Step stepFromJson(String name, String method, JSONObject args) throws JSONException {
+        switch (method) {
+            case "pbsPropertySetHomeKey":
+                return setHomeKey(name, PBS_HomeEventEnum.valueOf(args.getString("event")),
+                        PBS_HomeFunctionEnum.valueOf(args.getString("function")));
+            case "pbsPropertySetHomeKeyAll":
+                return setHomeKeyAll(name, PBS_HomeEventEnum.valueOf(args.getString("event")),
+                        PBS_HomeFunctionEnum.valueOf(args.getString("function")), args.optInt("timesetup", 0),
+                        args.optString("pkg", ""), args.optString("className", ""));
+            case "pbsPropertyDisablePowerKey":
+                return disablePowerKey(name, args.optBoolean("isSingleTap", true), args.optBoolean("enable", false));
+            case "pbsPropertySetScreenOffDelay":
+                return setScreenOffDelay(name, PBS_ScreenOffDelayTimeEnum.valueOf(args.getString("time")));
+            case "pbsSetControllerPairTime":
+                return setControllerPairTime(name, PBS_ControllerPairTimeEnum.valueOf(args.getString("time")));
+            case "pbsControlSetAutoConnectWIFI":
+                return setAutoConnectWifi(name, args.getString("ssid"), args.optString("pwd", ""));
+            case "pbsControlSetAutoConnectWIFIWithErrorCodeCallback":
+                return setAutoConnectWifiWithErrorCode(name, args.getString("ssid"), args.optString("pwd", ""));
+            case "pbsControlClearAutoConnectWIFI":
+                return clearAutoConnectWifi(name);
+            case "pbsSetSystemCountryCode":
+                return setSystemCountryCode(name, args.getString("countryCode"));
+            case "pbsResetAllKeyToDefault":
+                return resetAllKeyToDefault(name);
+            case "pbsWriteConfigFileToDataLocal":
+                return writeConfigFile(name, args.getString("path"), args.getString("content"));
+            case "pbsPropertySetPowerOnOffLogo":
+                return setPowerOnOffLogo(name, PBS_PowerOnOffLogoEnum.valueOf(args.getString("logo")),
+                        args.getString("path"));
+            case "pbsControlAPPManger":
+                return appManager(name, PBS_PackageControlEnum.valueOf(args.getString("control")),
+                        args.getString("path"));
+            default:
+                throw new JSONException("unsupported provisioning method: " + method);
+        }
+    }
+
+    private static IntCallback intCompletion(final Completion completion, final int successCode) {
+        return new IntCallback() {
+            @Override
+            public void CallBack(int result) {
+                completion.complete(result, result == successCode);
+            }
+        };
+    }
+
+    private static BoolCallback boolCompletion(final Completion completion) {
+        return new BoolCallback() {
+            @Override
+            public void CallBack(Boolean result) {
+                boolean ok = result != null && result;
+                completion.complete(ok ? 1 : 0, ok);
+            }
+        };
+    }
+
+    public static Step setHomeKey(String name, final PBS_HomeEventEnum event, final PBS_HomeFunctionEnum function) {
+        return new Step(name, "pbsPropertySetHomeKey") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsPropertySetHomeKey(event, function, boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step setHomeKeyAll(String name, final PBS_HomeEventEnum event, final PBS_HomeFunctionEnum function,
+                                     final int timesetup, final String pkg, final String className) {
+        return new Step(name, "pbsPropertySetHomeKeyAll") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsPropertySetHomeKeyAll(event, function, timesetup, pkg, className, boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step disablePowerKey(String name, final boolean isSingleTap, final boolean enable) {
+        return new Step(name, "pbsPropertyDisablePowerKey") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsPropertyDisablePowerKey(isSingleTap, enable, intCompletion(completion, 0));
+            }
+        };
+    }
+
+    public static Step setScreenOffDelay(String name, final PBS_ScreenOffDelayTimeEnum time) {
+        return new Step(name, "pbsPropertySetScreenOffDelay") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsPropertySetScreenOffDelay(time, intCompletion(completion, 0));
+            }
+        };
+    }
+
+    public static Step setControllerPairTime(String name, final PBS_ControllerPairTimeEnum time) {
+        return new Step(name, "pbsSetControllerPairTime") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsSetControllerPairTime(time, intCompletion(completion, 1), 0);
+            }
+        };
+    }
+
+    public static Step setAutoConnectWifi(String name, final String ssid, final String pwd) {
+        return new Step(name, "pbsControlSetAutoConnectWIFI") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsControlSetAutoConnectWIFI(ssid, pwd, 0, boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step setAutoConnectWifiWithErrorCode(String name, final String ssid, final String pwd) {
+        return new Step(name, "pbsControlSetAutoConnectWIFIWithErrorCodeCallback") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsControlSetAutoConnectWIFIWithErrorCodeCallback(ssid, pwd, 0, intCompletion(completion, 0));
+            }
+        };
+    }
+
+    public static Step clearAutoConnectWifi(String name) {
+        return new Step(name, "pbsControlClearAutoConnectWIFI") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsControlClearAutoConnectWIFI(boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step setSystemCountryCode(String name, final String countryCode) {
+        return new Step(name, "pbsSetSystemCountryCode") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsSetSystemCountryCode(countryCode, intCompletion(completion, 0), 0);
+            }
+        };
+    }
+
+    public static Step resetAllKeyToDefault(String name) {
+        return new Step(name, "pbsResetAllKeyToDefault") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsResetAllKeyToDefault(boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step writeConfigFile(String name, final String path, final String content) {
+        return new Step(name, "pbsWriteConfigFileToDataLocal") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsWriteConfigFileToDataLocal(path, content, boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step setPowerOnOffLogo(String name, final PBS_PowerOnOffLogoEnum logo, final String path) {
+        return new Step(name, "pbsPropertySetPowerOnOffLogo") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsPropertySetPowerOnOffLogo(logo, path, 0, boolCompletion(completion));
+            }
+        };
+    }
+
+    public static Step appManager(String name, final PBS_PackageControlEnum control, final String path) {
+        return new Step(name, "pbsControlAPPManger") {
+            @Override
+            protected void run(ToBServiceUtils service, Completion completion) {
+                service.pbsControlAPPManger(control, path, 0, intCompletion(completion, 0));
+            }
+        };
+    }
+}
@@ -0,0 +1,345 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.StringCallback;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a {@link ProvisioningProfile}: dispatches every step whose dependencies are done, records
+ * per-step timings and reports one aggregated JSON result when the last step finished.
+ */
+class ProvisioningRunner {
+    private static final String TAG = "ProvisioningRunner";
+
+    static final int STATUS_PENDING = 0;
+    static final int STATUS_RUNNING = 1;
+    static final int STATUS_OK = 2;
+    static final int STATUS_FAILED = 3;
+    static final int STATUS_SKIPPED = 4;
+    static final int STATUS_TIMEOUT = 5;
+    private static final String[] STATUS_NAMES = {"pending", "running", "ok", "failed", "skipped", "timeout"};
+
+    private static ScheduledExecutorService timer;
+
+    private final ToBServiceUtils service;
+    private final List<ProvisioningProfile.Step> steps;
+    private final boolean continueOnFailure;
+    private final StringCallback callback;
+    private final int[][] dependencies;
+    private final int[] status;
+    private final int[] results;
+    private final long[] startNanos;
+    private final long[] endNanos;
+    private long beginNanos;
+    private int remaining;
+    private boolean finished;
+    /** Set while a thread runs the {@link #dispatchReady} loop. */
+    private boolean dispatching;
+    private ScheduledFuture<?> expiry;
+
+    ProvisioningRunner(ToBServiceUtils service, ProvisioningProfile profile, StringCallback callback) {
+        this.service = service;
+        this.steps = profile.getSteps();
+        this.continueOnFailure = profile.isContinueOnFailure();
+        this.callback = callback;
+        int count = steps.size();
+        status = new int[count];
+        results = new int[count];
+        startNanos = new long[count];
+        endNanos = new long[count];
+        dependencies = resolveDependencies(steps);
+        remaining = count;
+    }
+
+    private static int[][] resolveDependencies(List<ProvisioningProfile.Step> steps) {
+        int count = steps.size();
+        Map<String, Integer> indexByName = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            indexByName.put(steps.get(i).name, i);
+        }
+        boolean[][] edges = new boolean[count][count];
+        for (int i = 0; i < count; i++) {
+            ProvisioningProfile.Step step = steps.get(i);
+            for (String name : step.after) {
+                Integer dependency = indexByName.get(name);
+                if (dependency == null) {
+                    throw new IllegalArgumentException(step.name + ": unknown dependency " + name);
+                }
+                edges[i][dependency] = true;
+            }
+            for (int j = 0; j < count; j++) {
+                ProvisioningProfile.Step other = steps.get(j);
+                // Two writes of the same setting keep their declared order so the last one wins.
+                if (j < i && other.method.equals(step.method)) {
+                    edges[i][j] = true;
+                }
+                for (String[] order : ProvisioningProfile.IMPLICIT_ORDER) {
+                    if (order[0].equals(other.method) && order[1].equals(step.method)) {
+                        edges[i][j] = true;
+                    }
+                }
+            }
+        }
+        int[][] dependencies = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int n = 0;
+            for (int j = 0; j < count; j++) {
+                if (edges[i][j]) {
+                    n++;
+                }
+            }
+            dependencies[i] = new int[n];
+            n = 0;
+            for (int j = 0; j < count; j++) {
+                if (edges[i][j]) {
+                    dependencies[i][n++] = j;
+                }
+            }
+        }
+        checkAcyclic(steps, dependencies);
+        return dependencies;
+    }
+
+    private static void checkAcyclic(List<ProvisioningProfile.Step> steps, int[][] dependencies) {
+        int count = dependencies.length;
+        int[] state = new int[count];
+        int[] stack = new int[count];
+        int[] cursor = new int[count];
+        for (int root = 0; root < count; root++) {
+            if (state[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            stack[depth] = root;
+            cursor[depth] = 0;
+            state[root] = 1;
+            while (depth >= 0) {
+                int node = stack[depth];
+                if (cursor[depth] < dependencies[node].length) {
+                    int next = dependencies[node][cursor[depth]++];
+                    if (state[next] == 1) {
+                        throw new IllegalArgumentException("ordering cycle at step " + steps.get(next).name);
+                    }
+                    if (state[next] == 0) {
+                        state[next] = 1;
+                        depth++;
+                        stack[depth] = next;
+                        cursor[depth] = 0;
+                    }
+                } else {
+                    state[node] = 2;
+                    depth--;
+                }
+            }
+        }
+    }
+
+    void start(long timeoutMs) {
+        beginNanos = System.nanoTime();
+        if (service.boundService() == null) {
+            Log.e(TAG, "applyProvisioningProfile: not bind ToBService");
+            synchronized (this) {
+                for (int i = 0; i < status.length; i++) {
+                    status[i] = STATUS_SKIPPED;
+                }
+                remaining = 0;
+            }
+            finish();
+            return;
+        }
+        if (timeoutMs > 0) {
+            ScheduledFuture<?> future = timer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire();
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                expiry = future;
+            }
+        }
+        if (remaining == 0) {
+            finish();
+            return;
+        }
+        dispatchReady();
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBProvisioningTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * Runs the ready steps one after another. A step that completes while the loop is running,
+     * synchronously or on another thread, is picked up by the loop's next scan instead of starting
+     * a nested one, so synchronous completions do not recurse.
+     */
+    private void dispatchReady() {
+        synchronized (this) {
+            if (dispatching) {
+                return;
+            }
+            dispatching = true;
+        }
+        while (true) {
+            int next = -1;
+            boolean done;
+            synchronized (this) {
+                for (int i = 0; i < status.length && next < 0; i++) {
+                    if (status[i] != STATUS_PENDING) {
+                        continue;
+                    }
+                    boolean ready = true;
+                    boolean blocked = false;
+                    for (int dependency : dependencies[i]) {
+                        int s = status[dependency];
+                        if (s == STATUS_PENDING || s == STATUS_RUNNING) {
+                            ready = false;
+                        } else if (s != STATUS_OK) {
+                            blocked = true;
+                        }
+                    }
+                    if (!ready) {
+                        continue;
+                    }
+                    if (blocked && !continueOnFailure) {
+                        status[i] = STATUS_SKIPPED;
+                        remaining--;
+                        // A skipped step may unblock others; rescan from the start.
+                        i = -1;
+                        continue;
+                    }
+                    status[i] = STATUS_RUNNING;
+                    startNanos[i] = System.nanoTime();
+                    next = i;
+                }
+                done = remaining == 0;
+                if (next < 0) {
+                    dispatching = false;
+                }
+            }
+            if (next < 0) {
+                if (done) {
+                    finish();
+                }
+                return;
+            }
+            final int index = next;
+            // Calls that cannot reach the service complete with their failure value, so only a step
+            // that throws needs to be failed here.
+            try {
+                steps.get(index).run(service, new ProvisioningProfile.Completion() {
+                    @Override
+                    public void complete(int result, boolean ok) {
+                        onStepComplete(index, result, ok);
+                    }
+                });
+            } catch (RuntimeException e) {
+                Log.e(TAG, steps.get(index).name + ": " + steps.get(index).method + " failed", e);
+                onStepComplete(index, -1, false);
+            }
+        }
+    }
+
+    private void onStepComplete(int index, int result, boolean ok) {
+        synchronized (this) {
+            if (status[index] != STATUS_RUNNING) {
+                return;
+            }
+            endNanos[index] = System.nanoTime();
+            results[index] = result;
+            status[index] = ok ? STATUS_OK : STATUS_FAILED;
+            remaining--;
+        }
+        dispatchReady();
+    }
+
+    private void expire() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (int i = 0; i < status.length; i++) {
+                if (status[i] == STATUS_RUNNING) {
+                    endNanos[i] = now;
+                    status[i] = STATUS_TIMEOUT;
+                } else if (status[i] == STATUS_PENDING) {
+                    status[i] = STATUS_SKIPPED;
+                }
+            }
+            remaining = 0;
+        }
+        finish();
+    }
+
+    private void finish() {
+        String json;
+        ScheduledFuture<?> pendingExpiry;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            json = toJson();
+            pendingExpiry = expiry;
+            expiry = null;
+        }
+        if (pendingExpiry != null) {
+            pendingExpiry.cancel(false);
+        }
+        if (callback != null) {
+            callback.CallBack(json);
+        }
+    }
+
+    private String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            JSONArray array = new JSONArray();
+            boolean success = true;
+            for (int i = 0; i < status.length; i++) {
+                JSONObject item = new JSONObject();
+                item.put("name", steps.get(i).name);
+                item.put("method", steps.get(i).method);
+                item.put("status", STATUS_NAMES[status[i]]);
+                item.put("result", results[i]);
+                if (startNanos[i] != 0) {
+                    item.put("startMs", (startNanos[i] - beginNanos) / 1e6);
+                    item.put("durationMs", (endNanos[i] - startNanos[i]) / 1e6);
+                }
+                array.put(item);
+                success &= status[i] == STATUS_OK;
+            }
+            root.put("success", success);
+            root.put("totalMs", (System.nanoTime() - beginNanos) / 1e6);
+            root.put("steps", array);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
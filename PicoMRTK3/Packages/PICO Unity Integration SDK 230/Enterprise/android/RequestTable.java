@@ -0,0 +1,149 @@
+package com.picoxr.tobservice;
+
+/**
+ * Map from positive int request ids to waiters. Keys are kept unboxed in open-addressing arrays
+ * and the table is split into independently locked stripes, so concurrent callers rarely contend.
+ */
+public class RequestTable<V> {
+    private static final int STRIPES = 16;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public RequestTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(INITIAL_STRIPE_CAPACITY);
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripe(int hash) {
+        return stripes[hash & (STRIPES - 1)];
+    }
+
+    public void put(int key, V value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("key must be positive: " + key);
+        }
+        int h = hash(key);
+        stripe(h).put(key, h >>> 4, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int h = hash(key);
+        return (V) stripe(h).get(key, h >>> 4);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int h = hash(key);
+        return (V) stripe(h).remove(key, h >>> 4);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private static final class Stripe {
+        private int[] keys;
+        private Object[] values;
+        private int size;
+
+        Stripe(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+        }
+
+        synchronized void put(int key, int hash, Object value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        synchronized Object get(int key, int hash) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        synchronized Object remove(int key, int hash) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    Object value = values[i];
+                    keys[i] = 0;
+                    values[i] = null;
+                    size--;
+                    // Re-insert the rest of the probe run so lookups never stop at the hole.
+                    int j = (i + 1) & mask;
+                    while (keys[j] != 0) {
+                        int k = keys[j];
+                        Object v = values[j];
+                        keys[j] = 0;
+                        values[j] = null;
+                        size--;
+                        insert(k, v);
+                        j = (j + 1) & mask;
+                    }
+                    return value;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private void insert(int key, Object value) {
+            int mask = keys.length - 1;
+            int i = (hash(key) >>> 4) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new int[capacity];
+            values = new Object[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.picoxr.tobservice;
+
+/**
+ * Fences for the sequence protocols of {@link MarkerInfoBuffer}, {@link MarkerPoseFilter} and
+ * {@link CpuUsageSampler}, whose data is written and read with plain accesses.
+ * <p>
+ * The wrapper is built for Java 8 and runs on API levels without {@code VarHandle}, and
+ * {@code sun.misc.Unsafe} is not part of the SDK, so each fence is a volatile store followed by a
+ * volatile load. The Java memory model does not define fences, and on paper such a pair orders
+ * plain accesses only against a thread that reads the same field. It works as a full fence
+ * because of how ART and HotSpot compile volatile accesses: the store is followed by a full
+ * barrier and the load has acquire semantics. Replace it with {@code VarHandle.fullFence()} once
+ * the minimum API level has it.
+ */
+final class SeqFences {
+    private static volatile int fence;
+
+    private SeqFences() {
+    }
+
+    /**
+     * Writer side: keeps the stores before the call from becoming visible after the stores after it.
+     */
+    static void storeStoreFence() {
+        fullFence();
+    }
+
+    /**
+     * Reader side: keeps the loads before the call from being satisfied after the loads after it.
+     */
+    static void loadLoadFence() {
+        fullFence();
+    }
+
+    private static int fullFence() {
+        fence = 0;
+        return fence;
+    }
+}
@@ -0,0 +1,334 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.StringCallback;
+import com.pvr.tobservice.enums.PBS_SystemInfoEnum;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up device state right after a successful bind.
+ * <p>
+ * The configured getters run concurrently on a small pool and their results are collected into one
+ * snapshot, so the time until the state is ready is the slowest call instead of the sum of all of
+ * them. The getters go through {@link ToBServiceUtils}, so they are counted in its metrics and the
+ * property getters also fill its {@link PropertyCache}. Each bind starts a new round that replaces
+ * the snapshot; the callback is notified once, when the first round completes.
+ */
+public class StartupPrefetcher {
+    private static final String TAG = "StartupPrefetcher";
+
+    /** {@code pbsStateGetDeviceInfo} for every {@code PBS_SystemInfoEnum} value, as an object. */
+    public static final int ITEM_DEVICE_INFO = 1;
+    public static final int ITEM_SCREEN_OFF_DELAY = 1 << 1;
+    public static final int ITEM_SLEEP_DELAY = 1 << 2;
+    public static final int ITEM_POWER_KEY_STATUS = 1 << 3;
+    public static final int ITEM_ENTER_KEY_STATUS = 1 << 4;
+    public static final int ITEM_VOLUME_KEY_STATUS = 1 << 5;
+    public static final int ITEM_BACK_KEY_STATUS = 1 << 6;
+    public static final int ITEM_CURRENT_LAUNCHER = 1 << 7;
+    public static final int ITEM_SYSTEM_LANGUAGE = 1 << 8;
+    public static final int ITEM_CONTROLLER_BATTERY = 1 << 9;
+    public static final int ITEM_CONTROLLER_CONNECT_STATE = 1 << 10;
+    public static final int ITEM_POWER_OFF_WITH_USB_CABLE = 1 << 11;
+    public static final int ITEM_VOLUME_CHANGE_TO_HOME_AND_ENTER = 1 << 12;
+    public static final int ITEM_SCREEN_CAST_AUDIO_OUTPUT = 1 << 13;
+    public static final int ITEM_CONNECTED_WD = 1 << 14;
+    public static final int ITEM_ALL = (1 << 15) - 1;
+
+    public static final int DEFAULT_PARALLELISM = 6;
+    private static final String[] ITEM_NAMES = {"deviceInfo", "screenOffDelay", "sleepDelay", "powerKeyStatus",
+            "enterKeyStatus", "volumeKeyStatus", "backKeyStatus", "currentLauncher", "systemLanguage",
+            "controllerBattery", "controllerConnectState", "powerOffWithUSBCable", "volumeChangeToHomeAndEnter",
+            "screenCastAudioOutput", "connectedWD"};
+    private static final PBS_SystemInfoEnum[] SYSTEM_INFO = PBS_SystemInfoEnum.values();
+
+    private final ToBServiceUtils service;
+    private ExecutorService executor;
+    private int items;
+    private StringCallback callback;
+    private int round;
+    private int remaining;
+    private long roundStart;
+    private Object[] values = new Object[0];
+    private long[] durations = new long[0];
+    private boolean[] failed = new boolean[0];
+    private int[] taskItems = new int[0];
+    private volatile boolean ready;
+    private volatile String snapshot;
+    private long rounds;
+    private long failures;
+    private long firstReadyNanos = -1;
+    private long lastReadyNanos = -1;
+    private long lastSerialNanos;
+    private int lastSlowestItem = -1;
+
+    StartupPrefetcher(ToBServiceUtils service) {
+        this.service = service;
+    }
+
+    /**
+     * @param items    a combination of the {@code ITEM_*} flags, 0 disables the prefetch
+     * @param callback receives the snapshot once, on a prefetch thread, may be null
+     */
+    public synchronized void configure(int items, StringCallback callback) {
+        this.items = items & ITEM_ALL;
+        this.callback = callback;
+    }
+
+    public synchronized int getItems() {
+        return items;
+    }
+
+    /**
+     * Starts a round if any item is configured; a round still running is abandoned.
+     */
+    void onBind() {
+        synchronized (this) {
+            if (items == 0) {
+                return;
+            }
+            // Without a binder the wrappers return their failure value, which is not a snapshot value.
+            final boolean bound = service.boundService() != null;
+            int count = 0;
+            for (int item = 0; item < ITEM_NAMES.length; item++) {
+                if ((items & (1 << item)) != 0) {
+                    count += item == 0 ? SYSTEM_INFO.length : 1;
+                }
+            }
+            final int current = ++round;
+            taskItems = new int[count];
+            values = new Object[count];
+            durations = new long[count];
+            failed = new boolean[count];
+            remaining = count;
+            roundStart = System.nanoTime();
+            int task = 0;
+            for (int item = 0; item < ITEM_NAMES.length; item++) {
+                if ((items & (1 << item)) == 0) {
+                    continue;
+                }
+                int fanOut = item == 0 ? SYSTEM_INFO.length : 1;
+                for (int i = 0; i < fanOut; i++) {
+                    taskItems[task] = item;
+                    final int slot = task++;
+                    final int index = i;
+                    executor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            fetch(current, slot, index, bound);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private void fetch(int current, int slot, int index, boolean bound) {
+        int item;
+        synchronized (this) {
+            if (current != round) {
+                return;
+            }
+            item = taskItems[slot];
+        }
+        long start = System.nanoTime();
+        Object value = null;
+        boolean error = !bound;
+        if (bound) {
+            try {
+                value = get(item, index);
+                // A binder lost during the call makes the wrapper return its not-bound value.
+                error = service.boundService() == null;
+            } catch (RuntimeException e) {
+                error = true;
+                Log.e(TAG, ITEM_NAMES[item] + ": prefetch failed", e);
+            }
+        }
+        if (error) {
+            value = null;
+        }
+        long elapsed = System.nanoTime() - start;
+        String result;
+        StringCallback listener;
+        long readyMs;
+        synchronized (this) {
+            if (current != round) {
+                return;
+            }
+            values[slot] = value;
+            durations[slot] = elapsed;
+            failed[slot] = error;
+            if (--remaining != 0) {
+                return;
+            }
+            result = finish();
+            readyMs = lastReadyNanos / 1000000L;
+            listener = callback;
+            callback = null;
+        }
+        Log.i(TAG, "ready in " + readyMs + " ms");
+        if (listener != null) {
+            listener.CallBack(result);
+        }
+    }
+
+    private Object get(int item, int index) {
+        switch (1 << item) {
+            case ITEM_DEVICE_INFO:
+                return service.pbsStateGetDeviceInfo(SYSTEM_INFO[index], 0);
+            case ITEM_SCREEN_OFF_DELAY:
+                return service.pbsPropertyGetScreenOffDelay(0);
+            case ITEM_SLEEP_DELAY:
+                return service.pbsPropertyGetSleepDelay(0);
+            case ITEM_POWER_KEY_STATUS:
+                return service.pbsPropertyGetPowerKeyStatus(0);
+            case ITEM_ENTER_KEY_STATUS:
+                return service.pbsGetEnterKeyStatus(0);
+            case ITEM_VOLUME_KEY_STATUS:
+                return service.pbsGetVolumeKeyStatus(0);
+            case ITEM_BACK_KEY_STATUS:
+                return service.pbsGetBackKeyStatus(0);
+            case ITEM_CURRENT_LAUNCHER:
+                return service.pbsGetCurrentLauncher(0);
+            case ITEM_SYSTEM_LANGUAGE:
+                return service.pbsGetSystemLanguage(0);
+            case ITEM_CONTROLLER_BATTERY:
+                int[] battery = service.pbsGetControllerBattery(0);
+                if (battery == null) {
+                    return null;
+                }
+                JSONArray array = new JSONArray();
+                for (int level : battery) {
+                    array.put(level);
+                }
+                return array;
+            case ITEM_CONTROLLER_CONNECT_STATE:
+                return service.pbsGetControllerConnectState(0);
+            case ITEM_POWER_OFF_WITH_USB_CABLE:
+                return service.pbsControlGetPowerOffWithUSBCable(0);
+            case ITEM_VOLUME_CHANGE_TO_HOME_AND_ENTER:
+                return service.pbsIsVolumeChangeToHomeAndEnter();
+            case ITEM_SCREEN_CAST_AUDIO_OUTPUT:
+                return service.pbsGetScreenCastAudioOutput(0);
+            case ITEM_CONNECTED_WD:
+                return service.pbsGetConnectedWD();
+            default:
+                throw new IllegalArgumentException("unknown item " + item);
+        }
+    }
+
+    private String finish() {
+        long now = System.nanoTime();
+        long serial = 0;
+        long slowest = -1;
+        int slowestItem = -1;
+        JSONObject root = new JSONObject();
+        JSONObject deviceInfo = null;
+        int infoIndex = 0;
+        try {
+            for (int slot = 0; slot < values.length; slot++) {
+                int item = taskItems[slot];
+                serial += durations[slot];
+                if (durations[slot] > slowest) {
+                    slowest = durations[slot];
+                    slowestItem = item;
+                }
+                if (failed[slot]) {
+                    failures++;
+                }
+                Object value = values[slot] != null ? values[slot] : JSONObject.NULL;
+                if (item == 0) {
+                    if (deviceInfo == null) {
+                        deviceInfo = new JSONObject();
+                        root.put(ITEM_NAMES[0], deviceInfo);
+                    }
+                    // Slots of the device info item are in SYSTEM_INFO order.
+                    deviceInfo.put(SYSTEM_INFO[infoIndex++].name(), value);
+                } else {
+                    root.put(ITEM_NAMES[item], value);
+                }
+            }
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+        rounds++;
+        lastReadyNanos = now - roundStart;
+        if (firstReadyNanos < 0) {
+            firstReadyNanos = lastReadyNanos;
+        }
+        lastSerialNanos = serial;
+        lastSlowestItem = slowestItem;
+        snapshot = root.toString();
+        ready = true;
+        return snapshot;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the snapshot of the last completed round as JSON keyed by item name, failed items are
+     * null; null before the first round completed
+     */
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the time from the first successful bind until its snapshot was ready, -1 before that
+     */
+    public synchronized long getTimeToReadyMs() {
+        return firstReadyNanos < 0 ? -1 : firstReadyNanos / 1000000L;
+    }
+
+    /**
+     * @return the round counters and, for the last round, the time to ready, the sum of the call
+     * times (the cost of issuing them one after another) and the slowest item; times are in ms
+     */
+    public synchronized String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("items", items);
+            root.put("ready", ready);
+            root.put("rounds", rounds);
+            root.put("failures", failures);
+            root.put("firstTimeToReadyMs", firstReadyNanos < 0 ? -1 : firstReadyNanos / 1000000L);
+            root.put("timeToReadyMs", lastReadyNanos < 0 ? -1 : lastReadyNanos / 1000000L);
+            root.put("serialMs", lastSerialNanos / 1000000L);
+            root.put("slowestItem", lastSlowestItem >= 0 ? ITEM_NAMES[lastSlowestItem] : JSONObject.NULL);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ExecutorService executor() {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM, 10L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBPrefetch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+}
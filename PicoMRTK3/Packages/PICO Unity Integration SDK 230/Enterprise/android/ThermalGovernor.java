@@ -0,0 +1,301 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns temperature and CPU load into a throttle level from {@link #LEVEL_NONE} to
+ * {@link #LEVEL_SEVERE} that the app can shed rendering quality by before the SoC throttles.
+ * <p>
+ * Every interval the hottest current temperature is smoothed and its trend estimated; the
+ * temperature expected after the look-ahead time is compared with the device's throttling
+ * threshold. The level rises as soon as the headroom or the load crosses a limit, and falls one
+ * step at a time once the values stayed clear of the limit by a margin for several samples.
+ * {@link #getLevel()} is a volatile read and cheap enough to poll every frame.
+ */
+public class ThermalGovernor {
+    private static final String TAG = "ThermalGovernor";
+
+    public static final int LEVEL_NONE = 0;
+    public static final int LEVEL_LIGHT = 1;
+    public static final int LEVEL_MODERATE = 2;
+    public static final int LEVEL_SEVERE = 3;
+
+    public static final float DEFAULT_THROTTLING_TEMPERATURE = 50f;
+    public static final float DEFAULT_LOOKAHEAD_SECONDS = 30f;
+    public static final int DEFAULT_COOL_SAMPLES = 3;
+    /** Headroom to the throttling temperature in Celsius at which each level starts. */
+    private static final float[] HEADROOM = {8f, 4f, 1f};
+    /** Average CPU load at which each level starts; load alone never reaches the last level. */
+    private static final float[] LOAD = {0.75f, 0.9f, Float.MAX_VALUE};
+    private static final float HEADROOM_MARGIN = 2f;
+    private static final float LOAD_MARGIN = 0.1f;
+    private static final float SMOOTHING = 0.3f;
+
+    private final ToBServiceUtils service;
+    private final long intervalMs;
+    private volatile int level = LEVEL_NONE;
+    private volatile float temperature = Float.NaN;
+    private volatile float trend;
+    private volatile float headroom = Float.NaN;
+    private volatile float load = Float.NaN;
+    private volatile IntCallback callback;
+    private volatile int temperatureType = ToBServiceUtils.DEVICE_TEMPERATURE_CPU;
+    private volatile float lookaheadSeconds = DEFAULT_LOOKAHEAD_SECONDS;
+    private volatile int coolSamples = DEFAULT_COOL_SAMPLES;
+
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private float throttlingTemperature = Float.NaN;
+    private long lastSampleMs;
+    private int clearSamples;
+    private long samples;
+    private long raises;
+    private long drops;
+    private long changedAtMs;
+
+    ThermalGovernor(ToBServiceUtils service, long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive: " + intervalMs);
+        }
+        this.service = service;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * @param callback receives the new level on the governor thread, may be null
+     */
+    public void setCallback(IntCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @param type one of the {@code ToBServiceUtils.DEVICE_TEMPERATURE_*} types
+     */
+    public void setTemperatureType(int type) {
+        temperatureType = type;
+        synchronized (this) {
+            throttlingTemperature = Float.NaN;
+        }
+    }
+
+    /**
+     * @param lookaheadSeconds how far the temperature trend is extrapolated
+     * @param coolSamples      consecutive clear samples needed to drop one level
+     */
+    public void setResponse(float lookaheadSeconds, int coolSamples) {
+        this.lookaheadSeconds = Math.max(0, lookaheadSeconds);
+        this.coolSamples = Math.max(1, coolSamples);
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBThermalGovernor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        service.getCpuUsageSampler().acquire(intervalMs);
+        task = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sample();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "sample failed", e);
+                }
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling; the level is kept until the governor is started again.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+            service.getCpuUsageSampler().release();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        lastSampleMs = 0;
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the smoothed temperature in Celsius, NaN before the first sample
+     */
+    public float getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * @return the temperature trend in Celsius per minute
+     */
+    public float getTrend() {
+        return trend * 60f;
+    }
+
+    /**
+     * @return the predicted distance to the throttling temperature in Celsius
+     */
+    public float getHeadroom() {
+        return headroom;
+    }
+
+    void sample() {
+        CpuUsageSampler sampler = service.getCpuUsageSampler();
+        float cpu = sampler.getSequence() != 0 ? sampler.getAverage() : Float.NaN;
+        int type = temperatureType;
+        float limit;
+        synchronized (this) {
+            limit = throttlingTemperature;
+        }
+        if (Float.isNaN(limit)) {
+            float[] reported = service.pbsGetDeviceTemperatures(type, ToBServiceUtils.TEMPERATURE_THROTTLING);
+            if (reported != null) {
+                // Devices without a reported threshold use the default from then on.
+                limit = max(reported) > 0 ? max(reported) : DEFAULT_THROTTLING_TEMPERATURE;
+                synchronized (this) {
+                    throttlingTemperature = limit;
+                }
+            }
+        }
+        float current = max(service.pbsGetDeviceTemperatures(type, ToBServiceUtils.TEMPERATURE_CURRENT));
+        int changed = update(cpu, current, Float.isNaN(limit) ? DEFAULT_THROTTLING_TEMPERATURE : limit,
+                System.nanoTime() / 1000000L);
+        IntCallback listener = callback;
+        if (changed >= 0 && listener != null) {
+            listener.CallBack(changed);
+        }
+    }
+
+    /**
+     * One governor step; NaN inputs are ignored.
+     *
+     * @return the new level if it changed, otherwise -1
+     */
+    synchronized int update(float cpu, float celsius, float limit, long nowMs) {
+        samples++;
+        if (!Float.isNaN(celsius)) {
+            if (Float.isNaN(temperature) || lastSampleMs == 0) {
+                temperature = celsius;
+                trend = 0;
+            } else {
+                float seconds = Math.max(0.001f, (nowMs - lastSampleMs) / 1000f);
+                float smoothed = temperature + SMOOTHING * (celsius - temperature);
+                trend += SMOOTHING * ((smoothed - temperature) / seconds - trend);
+                temperature = smoothed;
+            }
+            lastSampleMs = nowMs;
+        }
+        if (!Float.isNaN(cpu)) {
+            load = Float.isNaN(load) ? cpu : load + SMOOTHING * (cpu - load);
+        }
+        float predicted = temperature + Math.max(0f, trend) * lookaheadSeconds;
+        headroom = Float.isNaN(temperature) ? Float.NaN : limit - predicted;
+
+        int target = levelFor(headroom, load, 0f, 0f);
+        int current = level;
+        if (target > current) {
+            clearSamples = 0;
+            return setLevel(target, nowMs);
+        }
+        if (levelFor(headroom, load, HEADROOM_MARGIN, LOAD_MARGIN) < current) {
+            if (++clearSamples >= coolSamples) {
+                clearSamples = 0;
+                return setLevel(current - 1, nowMs);
+            }
+        } else {
+            clearSamples = 0;
+        }
+        return -1;
+    }
+
+    private int setLevel(int next, long nowMs) {
+        if (next > level) {
+            raises++;
+        } else {
+            drops++;
+        }
+        level = next;
+        changedAtMs = nowMs;
+        return next;
+    }
+
+    private static int levelFor(float headroom, float load, float headroomMargin, float loadMargin) {
+        int result = LEVEL_NONE;
+        for (int i = 0; i < HEADROOM.length; i++) {
+            boolean hot = !Float.isNaN(headroom) && headroom - headroomMargin <= HEADROOM[i];
+            boolean busy = !Float.isNaN(load) && load + loadMargin >= LOAD[i];
+            if (hot || busy) {
+                result = i + 1;
+            }
+        }
+        return result;
+    }
+
+    private static float max(float[] values) {
+        if (values == null || values.length == 0) {
+            return Float.NaN;
+        }
+        float max = Float.NaN;
+        for (float value : values) {
+            if (!(value <= max)) {
+                max = value;
+            }
+        }
+        return max;
+    }
+
+    public synchronized String toJson() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("running", task != null);
+            root.put("level", level);
+            root.put("temperature", number(temperature));
+            root.put("trendPerMinute", number(trend * 60f));
+            root.put("headroom", number(headroom));
+            root.put("load", number(load));
+            root.put("throttlingTemperature", number(throttlingTemperature));
+            root.put("samples", samples);
+            root.put("raises", raises);
+            root.put("drops", drops);
+            root.put("levelAgeMs", changedAtMs > 0 ? System.nanoTime() / 1000000L - changedAtMs : 0);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Object number(float value) {
+        return Float.isNaN(value) ? JSONObject.NULL : (Object) (double) value;
+    }
+}
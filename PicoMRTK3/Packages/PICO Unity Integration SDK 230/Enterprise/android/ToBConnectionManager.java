@@ -0,0 +1,316 @@
+package com.picoxr.tobservice;
+
+import android.content.Context;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.IntCallback;
+import com.pvr.tobservice.ToBServiceHelper;
+import com.pvr.tobservice.interfaces.IToBServiceProxy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the binding to the ToB service: tracks an explicit connection state, rebinds with
+ * exponential backoff when the service dies and holds calls issued while not connected in a
+ * bounded queue that is replayed, in order, once the service is back.
+ */
+public class ToBConnectionManager {
+    private static final String TAG = "ToBConnectionManager";
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_BINDING = 1;
+    public static final int STATE_CONNECTED = 2;
+    public static final int STATE_RECONNECTING = 3;
+
+    public static final int DEFAULT_PENDING_CAPACITY = 64;
+    private static final long INITIAL_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private static final class PendingCall {
+        final int method;
+        final ToBServiceUtils.BinderCall call;
+
+        PendingCall(int method, ToBServiceUtils.BinderCall call) {
+            this.method = method;
+            this.call = call;
+        }
+    }
+
+    private final ToBServiceUtils service;
+    private final ArrayDeque<PendingCall> pending = new ArrayDeque<>();
+    private int pendingCapacity = DEFAULT_PENDING_CAPACITY;
+    private volatile int state = STATE_IDLE;
+    private volatile IntCallback stateCallback;
+    private Context context;
+    private IBinder linkedBinder;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> reconnectTask;
+    private int attempts;
+    private long droppedCalls;
+    private long reconnects;
+
+    private final IBinder.DeathRecipient deathRecipient = new IBinder.DeathRecipient() {
+        @Override
+        public void binderDied() {
+            Log.w(TAG, "ToBService died");
+            onDisconnected();
+        }
+    };
+
+    ToBConnectionManager(ToBServiceUtils service) {
+        this.service = service;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public void setStateCallback(IntCallback callback) {
+        stateCallback = callback;
+    }
+
+    public void setPendingCapacity(int capacity) {
+        ArrayList<PendingCall> dropped = new ArrayList<>();
+        synchronized (this) {
+            pendingCapacity = capacity;
+            while (pending.size() > Math.max(pendingCapacity, 0)) {
+                dropped.add(pending.pollFirst());
+                droppedCalls++;
+            }
+        }
+        failAll(dropped, "pending capacity reduced");
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getDroppedCalls() {
+        return droppedCalls;
+    }
+
+    public synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    void bind(Context context) {
+        synchronized (this) {
+            this.context = context;
+            attempts = 0;
+            cancelReconnect();
+            if (state == STATE_CONNECTED) {
+                return;
+            }
+        }
+        setState(STATE_BINDING);
+        ToBServiceHelper.getInstance().bindTobService(context);
+    }
+
+    void unbind() {
+        Context bound;
+        ArrayList<PendingCall> dropped = new ArrayList<>(0);
+        synchronized (this) {
+            bound = context;
+            cancelReconnect();
+            unlinkDeath();
+            if (!pending.isEmpty()) {
+                Log.w(TAG, "unbind: dropping " + pending.size() + " pending calls");
+                droppedCalls += pending.size();
+                dropped.addAll(pending);
+                pending.clear();
+            }
+            service.setServiceBinder(null);
+        }
+        failAll(dropped, "unbound");
+        setState(STATE_IDLE);
+        service.onServiceLost();
+        if (bound != null) {
+            ToBServiceHelper.getInstance().unBindTobService(bound);
+        }
+    }
+
+    /**
+     * Called with the result of {@link ToBServiceHelper.BindCallBack}.
+     */
+    void onBindResult(boolean bound) {
+        if (!bound) {
+            onDisconnected();
+            return;
+        }
+        IToBServiceProxy binder = (IToBServiceProxy) ToBServiceHelper.getInstance().getServiceBinder();
+        if (binder == null) {
+            onDisconnected();
+            return;
+        }
+        IBinder node;
+        synchronized (this) {
+            if (state == STATE_IDLE) {
+                return;
+            }
+            unlinkDeath();
+            try {
+                linkedBinder = binder.asBinder();
+                if (linkedBinder != null) {
+                    linkedBinder.linkToDeath(deathRecipient, 0);
+                }
+            } catch (RemoteException e) {
+                linkedBinder = null;
+                Log.e(TAG, "onBindResult: service already died", e);
+            }
+            attempts = 0;
+            cancelReconnect();
+            node = linkedBinder;
+        }
+        // Queued calls go to the dispatcher before new ones can see the binder. They are
+        // dispatched outside the lock, which in blocking mode runs them; calls queued meanwhile
+        // are picked up by the next round. A death or a newer bind in between takes over.
+        ArrayList<PendingCall> batch = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                if (state == STATE_IDLE || linkedBinder != node) {
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    service.setServiceBinder(binder);
+                    state = STATE_CONNECTED;
+                    break;
+                }
+                batch.addAll(pending);
+                pending.clear();
+            }
+            for (PendingCall call : batch) {
+                service.dispatch(binder, call.method, call.call);
+            }
+            batch.clear();
+        }
+        notifyState(STATE_CONNECTED);
+    }
+
+    private void onDisconnected() {
+        synchronized (this) {
+            unlinkDeath();
+            service.setServiceBinder(null);
+            if (state == STATE_IDLE) {
+                return;
+            }
+            scheduleReconnect();
+        }
+        setState(STATE_RECONNECTING);
+        service.onServiceLost();
+    }
+
+    /**
+     * @return true if the call was queued because a connection is being established
+     */
+    boolean enqueue(int method, ToBServiceUtils.BinderCall call) {
+        PendingCall dropped = null;
+        synchronized (this) {
+            if (state != STATE_BINDING && state != STATE_RECONNECTING) {
+                return false;
+            }
+            if (pendingCapacity <= 0) {
+                return false;
+            }
+            if (pending.size() >= pendingCapacity) {
+                dropped = pending.pollFirst();
+                droppedCalls++;
+            }
+            pending.addLast(new PendingCall(method, call));
+        }
+        if (dropped != null) {
+            Log.w(TAG, ToBMethod.name(dropped.method) + ": dropped, pending queue is full");
+            service.fail(dropped.method, dropped.call);
+        }
+        return true;
+    }
+
+    /**
+     * Completes dropped calls with their failure value, outside the lock since the callbacks
+     * are user code.
+     */
+    private void failAll(ArrayList<PendingCall> dropped, String reason) {
+        for (PendingCall call : dropped) {
+            Log.w(TAG, ToBMethod.name(call.method) + ": dropped, " + reason);
+            service.fail(call.method, call.call);
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (context == null || reconnectTask != null) {
+            return;
+        }
+        long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempts, 16));
+        attempts++;
+        reconnectTask = scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                Context target;
+                synchronized (ToBConnectionManager.this) {
+                    reconnectTask = null;
+                    if (state != STATE_RECONNECTING || context == null) {
+                        return;
+                    }
+                    target = context;
+                    reconnects++;
+                    // Retry again later in case this attempt never reports back.
+                    scheduleReconnect();
+                }
+                Log.i(TAG, "rebinding ToBService, attempt " + attempts);
+                ToBServiceHelper.getInstance().bindTobService(target);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelReconnect() {
+        if (reconnectTask != null) {
+            reconnectTask.cancel(false);
+            reconnectTask = null;
+        }
+    }
+
+    private void unlinkDeath() {
+        if (linkedBinder != null) {
+            linkedBinder.unlinkToDeath(deathRecipient, 0);
+            linkedBinder = null;
+        }
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBConnection");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    private void setState(int newState) {
+        synchronized (this) {
+            if (state == newState) {
+                return;
+            }
+            state = newState;
+        }
+        notifyState(newState);
+    }
+
+    private void notifyState(int newState) {
+        IntCallback callback = stateCallback;
+        if (callback != null) {
+            callback.CallBack(newState);
+        }
+    }
+}
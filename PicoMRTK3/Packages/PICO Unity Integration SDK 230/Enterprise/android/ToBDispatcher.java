@@ -0,0 +1,104 @@
+package com.picoxr.tobservice;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs binder calls on a dedicated thread with a bounded queue, so callers such as the Unity main
+ * thread never wait for a binder round-trip. Calls are executed in submission order.
+ */
+public class ToBDispatcher {
+    private static final String TAG = "ToBDispatcher";
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static volatile Executor mainThreadExecutor;
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+
+    public ToBDispatcher(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ToBDispatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static Executor mainThreadExecutor() {
+        if (mainThreadExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            mainThreadExecutor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return mainThreadExecutor;
+    }
+
+    public boolean post(String method, Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, method + ": dispatcher queue is full or shut down");
+            return false;
+        }
+    }
+
+    public <T> ToBRequest<T> submit(String method, final Callable<T> call, Executor resultExecutor,
+                                    ToBRequest.Listener<T> listener) {
+        final ToBRequest<T> request = new ToBRequest<>(method, resultExecutor != null ? resultExecutor : DIRECT, listener);
+        boolean queued = post(method, new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled()) {
+                    return;
+                }
+                try {
+                    request.complete(call.call());
+                } catch (Throwable t) {
+                    request.fail(t);
+                }
+            }
+        });
+        if (!queued) {
+            request.fail(new RejectedExecutionException(method));
+        }
+        return request;
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,95 @@
+package com.picoxr.tobservice;
+
+import com.pvr.tobservice.enums.PBS_ControllerPairTimeEnum;
+import com.pvr.tobservice.enums.PBS_CustomizeSettingsTabEnum;
+import com.pvr.tobservice.enums.PBS_DeviceControlEnum;
+import com.pvr.tobservice.enums.PBS_HomeEventEnum;
+import com.pvr.tobservice.enums.PBS_HomeFunctionEnum;
+import com.pvr.tobservice.enums.PBS_PackageControlEnum;
+import com.pvr.tobservice.enums.PBS_PowerOnOffLogoEnum;
+import com.pvr.tobservice.enums.PBS_ScreenOffDelayTimeEnum;
+import com.pvr.tobservice.enums.PBS_ScreencastAudioOutputEnum;
+import com.pvr.tobservice.enums.PBS_SleepDelayTimeEnum;
+import com.pvr.tobservice.enums.PBS_SwitchEnum;
+import com.pvr.tobservice.enums.PBS_SystemFunctionSwitchEnum;
+
+/**
+ * Ordinal to constant tables of the {@code PBS_*Enum} types taken by {@link ToBServiceUtils}.
+ * <p>
+ * {@code values()} returns a new array on every call, so the tables are copied once here and the
+ * lookups neither allocate nor go through reflection. The other direction is {@code ordinal()},
+ * which is what the getters of {@link ToBServiceUtils} return. Out of range ordinals throw
+ * {@link IllegalArgumentException}.
+ */
+public final class ToBEnums {
+    private static final PBS_DeviceControlEnum[] DEVICE_CONTROL = PBS_DeviceControlEnum.values();
+    private static final PBS_PackageControlEnum[] PACKAGE_CONTROL = PBS_PackageControlEnum.values();
+    private static final PBS_HomeEventEnum[] HOME_EVENT = PBS_HomeEventEnum.values();
+    private static final PBS_HomeFunctionEnum[] HOME_FUNCTION = PBS_HomeFunctionEnum.values();
+    private static final PBS_ScreenOffDelayTimeEnum[] SCREEN_OFF_DELAY_TIME = PBS_ScreenOffDelayTimeEnum.values();
+    private static final PBS_SleepDelayTimeEnum[] SLEEP_DELAY_TIME = PBS_SleepDelayTimeEnum.values();
+    private static final PBS_ControllerPairTimeEnum[] CONTROLLER_PAIR_TIME = PBS_ControllerPairTimeEnum.values();
+    private static final PBS_SwitchEnum[] SWITCH = PBS_SwitchEnum.values();
+    private static final PBS_SystemFunctionSwitchEnum[] SYSTEM_FUNCTION_SWITCH = PBS_SystemFunctionSwitchEnum.values();
+    private static final PBS_ScreencastAudioOutputEnum[] SCREENCAST_AUDIO_OUTPUT = PBS_ScreencastAudioOutputEnum.values();
+    private static final PBS_CustomizeSettingsTabEnum[] CUSTOMIZE_SETTINGS_TAB = PBS_CustomizeSettingsTabEnum.values();
+    private static final PBS_PowerOnOffLogoEnum[] POWER_ON_OFF_LOGO = PBS_PowerOnOffLogoEnum.values();
+
+    private ToBEnums() {
+    }
+
+    public static PBS_DeviceControlEnum deviceControl(int ordinal) {
+        return lookup(DEVICE_CONTROL, ordinal);
+    }
+
+    public static PBS_PackageControlEnum packageControl(int ordinal) {
+        return lookup(PACKAGE_CONTROL, ordinal);
+    }
+
+    public static PBS_HomeEventEnum homeEvent(int ordinal) {
+        return lookup(HOME_EVENT, ordinal);
+    }
+
+    public static PBS_HomeFunctionEnum homeFunction(int ordinal) {
+        return lookup(HOME_FUNCTION, ordinal);
+    }
+
+    public static PBS_ScreenOffDelayTimeEnum screenOffDelayTime(int ordinal) {
+        return lookup(SCREEN_OFF_DELAY_TIME, ordinal);
+    }
+
+    public static PBS_SleepDelayTimeEnum sleepDelayTime(int ordinal) {
+        return lookup(SLEEP_DELAY_TIME, ordinal);
+    }
+
+    public static PBS_ControllerPairTimeEnum controllerPairTime(int ordinal) {
+        return lookup(CONTROLLER_PAIR_TIME, ordinal);
+    }
+
+    public static PBS_SwitchEnum switchValue(int ordinal) {
+        return lookup(SWITCH, ordinal);
+    }
+
+    public static PBS_SystemFunctionSwitchEnum systemFunctionSwitch(int ordinal) {
+        return lookup(SYSTEM_FUNCTION_SWITCH, ordinal);
+    }
+
+    public static PBS_ScreencastAudioOutputEnum screencastAudioOutput(int ordinal) {
+        return lookup(SCREENCAST_AUDIO_OUTPUT, ordinal);
+    }
+
+    public static PBS_CustomizeSettingsTabEnum customizeSettingsTab(int ordinal) {
+        return lookup(CUSTOMIZE_SETTINGS_TAB, ordinal);
+    }
+
+    public static PBS_PowerOnOffLogoEnum powerOnOffLogo(int ordinal) {
+        return lookup(POWER_ON_OFF_LOGO, ordinal);
+    }
+
+    private static <E extends Enum<E>> E lookup(E[] values, int ordinal) {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IllegalArgumentException(values[0].getDeclaringClass().getSimpleName() + ": no constant with ordinal " + ordinal);
+        }
+        return values[ordinal];
+    }
+}
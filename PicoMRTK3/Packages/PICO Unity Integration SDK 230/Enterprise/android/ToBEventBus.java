@@ -0,0 +1,339 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.BooleanCallback;
+import com.picoxr.tobservice.interfaces.StringCallback;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans the events of the single-slot service callbacks (bind result, marker infos, Wi-Fi Display
+ * scans) out to any number of subscribers.
+ * <p>
+ * The subscribers of a topic are kept in a copy-on-write array, so publishing takes no lock shared
+ * with other subscribers. Each subscriber has its own queue and at most one delivery task in
+ * flight on a pool thread; a slow subscriber only fills its own queue, which then loses events
+ * according to its policy, and the publishing binder thread never waits for a callback.
+ */
+public class ToBEventBus {
+    private static final String TAG = "ToBEventBus";
+
+    public static final int TOPIC_BIND = 0;
+    public static final int TOPIC_MARKER_INFO = 1;
+    public static final int TOPIC_WD_MODELS = 2;
+    public static final int TOPIC_WD_JSON = 3;
+    public static final int TOPIC_COUNT = 4;
+
+    /** When the queue is full the oldest queued event is discarded. */
+    public static final int POLICY_DROP_OLDEST = 0;
+    /** Only the most recent event is kept, the capacity is ignored. */
+    public static final int POLICY_LATEST_ONLY = 1;
+    /** When the queue is full the new event is discarded. */
+    public static final int POLICY_BOUNDED = 2;
+
+    public static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_BATCH = 64;
+    private static final String[] TOPIC_NAMES = {"bind", "markerInfo", "wdModels", "wdJson"};
+    private static final String[] POLICY_NAMES = {"dropOldest", "latestOnly", "bounded"};
+    private static final Subscriber[] EMPTY = new Subscriber[0];
+
+    private static ExecutorService deliveryExecutor;
+
+    private final Object lock = new Object();
+    private volatile Subscriber[][] topics = new Subscriber[TOPIC_COUNT][];
+    private int nextId;
+
+    private static final class Subscriber implements Runnable {
+        final int id;
+        final int topic;
+        final int policy;
+        final StringCallback stringCallback;
+        final BoolCallback boolCallback;
+        final Object[] events;
+        final long[] enqueuedAt;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean active = true;
+        int head;
+        int size;
+        long offered;
+        long delivered;
+        long dropped;
+        long failures;
+        int maxDepth;
+        long callbackNanos;
+        long maxCallbackNanos;
+        long maxLagNanos;
+
+        Subscriber(int id, int topic, int policy, int capacity, StringCallback stringCallback,
+                   BoolCallback boolCallback) {
+            this.id = id;
+            this.topic = topic;
+            this.policy = policy;
+            this.stringCallback = stringCallback;
+            this.boolCallback = boolCallback;
+            int slots = policy == POLICY_LATEST_ONLY ? 1 : Math.max(1, capacity);
+            events = new Object[slots];
+            enqueuedAt = new long[slots];
+        }
+
+        void offer(Object event, long now) {
+            synchronized (this) {
+                if (!active) {
+                    return;
+                }
+                offered++;
+                if (size == events.length) {
+                    dropped++;
+                    if (policy == POLICY_BOUNDED) {
+                        return;
+                    }
+                    events[head] = null;
+                    head = (head + 1) % events.length;
+                    size--;
+                }
+                int tail = (head + size) % events.length;
+                events[tail] = event;
+                enqueuedAt[tail] = now;
+                size++;
+                if (size > maxDepth) {
+                    maxDepth = size;
+                }
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            try {
+                deliveryExecutor().execute(this);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                Log.e(TAG, "subscriber " + id + ": delivery rejected", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Object event;
+                long lag;
+                synchronized (this) {
+                    if (size == 0 || !active) {
+                        scheduled.set(false);
+                        return;
+                    }
+                    event = events[head];
+                    lag = System.nanoTime() - enqueuedAt[head];
+                    events[head] = null;
+                    head = (head + 1) % events.length;
+                    size--;
+                }
+                long start = System.nanoTime();
+                boolean failed = false;
+                try {
+                    deliver(event);
+                } catch (RuntimeException e) {
+                    failed = true;
+                    Log.e(TAG, TOPIC_NAMES[topic] + " subscriber " + id + ": callback failed", e);
+                }
+                long elapsed = System.nanoTime() - start;
+                synchronized (this) {
+                    if (failed) {
+                        failures++;
+                    } else {
+                        delivered++;
+                    }
+                    callbackNanos += elapsed;
+                    if (elapsed > maxCallbackNanos) {
+                        maxCallbackNanos = elapsed;
+                    }
+                    if (lag > maxLagNanos) {
+                        maxLagNanos = lag;
+                    }
+                }
+            }
+            // Yield the pool thread so a busy subscriber cannot hold it indefinitely.
+            schedule();
+        }
+
+        private void deliver(Object event) {
+            if (boolCallback != null) {
+                boolean value = Boolean.TRUE.equals(event);
+                if (boolCallback instanceof BooleanCallback) {
+                    ((BooleanCallback) boolCallback).CallBack(value);
+                } else {
+                    boolCallback.CallBack(value);
+                }
+            } else {
+                stringCallback.CallBack(String.valueOf(event));
+            }
+        }
+
+        synchronized void clear() {
+            active = false;
+            for (int i = 0; i < events.length; i++) {
+                events[i] = null;
+            }
+            size = 0;
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("topic", TOPIC_NAMES[topic]);
+            json.put("policy", POLICY_NAMES[policy]);
+            json.put("capacity", events.length);
+            json.put("depth", size);
+            json.put("maxDepth", maxDepth);
+            json.put("offered", offered);
+            json.put("delivered", delivered);
+            json.put("dropped", dropped);
+            json.put("failures", failures);
+            long calls = delivered + failures;
+            json.put("meanCallbackUs", calls > 0 ? callbackNanos / calls / 1000 : 0);
+            json.put("maxCallbackUs", maxCallbackNanos / 1000);
+            json.put("maxLagUs", maxLagNanos / 1000);
+            return json;
+        }
+    }
+
+    public ToBEventBus() {
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            topics[i] = EMPTY;
+        }
+    }
+
+    /**
+     * Subscribes to a topic; {@link #TOPIC_BIND} events are delivered as {@code "true"} or
+     * {@code "false"}.
+     *
+     * @param capacity queue length for {@link #POLICY_DROP_OLDEST} and {@link #POLICY_BOUNDED}
+     * @return the subscription id for {@link #unsubscribe(int)}, -1 if the arguments are invalid
+     */
+    public int subscribe(int topic, int policy, int capacity, StringCallback callback) {
+        return add(topic, policy, capacity, callback, null);
+    }
+
+    /**
+     * Subscribes to {@link #TOPIC_BIND}.
+     */
+    public int subscribeBind(int policy, int capacity, BoolCallback callback) {
+        return add(TOPIC_BIND, policy, capacity, null, callback);
+    }
+
+    private int add(int topic, int policy, int capacity, StringCallback stringCallback, BoolCallback boolCallback) {
+        if (topic < 0 || topic >= TOPIC_COUNT || policy < POLICY_DROP_OLDEST || policy > POLICY_BOUNDED
+                || (stringCallback == null && boolCallback == null)) {
+            Log.e(TAG, "subscribe: invalid topic " + topic + " or policy " + policy);
+            return -1;
+        }
+        synchronized (lock) {
+            Subscriber subscriber = new Subscriber(++nextId, topic, policy, capacity, stringCallback, boolCallback);
+            Subscriber[][] next = topics.clone();
+            Subscriber[] current = next[topic];
+            Subscriber[] grown = new Subscriber[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = subscriber;
+            next[topic] = grown;
+            topics = next;
+            return subscriber.id;
+        }
+    }
+
+    /**
+     * Removes a subscriber and discards its queued events. An event being delivered when this is
+     * called may still reach the callback.
+     *
+     * @return false if no subscriber has this id
+     */
+    public boolean unsubscribe(int id) {
+        synchronized (lock) {
+            Subscriber[][] current = topics;
+            for (int topic = 0; topic < TOPIC_COUNT; topic++) {
+                Subscriber[] subscribers = current[topic];
+                for (int i = 0; i < subscribers.length; i++) {
+                    if (subscribers[i].id != id) {
+                        continue;
+                    }
+                    Subscriber[] shrunk = new Subscriber[subscribers.length - 1];
+                    System.arraycopy(subscribers, 0, shrunk, 0, i);
+                    System.arraycopy(subscribers, i + 1, shrunk, i, shrunk.length - i);
+                    Subscriber[][] next = current.clone();
+                    next[topic] = shrunk.length > 0 ? shrunk : EMPTY;
+                    topics = next;
+                    subscribers[i].clear();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public boolean hasSubscribers(int topic) {
+        return topics[topic].length > 0;
+    }
+
+    /**
+     * Queues the event for every subscriber of the topic and returns without running any callback.
+     */
+    public void publish(int topic, Object event) {
+        Subscriber[] subscribers = topics[topic];
+        if (subscribers.length == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event, now);
+        }
+    }
+
+    /**
+     * @return {@code {"subscribers":[..]}} with the queue and delivery counters of every subscriber;
+     * latencies are in microseconds and {@code maxLagUs} is the longest time an event was queued
+     */
+    public String toJson() {
+        try {
+            JSONArray array = new JSONArray();
+            Subscriber[][] current = topics;
+            for (Subscriber[] subscribers : current) {
+                for (Subscriber subscriber : subscribers) {
+                    array.put(subscriber.toJson());
+                }
+            }
+            JSONObject root = new JSONObject();
+            root.put("subscribers", array);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static synchronized ExecutorService deliveryExecutor() {
+        if (deliveryExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            deliveryExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBEventBus-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return deliveryExecutor;
+    }
+}
@@ -0,0 +1,136 @@
+package com.picoxr.tobservice;
+
+/**
+ * Stable ids of the {@link ToBServiceUtils} service methods, used to index metrics and traces.
+ * New methods are appended so recorded ids keep their meaning.
+ */
+public final class ToBMethod {
+    public static final int CONTROL_SET_DEVICE_ACTION = 0;
+    public static final int CONTROL_APP_MANGER = 1;
+    public static final int CONTROL_SET_AUTO_CONNECT_WIFI = 2;
+    public static final int CONTROL_CLEAR_AUTO_CONNECT_WIFI = 3;
+    public static final int PROPERTY_SET_HOME_KEY = 4;
+    public static final int PROPERTY_SET_HOME_KEY_ALL = 5;
+    public static final int PROPERTY_DISABLE_POWER_KEY = 6;
+    public static final int PROPERTY_SET_SCREEN_OFF_DELAY = 7;
+    public static final int PROPERTY_SET_SLEEP_DELAY = 8;
+    public static final int CONTROL_SET_POWER_OFF_WITH_USB_CABLE = 9;
+    public static final int SWITCH_VOLUME_TO_HOME_AND_ENTER = 10;
+    public static final int SET_CONTROLLER_PAIR_TIME = 11;
+    public static final int GET_CONTROLLER_PAIR_TIME = 12;
+    public static final int WRITE_CONFIG_FILE_TO_DATA_LOCAL = 13;
+    public static final int RESET_ALL_KEY_TO_DEFAULT = 14;
+    public static final int SET_WD_MODELS_CALLBACK = 15;
+    public static final int SET_WD_JSON_CALLBACK = 16;
+    public static final int SWITCH_LARGE_SPACE_SCENE = 17;
+    public static final int GET_SWITCH_LARGE_SPACE_STATUS = 18;
+    public static final int EXPORT_MAPS = 19;
+    public static final int IMPORT_MAPS = 20;
+    public static final int CONTROL_SET_AUTO_CONNECT_WIFI_WITH_ERROR_CODE_CALLBACK = 21;
+    public static final int IS_VOLUME_CHANGE_TO_HOME_AND_ENTER = 22;
+    public static final int CONTROL_GET_POWER_OFF_WITH_USB_CABLE = 23;
+    public static final int PROPERTY_GET_SCREEN_OFF_DELAY = 24;
+    public static final int PROPERTY_GET_SLEEP_DELAY = 25;
+    public static final int GET_SWITCH_SYSTEM_FUNCTION_STATUS = 26;
+    public static final int PICO_CAST_INIT = 27;
+    public static final int SET_SCREEN_CAST_AUDIO_OUTPUT = 28;
+    public static final int GET_SCREEN_CAST_AUDIO_OUTPUT = 29;
+    public static final int CUSTOMIZE_SETTINGS_TAB_STATUS = 30;
+    public static final int GET_CUSTOMIZE_SETTINGS_TAB_STATUS = 31;
+    public static final int CONNECT_WIFI_DISPLAY = 32;
+    public static final int GET_CONNECTED_WD = 33;
+    public static final int GET_CPU_USAGES = 34;
+    public static final int SET_SYSTEM_COUNTRY_CODE = 35;
+    public static final int SET_IPD = 36;
+    public static final int PROPERTY_SET_POWER_ON_OFF_LOGO = 37;
+    public static final int SET_PICO_CAST_MEDIA_FORMAT = 38;
+    public static final int SET_MARKER_INFO_CALLBACK = 39;
+    public static final int GET_DEVICE_TEMPERATURES = 40;
+    public static final int KILL_APPS_BY_PID_OR_PACKAGE_NAME = 41;
+    public static final int KILL_BACKGROUND_APPS_WITH_WHITE_LIST = 42;
+    public static final int GET_CONTROLLER_BATTERY = 43;
+    public static final int GET_CONTROLLER_CONNECT_STATE = 44;
+    public static final int STATE_GET_DEVICE_INFO = 45;
+    public static final int PROPERTY_GET_POWER_KEY_STATUS = 46;
+    public static final int GET_ENTER_KEY_STATUS = 47;
+    public static final int GET_VOLUME_KEY_STATUS = 48;
+    public static final int GET_BACK_KEY_STATUS = 49;
+    public static final int GET_CURRENT_LAUNCHER = 50;
+    public static final int GET_SYSTEM_LANGUAGE = 51;
+
+    public static final int COUNT = 52;
+
+    private static final String[] NAMES = {
+            "pbsControlSetDeviceAction",
+            "pbsControlAPPManger",
+            "pbsControlSetAutoConnectWIFI",
+            "pbsControlClearAutoConnectWIFI",
+            "pbsPropertySetHomeKey",
+            "pbsPropertySetHomeKeyAll",
+            "pbsPropertyDisablePowerKey",
+            "pbsPropertySetScreenOffDelay",
+            "pbsPropertySetSleepDelay",
+            "pbsControlSetPowerOffWithUSBCable",
+            "pbsSwitchVolumeToHomeAndEnter",
+            "pbsSetControllerPairTime",
+            "pbsGetControllerPairTime",
+            "pbsWriteConfigFileToDataLocal",
+            "pbsResetAllKeyToDefault",
+            "pbsSetWDModelsCallback",
+            "pbsSetWDJsonCallback",
+            "pbsSwitchLargeSpaceScene",
+            "pbsGetSwitchLargeSpaceStatus",
+            "pbsExportMaps",
+            "pbsImportMaps",
+            "pbsControlSetAutoConnectWIFIWithErrorCodeCallback",
+            "pbsIsVolumeChangeToHomeAndEnter",
+            "pbsControlGetPowerOffWithUSBCable",
+            "pbsPropertyGetScreenOffDelay",
+            "pbsPropertyGetSleepDelay",
+            "pbsGetSwitchSystemFunctionStatus",
+            "pbsPicoCastInit",
+            "pbsSetScreenCastAudioOutput",
+            "pbsGetScreenCastAudioOutput",
+            "pbsCustomizeSettingsTabStatus",
+            "pbsGetCustomizeSettingsTabStatus",
+            "pbsConnectWifiDisplay",
+            "pbsGetConnectedWD",
+            "pbsGetCpuUsages",
+            "pbsSetSystemCountryCode",
+            "pbsSetIPD",
+            "pbsPropertySetPowerOnOffLogo",
+            "setPicoCastMediaFormat",
+            "setMarkerInfoCallback",
+            "pbsGetDeviceTemperatures",
+            "pbsKillAppsByPidOrPackageName",
+            "pbsKillBackgroundAppsWithWhiteList",
+            "pbsGetControllerBattery",
+            "pbsGetControllerConnectState",
+            "pbsStateGetDeviceInfo",
+            "pbsPropertyGetPowerKeyStatus",
+            "pbsGetEnterKeyStatus",
+            "pbsGetVolumeKeyStatus",
+            "pbsGetBackKeyStatus",
+            "pbsGetCurrentLauncher",
+            "pbsGetSystemLanguage"
+    };
+
+    private ToBMethod() {
+    }
+
+    public static String name(int method) {
+        return method >= 0 && method < NAMES.length ? NAMES[method] : "unknown#" + method;
+    }
+
+    /**
+     * @return the id of {@code name}, or -1
+     */
+    public static int forName(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,248 @@
+package com.picoxr.tobservice;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-method counters and latency histograms of {@link ToBServiceUtils}, indexed by {@link ToBMethod}.
+ * Recording only touches preallocated atomic slots and never allocates.
+ * <p>
+ * Every method owns {@link #STRIDE} consecutive longs: the counters at the {@code *_INDEX} offsets
+ * followed by {@link #BUCKETS} binder and {@link #BUCKETS} callback latency buckets. Bucket
+ * {@code i} counts latencies below {@code 2^(i+1)} microseconds, the last bucket everything above.
+ * Errors are calls that failed with a {@code RemoteException} or were rejected by the dispatcher.
+ */
+public class ToBMetrics {
+    public static final int CALLS_INDEX = 0;
+    public static final int ERRORS_INDEX = 1;
+    public static final int NOT_BOUND_INDEX = 2;
+    public static final int BINDER_COUNT_INDEX = 3;
+    public static final int BINDER_SUM_NS_INDEX = 4;
+    public static final int BINDER_MAX_NS_INDEX = 5;
+    public static final int CALLBACK_COUNT_INDEX = 6;
+    public static final int CALLBACK_SUM_NS_INDEX = 7;
+    public static final int CALLBACK_MAX_NS_INDEX = 8;
+    public static final int HEADER = 9;
+    public static final int BUCKETS = 24;
+    public static final int BINDER_BUCKETS_INDEX = HEADER;
+    public static final int CALLBACK_BUCKETS_INDEX = HEADER + BUCKETS;
+    public static final int STRIDE = HEADER + 2 * BUCKETS;
+
+    private final AtomicLongArray values;
+    private final int methods;
+    private volatile boolean enabled = true;
+    private volatile TraceRecorder recorder;
+
+    public ToBMetrics() {
+        this(ToBMethod.COUNT);
+    }
+
+    ToBMetrics(int methods) {
+        this.methods = methods;
+        this.values = new AtomicLongArray(methods * STRIDE);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Also sends calls, binder calls, errors, unbound calls and callbacks to {@code recorder}, even
+     * while disabled.
+     */
+    void setRecorder(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public int getMethodCount() {
+        return methods;
+    }
+
+    /**
+     * @return the length of the array expected by {@link #snapshot(long[])}
+     */
+    public int getSnapshotLength() {
+        return methods * STRIDE;
+    }
+
+    public void recordCall(int method) {
+        increment(method, CALLS_INDEX);
+        TraceRecorder trace = recorder;
+        if (trace != null) {
+            trace.onCall(method);
+        }
+    }
+
+    public void recordError(int method) {
+        increment(method, ERRORS_INDEX);
+        TraceRecorder trace = recorder;
+        if (trace != null) {
+            trace.onError(method);
+        }
+    }
+
+    public void recordNotBound(int method) {
+        increment(method, NOT_BOUND_INDEX);
+        TraceRecorder trace = recorder;
+        if (trace != null) {
+            trace.onNotBound(method);
+        }
+    }
+
+    public void recordBinder(int method, long nanos) {
+        recordBinder(method, nanos, Thread.currentThread().getId());
+    }
+
+    /**
+     * @param thread id of the thread that issued the call, which for calls run by the dispatcher
+     *               is not the current one
+     */
+    void recordBinder(int method, long nanos, long thread) {
+        record(method, BINDER_COUNT_INDEX, BINDER_BUCKETS_INDEX, nanos);
+        TraceRecorder trace = recorder;
+        if (trace != null) {
+            trace.onInvoke(method, thread, nanos, TraceRecorder.STATUS_OK);
+        }
+    }
+
+    /**
+     * A binder call that threw after {@code nanos}; counted as an error.
+     *
+     * @param status one of the {@code TraceRecorder.STATUS_*} failures
+     */
+    void recordBinderFailure(int method, long nanos, long thread, int status) {
+        recordError(method);
+        TraceRecorder trace = recorder;
+        if (trace != null) {
+            trace.onInvoke(method, thread, nanos, status);
+        }
+    }
+
+    public void recordCallback(int method, long nanos) {
+        record(method, CALLBACK_COUNT_INDEX, CALLBACK_BUCKETS_INDEX, nanos);
+        TraceRecorder trace = recorder;
+        if (trace != null) {
+            trace.onCallback(method, nanos);
+        }
+    }
+
+    public long get(int method, int index) {
+        return values.get(method * STRIDE + index);
+    }
+
+    /**
+     * Copies all counters into {@code dst}, which must hold {@link #getSnapshotLength()} longs.
+     * The copy is not atomic across methods.
+     *
+     * @return the number of longs written
+     */
+    public int snapshot(long[] dst) {
+        int length = Math.min(dst.length, values.length());
+        for (int i = 0; i < length; i++) {
+            dst[i] = values.get(i);
+        }
+        return length;
+    }
+
+    public void reset() {
+        for (int i = 0; i < values.length(); i++) {
+            values.set(i, 0);
+        }
+    }
+
+    /**
+     * Telemetry form: one entry per method that was called, with mean, max and percentile
+     * latencies in microseconds. Percentiles are bucket upper bounds.
+     */
+    public String toJson() {
+        try {
+            JSONArray array = new JSONArray();
+            for (int method = 0; method < methods; method++) {
+                int base = method * STRIDE;
+                long calls = values.get(base + CALLS_INDEX);
+                if (calls == 0) {
+                    continue;
+                }
+                JSONObject item = new JSONObject();
+                item.put("method", ToBMethod.name(method));
+                item.put("calls", calls);
+                item.put("errors", values.get(base + ERRORS_INDEX));
+                item.put("notBound", values.get(base + NOT_BOUND_INDEX));
+                item.put("binder", latencyJson(base + BINDER_COUNT_INDEX, base + BINDER_BUCKETS_INDEX));
+                item.put("callback", latencyJson(base + CALLBACK_COUNT_INDEX, base + CALLBACK_BUCKETS_INDEX));
+                array.put(item);
+            }
+            JSONObject root = new JSONObject();
+            root.put("methods", array);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private JSONObject latencyJson(int counters, int buckets) throws JSONException {
+        JSONObject json = new JSONObject();
+        long count = values.get(counters);
+        json.put("count", count);
+        if (count > 0) {
+            json.put("meanUs", values.get(counters + 1) / count / 1000);
+            json.put("maxUs", values.get(counters + 2) / 1000);
+            json.put("p50Us", percentile(buckets, 0.50));
+            json.put("p90Us", percentile(buckets, 0.90));
+            json.put("p99Us", percentile(buckets, 0.99));
+        }
+        return json;
+    }
+
+    private long percentile(int buckets, double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += values.get(buckets + i);
+        }
+        long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += values.get(buckets + i);
+            if (seen >= target) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << BUCKETS;
+    }
+
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 63 - Long.numberOfLeadingZeros(micros | 1);
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+
+    private void increment(int method, int index) {
+        if (enabled && method >= 0 && method < methods) {
+            values.incrementAndGet(method * STRIDE + index);
+        }
+    }
+
+    private void record(int method, int counters, int buckets, long nanos) {
+        if (!enabled || method < 0 || method >= methods) {
+            return;
+        }
+        int base = method * STRIDE;
+        values.incrementAndGet(base + counters);
+        values.addAndGet(base + counters + 1, nanos);
+        int maxIndex = base + counters + 2;
+        long max;
+        while (nanos > (max = values.get(maxIndex))) {
+            if (values.compareAndSet(maxIndex, max, nanos)) {
+                break;
+            }
+        }
+        values.incrementAndGet(base + buckets + bucket(nanos));
+    }
+}
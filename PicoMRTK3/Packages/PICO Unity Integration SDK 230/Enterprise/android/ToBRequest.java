@@ -0,0 +1,153 @@
+package com.picoxr.tobservice;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle of a binder call queued on the {@link ToBDispatcher}.
+ */
+public class ToBRequest<T> implements Future<T> {
+    public interface Listener<T> {
+        void onComplete(ToBRequest<T> request);
+    }
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final int id;
+    private final String method;
+    private final Executor executor;
+    private final Listener<T> listener;
+    private int state = PENDING;
+    private T result;
+    private Throwable error;
+
+    ToBRequest(String method, Executor executor, Listener<T> listener) {
+        this.id = NEXT_ID.getAndIncrement();
+        this.method = method;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public synchronized Throwable getError() {
+        return error;
+    }
+
+    public synchronized boolean isFailed() {
+        return state == FAILED;
+    }
+
+    /**
+     * Returns the result, or {@code defaultValue} if the request failed, was cancelled or is pending.
+     */
+    public synchronized T getResultOrDefault(T defaultValue) {
+        return state == DONE ? result : defaultValue;
+    }
+
+    void complete(T value) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return;
+            }
+            result = value;
+            state = DONE;
+            notifyAll();
+        }
+        notifyListener();
+    }
+
+    void fail(Throwable throwable) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return;
+            }
+            error = throwable;
+            state = FAILED;
+            notifyAll();
+        }
+        notifyListener();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = CANCELLED;
+            notifyAll();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (state == PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (state == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException(method);
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw new CancellationException(method);
+        }
+        if (state == FAILED) {
+            throw new ExecutionException(method, error);
+        }
+        return result;
+    }
+
+    private void notifyListener() {
+        if (listener == null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onComplete(ToBRequest.this);
+            }
+        });
+    }
+}
@@ -9,7 +9,10 @@ import android.os.RemoteException;
 import android.util.Log;
 
 import com.picoxr.tobservice.interfaces.BoolCallback;
+import com.picoxr.tobservice.interfaces.BooleanCallback;
+import com.picoxr.tobservice.interfaces.FloatArrayCallback;
 import com.picoxr.tobservice.interfaces.IntCallback;
+import com.picoxr.tobservice.interfaces.LongCallback;
 import com.picoxr.tobservice.interfaces.StringCallback;
 import com.pvr.tobservice.ToBServiceHelper;
 import com.pvr.tobservice.enums.PBS_ControllerPairTimeEnum;
@@ -20,7 +23,11 @@ import com.pvr.tobservice.enums.PBS_HomeFunctionEnum;
 import com.pvr.tobservice.enums.PBS_PackageControlEnum;
 import com.pvr.tobservice.enums.PBS_PowerOnOffLogoEnum;
 import com.pvr.tobservice.enums.PBS_ScreenOffDelayTimeEnum;
+import com.pvr.tobservice.enums.PBS_ScreencastAudioOutputEnum;
+import com.pvr.tobservice.enums.PBS_SleepDelayTimeEnum;
+import com.pvr.tobservice.enums.PBS_SwitchEnum;
 import com.pvr.tobservice.enums.PBS_SystemFunctionSwitchEnum;
+import com.pvr.tobservice.enums.PBS_SystemInfoEnum;
 import com.pvr.tobservice.enums.PBS_WifiDisplayModel;
 import com.pvr.tobservice.interfaces.IBoolCallback;
 import com.pvr.tobservice.interfaces.IGetControllerPairTimeCallback;
@@ -37,20 +44,174 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 public class ToBServiceUtils {
     private static final String TAG = "ToBServiceUtils";
-    private static ToBServiceUtils instance;
-    private BoolCallback mCallBack;
-    private static boolean isbinded = false;
+    private static final double[] NO_MARKER_INFOS = new double[0];
+    public static final int CALLBACK_THREAD_DISPATCHER = 0;
+    public static final int CALLBACK_THREAD_MAIN = 1;
+    public static final int DEVICE_TEMPERATURE_CPU = 0;
+    public static final int DEVICE_TEMPERATURE_GPU = 1;
+    public static final int DEVICE_TEMPERATURE_BATTERY = 2;
+    public static final int DEVICE_TEMPERATURE_SKIN = 3;
+    public static final int TEMPERATURE_CURRENT = 0;
+    public static final int TEMPERATURE_THROTTLING = 1;
+    public static final int TEMPERATURE_SHUTDOWN = 2;
+    public static final int TEMPERATURE_THROTTLING_BELOW_VR_MIN = 3;
+    private static volatile ToBServiceUtils instance;
+    private volatile BoolCallback mCallBack;
+    private static volatile boolean isbinded = false;
     private Context mycontext = null;
-    private IToBServiceProxy serviceBinder = null;
+    private volatile IToBServiceProxy serviceBinder = null;
+    private final ToBConnectionManager connection = new ToBConnectionManager(this);
+    private volatile MarkerInfoBuffer markerInfoBuffer;
+    private volatile IntCallback markerInfoBufferCallback;
+    private volatile StringCallback markerInfoCallback;
+    private Consumer<MarkerInfo[]> markerInfoSource;
+    private volatile MarkerPoseFilter markerPoseFilter;
+    private double[] predictedMarkerInfos = NO_MARKER_INFOS;
+    private double[] markerInfos = NO_MARKER_INFOS;
+    private volatile WifiDisplayDeltaTracker wifiDisplayDelta;
+    private volatile StringCallback wdModelsCallback;
+    private volatile StringCallback wdJsonCallback;
+    private final ToBEventBus eventBus = new ToBEventBus();
+    private final IWDModelsCallback.Stub wdModelsSource = new IWDModelsCallback.Stub() {
+        @Override
+        public void callback(List<PBS_WifiDisplayModel> models) throws RemoteException {
+            WifiDisplayDeltaTracker tracker = wifiDisplayDelta;
+            if (tracker != null) {
+                tracker.onModels(models);
+            }
+            StringCallback callback = wdModelsCallback;
+            if (callback == null && !eventBus.hasSubscribers(ToBEventBus.TOPIC_WD_MODELS)) {
+                return;
+            }
+            try {
+                JSONArray result = new JSONArray();
+                for (PBS_WifiDisplayModel member : models) {
+                    result.put(new JSONObject(member.toJson()));
+                }
+                String json = result.toString();
+                if (callback != null) {
+                    callback.CallBack(json);
+                }
+                eventBus.publish(ToBEventBus.TOPIC_WD_MODELS, json);
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+    private final IWDJsonCallback.Stub wdJsonSource = new IWDJsonCallback.Stub() {
+        @Override
+        public void callback(String json) throws RemoteException {
+            StringCallback callback = wdJsonCallback;
+            if (callback != null) {
+                callback.CallBack(json);
+            }
+            eventBus.publish(ToBEventBus.TOPIC_WD_JSON, json);
+        }
+    };
+    private volatile boolean blockingMode = false;
+    private volatile Executor callbackExecutor = ToBDispatcher.DIRECT;
+    private ToBDispatcher dispatcher;
+    private volatile CallbackMultiplexer multiplexer;
+    private final PropertyCache propertyCache = new PropertyCache();
+    private final ConfigSync configSync = new ConfigSync(new ConfigSync.Writer() {
+        @Override
+        public void write(String path, String content, BoolCallback callback) {
+            writeConfigChunk(path, content, callback);
+        }
+    });
+    private final ToBMetrics metrics = new ToBMetrics();
+    private final CoalescingSetter ipdSetter = new CoalescingSetter("pbsSetIPD", new CoalescingSetter.Issuer() {
+        @Override
+        public void issue(long value, final IntCallback done) {
+            final float ipd = Float.intBitsToFloat((int) value);
+            execute(ToBMethod.SET_IPD, new IntCall(done) {
+                @TargetApi(Build.VERSION_CODES.N)
+                @Override
+                public void call(IToBServiceProxy binder) {
+                    final long start = System.nanoTime();
+                    binder.pbsSetIPD(ipd, new Consumer<Integer>() {
+                        @Override
+                        public void accept(Integer integer) {
+                            metrics.recordCallback(ToBMethod.SET_IPD, System.nanoTime() - start);
+                            done.CallBack(integer != null ? integer : -1);
+                        }
+                    });
+                }
+            });
+        }
+    });
+    private final CoalescingSetter picoCastMediaFormatSetter = new CoalescingSetter("setPicoCastMediaFormat",
+            new CoalescingSetter.Issuer() {
+                @Override
+                public void issue(long value, final IntCallback done) {
+                    final int bitrate = (int) value;
+                    final int ext = (int) (value >> 32);
+                    execute(ToBMethod.SET_PICO_CAST_MEDIA_FORMAT, new IntCall(done) {
+                        @Override
+                        public void call(IToBServiceProxy binder) {
+                            PicoCastMediaFormat format = new PicoCastMediaFormat();
+                            format.bitrate = bitrate;
+                            done.CallBack(binder.setPicoCastMediaFormat(format, ext));
+                        }
+                    });
+                }
+            });
+    private final CoalescingSetter screenOffDelaySetter = new CoalescingSetter("pbsPropertySetScreenOffDelay",
+            new CoalescingSetter.Issuer() {
+                @Override
+                public void issue(long value, final IntCallback done) {
+                    final PBS_ScreenOffDelayTimeEnum timeEnum = ToBEnums.screenOffDelayTime((int) value);
+                    propertyCache.invalidate(PropertyCache.key(PropertyCache.SCREEN_OFF_DELAY, 0));
+                    execute(ToBMethod.PROPERTY_SET_SCREEN_OFF_DELAY, new IntCall(done) {
+                        @Override
+                        public void call(IToBServiceProxy binder) throws RemoteException {
+                            binder.pbsPropertySetScreenOffDelay(timeEnum, stub(screenOffDelayResult(timeEnum, done)));
+                        }
+                    });
+                }
+            });
+    private final long[] metricsSnapshot = new long[metrics.getSnapshotLength()];
+    private int dispatcherQueueCapacity = ToBDispatcher.DEFAULT_QUEUE_CAPACITY;
+    private final CpuUsageSampler cpuUsageSampler = new CpuUsageSampler(this);
+    private final float[] cpuUsageScratch = new float[CpuUsageSampler.MAX_CORES];
+    private float[] sampledCpuUsages = new float[0];
+    private PicoCastBitrateController bitrateController;
+    private volatile ThermalGovernor thermalGovernor;
+    private final StartupPrefetcher startupPrefetcher = new StartupPrefetcher(this);
+    private volatile ControllerStateTracker controllerStateTracker;
+    private volatile TraceRecorder traceRecorder;
+    private final DeadlineWatchdog deadlineWatchdog = new DeadlineWatchdog();
+    private CallbackMailbox callbackMailbox;
+    private final MemoryReclaimer memoryReclaimer = new MemoryReclaimer(new MemoryReclaimer.Killer() {
+        @Override
+        public boolean killApps(int[] pids, String[] packageNames) {
+            return killAppsNow(pids, packageNames);
+        }
+
+        @Override
+        public boolean killBackgroundApps(String[] whiteList) {
+            return killBackgroundAppsNow(whiteList);
+        }
+    });
 
     public static ToBServiceUtils getInstance() {
         if (instance == null) {
-            instance = new ToBServiceUtils();
+            synchronized (ToBServiceUtils.class) {
+                if (instance == null) {
+                    instance = new ToBServiceUtils();
+                }
+            }
         }
         return instance;
     }
@@ -61,471 +222,1049 @@ public class ToBServiceUtils {
 
     public void setBindCallBack(BoolCallback callBack) {
         this.mCallBack = callBack;
+        registerBindCallBack();
+    }
+
+    private void registerBindCallBack() {
         ToBServiceHelper.getInstance().setBindCallBack(new ToBServiceHelper.BindCallBack() {
             @Override
             public void bindCallBack(Boolean aBoolean) {
                 isbinded = aBoolean;
-                mCallBack.CallBack(aBoolean);
+                connection.onBindResult(aBoolean);
+                if (aBoolean) {
+                    restoreEventSources();
+                    startupPrefetcher.onBind();
+                    ControllerStateTracker tracker = controllerStateTracker;
+                    if (tracker != null) {
+                        tracker.onBind();
+                    }
+                }
+                BoolCallback callBack = mCallBack;
+                if (callBack != null) {
+                    callBack.CallBack(aBoolean);
+                }
+                eventBus.publish(ToBEventBus.TOPIC_BIND, aBoolean);
             }
         });
     }
 
+    /**
+     * Starts binding without waiting for the result. Calls made before the service is connected are
+     * queued and replayed once it is; the connection is re-established automatically if the service dies.
+     */
     public void bindTobService(Context context) {
         mycontext = context;
-        ToBServiceHelper.getInstance().bindTobService(mycontext);
+        configSync.setContext(context);
+        memoryReclaimer.setContext(context);
+        registerBindCallBack();
+        connection.bind(mycontext);
     }
 
     public void unBindTobService() {
-        if (isbinded) {
+        if (isbinded || connection.getState() != ToBConnectionManager.STATE_IDLE) {
             isbinded = false;
-            ToBServiceHelper.getInstance().unBindTobService(mycontext);
-            serviceBinder = null;
+            connection.unbind();
         } else {
             Log.i(TAG, "service is not binded");
         }
     }
 
     public IToBServiceProxy getServiceBinder() {
-        serviceBinder = (IToBServiceProxy) ToBServiceHelper.getInstance().getServiceBinder();
+        IToBServiceProxy binder = (IToBServiceProxy) ToBServiceHelper.getInstance().getServiceBinder();
+        if (binder != null) {
+            setServiceBinder(binder);
+        }
+        return binder;
+    }
+
+    IToBServiceProxy boundService() {
         return serviceBinder;
     }
 
-    public void pbsControlSetDeviceAction(PBS_DeviceControlEnum deviceControlEnum, IntCallback callback) {
+    void setServiceBinder(IToBServiceProxy binder) {
+        serviceBinder = binder;
+    }
 
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsControlSetDeviceAction(deviceControlEnum, new IIntCallback.Stub() {
-                        @Override
-                        public void callback(int i) throws RemoteException {
-                            callback.CallBack(i);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Log.e(TAG, "pbsControlSetDeviceAction: not bind ToBService");
+    /**
+     * Called by the {@link ToBConnectionManager} once the binder is gone. Results of calls that were
+     * in flight will not arrive, so the setters stop waiting for them.
+     */
+    void onServiceLost() {
+        ipdSetter.reset();
+        picoCastMediaFormatSetter.reset();
+        screenOffDelaySetter.reset();
+    }
+
+    public ToBConnectionManager getConnectionManager() {
+        return connection;
+    }
+
+    /**
+     * @return one of the {@code ToBConnectionManager.STATE_*} constants
+     */
+    public int getConnectionState() {
+        return connection.getState();
+    }
+
+    public void setConnectionStateCallback(IntCallback callback) {
+        connection.setStateCallback(callback);
+    }
+
+    public void setPendingCallCapacity(int capacity) {
+        connection.setPendingCapacity(capacity);
+    }
+
+    /**
+     * A binder call run through {@link #execute}. {@link #fail()} completes the caller when the call
+     * throws or never reaches the service; it is not called once the service took the call.
+     */
+    abstract static class BinderCall {
+        /** {@link ToBMethod} id, set by {@link #execute}. */
+        int method = -1;
+        /** Id of the thread that issued the call, set by {@link #execute}. */
+        long thread;
+
+        abstract void call(IToBServiceProxy binder) throws RemoteException;
+
+        void fail() {
         }
     }
 
-    public void pbsControlAPPManger(PBS_PackageControlEnum packageControlEnum, String path, int ext,
-                                    IntCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsControlAPPManger(packageControlEnum, path, ext, new IIntCallback.Stub() {
-                        @Override
-                        public void callback(int i) throws RemoteException {
-                            callback.CallBack(i);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
+    /**
+     * A call whose caller waits for an {@link IntCallback}, completed with -1 on failure. The stub
+     * handed to the service is created with {@link #stub}, so a failed call returns it to the
+     * {@link CallbackMultiplexer}.
+     */
+    abstract class IntCall extends BinderCall {
+        final IntCallback callback;
+        private IIntCallback.Stub stub;
+
+        IntCall(IntCallback callback) {
+            this.callback = callback;
+        }
+
+        IIntCallback.Stub stub(IntCallback result) {
+            stub = intStub(method, result);
+            return stub;
+        }
+
+        @Override
+        void fail() {
+            releaseStub(stub);
+            if (callback != null) {
+                callback.CallBack(-1);
             }
-        } else {
-            Log.e(TAG, "pbsControlAPPManger: not bind ToBService");
         }
     }
 
-    public void pbsControlSetAutoConnectWIFI(String ssid, String pwd, int ext, BoolCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsControlSetAutoConnectWIFI(ssid, pwd, ext, new IBoolCallback.Stub() {
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
+    /**
+     * A call whose caller waits for a {@link BoolCallback}, completed with false on failure.
+     */
+    abstract class BoolCall extends BinderCall {
+        final BoolCallback callback;
+        private IBoolCallback.Stub stub;
+
+        BoolCall(BoolCallback callback) {
+            this.callback = callback;
+        }
+
+        IBoolCallback.Stub stub(BoolCallback result) {
+            stub = boolStub(method, result);
+            return stub;
+        }
+
+        @Override
+        void fail() {
+            releaseStub(stub);
+            if (callback instanceof BooleanCallback) {
+                ((BooleanCallback) callback).CallBack(false);
+            } else if (callback != null) {
+                callback.CallBack(false);
             }
-        } else {
-            Log.e(TAG, "pbsControlSetAutoConnectWIFI: not bind ToBService");
         }
     }
 
-    public void pbsControlClearAutoConnectWIFI(BoolCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsControlClearAutoConnectWIFI(new IBoolCallback.Stub() {
+    /**
+     * A call whose caller waits for a {@link StringCallback}, completed with null on failure.
+     */
+    abstract class StringCall extends BinderCall {
+        final StringCallback callback;
+        private IStringCallback.Stub stub;
 
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
+        StringCall(StringCallback callback) {
+            this.callback = callback;
+        }
+
+        IStringCallback.Stub stub(StringCallback result) {
+            stub = stringStub(method, result);
+            return stub;
+        }
+
+        @Override
+        void fail() {
+            releaseStub(stub);
+            if (callback != null) {
+                callback.CallBack(null);
             }
-        } else {
-            Log.e(TAG, "pbsControlClearAutoConnectWIFI: not bind ToBService");
         }
     }
 
-    public void pbsPropertySetHomeKey(PBS_HomeEventEnum event, PBS_HomeFunctionEnum function, BoolCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsPropertySetHomeKey(event, function, new IBoolCallback.Stub() {
+    /**
+     * Compatibility mode: when enabled, the binder calls of the callback based methods run on the
+     * calling thread as they used to instead of on the {@link ToBDispatcher} thread.
+     */
+    public void setBlockingMode(boolean blocking) {
+        blockingMode = blocking;
+    }
 
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Log.e(TAG, "pbsPropertySetHomeKey: not bind ToBService");
+    public boolean isBlockingMode() {
+        return blockingMode;
+    }
+
+    /**
+     * Sets the executor that the results of the {@code *Async} getters are delivered on. It does
+     * not cover the callback based methods: the service answers those on a binder thread, and
+     * their failure value is delivered on the thread where the call failed, usually the dispatcher
+     * thread or the calling thread.
+     *
+     * @param executor null delivers on the dispatcher thread
+     */
+    public void setCallbackExecutor(Executor executor) {
+        callbackExecutor = executor != null ? executor : ToBDispatcher.DIRECT;
+    }
+
+    /**
+     * Selects the thread that the results of the {@code *Async} getters are delivered on:
+     * {@link #CALLBACK_THREAD_DISPATCHER} or {@link #CALLBACK_THREAD_MAIN}. See
+     * {@link #setCallbackExecutor} for the callback based methods.
+     */
+    public void setCallbackThread(int thread) {
+        setCallbackExecutor(thread == CALLBACK_THREAD_MAIN ? ToBDispatcher.mainThreadExecutor() : ToBDispatcher.DIRECT);
+    }
+
+    public synchronized void setDispatcherQueueCapacity(int capacity) {
+        if (dispatcher != null) {
+            Log.w(TAG, "setDispatcherQueueCapacity: dispatcher already started");
+            return;
         }
+        dispatcherQueueCapacity = capacity;
     }
 
-    public void pbsPropertySetHomeKeyAll(PBS_HomeEventEnum event, PBS_HomeFunctionEnum function, int timesetup,
-                                         String pkg, String className, BoolCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsPropertySetHomeKeyAll(event, function, timesetup, pkg, className, new IBoolCallback.Stub() {
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
+    public synchronized ToBDispatcher getDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = new ToBDispatcher(dispatcherQueueCapacity);
+        }
+        return dispatcher;
+    }
 
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
+    public <T> ToBRequest<T> submit(String method, Callable<T> call, ToBRequest.Listener<T> listener) {
+        return getDispatcher().submit(method, call, callbackExecutor, listener);
+    }
+
+    /**
+     * Every call is either handed to the service or failed through {@link BinderCall#fail()}, so
+     * callers waiting for a result, such as a {@link CoalescingSetter} or the {@link BulkInstaller},
+     * are always completed.
+     *
+     * @return false if the call was failed because the service is not bound
+     */
+    private boolean execute(final int method, final BinderCall call) {
+        call.method = method;
+        call.thread = Thread.currentThread().getId();
+        metrics.recordCall(method);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder == null) {
+            if (connection.enqueue(method, call)) {
+                return true;
+            }
+            binder = serviceBinder;
+            if (binder == null) {
+                metrics.recordNotBound(method);
+                Log.e(TAG, ToBMethod.name(method) + ": not bind ToBService");
+                fail(method, call);
+                return false;
             }
-        } else {
-            Log.e(TAG, "pbsPropertySetHomeKeyAll: not bind ToBService");
         }
+        dispatch(binder, method, call);
+        return true;
     }
 
-    public void pbsPropertyDisablePowerKey(boolean isSingleTap, boolean enable, IntCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsPropertyDisablePowerKey(isSingleTap, enable, new IIntCallback.Stub() {
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
+    void dispatch(final IToBServiceProxy binder, final int method, final BinderCall call) {
+        if (blockingMode) {
+            invoke(binder, method, call);
+            return;
+        }
+        boolean queued = getDispatcher().post(ToBMethod.name(method), new Runnable() {
+            @Override
+            public void run() {
+                invoke(binder, method, call);
             }
-        } else {
-            Log.e(TAG, "pbsPropertyDisablePowerKey: not bind ToBService");
+        });
+        if (!queued) {
+            metrics.recordError(method);
+            fail(method, call);
         }
     }
 
-    public void pbsPropertySetScreenOffDelay(PBS_ScreenOffDelayTimeEnum timeEnum, IntCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsPropertySetScreenOffDelay(timeEnum, new IIntCallback.Stub() {
-
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
+    private void invoke(IToBServiceProxy binder, int method, BinderCall call) {
+        long start = System.nanoTime();
+        try {
+            call.call(binder);
+            metrics.recordBinder(method, System.nanoTime() - start, call.thread);
+        } catch (RemoteException | RuntimeException e) {
+            // Runs on the dispatcher thread, where an uncaught exception would end the app.
+            metrics.recordBinderFailure(method, System.nanoTime() - start, call.thread,
+                    e instanceof RemoteException ? TraceRecorder.STATUS_REMOTE_EXCEPTION
+                            : TraceRecorder.STATUS_RUNTIME_EXCEPTION);
+            Log.e(TAG, ToBMethod.name(method) + " failed", e);
+            fail(method, call);
+        }
+    }
 
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Log.e(TAG, "pbsPropertySetScreenOffDelay: not bind ToBService");
+    /**
+     * Completes a call that did not reach the service with its failure value.
+     */
+    void fail(int method, BinderCall call) {
+        try {
+            call.fail();
+        } catch (RuntimeException e) {
+            Log.e(TAG, ToBMethod.name(method) + ": failure callback threw", e);
         }
     }
 
-    public void pbsSetControllerPairTime(PBS_ControllerPairTimeEnum timeEnum,
-                                         IntCallback callback, int ext) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsSetControllerPairTime(timeEnum, new IIntCallback.Stub() {
+    public ToBMetrics getMetrics() {
+        return metrics;
+    }
 
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    }, ext);
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Log.e(TAG, "pbsSetControllerPairTime: not bind ToBService");
+    /**
+     * Returns all counters in the {@link ToBMetrics} layout. The returned array is reused between
+     * calls and is meant to be read from a single thread.
+     */
+    public long[] getMetricsSnapshot() {
+        metrics.snapshot(metricsSnapshot);
+        return metricsSnapshot;
+    }
+
+    public String getMetricsJson() {
+        return metrics.toJson();
+    }
+
+    /**
+     * Reuses pooled Binder stubs for one-shot callbacks instead of creating one per call.
+     */
+    public void setCallbackMultiplexing(boolean enabled) {
+        if (enabled && multiplexer == null) {
+            multiplexer = new CallbackMultiplexer(metrics);
+        } else if (!enabled) {
+            multiplexer = null;
         }
     }
 
-    public void pbsGetControllerPairTime(IntCallback callback, int ext) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsGetControllerPairTime(new IGetControllerPairTimeCallback.Stub() {
+    public CallbackMultiplexer getCallbackMultiplexer() {
+        return multiplexer;
+    }
 
-                        @Override
-                        public void callBack(PBS_ControllerPairTimeEnum result)
-                                throws RemoteException {
-                            int mresult = result.ordinal();
-                            callback.CallBack(mresult);
-                        }
-                    }, ext);
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Log.e(TAG, "pbsGetControllerPairTime: not bind ToBService");
+    /**
+     * Drops the waiter of a pooled stub whose call never reached the service; other stubs are left
+     * to the garbage collector.
+     */
+    private void releaseStub(Object stub) {
+        CallbackMultiplexer mux = multiplexer;
+        if (mux != null && stub != null) {
+            mux.release(stub);
         }
     }
 
-    public void pbsWriteConfigFileToDataLocal(String path, String content, BoolCallback boolCallback) {
-        if (serviceBinder != null) {
-            try {
-                if (boolCallback != null) {
-                    serviceBinder.pbsWriteConfigFileToDataLocal(path, content, new IBoolCallback.Stub() {
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            boolCallback.CallBack(result);
-                        }
-                    });
-                }
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Log.e(TAG, "pbsWriteConfigFileToDataLocal: not bind ToBService");
+    private IIntCallback.Stub intStub(final int method, final IntCallback callback) {
+        final long start = System.nanoTime();
+        CallbackMultiplexer mux = multiplexer;
+        if (mux != null) {
+            return mux.intStub(method, start, callback);
         }
+        return new IIntCallback.Stub() {
+            @Override
+            public void callback(int result) throws RemoteException {
+                metrics.recordCallback(method, System.nanoTime() - start);
+                callback.CallBack(result);
+            }
+        };
     }
 
-    public void pbsResetAllKeyToDefault(BoolCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                if (callback != null) {
-                    serviceBinder.pbsResetAllKeyToDefault(new IBoolCallback.Stub() {
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
+    private IBoolCallback.Stub boolStub(final int method, final BoolCallback callback) {
+        final long start = System.nanoTime();
+        CallbackMultiplexer mux = multiplexer;
+        if (mux != null) {
+            return mux.boolStub(method, start, callback);
+        }
+        return new IBoolCallback.Stub() {
+            @Override
+            public void callBack(boolean result) throws RemoteException {
+                metrics.recordCallback(method, System.nanoTime() - start);
+                if (callback instanceof BooleanCallback) {
+                    ((BooleanCallback) callback).CallBack(result);
+                } else {
+                    callback.CallBack(result);
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsResetAllKeyToDefault: not bind ToBService");
+        };
+    }
+
+    private IStringCallback.Stub stringStub(final int method, final StringCallback callback) {
+        final long start = System.nanoTime();
+        CallbackMultiplexer mux = multiplexer;
+        if (mux != null) {
+            return mux.stringStub(method, start, callback);
         }
+        return new IStringCallback.Stub() {
+            @Override
+            public void callback(String result) throws RemoteException {
+                metrics.recordCallback(method, System.nanoTime() - start);
+                callback.CallBack(result);
+            }
+        };
     }
 
-    public void pbsSetWDModelsCallback(StringCallback callback) {
-        if (serviceBinder != null) {
-            try {
+    private static ToBRequest.Listener<Integer> intListener(final IntCallback callback) {
+        return new ToBRequest.Listener<Integer>() {
+            @Override
+            public void onComplete(ToBRequest<Integer> request) {
                 if (callback != null) {
-                    serviceBinder.pbsSetWDModelsCallback(new IWDModelsCallback.Stub() {
-                        @Override
-                        public void callback(List<PBS_WifiDisplayModel> models) throws RemoteException {
-                            try {
-                                JSONArray result = new JSONArray();
-                                for (PBS_WifiDisplayModel member : models) {
-                                    result.put(new JSONObject(member.toJson()));
-                                }
-                                callback.CallBack(result.toString());
-                            } catch (JSONException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    });
+                    callback.CallBack(request.getResultOrDefault(0));
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsSetWDModelsCallback: not bind ToBService");
-        }
+        };
     }
 
-    public void pbsSetWDJsonCallback(StringCallback callback) {
-        if (serviceBinder != null) {
-            try {
+    private static ToBRequest.Listener<String> stringListener(final StringCallback callback) {
+        return new ToBRequest.Listener<String>() {
+            @Override
+            public void onComplete(ToBRequest<String> request) {
                 if (callback != null) {
-                    serviceBinder.pbsSetWDJsonCallback(new IWDJsonCallback.Stub() {
-                        @Override
-                        public void callback(String json) throws RemoteException {
-                            callback.CallBack(json);
-                        }
-                    });
+                    callback.CallBack(request.getResultOrDefault(null));
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsSetWDJsonCallback: not bind ToBService");
-        }
+        };
     }
 
-    public void pbsSwitchLargeSpaceScene(BoolCallback callback, boolean open, int ext) {
-        if (serviceBinder != null) {
-            try {
+    public void pbsControlSetDeviceAction(PBS_DeviceControlEnum deviceControlEnum, IntCallback callback) {
+        execute(ToBMethod.CONTROL_SET_DEVICE_ACTION, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsControlSetDeviceAction(deviceControlEnum, stub(callback));
+                }
+            }
+        });
+    }
+
+    public void pbsControlSetDeviceAction(int deviceControl, IntCallback callback) {
+        pbsControlSetDeviceAction(ToBEnums.deviceControl(deviceControl), callback);
+    }
+
+    public void pbsControlAPPManger(PBS_PackageControlEnum packageControlEnum, String path, int ext,
+                                    IntCallback callback) {
+        execute(ToBMethod.CONTROL_APP_MANGER, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
                 if (callback != null) {
-                    serviceBinder.pbsSwitchLargeSpaceScene(new IBoolCallback.Stub() {
+                    binder.pbsControlAPPManger(packageControlEnum, path, ext, stub(callback));
+                }
+            }
+        });
+    }
+
+    public void pbsControlAPPManger(int packageControl, String path, int ext, IntCallback callback) {
+        pbsControlAPPManger(ToBEnums.packageControl(packageControl), path, ext, callback);
+    }
+
+    /**
+     * {@link #pbsControlAPPManger(PBS_PackageControlEnum, String, int, IntCallback)} that reports
+     * {@link DeadlineWatchdog#TIMEOUT_RESULT} to {@code callback} if the service has not answered
+     * within {@code timeoutMs}.
+     *
+     * @return the handle to cancel the call with
+     */
+    public DeadlineWatchdog.Deadline pbsControlAPPManger(PBS_PackageControlEnum packageControlEnum, String path, int ext,
+                                                         IntCallback callback, long timeoutMs) {
+        DeadlineWatchdog.Deadline deadline = deadlineWatchdog.armInt(ToBMethod.CONTROL_APP_MANGER, timeoutMs, callback);
+        pbsControlAPPManger(packageControlEnum, path, ext, deadline);
+        return deadline;
+    }
+
+    public DeadlineWatchdog.Deadline pbsControlAPPManger(int packageControl, String path, int ext, IntCallback callback,
+                                                         long timeoutMs) {
+        return pbsControlAPPManger(ToBEnums.packageControl(packageControl), path, ext, callback, timeoutMs);
+    }
+
+    /**
+     * Installs the APKs of a directory or manifest, see {@link BulkInstaller#create}. Packages are
+     * verified in parallel and skipped when unchanged since their last install; {@code progress}
+     * receives a JSON event per package and {@code callback} a JSON summary with per-package timings.
+     *
+     * @param parallelism     verifier threads, 0 picks one per core up to 4
+     * @param installTimeoutMs an install still running after this time is reported as timed out, 0 waits forever
+     */
+    public void installPackages(String source, boolean force, int parallelism, long installTimeoutMs,
+                                StringCallback progress, StringCallback callback) {
+        BulkInstaller installer;
+        try {
+            installer = BulkInstaller.create(new BulkInstaller.Installer() {
+                @Override
+                public void install(final String path, final IntCallback done) {
+                    execute(ToBMethod.CONTROL_APP_MANGER, new IntCall(done) {
                         @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
+                        public void call(IToBServiceProxy binder) throws RemoteException {
+                            binder.pbsControlAPPManger(PBS_PackageControlEnum.PACKAGE_SILENCE_INSTALL, path, 0, stub(done));
                         }
-                    }, open, ext);
+                    });
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
+            }, mycontext, source, force, installTimeoutMs, progress, callback);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "installPackages: invalid source " + source, e);
+            if (callback != null) {
+                callback.CallBack("{\"success\":false,\"error\":" + JSONObject.quote(String.valueOf(e.getMessage())) + "}");
             }
-        } else {
-            Log.e(TAG, "pbsSwitchLargeSpaceScene: not bind ToBService");
+            return;
         }
+        installer.start(parallelism);
     }
 
-    public void pbsGetSwitchLargeSpaceStatus(StringCallback callback, int ext) {
-        if (serviceBinder != null) {
-            try {
+    public void pbsControlSetAutoConnectWIFI(String ssid, String pwd, int ext, BoolCallback callback) {
+        execute(ToBMethod.CONTROL_SET_AUTO_CONNECT_WIFI, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsControlSetAutoConnectWIFI(ssid, pwd, ext, stub(callback));
+                }
+            }
+        });
+    }
+
+    public void pbsControlClearAutoConnectWIFI(BoolCallback callback) {
+        execute(ToBMethod.CONTROL_CLEAR_AUTO_CONNECT_WIFI, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsControlClearAutoConnectWIFI(stub(callback));
+                }
+            }
+        });
+    }
+
+    public void pbsPropertySetHomeKey(PBS_HomeEventEnum event, PBS_HomeFunctionEnum function, BoolCallback callback) {
+        execute(ToBMethod.PROPERTY_SET_HOME_KEY, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsPropertySetHomeKey(event, function, stub(callback));
+                }
+            }
+        });
+    }
+
+    public void pbsPropertySetHomeKey(int event, int function, BoolCallback callback) {
+        pbsPropertySetHomeKey(ToBEnums.homeEvent(event), ToBEnums.homeFunction(function), callback);
+    }
+
+    public void pbsPropertySetHomeKeyAll(PBS_HomeEventEnum event, PBS_HomeFunctionEnum function, int timesetup,
+                                         String pkg, String className, BoolCallback callback) {
+        execute(ToBMethod.PROPERTY_SET_HOME_KEY_ALL, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsPropertySetHomeKeyAll(event, function, timesetup, pkg, className, stub(callback));
+
+                }
+            }
+        });
+    }
+
+    public void pbsPropertySetHomeKeyAll(int event, int function, int timesetup, String pkg, String className,
+                                         BoolCallback callback) {
+        pbsPropertySetHomeKeyAll(ToBEnums.homeEvent(event), ToBEnums.homeFunction(function), timesetup, pkg, className, callback);
+    }
+
+    public void pbsPropertyDisablePowerKey(boolean isSingleTap, boolean enable, IntCallback callback) {
+        execute(ToBMethod.PROPERTY_DISABLE_POWER_KEY, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsPropertyDisablePowerKey(isSingleTap, enable, stub(callback));
+                }
+            }
+        });
+    }
+
+    public void pbsPropertySetScreenOffDelay(PBS_ScreenOffDelayTimeEnum timeEnum, IntCallback callback) {
+        propertyCache.invalidate(PropertyCache.key(PropertyCache.SCREEN_OFF_DELAY, 0));
+        execute(ToBMethod.PROPERTY_SET_SCREEN_OFF_DELAY, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsPropertySetScreenOffDelay(timeEnum, stub(screenOffDelayResult(timeEnum, callback)));
+
+                }
+            }
+        });
+    }
+
+    public void pbsPropertySetScreenOffDelay(int timeEnum, IntCallback callback) {
+        pbsPropertySetScreenOffDelay(ToBEnums.screenOffDelayTime(timeEnum), callback);
+    }
+
+    private IntCallback screenOffDelayResult(final PBS_ScreenOffDelayTimeEnum timeEnum, final IntCallback callback) {
+        final long key = PropertyCache.key(PropertyCache.SCREEN_OFF_DELAY, 0);
+        return new IntCallback() {
+            @Override
+            public void CallBack(int result) {
+                if (result == 0) {
+                    propertyCache.put(key, timeEnum.ordinal());
+                } else {
+                    propertyCache.invalidate(key);
+                }
+                callback.CallBack(result);
+            }
+        };
+    }
+
+    public void pbsPropertySetSleepDelay(PBS_SleepDelayTimeEnum timeEnum) {
+        final long key = PropertyCache.key(PropertyCache.SLEEP_DELAY, 0);
+        propertyCache.invalidate(key);
+        execute(ToBMethod.PROPERTY_SET_SLEEP_DELAY, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsPropertySetSleepDelay(timeEnum);
+                propertyCache.put(key, timeEnum.ordinal());
+            }
+        });
+    }
+
+    public void pbsPropertySetSleepDelay(int timeEnum) {
+        pbsPropertySetSleepDelay(ToBEnums.sleepDelayTime(timeEnum));
+    }
+
+    public void pbsControlSetPowerOffWithUSBCable(PBS_SwitchEnum switchEnum, int ext) {
+        final long key = PropertyCache.key(PropertyCache.POWER_OFF_WITH_USB_CABLE, 0);
+        propertyCache.invalidate(key);
+        execute(ToBMethod.CONTROL_SET_POWER_OFF_WITH_USB_CABLE, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsControlSetPowerOffwithUSBCable(switchEnum, ext);
+                propertyCache.put(key, switchEnum.ordinal());
+            }
+        });
+    }
+
+    public void pbsControlSetPowerOffWithUSBCable(int switchEnum, int ext) {
+        pbsControlSetPowerOffWithUSBCable(ToBEnums.switchValue(switchEnum), ext);
+    }
+
+    public void pbsSwitchVolumeToHomeAndEnter(PBS_SwitchEnum switchEnum, int ext) {
+        final long key = PropertyCache.key(PropertyCache.VOLUME_CHANGE_TO_HOME_AND_ENTER, 0);
+        propertyCache.invalidate(key);
+        execute(ToBMethod.SWITCH_VOLUME_TO_HOME_AND_ENTER, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsSwitchVolumeToHomeAndEnter(switchEnum, ext);
+                propertyCache.put(key, switchEnum.ordinal());
+            }
+        });
+    }
+
+    public void pbsSwitchVolumeToHomeAndEnter(int switchEnum, int ext) {
+        pbsSwitchVolumeToHomeAndEnter(ToBEnums.switchValue(switchEnum), ext);
+    }
+
+    public void pbsSetControllerPairTime(PBS_ControllerPairTimeEnum timeEnum,
+                                         IntCallback callback, int ext) {
+        execute(ToBMethod.SET_CONTROLLER_PAIR_TIME, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsSetControllerPairTime(timeEnum, stub(callback), ext);
+                }
+            }
+        });
+    }
+
+    public void pbsSetControllerPairTime(int timeEnum, IntCallback callback, int ext) {
+        pbsSetControllerPairTime(ToBEnums.controllerPairTime(timeEnum), callback, ext);
+    }
+
+    public void pbsGetControllerPairTime(IntCallback callback, int ext) {
+        execute(ToBMethod.GET_CONTROLLER_PAIR_TIME, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
                 if (callback != null) {
-                    serviceBinder.pbsGetSwitchLargeSpaceStatus(new IStringCallback.Stub() {
+                    final long start = System.nanoTime();
+                    binder.pbsGetControllerPairTime(new IGetControllerPairTimeCallback.Stub() {
 
                         @Override
-                        public void callback(String value) throws RemoteException {
-                            callback.CallBack(value);
+                        public void callBack(PBS_ControllerPairTimeEnum result)
+                                throws RemoteException {
+                            metrics.recordCallback(ToBMethod.GET_CONTROLLER_PAIR_TIME, System.nanoTime() - start);
+                            int mresult = result.ordinal();
+                            callback.CallBack(mresult);
                         }
                     }, ext);
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsGetSwitchLargeSpaceStatus: not bind ToBService");
-        }
+        });
+    }
+
+    public void pbsWriteConfigFileToDataLocal(String path, String content, BoolCallback boolCallback) {
+        execute(ToBMethod.WRITE_CONFIG_FILE_TO_DATA_LOCAL, new BoolCall(boolCallback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (boolCallback != null) {
+                    binder.pbsWriteConfigFileToDataLocal(path, content, stub(boolCallback));
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes {@code content} to {@code path} unless it is unchanged since the last sync, splitting
+     * large content into chunks. The callback receives one of the {@code ConfigSync.RESULT_*} codes.
+     */
+    public void syncConfigFile(String path, String content, IntCallback callback) {
+        configSync.sync(path, content, callback);
+    }
+
+    public void syncConfigFile(String path, File source, IntCallback callback) {
+        configSync.sync(path, source, callback);
+    }
+
+    public void syncConfigFile(String path, InputStream source, IntCallback callback) {
+        configSync.sync(path, source, callback);
+    }
+
+    /**
+     * Reads the content from the local file at {@code sourcePath}.
+     */
+    public void syncConfigFileFrom(String path, String sourcePath, IntCallback callback) {
+        configSync.sync(path, new File(sourcePath), callback);
+    }
+
+    /**
+     * {@link #pbsWriteConfigFileToDataLocal} for {@link ConfigSync}: reports false instead of staying
+     * silent when the service cannot be reached, so the sync does not wait for its chunk timeout.
+     */
+    private void writeConfigChunk(final String path, final String content, final BoolCallback callback) {
+        execute(ToBMethod.WRITE_CONFIG_FILE_TO_DATA_LOCAL, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsWriteConfigFileToDataLocal(path, content, stub(callback));
+            }
+        });
+    }
+
+    public ConfigSync getConfigSync() {
+        return configSync;
+    }
+
+    public void pbsResetAllKeyToDefault(BoolCallback callback) {
+        execute(ToBMethod.RESET_ALL_KEY_TO_DEFAULT, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsResetAllKeyToDefault(stub(callback));
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the previous callback set here; subscribers of {@link #subscribeEvents} and the delta
+     * callback keep receiving scans.
+     */
+    public void pbsSetWDModelsCallback(StringCallback callback) {
+        wdModelsCallback = callback;
+        registerWDModelsSource();
+    }
+
+    private void registerWDModelsSource() {
+        execute(ToBMethod.SET_WD_MODELS_CALLBACK, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsSetWDModelsCallback(wdModelsSource);
+            }
+        });
+    }
+
+    /**
+     * Delta alternative to {@link #pbsSetWDModelsCallback(StringCallback)}: the callback receives only
+     * the devices added, changed or removed since the last delta, keyed by address, and nothing for
+     * scans equal to the previous one. See {@link WifiDisplayDeltaTracker} for the format. It is fed
+     * by the same service callback as the full variant, so both can be set; a null callback removes it.
+     *
+     * @param coalesceMs scans within this window are merged into one delta, 0 reports every scan
+     */
+    public void pbsSetWDModelsDeltaCallback(int coalesceMs, StringCallback callback) {
+        wifiDisplayDelta = callback != null ? new WifiDisplayDeltaTracker(coalesceMs, callback) : null;
+        registerWDModelsSource();
+    }
+
+    /**
+     * @return every device known to the delta callback as a JSON array, or null if it is not set
+     */
+    public String pbsGetWDModelsSnapshot() {
+        WifiDisplayDeltaTracker tracker = wifiDisplayDelta;
+        return tracker != null ? tracker.snapshot() : null;
+    }
+
+    public void pbsSetWDJsonCallback(StringCallback callback) {
+        wdJsonCallback = callback;
+        registerWDJsonSource();
+    }
+
+    private void registerWDJsonSource() {
+        execute(ToBMethod.SET_WD_JSON_CALLBACK, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsSetWDJsonCallback(wdJsonSource);
+            }
+        });
+    }
+
+    public void pbsSwitchLargeSpaceScene(BoolCallback callback, boolean open, int ext) {
+        execute(ToBMethod.SWITCH_LARGE_SPACE_SCENE, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsSwitchLargeSpaceScene(stub(callback), open, ext);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@link #pbsSwitchLargeSpaceScene(BoolCallback, boolean, int)} that reports false to
+     * {@code callback} if the service has not answered within {@code timeoutMs}.
+     *
+     * @return the handle to cancel the call with
+     */
+    public DeadlineWatchdog.Deadline pbsSwitchLargeSpaceScene(BoolCallback callback, boolean open, int ext, long timeoutMs) {
+        DeadlineWatchdog.Deadline deadline = deadlineWatchdog.armBool(ToBMethod.SWITCH_LARGE_SPACE_SCENE, timeoutMs, callback);
+        pbsSwitchLargeSpaceScene(deadline, open, ext);
+        return deadline;
+    }
+
+    public void pbsGetSwitchLargeSpaceStatus(StringCallback callback, int ext) {
+        execute(ToBMethod.GET_SWITCH_LARGE_SPACE_STATUS, new StringCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsGetSwitchLargeSpaceStatus(stub(callback), ext);
+                }
+            }
+        });
     }
 
     public void pbsExportMaps(BoolCallback callback, int ext) {
-        if (serviceBinder != null) {
-            try {
+        execute(ToBMethod.EXPORT_MAPS, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
                 if (callback != null) {
-                    serviceBinder.pbsExportMaps(new IBoolCallback.Stub() {
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    }, ext);
+                    binder.pbsExportMaps(stub(callback), ext);
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsExportMaps: not bind ToBService");
-        }
+        });
+    }
+
+    /**
+     * {@link #pbsExportMaps(BoolCallback, int)} that reports false to
+     * {@code callback} if the service has not answered within {@code timeoutMs}.
+     *
+     * @return the handle to cancel the call with
+     */
+    public DeadlineWatchdog.Deadline pbsExportMaps(BoolCallback callback, int ext, long timeoutMs) {
+        DeadlineWatchdog.Deadline deadline = deadlineWatchdog.armBool(ToBMethod.EXPORT_MAPS, timeoutMs, callback);
+        pbsExportMaps(deadline, ext);
+        return deadline;
     }
 
     public void pbsImportMaps(BoolCallback callback, int ext) {
-        if (serviceBinder != null) {
-            try {
+        execute(ToBMethod.IMPORT_MAPS, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
                 if (callback != null) {
-                    serviceBinder.pbsImportMaps(new IBoolCallback.Stub() {
-                        @Override
-                        public void callBack(boolean result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    }, ext);
+                    binder.pbsImportMaps(stub(callback), ext);
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsImportMaps: not bind ToBService");
-        }
+        });
+    }
+
+    /**
+     * {@link #pbsImportMaps(BoolCallback, int)} that reports false to
+     * {@code callback} if the service has not answered within {@code timeoutMs}.
+     *
+     * @return the handle to cancel the call with
+     */
+    public DeadlineWatchdog.Deadline pbsImportMaps(BoolCallback callback, int ext, long timeoutMs) {
+        DeadlineWatchdog.Deadline deadline = deadlineWatchdog.armBool(ToBMethod.IMPORT_MAPS, timeoutMs, callback);
+        pbsImportMaps(deadline, ext);
+        return deadline;
     }
 
     public void pbsControlSetAutoConnectWIFIWithErrorCodeCallback(String ssid, String pwd, int ext, IntCallback callback) {
-        if (serviceBinder != null) {
-            try {
+        execute(ToBMethod.CONTROL_SET_AUTO_CONNECT_WIFI_WITH_ERROR_CODE_CALLBACK, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
                 if (callback != null) {
-                    serviceBinder.pbsControlSetAutoConnectWIFIWithErrorCodeCallback(ssid, pwd, ext, new IIntCallback.Stub() {
-
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    });
+                    binder.pbsControlSetAutoConnectWIFIWithErrorCodeCallback(ssid, pwd, ext, stub(callback));
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsPlayerGetCurPlayState: not bind ToBService");
+        });
+    }
+
+    /**
+     * Caches the results of the property getters for {@code ttlMs}; 0 disables the cache.
+     */
+    public void setPropertyCacheTtl(long ttlMs) {
+        propertyCache.setTtlMillis(ttlMs);
+    }
+
+    /**
+     * Drops every cached property so the next reads go to the service.
+     */
+    public void refreshPropertyCache() {
+        propertyCache.invalidateAll();
+    }
+
+    public PropertyCache getPropertyCache() {
+        return propertyCache;
+    }
+
+    /**
+     * Applies all settings of {@code profile}, running independent steps concurrently, and reports
+     * one JSON result with the status, result code and timings of every step.
+     *
+     * @param timeoutMs steps still running after this time are reported as timed out, 0 waits forever
+     */
+    public void applyProvisioningProfile(ProvisioningProfile profile, long timeoutMs, StringCallback callback) {
+        new ProvisioningRunner(this, profile, callback).start(timeoutMs);
+    }
+
+    /**
+     * {@link #applyProvisioningProfile(ProvisioningProfile, long, StringCallback)} for a profile in
+     * the JSON form of {@link ProvisioningProfile#fromJson}.
+     */
+    public void applyProvisioningProfile(String profileJson, int timeoutMs, StringCallback callback) {
+        try {
+            applyProvisioningProfile(ProvisioningProfile.fromJson(profileJson), timeoutMs, callback);
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.e(TAG, "applyProvisioningProfile: invalid profile", e);
+            if (callback != null) {
+                callback.CallBack("{\"success\":false,\"error\":" + JSONObject.quote(String.valueOf(e.getMessage())) + "}");
+            }
         }
     }
 
     public int pbsIsVolumeChangeToHomeAndEnter() {
+        metrics.recordCall(ToBMethod.IS_VOLUME_CHANGE_TO_HOME_AND_ENTER);
+        long key = PropertyCache.key(PropertyCache.VOLUME_CHANGE_TO_HOME_AND_ENTER, 0);
+        long cached = propertyCache.get(key);
+        if (cached != PropertyCache.MISS) {
+            return (int) cached;
+        }
+        int generation = propertyCache.beginLoad(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                result = serviceBinder.pbsIsVolumeChangeToHomeAndEnter().ordinal();
+                result = binder.pbsIsVolumeChangeToHomeAndEnter().ordinal();
+                metrics.recordBinder(ToBMethod.IS_VOLUME_CHANGE_TO_HOME_AND_ENTER, System.nanoTime() - start);
+                propertyCache.complete(key, generation, result);
             } catch (RemoteException e) {
                 // TODO Auto-generated catch block
+                metrics.recordError(ToBMethod.IS_VOLUME_CHANGE_TO_HOME_AND_ENTER);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.IS_VOLUME_CHANGE_TO_HOME_AND_ENTER);
             Log.e(TAG, "pbsIsVolumeChangeToHomeAndEnter: not bind ToBService");
         }
         return result;
     }
 
     public int pbsControlGetPowerOffWithUSBCable(int ext) {
+        metrics.recordCall(ToBMethod.CONTROL_GET_POWER_OFF_WITH_USB_CABLE);
+        long key = PropertyCache.key(PropertyCache.POWER_OFF_WITH_USB_CABLE, 0);
+        long cached = propertyCache.get(key);
+        if (cached != PropertyCache.MISS) {
+            return (int) cached;
+        }
+        int generation = propertyCache.beginLoad(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                result = serviceBinder.pbsControlGetPowerOffWithUSBCable(ext).ordinal();
+                result = binder.pbsControlGetPowerOffWithUSBCable(ext).ordinal();
+                metrics.recordBinder(ToBMethod.CONTROL_GET_POWER_OFF_WITH_USB_CABLE, System.nanoTime() - start);
+                propertyCache.complete(key, generation, result);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.CONTROL_GET_POWER_OFF_WITH_USB_CABLE);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.CONTROL_GET_POWER_OFF_WITH_USB_CABLE);
             Log.e(TAG, "pbsControlGetPowerOffWithUSBCable: not bind ToBService");
         }
         return result;
     }
 
     public int pbsPropertyGetScreenOffDelay(int ext) {
+        metrics.recordCall(ToBMethod.PROPERTY_GET_SCREEN_OFF_DELAY);
+        long key = PropertyCache.key(PropertyCache.SCREEN_OFF_DELAY, 0);
+        long cached = propertyCache.get(key);
+        if (cached != PropertyCache.MISS) {
+            return (int) cached;
+        }
+        int generation = propertyCache.beginLoad(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                result = serviceBinder.pbsPropertyGetScreenOffDelay(ext).ordinal();
+                result = binder.pbsPropertyGetScreenOffDelay(ext).ordinal();
+                metrics.recordBinder(ToBMethod.PROPERTY_GET_SCREEN_OFF_DELAY, System.nanoTime() - start);
+                propertyCache.complete(key, generation, result);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.PROPERTY_GET_SCREEN_OFF_DELAY);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.PROPERTY_GET_SCREEN_OFF_DELAY);
             Log.e(TAG, "pbsPropertyGetScreenOffDelay: not bind ToBService");
         }
         return result;
     }
 
     public int pbsPropertyGetSleepDelay(int ext) {
+        metrics.recordCall(ToBMethod.PROPERTY_GET_SLEEP_DELAY);
+        long key = PropertyCache.key(PropertyCache.SLEEP_DELAY, 0);
+        long cached = propertyCache.get(key);
+        if (cached != PropertyCache.MISS) {
+            return (int) cached;
+        }
+        int generation = propertyCache.beginLoad(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                result = serviceBinder.pbsPropertyGetSleepDelay(ext).ordinal();
+                result = binder.pbsPropertyGetSleepDelay(ext).ordinal();
+                metrics.recordBinder(ToBMethod.PROPERTY_GET_SLEEP_DELAY, System.nanoTime() - start);
+                propertyCache.complete(key, generation, result);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.PROPERTY_GET_SLEEP_DELAY);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.PROPERTY_GET_SLEEP_DELAY);
             Log.e(TAG, "pbsPropertyGetSleepDelay: not bind ToBService");
         }
         return result;
@@ -534,101 +1273,197 @@ public class ToBServiceUtils {
     public void pbsGetSwitchSystemFunctionStatus(
             PBS_SystemFunctionSwitchEnum systemFunction, IntCallback callback,
             int ext) {
-        if (serviceBinder != null) {
-            try {
+        execute(ToBMethod.GET_SWITCH_SYSTEM_FUNCTION_STATUS, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
                 if (callback != null) {
-                    serviceBinder.pbsGetSwitchSystemFunctionStatus(systemFunction, new IIntCallback.Stub() {
-
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                             callback.CallBack(result);
-                        }
-                    }, ext);
+                    binder.pbsGetSwitchSystemFunctionStatus(systemFunction, stub(callback), ext);
                 }
-            } catch (RemoteException e) {
-                e.printStackTrace();
             }
-        } else {
-            Log.e(TAG, "pbsGetSwitchSystemFunctionStatus: not bind ToBService");
-        }
+        });
     }
 
+    public void pbsGetSwitchSystemFunctionStatus(int systemFunction, IntCallback callback, int ext) {
+        pbsGetSwitchSystemFunctionStatus(ToBEnums.systemFunctionSwitch(systemFunction), callback, ext);
+    }
+
+    /**
+     * @return 1 if the call was issued or queued, 0 if the service is not bound
+     */
     public int pbsPicoCastInit(IntCallback callback, int ext) {
+        boolean issued = execute(ToBMethod.PICO_CAST_INIT, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                if (callback != null) {
+                    binder.pbsPicoCastInit(stub(callback), ext);
+                }
+            }
+        });
+        return issued ? 1 : 0;
+    }
+
+    /**
+     * {@link #pbsPicoCastInit(IntCallback, int)} that reports {@link DeadlineWatchdog#TIMEOUT_RESULT}
+     * to {@code callback} if the service has not answered within {@code timeoutMs}.
+     *
+     * @return the handle to cancel the call with
+     */
+    public DeadlineWatchdog.Deadline pbsPicoCastInit(IntCallback callback, int ext, long timeoutMs) {
+        DeadlineWatchdog.Deadline deadline = deadlineWatchdog.armInt(ToBMethod.PICO_CAST_INIT, timeoutMs, callback);
+        pbsPicoCastInit(deadline, ext);
+        return deadline;
+    }
 
+    public int pbsSetScreenCastAudioOutput(PBS_ScreencastAudioOutputEnum audioOutput, int ext) {
+        metrics.recordCall(ToBMethod.SET_SCREEN_CAST_AUDIO_OUTPUT);
+        long key = PropertyCache.key(PropertyCache.SCREEN_CAST_AUDIO_OUTPUT, 0);
+        propertyCache.invalidate(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                if (callback != null) {
-                    serviceBinder.pbsPicoCastInit(new IIntCallback.Stub() {
-
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    }, ext);
-                }
+                result = binder.pbsSetScreenCastAudioOutput(audioOutput, ext);
+                metrics.recordBinder(ToBMethod.SET_SCREEN_CAST_AUDIO_OUTPUT, System.nanoTime() - start);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.SET_SCREEN_CAST_AUDIO_OUTPUT);
                 e.printStackTrace();
             }
+            propertyCache.invalidate(key);
         } else {
-            Log.e(TAG, "pbsPicoCastInit: not bind ToBService");
+            metrics.recordNotBound(ToBMethod.SET_SCREEN_CAST_AUDIO_OUTPUT);
+            Log.e(TAG, "pbsSetScreenCastAudioOutput: not bind ToBService");
         }
         return result;
     }
 
+    public int pbsSetScreenCastAudioOutput(int audioOutput, int ext) {
+        return pbsSetScreenCastAudioOutput(ToBEnums.screencastAudioOutput(audioOutput), ext);
+    }
+
     public int pbsGetScreenCastAudioOutput(int ext) {
+        metrics.recordCall(ToBMethod.GET_SCREEN_CAST_AUDIO_OUTPUT);
+        long key = PropertyCache.key(PropertyCache.SCREEN_CAST_AUDIO_OUTPUT, 0);
+        long cached = propertyCache.get(key);
+        if (cached != PropertyCache.MISS) {
+            return (int) cached;
+        }
+        int generation = propertyCache.beginLoad(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                result = serviceBinder.pbsGetScreenCastAudioOutput(ext).ordinal();
+                result = binder.pbsGetScreenCastAudioOutput(ext).ordinal();
+                metrics.recordBinder(ToBMethod.GET_SCREEN_CAST_AUDIO_OUTPUT, System.nanoTime() - start);
+                propertyCache.complete(key, generation, result);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_SCREEN_CAST_AUDIO_OUTPUT);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.GET_SCREEN_CAST_AUDIO_OUTPUT);
             Log.e(TAG, "pbsGetScreenCastAudioOutput: not bind ToBService");
         }
         return result;
     }
 
-    public int pbsGetCustomizeSettingsTabStatus(PBS_CustomizeSettingsTabEnum customizeSettingsTabEnum, int ext) {
+    public int pbsCustomizeSettingsTabStatus(PBS_CustomizeSettingsTabEnum customizeSettingsTabEnum,
+                                             PBS_SwitchEnum switchEnum, int ext) {
+        metrics.recordCall(ToBMethod.CUSTOMIZE_SETTINGS_TAB_STATUS);
+        long key = PropertyCache.key(PropertyCache.CUSTOMIZE_SETTINGS_TAB_STATUS, customizeSettingsTabEnum.ordinal());
+        propertyCache.invalidate(key);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                result = serviceBinder.pbsGetCustomizeSettingsTabStatus(customizeSettingsTabEnum, ext).ordinal();
+                result = binder.pbsCustomizeSettingsTabStatus(customizeSettingsTabEnum, switchEnum, ext);
+                metrics.recordBinder(ToBMethod.CUSTOMIZE_SETTINGS_TAB_STATUS, System.nanoTime() - start);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.CUSTOMIZE_SETTINGS_TAB_STATUS);
                 e.printStackTrace();
             }
+            propertyCache.invalidate(key);
         } else {
-            Log.e(TAG, "pbsGetCustomizeSettingsTabStatus: not bind ToBService");
+            metrics.recordNotBound(ToBMethod.CUSTOMIZE_SETTINGS_TAB_STATUS);
+            Log.e(TAG, "pbsCustomizeSettingsTabStatus: not bind ToBService");
         }
         return result;
     }
 
-    public void pbsConnectWifiDisplay(String modelJson) {
-        if (serviceBinder != null) {
+    public int pbsCustomizeSettingsTabStatus(int customizeSettingsTab, int switchEnum, int ext) {
+        return pbsCustomizeSettingsTabStatus(ToBEnums.customizeSettingsTab(customizeSettingsTab), ToBEnums.switchValue(switchEnum), ext);
+    }
+
+    public int pbsGetCustomizeSettingsTabStatus(PBS_CustomizeSettingsTabEnum customizeSettingsTabEnum, int ext) {
+        metrics.recordCall(ToBMethod.GET_CUSTOMIZE_SETTINGS_TAB_STATUS);
+        long key = PropertyCache.key(PropertyCache.CUSTOMIZE_SETTINGS_TAB_STATUS, customizeSettingsTabEnum.ordinal());
+        long cached = propertyCache.get(key);
+        if (cached != PropertyCache.MISS) {
+            return (int) cached;
+        }
+        int generation = propertyCache.beginLoad(key);
+        int result = 0;
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                PBS_WifiDisplayModel model = new PBS_WifiDisplayModel();
-                model = model.fromJson(modelJson);
-                serviceBinder.pbsConnectWifiDisplay(model);
+                result = binder.pbsGetCustomizeSettingsTabStatus(customizeSettingsTabEnum, ext).ordinal();
+                metrics.recordBinder(ToBMethod.GET_CUSTOMIZE_SETTINGS_TAB_STATUS, System.nanoTime() - start);
+                propertyCache.complete(key, generation, result);
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_CUSTOMIZE_SETTINGS_TAB_STATUS);
                 e.printStackTrace();
             }
         } else {
-            Log.e(TAG, "pbsUnityConnectWifiDisplay: not bind ToBService");
+            metrics.recordNotBound(ToBMethod.GET_CUSTOMIZE_SETTINGS_TAB_STATUS);
+            Log.e(TAG, "pbsGetCustomizeSettingsTabStatus: not bind ToBService");
         }
+        return result;
+    }
+
+    public int pbsGetCustomizeSettingsTabStatus(int customizeSettingsTab, int ext) {
+        return pbsGetCustomizeSettingsTabStatus(ToBEnums.customizeSettingsTab(customizeSettingsTab), ext);
+    }
+
+    public void pbsConnectWifiDisplay(String modelJson) {
+        // Parsed on the calling thread, so a malformed model is reported to the caller's log
+        // instead of failing on the dispatcher thread.
+        final PBS_WifiDisplayModel model;
+        try {
+            model = new PBS_WifiDisplayModel().fromJson(modelJson);
+        } catch (RuntimeException e) {
+            metrics.recordCall(ToBMethod.CONNECT_WIFI_DISPLAY);
+            metrics.recordError(ToBMethod.CONNECT_WIFI_DISPLAY);
+            Log.e(TAG, "pbsConnectWifiDisplay: invalid model " + modelJson, e);
+            return;
+        }
+        execute(ToBMethod.CONNECT_WIFI_DISPLAY, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsConnectWifiDisplay(model);
+            }
+        });
     }
 
     public String pbsGetConnectedWD() {
+        metrics.recordCall(ToBMethod.GET_CONNECTED_WD);
         String modelJson = null;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
-                PBS_WifiDisplayModel model = serviceBinder.pbsGetConnectedWD();
+                PBS_WifiDisplayModel model = binder.pbsGetConnectedWD();
+                metrics.recordBinder(ToBMethod.GET_CONNECTED_WD, System.nanoTime() - start);
                 if (model != null)
                     modelJson = model.toJson();
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_CONNECTED_WD);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.GET_CONNECTED_WD);
             Log.e(TAG, "pbsUnityGetConnectedWD: not bind ToBService");
         }
         return modelJson;
@@ -636,11 +1471,15 @@ public class ToBServiceUtils {
 
     @SuppressLint("NewApi")
     public float[] pbsGetCpuUsages() {
-
-        if (serviceBinder != null) {
+        metrics.recordCall(ToBMethod.GET_CPU_USAGES);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
             try {
 
-                CpuUsageInfo[] cpus = serviceBinder.pbsGetCpuUsages();
+                CpuUsageInfo[] cpus = binder.pbsGetCpuUsages();
+
+                metrics.recordBinder(ToBMethod.GET_CPU_USAGES, System.nanoTime() - start);
                 int size = cpus.length;
                 float cpuus[] = new float[size];
                 for (int i = 0; i < cpus.length; i++) {
@@ -648,96 +1487,1103 @@ public class ToBServiceUtils {
                 }
                 return cpuus;
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_CPU_USAGES);
                 e.printStackTrace();
             }
         } else {
+            metrics.recordNotBound(ToBMethod.GET_CPU_USAGES);
             Log.e(TAG, "pbsGetCpuUsages: not bind ToBService");
         }
         return null;
     }
 
+    /**
+     * @param type   one of the {@code DEVICE_TEMPERATURE_*} types
+     * @param source one of the {@code TEMPERATURE_*} sources
+     * @return the temperatures in Celsius, or null if the service is not bound or the call failed
+     */
+    public float[] pbsGetDeviceTemperatures(int type, int source) {
+        metrics.recordCall(ToBMethod.GET_DEVICE_TEMPERATURES);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                float[] temperatures = binder.pbsGetDeviceTemperatures(type, source);
+                metrics.recordBinder(ToBMethod.GET_DEVICE_TEMPERATURES, System.nanoTime() - start);
+                return temperatures;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_DEVICE_TEMPERATURES);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_DEVICE_TEMPERATURES);
+            Log.e(TAG, "pbsGetDeviceTemperatures: not bind ToBService");
+        }
+        return null;
+    }
+
+    /**
+     * @return the battery levels of the left and right controller, 1 to 5, or null if the service
+     * is not bound or the call failed
+     */
+    public int[] pbsGetControllerBattery(int ext) {
+        metrics.recordCall(ToBMethod.GET_CONTROLLER_BATTERY);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                int[] battery = binder.pbsGetControllerBattery(ext);
+                metrics.recordBinder(ToBMethod.GET_CONTROLLER_BATTERY, System.nanoTime() - start);
+                return battery;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_CONTROLLER_BATTERY);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_CONTROLLER_BATTERY);
+            Log.e(TAG, "pbsGetControllerBattery: not bind ToBService");
+        }
+        return null;
+    }
+
+    /**
+     * @return bit 0 set if the left, bit 1 if the right controller is connected, or -1 if the
+     * service is not bound or the call failed
+     */
+    public int pbsGetControllerConnectState(int ext) {
+        metrics.recordCall(ToBMethod.GET_CONTROLLER_CONNECT_STATE);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                int connectState = binder.pbsGetControllerConnectState(ext);
+                metrics.recordBinder(ToBMethod.GET_CONTROLLER_CONNECT_STATE, System.nanoTime() - start);
+                return connectState;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_CONTROLLER_CONNECT_STATE);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_CONTROLLER_CONNECT_STATE);
+            Log.e(TAG, "pbsGetControllerConnectState: not bind ToBService");
+        }
+        return -1;
+    }
+
+    /**
+     * @return the requested system info, or null if the service is not bound or the call failed
+     */
+    public String pbsStateGetDeviceInfo(PBS_SystemInfoEnum type, int ext) {
+        metrics.recordCall(ToBMethod.STATE_GET_DEVICE_INFO);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                String info = binder.pbsStateGetDeviceInfo(type, ext);
+                metrics.recordBinder(ToBMethod.STATE_GET_DEVICE_INFO, System.nanoTime() - start);
+                return info;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.STATE_GET_DEVICE_INFO);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.STATE_GET_DEVICE_INFO);
+            Log.e(TAG, "pbsStateGetDeviceInfo: not bind ToBService");
+        }
+        return null;
+    }
+
+    /**
+     * @return the value, or null if the service is not bound or the call failed
+     */
+    public String pbsPropertyGetPowerKeyStatus(int ext) {
+        metrics.recordCall(ToBMethod.PROPERTY_GET_POWER_KEY_STATUS);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                String status = binder.pbsPropertyGetPowerKeyStatus(ext);
+                metrics.recordBinder(ToBMethod.PROPERTY_GET_POWER_KEY_STATUS, System.nanoTime() - start);
+                return status;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.PROPERTY_GET_POWER_KEY_STATUS);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.PROPERTY_GET_POWER_KEY_STATUS);
+            Log.e(TAG, "pbsPropertyGetPowerKeyStatus: not bind ToBService");
+        }
+        return null;
+    }
+
+    /**
+     * @return the value, or -1 if the service is not bound or the call failed
+     */
+    public int pbsGetEnterKeyStatus(int ext) {
+        metrics.recordCall(ToBMethod.GET_ENTER_KEY_STATUS);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                int status = binder.pbsGetEnterKeyStatus(ext);
+                metrics.recordBinder(ToBMethod.GET_ENTER_KEY_STATUS, System.nanoTime() - start);
+                return status;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_ENTER_KEY_STATUS);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_ENTER_KEY_STATUS);
+            Log.e(TAG, "pbsGetEnterKeyStatus: not bind ToBService");
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value, or -1 if the service is not bound or the call failed
+     */
+    public int pbsGetVolumeKeyStatus(int ext) {
+        metrics.recordCall(ToBMethod.GET_VOLUME_KEY_STATUS);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                int status = binder.pbsGetVolumeKeyStatus(ext);
+                metrics.recordBinder(ToBMethod.GET_VOLUME_KEY_STATUS, System.nanoTime() - start);
+                return status;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_VOLUME_KEY_STATUS);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_VOLUME_KEY_STATUS);
+            Log.e(TAG, "pbsGetVolumeKeyStatus: not bind ToBService");
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value, or -1 if the service is not bound or the call failed
+     */
+    public int pbsGetBackKeyStatus(int ext) {
+        metrics.recordCall(ToBMethod.GET_BACK_KEY_STATUS);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                int status = binder.pbsGetBackKeyStatus(ext);
+                metrics.recordBinder(ToBMethod.GET_BACK_KEY_STATUS, System.nanoTime() - start);
+                return status;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_BACK_KEY_STATUS);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_BACK_KEY_STATUS);
+            Log.e(TAG, "pbsGetBackKeyStatus: not bind ToBService");
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value, or null if the service is not bound or the call failed
+     */
+    public String pbsGetCurrentLauncher(int ext) {
+        metrics.recordCall(ToBMethod.GET_CURRENT_LAUNCHER);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                String launcher = binder.pbsGetCurrentLauncher(ext);
+                metrics.recordBinder(ToBMethod.GET_CURRENT_LAUNCHER, System.nanoTime() - start);
+                return launcher;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_CURRENT_LAUNCHER);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_CURRENT_LAUNCHER);
+            Log.e(TAG, "pbsGetCurrentLauncher: not bind ToBService");
+        }
+        return null;
+    }
+
+    /**
+     * @return the value, or null if the service is not bound or the call failed
+     */
+    public String pbsGetSystemLanguage(int ext) {
+        metrics.recordCall(ToBMethod.GET_SYSTEM_LANGUAGE);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            try {
+                String language = binder.pbsGetSystemLanguage(ext);
+                metrics.recordBinder(ToBMethod.GET_SYSTEM_LANGUAGE, System.nanoTime() - start);
+                return language;
+            } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.GET_SYSTEM_LANGUAGE);
+                e.printStackTrace();
+            }
+        } else {
+            metrics.recordNotBound(ToBMethod.GET_SYSTEM_LANGUAGE);
+            Log.e(TAG, "pbsGetSystemLanguage: not bind ToBService");
+        }
+        return null;
+    }
+
+    /**
+     * Kills the given processes, by pid and package name; either array may be null.
+     */
+    public void pbsKillAppsByPidOrPackageName(final int[] pids, final String[] packageNames, final int ext) {
+        execute(ToBMethod.KILL_APPS_BY_PID_OR_PACKAGE_NAME, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsKillAppsByPidOrPackageName(pids, packageNames, ext);
+            }
+        });
+    }
+
+    /**
+     * Kills every background app whose package is not in {@code whiteList}.
+     */
+    public void pbsKillBackgroundAppsWithWhiteList(final String[] whiteList, final int ext) {
+        execute(ToBMethod.KILL_BACKGROUND_APPS_WITH_WHITE_LIST, new BinderCall() {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsKillBackgroundAppsWithWhiteList(whiteList, ext);
+            }
+        });
+    }
+
+    private boolean killAppsNow(int[] pids, String[] packageNames) {
+        metrics.recordCall(ToBMethod.KILL_APPS_BY_PID_OR_PACKAGE_NAME);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder == null) {
+            metrics.recordNotBound(ToBMethod.KILL_APPS_BY_PID_OR_PACKAGE_NAME);
+            Log.e(TAG, "pbsKillAppsByPidOrPackageName: not bind ToBService");
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            binder.pbsKillAppsByPidOrPackageName(pids, packageNames, 0);
+            metrics.recordBinder(ToBMethod.KILL_APPS_BY_PID_OR_PACKAGE_NAME, System.nanoTime() - start);
+            return true;
+        } catch (RemoteException e) {
+            metrics.recordError(ToBMethod.KILL_APPS_BY_PID_OR_PACKAGE_NAME);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean killBackgroundAppsNow(String[] whiteList) {
+        metrics.recordCall(ToBMethod.KILL_BACKGROUND_APPS_WITH_WHITE_LIST);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder == null) {
+            metrics.recordNotBound(ToBMethod.KILL_BACKGROUND_APPS_WITH_WHITE_LIST);
+            Log.e(TAG, "pbsKillBackgroundAppsWithWhiteList: not bind ToBService");
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            binder.pbsKillBackgroundAppsWithWhiteList(whiteList, 0);
+            metrics.recordBinder(ToBMethod.KILL_BACKGROUND_APPS_WITH_WHITE_LIST, System.nanoTime() - start);
+            return true;
+        } catch (RemoteException e) {
+            metrics.recordError(ToBMethod.KILL_BACKGROUND_APPS_WITH_WHITE_LIST);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Starts a {@link MemoryReclaimer} that kills background apps outside {@code whiteList} when the
+     * memory headroom drops below {@code minHeadroomMB}, at most {@code maxKills} processes and one
+     * reclamation per {@code cooldownMs}. Requires {@link #bindTobService(Context)}.
+     * <p>
+     * Single processes can only be picked by a system or privileged app; for any other app the
+     * process list holds only its own processes, so it reclaims only through
+     * {@code whiteListFallback}.
+     *
+     * @param whiteListFallback kill all background apps outside {@code whiteList} when no process is
+     *                          visible to pick from, see {@link MemoryReclaimer#setWhiteListFallback}
+     * @param callback          receives every reclamation record as JSON, may be null
+     */
+    public void startMemoryReclaimer(String[] whiteList, int minHeadroomMB, int cooldownMs, int maxKills,
+                                     int intervalMs, boolean whiteListFallback, StringCallback callback) {
+        memoryReclaimer.setWhiteList(whiteList);
+        memoryReclaimer.setWhiteListFallback(whiteListFallback);
+        memoryReclaimer.setLimits(minHeadroomMB * 1024L * 1024L, cooldownMs, maxKills);
+        memoryReclaimer.setCallback(callback);
+        memoryReclaimer.start(intervalMs);
+    }
+
+    public void stopMemoryReclaimer() {
+        memoryReclaimer.stop();
+    }
+
+    public MemoryReclaimer getMemoryReclaimer() {
+        return memoryReclaimer;
+    }
+
+    /**
+     * @return the reclamation counters and records, see {@link MemoryReclaimer#toJson()}
+     */
+    public String getMemoryReclaimerMetrics() {
+        return memoryReclaimer.toJson();
+    }
+
+    /**
+     * Fetches the {@code StartupPrefetcher.ITEM_*} getters in {@code items} concurrently after every
+     * successful bind; call it before {@link #bindTobService(Context)}, or it starts at once if the
+     * service is already bound.
+     *
+     * @param callback receives the snapshot JSON once, when the first prefetch completes, may be null
+     */
+    public void setStartupPrefetch(int items, StringCallback callback) {
+        startupPrefetcher.configure(items, callback);
+        if (isbinded && serviceBinder != null) {
+            startupPrefetcher.onBind();
+        }
+    }
+
+    /**
+     * @return the last prefetched state, see {@link StartupPrefetcher#getSnapshot()}
+     */
+    public String getStartupSnapshot() {
+        return startupPrefetcher.getSnapshot();
+    }
+
+    public StartupPrefetcher getStartupPrefetcher() {
+        return startupPrefetcher;
+    }
+
+    /**
+     * @return the time to ready and prefetch counters, see {@link StartupPrefetcher#toJson()}
+     */
+    public String getStartupPrefetchMetrics() {
+        return startupPrefetcher.toJson();
+    }
+
+    /**
+     * Records the service traffic into a {@link TraceRecorder} ring file at {@code path}, replacing
+     * a recording in progress.
+     *
+     * @param capacityMB size of the ring file; the oldest records are overwritten when it is full
+     * @return false if the file could not be created
+     */
+    public synchronized boolean startTraceRecording(String path, int capacityMB) {
+        stopTraceRecording();
+        TraceRecorder recorder;
+        try {
+            recorder = new TraceRecorder(new File(path), capacityMB * 1024L * 1024L);
+        } catch (IOException e) {
+            Log.e(TAG, "startTraceRecording: cannot map " + path, e);
+            return false;
+        }
+        traceRecorder = recorder;
+        metrics.setRecorder(recorder);
+        return true;
+    }
+
+    /**
+     * Stops recording and closes the trace file; it can be read with {@link TraceRecorder#read}.
+     */
+    public synchronized void stopTraceRecording() {
+        TraceRecorder recorder = traceRecorder;
+        if (recorder == null) {
+            return;
+        }
+        traceRecorder = null;
+        metrics.setRecorder(null);
+        recorder.close();
+    }
+
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * @return the record counters of the current recording, null if none is running
+     */
+    public String getTraceRecorderMetrics() {
+        TraceRecorder recorder = traceRecorder;
+        return recorder != null ? recorder.toJson() : null;
+    }
+
+    public DeadlineWatchdog getDeadlineWatchdog() {
+        return deadlineWatchdog;
+    }
+
+    /**
+     * Cancels a call made with a deadline; its callback is not called, a result arriving later is
+     * dropped.
+     *
+     * @param id {@link DeadlineWatchdog.Deadline#getId()} of the call
+     * @return false if the call already completed, timed out or was cancelled
+     */
+    public boolean cancelCall(int id) {
+        return deadlineWatchdog.cancel(id);
+    }
+
+    /**
+     * @return per method the calls made with a deadline and how many completed, timed out, were
+     * answered late or were cancelled
+     */
+    public String getCallDeadlineMetrics() {
+        return deadlineWatchdog.toJson();
+    }
+
+    public synchronized CallbackMailbox getCallbackMailbox() {
+        if (callbackMailbox == null) {
+            callbackMailbox = new CallbackMailbox();
+        }
+        return callbackMailbox;
+    }
+
+    /**
+     * Returns a callback that can be passed to any method taking an {@link IntCallback},
+     * {@link BoolCallback} or {@link StringCallback}; its results are collected by
+     * {@link #drainCallbackMailbox()} under {@code token} instead of being delivered directly.
+     */
+    public CallbackMailbox.Receiver newMailboxCallback(int token) {
+        return getCallbackMailbox().receiver(token);
+    }
+
+    /**
+     * @return every result posted since the last drain, packed as described in {@link CallbackMailbox}
+     */
+    public long[] drainCallbackMailbox() {
+        return getCallbackMailbox().drain();
+    }
+
+    public String getCallbackMailboxMetrics() {
+        return getCallbackMailbox().toJson();
+    }
+
+    public ToBRequest<Integer> pbsIsVolumeChangeToHomeAndEnterAsync(IntCallback callback) {
+        return submit("pbsIsVolumeChangeToHomeAndEnter", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pbsIsVolumeChangeToHomeAndEnter();
+            }
+        }, intListener(callback));
+    }
+
+    public ToBRequest<Integer> pbsControlGetPowerOffWithUSBCableAsync(final int ext, IntCallback callback) {
+        return submit("pbsControlGetPowerOffWithUSBCable", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pbsControlGetPowerOffWithUSBCable(ext);
+            }
+        }, intListener(callback));
+    }
+
+    public ToBRequest<Integer> pbsPropertyGetScreenOffDelayAsync(final int ext, IntCallback callback) {
+        return submit("pbsPropertyGetScreenOffDelay", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pbsPropertyGetScreenOffDelay(ext);
+            }
+        }, intListener(callback));
+    }
+
+    public ToBRequest<Integer> pbsPropertyGetSleepDelayAsync(final int ext, IntCallback callback) {
+        return submit("pbsPropertyGetSleepDelay", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pbsPropertyGetSleepDelay(ext);
+            }
+        }, intListener(callback));
+    }
+
+    public ToBRequest<Integer> pbsGetScreenCastAudioOutputAsync(final int ext, IntCallback callback) {
+        return submit("pbsGetScreenCastAudioOutput", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pbsGetScreenCastAudioOutput(ext);
+            }
+        }, intListener(callback));
+    }
+
+    public ToBRequest<Integer> pbsGetCustomizeSettingsTabStatusAsync(final PBS_CustomizeSettingsTabEnum customizeSettingsTabEnum,
+                                                                     final int ext, IntCallback callback) {
+        return submit("pbsGetCustomizeSettingsTabStatus", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return pbsGetCustomizeSettingsTabStatus(customizeSettingsTabEnum, ext);
+            }
+        }, intListener(callback));
+    }
+
+    public ToBRequest<String> pbsGetConnectedWDAsync(StringCallback callback) {
+        return submit("pbsGetConnectedWD", new Callable<String>() {
+            @Override
+            public String call() {
+                return pbsGetConnectedWD();
+            }
+        }, stringListener(callback));
+    }
+
+    public ToBRequest<float[]> pbsGetCpuUsagesAsync(final FloatArrayCallback callback) {
+        return submit("pbsGetCpuUsages", new Callable<float[]>() {
+            @Override
+            public float[] call() {
+                return pbsGetCpuUsages();
+            }
+        }, new ToBRequest.Listener<float[]>() {
+            @Override
+            public void onComplete(ToBRequest<float[]> request) {
+                if (callback != null) {
+                    callback.CallBack(request.getResultOrDefault(null));
+                }
+            }
+        });
+    }
+
+    public ToBRequest<Integer> setPicoCastMediaFormatAsync(final int _bitrate, final int ret, IntCallback callback) {
+        return submit("setPicoCastMediaFormat", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return setPicoCastMediaFormat(_bitrate, ret);
+            }
+        }, intListener(callback));
+    }
+
+    /**
+     * Starts sampling {@link #pbsGetCpuUsages()} every {@code intervalMs} on a background thread.
+     * The per-interval utilisation is then read with {@link #pbsGetSampledCpuUsages()} without IPC.
+     */
+    public void startCpuUsageSampler(int intervalMs) {
+        cpuUsageSampler.start(intervalMs);
+    }
+
+    public void stopCpuUsageSampler() {
+        cpuUsageSampler.stop();
+    }
+
+    public CpuUsageSampler getCpuUsageSampler() {
+        return cpuUsageSampler;
+    }
+
+    /**
+     * Returns the utilisation of each core for the last sampling interval. The returned array is
+     * reused between calls and is meant to be read from a single thread; it keeps the previous
+     * values while the sampler is writing.
+     */
+    public float[] pbsGetSampledCpuUsages() {
+        int count = cpuUsageSampler.read(cpuUsageScratch);
+        if (count < 0) {
+            return sampledCpuUsages;
+        }
+        if (sampledCpuUsages.length != count) {
+            sampledCpuUsages = new float[count];
+        }
+        System.arraycopy(cpuUsageScratch, 0, sampledCpuUsages, 0, count);
+        return sampledCpuUsages;
+    }
+
+    public int pbsGetSampledCpuUsages(float[] dst) {
+        return cpuUsageSampler.read(dst);
+    }
+
     public int pbsSetSystemCountryCode(String countryCode, IntCallback callback, int ext) {
+        metrics.recordCall(ToBMethod.SET_SYSTEM_COUNTRY_CODE);
         int result = 0;
-        if (serviceBinder != null) {
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
+            long start = System.nanoTime();
+            IIntCallback.Stub stub = null;
             try {
                 if (callback != null) {
-                    result = serviceBinder.pbsSetSystemCountryCode(countryCode, new IIntCallback.Stub() {
-
-                        @Override
-                        public void callback(int result) throws RemoteException {
-                            callback.CallBack(result);
-                        }
-                    }, ext);
+                    stub = intStub(ToBMethod.SET_SYSTEM_COUNTRY_CODE, callback);
+                    result = binder.pbsSetSystemCountryCode(countryCode, stub, ext);
+                    metrics.recordBinder(ToBMethod.SET_SYSTEM_COUNTRY_CODE, System.nanoTime() - start);
                 }
             } catch (RemoteException e) {
+                metrics.recordError(ToBMethod.SET_SYSTEM_COUNTRY_CODE);
+                releaseStub(stub);
                 e.printStackTrace();
+                if (callback != null) {
+                    callback.CallBack(-1);
+                }
             }
         } else {
+            metrics.recordNotBound(ToBMethod.SET_SYSTEM_COUNTRY_CODE);
             Log.e(TAG, "pbsSetSystemCountryCode: not bind ToBService");
+            if (callback != null) {
+                callback.CallBack(-1);
+            }
         }
         return result;
     }
     @TargetApi(Build.VERSION_CODES.N)
     public void pbsSetIPD(float var1, IntCallback callback) {
-        if (serviceBinder != null) {
-            serviceBinder.pbsSetIPD(var1, new Consumer<Integer>() {
-                @Override
-                public void accept(Integer integer) {
-                    callback.CallBack(integer);
-                }
-            });
-        } else {
-            Log.e(TAG, "pbsSetIPD: not bind ToBService");
-        }
-    }
-    public void pbsPropertySetPowerOnOffLogo(PBS_PowerOnOffLogoEnum var1, String path, int var3, BoolCallback callback) {
-        if (serviceBinder != null) {
-            try {
-                serviceBinder.pbsPropertySetPowerOnOffLogo(var1, path, var3, new IBoolCallback.Stub() {
+        execute(ToBMethod.SET_IPD, new IntCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) {
+                final long start = System.nanoTime();
+                binder.pbsSetIPD(var1, new Consumer<Integer>() {
                     @Override
-                    public void callBack(boolean b) throws RemoteException {
-                        callback.CallBack(b);
+                    public void accept(Integer integer) {
+                        metrics.recordCallback(ToBMethod.SET_IPD, System.nanoTime() - start);
+                        callback.CallBack(integer);
                     }
                 });
-            } catch (RemoteException e) {
-                throw new RuntimeException(e);
             }
-        } else {
-            Log.e(TAG, "pbsPropertySetPowerOnOffLogo: not bind ToBService");
+        });
+    }
+    /**
+     * Coalescing variant of {@link #pbsSetIPD} for values that change every frame, such as a slider:
+     * while a call is in flight only the latest value is kept, and every caller is completed with
+     * the result of the value that was finally set.
+     */
+    public void pbsSetIPDCoalesced(float ipd, IntCallback callback) {
+        ipdSetter.submit(Float.floatToIntBits(ipd) & 0xffffffffL, callback);
+    }
+
+    /**
+     * Coalescing variant of {@link #pbsPropertySetScreenOffDelay}, see {@link #pbsSetIPDCoalesced}.
+     */
+    public void pbsPropertySetScreenOffDelayCoalesced(PBS_ScreenOffDelayTimeEnum timeEnum, IntCallback callback) {
+        screenOffDelaySetter.submit(timeEnum.ordinal(), callback);
+    }
+
+    public void pbsPropertySetScreenOffDelayCoalesced(int timeEnum, IntCallback callback) {
+        pbsPropertySetScreenOffDelayCoalesced(ToBEnums.screenOffDelayTime(timeEnum), callback);
+    }
+
+    /**
+     * Coalescing variant of {@link #setPicoCastMediaFormat}, see {@link #pbsSetIPDCoalesced}. The
+     * result is delivered to {@code callback} instead of being returned.
+     */
+    public void setPicoCastMediaFormatCoalesced(int _bitrate, int ret, IntCallback callback) {
+        picoCastMediaFormatSetter.submit(((long) ret << 32) | (_bitrate & 0xffffffffL), callback);
+    }
+
+    /**
+     * Starts a {@link PicoCastBitrateController} that adjusts the PicoCast bitrate between
+     * {@code minBitrate} and {@code maxBitrate} to CPU load and temperature, replacing a running one.
+     * The CPU usage sampler is started if it is not running.
+     */
+    public synchronized void startPicoCastBitrateController(int initialBitrate, int minBitrate, int maxBitrate,
+                                                            int step, int intervalMs) {
+        if (bitrateController != null) {
+            bitrateController.stop();
+        }
+        bitrateController = new PicoCastBitrateController(this, minBitrate, maxBitrate, step, intervalMs);
+        bitrateController.start(initialBitrate);
+    }
+
+    /**
+     * @see PicoCastBitrateController#setThresholds(float, float, float, float)
+     */
+    public synchronized void setPicoCastBitrateThresholds(float cpuHigh, float cpuLow, float tempHigh, float tempLow) {
+        if (bitrateController != null) {
+            bitrateController.setThresholds(cpuHigh, cpuLow, tempHigh, tempLow);
+        }
+    }
+
+    public synchronized void stopPicoCastBitrateController() {
+        if (bitrateController != null) {
+            bitrateController.stop();
+        }
+    }
+
+    public synchronized PicoCastBitrateController getPicoCastBitrateController() {
+        return bitrateController;
+    }
+
+    /**
+     * @return the decisions of the bitrate controller, see {@link PicoCastBitrateController#toJson()},
+     * or null if it was never started
+     */
+    public synchronized String getPicoCastBitrateMetrics() {
+        return bitrateController != null ? bitrateController.toJson() : null;
+    }
+
+    /**
+     * Starts a {@link ThermalGovernor} sampling temperature and CPU load every {@code intervalMs},
+     * replacing a running one.
+     *
+     * @param callback receives the new throttle level whenever it changes, may be null
+     */
+    public synchronized void startThermalGovernor(int intervalMs, IntCallback callback) {
+        if (thermalGovernor != null) {
+            thermalGovernor.stop();
         }
+        ThermalGovernor governor = new ThermalGovernor(this, intervalMs);
+        governor.setCallback(callback);
+        governor.start();
+        thermalGovernor = governor;
+    }
+
+    public synchronized void stopThermalGovernor() {
+        if (thermalGovernor != null) {
+            thermalGovernor.stop();
+        }
+    }
+
+    /**
+     * @return the current {@code ThermalGovernor.LEVEL_*}, 0 if the governor was never started; no
+     * IPC or locking, meant to be polled every frame
+     */
+    public int getThrottleLevel() {
+        ThermalGovernor governor = thermalGovernor;
+        return governor != null ? governor.getLevel() : ThermalGovernor.LEVEL_NONE;
+    }
+
+    public ThermalGovernor getThermalGovernor() {
+        return thermalGovernor;
+    }
+
+    /**
+     * Starts a {@link ControllerStateTracker}, replacing a running one. It samples every
+     * {@code minIntervalMs} after a change and backs off to {@code maxIntervalMs} while nothing
+     * changes.
+     *
+     * @param callback receives the packed state whenever a battery level or the connection state
+     *                 changes, may be null
+     */
+    public synchronized void startControllerStateTracker(int minIntervalMs, int maxIntervalMs, LongCallback callback) {
+        if (controllerStateTracker != null) {
+            controllerStateTracker.stop();
+        }
+        ControllerStateTracker tracker = new ControllerStateTracker(this, minIntervalMs, maxIntervalMs);
+        tracker.setCallback(callback);
+        tracker.start();
+        controllerStateTracker = tracker;
+    }
+
+    public synchronized void stopControllerStateTracker() {
+        if (controllerStateTracker != null) {
+            controllerStateTracker.stop();
+        }
+    }
+
+    /**
+     * @return the packed controller state, see {@link ControllerStateTracker#getState()}, 0 if the
+     * tracker was never started; no IPC or locking, meant to be polled every frame
+     */
+    public long getControllerState() {
+        ControllerStateTracker tracker = controllerStateTracker;
+        return tracker != null ? tracker.getState() : 0;
+    }
+
+    public ControllerStateTracker getControllerStateTracker() {
+        return controllerStateTracker;
+    }
+
+    /**
+     * @return the state and sampling counters of the tracker, or null if it was never started
+     */
+    public String getControllerStateTrackerMetrics() {
+        ControllerStateTracker tracker = controllerStateTracker;
+        return tracker != null ? tracker.toJson() : null;
+    }
+
+    /**
+     * @return the inputs and level changes of the governor, or null if it was never started
+     */
+    public String getThermalGovernorMetrics() {
+        ThermalGovernor governor = thermalGovernor;
+        return governor != null ? governor.toJson() : null;
+    }
+
+    public CoalescingSetter getIPDSetter() {
+        return ipdSetter;
+    }
+
+    public CoalescingSetter getScreenOffDelaySetter() {
+        return screenOffDelaySetter;
+    }
+
+    public CoalescingSetter getPicoCastMediaFormatSetter() {
+        return picoCastMediaFormatSetter;
+    }
+
+    public void pbsPropertySetPowerOnOffLogo(PBS_PowerOnOffLogoEnum var1, String path, int var3, BoolCallback callback) {
+        execute(ToBMethod.PROPERTY_SET_POWER_ON_OFF_LOGO, new BoolCall(callback) {
+            @Override
+            public void call(IToBServiceProxy binder) throws RemoteException {
+                binder.pbsPropertySetPowerOnOffLogo(var1, path, var3, stub(callback));
+            }
+        });
+    }
+
+    public void pbsPropertySetPowerOnOffLogo(int logo, String path, int ext, BoolCallback callback) {
+        pbsPropertySetPowerOnOffLogo(ToBEnums.powerOnOffLogo(logo), path, ext, callback);
     }
     public int setPicoCastMediaFormat(int _bitrate, int ret) {
-        if (serviceBinder != null) {
+        metrics.recordCall(ToBMethod.SET_PICO_CAST_MEDIA_FORMAT);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder != null) {
             PicoCastMediaFormat format = new PicoCastMediaFormat();
             format.bitrate = _bitrate;
-            return serviceBinder.setPicoCastMediaFormat(format,ret);
+            long start = System.nanoTime();
+            int result = binder.setPicoCastMediaFormat(format,ret);
+            metrics.recordBinder(ToBMethod.SET_PICO_CAST_MEDIA_FORMAT, System.nanoTime() - start);
+            return result;
         } else {
+            metrics.recordNotBound(ToBMethod.SET_PICO_CAST_MEDIA_FORMAT);
             Log.e(TAG, "setPicoCastMediaFormat: not bind ToBService");
         }
         return -1;
     }
 
+    /**
+     * Replaces the previous callback set here; the buffer callback and subscribers of
+     * {@link #subscribeEvents} keep receiving markers.
+     */
     @TargetApi(Build.VERSION_CODES.N)
     public int setMarkerInfoCallback(StringCallback callback) {
-        if (serviceBinder != null) {
+        markerInfoCallback = callback;
+        return registerMarkerInfoSource("setMarkerInfoCallback");
+    }
 
-            return serviceBinder.setMarkerInfoCallback(new Consumer<MarkerInfo[]>() {
-                @Override
-                public void accept(MarkerInfo[] markerInfos) {
-                    try {
-                        JSONArray result = new JSONArray();
-                        for (MarkerInfo member : markerInfos) {
-                            result.put(new JSONObject(member.toJson()));
-                        }
-                        callback.CallBack(result.toString());
-                    } catch (JSONException e) {
-                        throw new RuntimeException(e);
+    /**
+     * Binary alternative to {@link #setMarkerInfoCallback(StringCallback)}: markers are written into a
+     * reusable direct buffer (see {@link MarkerInfoBuffer} for the layout) and the callback, if any,
+     * only receives the new sequence number.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    public int setMarkerInfoBufferCallback(int maxMarkers, IntCallback callback) {
+        MarkerInfoBuffer buffer = markerInfoBuffer;
+        if (buffer == null || buffer.getCapacity() != maxMarkers) {
+            markerInfoBuffer = new MarkerInfoBuffer(maxMarkers);
+        }
+        markerInfoBufferCallback = callback;
+        return registerMarkerInfoSource("setMarkerInfoBufferCallback");
+    }
+
+    /**
+     * The service keeps a single marker consumer, so one consumer serves the JSON callback, the
+     * buffer callback and the event bus, and the JSON is only built if someone receives it.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private int registerMarkerInfoSource(String method) {
+        metrics.recordCall(ToBMethod.SET_MARKER_INFO_CALLBACK);
+        IToBServiceProxy binder = serviceBinder;
+        if (binder == null) {
+            metrics.recordNotBound(ToBMethod.SET_MARKER_INFO_CALLBACK);
+            Log.e(TAG, method + ": not bind ToBService");
+            return -1;
+        }
+        synchronized (eventBus) {
+            if (markerInfoSource == null) {
+                markerInfoSource = new Consumer<MarkerInfo[]>() {
+                    @Override
+                    public void accept(MarkerInfo[] markerInfos) {
+                        onMarkerInfos(markerInfos);
                     }
+                };
+            }
+        }
+        return binder.setMarkerInfoCallback(markerInfoSource);
+    }
+
+    private void onMarkerInfos(MarkerInfo[] markerInfos) {
+        MarkerPoseFilter filter = markerPoseFilter;
+        if (filter != null) {
+            filter.update(markerInfos, System.nanoTime());
+        }
+        MarkerInfoBuffer buffer = markerInfoBuffer;
+        if (buffer != null) {
+            int sequence = buffer.write(markerInfos, System.nanoTime());
+            IntCallback bufferCallback = markerInfoBufferCallback;
+            if (bufferCallback != null) {
+                bufferCallback.CallBack(sequence);
+            }
+        }
+        StringCallback callback = markerInfoCallback;
+        if (callback == null && !eventBus.hasSubscribers(ToBEventBus.TOPIC_MARKER_INFO)) {
+            return;
+        }
+        try {
+            JSONArray result = new JSONArray();
+            for (MarkerInfo member : markerInfos) {
+                result.put(new JSONObject(member.toJson()));
+            }
+            String json = result.toString();
+            if (callback != null) {
+                callback.CallBack(json);
+            }
+            eventBus.publish(ToBEventBus.TOPIC_MARKER_INFO, json);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Inserts a {@link MarkerPoseFilter} between the marker callback and its consumers: the JSON and
+     * buffer callbacks and the event bus receive smoothed poses, and
+     * {@link #readPredictedMarkerInfos(double, double[])} extrapolates them to a display time.
+     *
+     * @param maxMarkers           markers tracked at the same time, 0 removes the filter
+     * @param timestampUnitSeconds length of one {@code dTimestamp} unit in seconds
+     * @param minCutoff            One-Euro cutoff in Hz at rest, lower is smoother
+     * @param beta                 One-Euro speed coefficient, higher lags less when moving
+     * @param maxPredictionMs      prediction horizon limit
+     */
+    public void setMarkerPoseFilter(int maxMarkers, double timestampUnitSeconds, double minCutoff, double beta,
+                                    double maxPredictionMs) {
+        if (maxMarkers <= 0) {
+            markerPoseFilter = null;
+            return;
+        }
+        MarkerPoseFilter filter = new MarkerPoseFilter(maxMarkers, timestampUnitSeconds);
+        filter.setParameters(minCutoff, beta, MarkerPoseFilter.DEFAULT_DERIVATIVE_CUTOFF);
+        filter.setMaxPrediction(maxPredictionMs / 1000.0);
+        markerPoseFilter = filter;
+        registerEventSource(ToBEventBus.TOPIC_MARKER_INFO);
+    }
+
+    /**
+     * Copies the filtered markers, extrapolated to {@code targetTimestamp} in {@code dTimestamp}
+     * units, in the layout of {@link #readMarkerInfos(double[])}.
+     *
+     * @return the number of markers, 0 without a filter, -1 if no consistent snapshot could be taken
+     */
+    public int readPredictedMarkerInfos(double targetTimestamp, double[] dst) {
+        MarkerPoseFilter filter = markerPoseFilter;
+        return filter != null ? filter.read(targetTimestamp, dst) : 0;
+    }
+
+    /**
+     * Like {@link #readPredictedMarkerInfos(double, double[])}, predicting each marker to
+     * {@code aheadMs} from now.
+     */
+    public int readPredictedMarkerInfosAhead(double aheadMs, double[] dst) {
+        MarkerPoseFilter filter = markerPoseFilter;
+        return filter != null ? filter.readAhead(aheadMs / 1000.0, dst) : 0;
+    }
+
+    /**
+     * Array form of {@link #readPredictedMarkerInfosAhead(double, double[])}. The returned array is
+     * sized for the filter's maximum marker count and reused between calls, so it is meant to be read
+     * from a single thread; records past the tracked markers have validFlag 0.
+     */
+    public double[] getPredictedMarkerInfos(double aheadMs) {
+        MarkerPoseFilter filter = markerPoseFilter;
+        if (filter == null) {
+            return NO_MARKER_INFOS;
+        }
+        double[] dst = predictedMarkerInfos;
+        int size = filter.getCapacity() * MarkerInfoBuffer.RECORD_DOUBLES;
+        if (dst.length != size) {
+            dst = new double[size];
+            predictedMarkerInfos = dst;
+        }
+        int count = Math.max(0, filter.readAhead(aheadMs / 1000.0, dst));
+        for (int i = count; i < filter.getCapacity(); i++) {
+            dst[i * MarkerInfoBuffer.RECORD_DOUBLES + 2] = 0;
+        }
+        return dst;
+    }
+
+    /**
+     * Adds a subscriber to one of the {@link ToBEventBus} topics. Unlike the single callback setters,
+     * subscribers do not replace each other, and each one is delivered to on its own pool thread
+     * through a queue with the given policy, so a slow subscriber only loses its own events.
+     *
+     * @param topic  one of the {@code ToBEventBus.TOPIC_*} ids
+     * @param policy one of the {@code ToBEventBus.POLICY_*} ids
+     * @return the subscription id for {@link #unsubscribeEvents(int)}, -1 if the arguments are invalid
+     */
+    public int subscribeEvents(int topic, int policy, int capacity, StringCallback callback) {
+        int id = eventBus.subscribe(topic, policy, capacity, callback);
+        if (id > 0) {
+            registerEventSource(topic);
+        }
+        return id;
+    }
+
+    /**
+     * {@link ToBEventBus#TOPIC_BIND} subscriber receiving the bind result as a boolean.
+     */
+    public int subscribeBindEvents(int policy, int capacity, BoolCallback callback) {
+        return eventBus.subscribeBind(policy, capacity, callback);
+    }
+
+    public boolean unsubscribeEvents(int id) {
+        return eventBus.unsubscribe(id);
+    }
+
+    /**
+     * @return the per-subscriber counters, see {@link ToBEventBus#toJson()}
+     */
+    public String getEventBusMetrics() {
+        return eventBus.toJson();
+    }
+
+    public ToBEventBus getEventBus() {
+        return eventBus;
+    }
+
+    private void registerEventSource(int topic) {
+        switch (topic) {
+            case ToBEventBus.TOPIC_MARKER_INFO:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && serviceBinder != null) {
+                    registerMarkerInfoSource("subscribeEvents");
                 }
-            });
-        } else {
-            Log.e(TAG, "setMarkerInfoCallback: not bind ToBService");
+                break;
+            case ToBEventBus.TOPIC_WD_MODELS:
+                registerWDModelsSource();
+                break;
+            case ToBEventBus.TOPIC_WD_JSON:
+                registerWDJsonSource();
+                break;
+            default:
+                break;
         }
-        return -1;
+    }
+
+    /**
+     * Registers the service callbacks in use again after (re)connecting, as a restarted service has
+     * forgotten them.
+     */
+    private void restoreEventSources() {
+        if (markerInfoCallback != null || markerInfoBuffer != null || markerPoseFilter != null
+                || eventBus.hasSubscribers(ToBEventBus.TOPIC_MARKER_INFO)) {
+            registerEventSource(ToBEventBus.TOPIC_MARKER_INFO);
+        }
+        if (wdModelsCallback != null || wifiDisplayDelta != null
+                || eventBus.hasSubscribers(ToBEventBus.TOPIC_WD_MODELS)) {
+            registerEventSource(ToBEventBus.TOPIC_WD_MODELS);
+        }
+        if (wdJsonCallback != null || eventBus.hasSubscribers(ToBEventBus.TOPIC_WD_JSON)) {
+            registerEventSource(ToBEventBus.TOPIC_WD_JSON);
+        }
+    }
+
+    public ByteBuffer getMarkerInfoBuffer() {
+        return markerInfoBuffer != null ? markerInfoBuffer.getBuffer() : null;
+    }
+
+    public int readMarkerInfos(double[] dst) {
+        return markerInfoBuffer != null ? markerInfoBuffer.read(dst) : 0;
+    }
+
+    /**
+     * Array form of {@link #readMarkerInfos(double[])} for readers that cannot take the direct
+     * buffer, such as Unity. The returned array is sized for the buffer's capacity and reused between
+     * calls, so it is meant to be read from a single thread; records past the copied markers have
+     * validFlag 0, and all of them do if no consistent snapshot could be taken.
+     */
+    public double[] getMarkerInfos() {
+        MarkerInfoBuffer buffer = markerInfoBuffer;
+        if (buffer == null) {
+            return NO_MARKER_INFOS;
+        }
+        double[] dst = markerInfos;
+        int size = buffer.getCapacity() * MarkerInfoBuffer.RECORD_DOUBLES;
+        if (dst.length != size) {
+            dst = new double[size];
+            markerInfos = dst;
+        }
+        int count = Math.max(0, buffer.read(dst));
+        for (int i = count; i < buffer.getCapacity(); i++) {
+            dst[i * MarkerInfoBuffer.RECORD_DOUBLES + 2] = 0;
+        }
+        return dst;
     }
 }
@@ -0,0 +1,244 @@
+package com.picoxr.tobservice;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the service traffic of {@link ToBServiceUtils} into a compact binary trace on a
+ * memory-mapped ring file, so a trace survives a crash of the app and can be replayed off-device.
+ * <p>
+ * Events come from {@link ToBMetrics}, which sees every wrapper call, binder call, callback, error
+ * and call made while unbound. A binder call is recorded with its {@link ToBMethod}, the thread that
+ * issued it, its start, duration and status; calls run by the dispatcher carry the thread of their
+ * caller. Arguments and results are not recorded. Records have a fixed size, so a writer claims a
+ * slot with one atomic increment and fills it in place: recording takes no lock, does not allocate
+ * and does not box. When the file is full the oldest records are overwritten.
+ * <p>
+ * File layout, big-endian: a 64 byte header and the slots. A record is {@code type:byte
+ * status:byte method:short thread:int time:long duration:long sequence:long}; {@code time} is in
+ * nanoseconds since the recording started and is the start of the call for {@link #TYPE_INVOKE}
+ * and {@link #TYPE_CALLBACK} records. {@code sequence} is written last and is one more than the
+ * record's position in the trace, so slots that were never written or are being rewritten are
+ * skipped by the reader.
+ */
+public class TraceRecorder {
+    private static final String TAG = "TraceRecorder";
+
+    public static final int MAGIC = 0x544F4254;
+    public static final int VERSION = 2;
+
+    /** A wrapper call. */
+    public static final int TYPE_CALL = 1;
+    /** A binder call, with its duration and status. */
+    public static final int TYPE_INVOKE = 2;
+    /** A callback, with its latency from the start of the call as duration. */
+    public static final int TYPE_CALLBACK = 3;
+    public static final int TYPE_ERROR = 4;
+    public static final int TYPE_NOT_BOUND = 5;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_REMOTE_EXCEPTION = 1;
+    public static final int STATUS_RUNTIME_EXCEPTION = 2;
+
+    public static final int HEADER_BYTES = 64;
+    public static final int RECORD_BYTES = 32;
+
+    private static final int OFFSET_RECORD_BYTES = 8;
+    private static final int OFFSET_SLOTS = 12;
+    private static final int OFFSET_START_WALL_MS = 16;
+    private static final int OFFSET_RECORDS = 24;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int slots;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong next = new AtomicLong();
+    private volatile boolean open = true;
+
+    /**
+     * Creates or truncates {@code file} and maps it.
+     *
+     * @param capacityBytes file size, rounded down to whole records and at least 1024 of them
+     */
+    public TraceRecorder(File file, long capacityBytes) throws IOException {
+        long data = Math.max(1024L * RECORD_BYTES, capacityBytes - HEADER_BYTES);
+        slots = (int) Math.min((Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES, data / RECORD_BYTES);
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            long size = HEADER_BYTES + (long) slots * RECORD_BYTES;
+            raf.setLength(size);
+            channel = raf.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        map.putInt(0, MAGIC);
+        map.putShort(4, (short) VERSION);
+        map.putInt(OFFSET_RECORD_BYTES, RECORD_BYTES);
+        map.putInt(OFFSET_SLOTS, slots);
+        map.putLong(OFFSET_START_WALL_MS, System.currentTimeMillis());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    void onCall(int method) {
+        append(TYPE_CALL, method, STATUS_OK, Thread.currentThread().getId(), System.nanoTime(), 0);
+    }
+
+    void onError(int method) {
+        append(TYPE_ERROR, method, STATUS_OK, Thread.currentThread().getId(), System.nanoTime(), 0);
+    }
+
+    void onNotBound(int method) {
+        append(TYPE_NOT_BOUND, method, STATUS_OK, Thread.currentThread().getId(), System.nanoTime(), 0);
+    }
+
+    /**
+     * @param thread id of the thread that issued the call
+     */
+    void onInvoke(int method, long thread, long durationNanos, int status) {
+        append(TYPE_INVOKE, method, status, thread, System.nanoTime() - durationNanos, durationNanos);
+    }
+
+    void onCallback(int method, long latencyNanos) {
+        append(TYPE_CALLBACK, method, STATUS_OK, Thread.currentThread().getId(), System.nanoTime() - latencyNanos,
+                latencyNanos);
+    }
+
+    private void append(int type, int method, int status, long thread, long timeNanos, long durationNanos) {
+        if (!open) {
+            return;
+        }
+        long sequence = next.getAndIncrement();
+        int at = HEADER_BYTES + (int) (sequence % slots) * RECORD_BYTES;
+        map.put(at, (byte) type);
+        map.put(at + 1, (byte) status);
+        map.putShort(at + 2, (short) method);
+        map.putInt(at + 4, (int) thread);
+        map.putLong(at + 8, timeNanos - startNanos);
+        map.putLong(at + 16, durationNanos);
+        map.putLong(at + 24, sequence + 1);
+    }
+
+    /**
+     * Stops recording, writes the file back and unmaps it as far as the platform allows.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            map.putLong(OFFSET_RECORDS, next.get());
+            map.force();
+        }
+        try {
+            channel.close();
+            raf.close();
+        } catch (IOException e) {
+            Log.e(TAG, "close failed", e);
+        }
+    }
+
+    public String toJson() {
+        long records = next.get();
+        try {
+            JSONObject root = new JSONObject();
+            root.put("open", open);
+            root.put("file", file.getPath());
+            root.put("capacity", (long) slots * RECORD_BYTES);
+            root.put("records", records);
+            root.put("bytes", records * RECORD_BYTES);
+            root.put("wrapped", records > slots);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A decoded record, reused between {@link Visitor#visit} calls.
+     */
+    public static final class Record {
+        public int type;
+        public int status;
+        public int method;
+        /** {@link ToBMethod#name} of {@link #method}. */
+        public String name;
+        public int thread;
+        public long timeNanos;
+        /** Binder call duration, or callback latency of {@link #TYPE_CALLBACK} records. */
+        public long durationNanos;
+        /** Position of the record in the trace, counted from the start of the recording. */
+        public long sequence;
+    }
+
+    public interface Visitor {
+        void visit(Record record);
+    }
+
+    /**
+     * Reads a trace file, also one whose recorder never closed it, and visits its records in the
+     * order their slots were claimed, from the oldest one still in the file.
+     *
+     * @return the number of records visited
+     */
+    public static long read(File file, Visitor visitor) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+            if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                    || buffer.getInt(OFFSET_RECORD_BYTES) != RECORD_BYTES) {
+                throw new IOException(file + ": not a trace file");
+            }
+            int slotCount = buffer.getInt(OFFSET_SLOTS);
+            // The header count is only written on close; after a crash the newest slot tells.
+            long last = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                last = Math.max(last, buffer.getLong(HEADER_BYTES + slot * RECORD_BYTES + 24));
+            }
+            Record record = new Record();
+            long visited = 0;
+            for (long sequence = Math.max(1, last - slotCount + 1); sequence <= last; sequence++) {
+                int at = HEADER_BYTES + (int) ((sequence - 1) % slotCount) * RECORD_BYTES;
+                if (buffer.getLong(at + 24) != sequence) {
+                    continue;
+                }
+                record.type = buffer.get(at);
+                record.status = buffer.get(at + 1);
+                record.method = buffer.getShort(at + 2);
+                record.name = ToBMethod.name(record.method);
+                record.thread = buffer.getInt(at + 4);
+                record.timeNanos = buffer.getLong(at + 8);
+                record.durationNanos = buffer.getLong(at + 16);
+                record.sequence = sequence - 1;
+                visitor.visit(record);
+                visited++;
+            }
+            return visited;
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.picoxr.tobservice;
+
+import com.picoxr.tobservice.interfaces.StringCallback;
+import com.pvr.tobservice.enums.PBS_WifiDisplayModel;
+
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the full Wi-Fi Display scan results of {@code IWDModelsCallback} into deltas keyed by device
+ * address. A model is serialised only when it is new or one of its fields changed, and a scan equal
+ * to the previous one produces no delta at all.
+ * <p>
+ * Delta form: {@code {"seq":3,"added":[model..],"changed":[model..],"removed":["address"..]}}, where
+ * each model has the layout of {@link PBS_WifiDisplayModel#toJson()}. The first delta lists every
+ * device as added.
+ */
+public class WifiDisplayDeltaTracker {
+    private static ScheduledExecutorService timer;
+
+    private static final class Entry {
+        String name;
+        boolean available;
+        boolean canConnect;
+        boolean remembered;
+        int statusCode;
+        String status;
+        String description;
+        String json;
+        int seen;
+
+        boolean update(PBS_WifiDisplayModel model) {
+            if (json != null
+                    && available == model.isAvailable()
+                    && canConnect == model.canConnect()
+                    && remembered == model.isRemembered()
+                    && statusCode == model.getStatusCode()
+                    && equal(name, model.getDeviceName())
+                    && equal(status, model.getStatus())
+                    && equal(description, model.getDescription())) {
+                return false;
+            }
+            name = model.getDeviceName();
+            available = model.isAvailable();
+            canConnect = model.canConnect();
+            remembered = model.isRemembered();
+            statusCode = model.getStatusCode();
+            status = model.getStatus();
+            description = model.getDescription();
+            json = model.toJson();
+            return true;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final StringBuilder added = new StringBuilder();
+    private final StringBuilder changed = new StringBuilder();
+    private final StringBuilder removed = new StringBuilder();
+    private final long coalesceMs;
+    private final StringCallback callback;
+    private List<PBS_WifiDisplayModel> pendingModels;
+    private boolean flushScheduled;
+    private int generation;
+    private int sequence;
+    private long scans;
+    private long suppressedScans;
+
+    /**
+     * @param coalesceMs scans arriving within this window after the first one are merged into one
+     *                   delta computed from the latest scan, 0 emits a delta for every scan
+     */
+    public WifiDisplayDeltaTracker(long coalesceMs, StringCallback callback) {
+        this.coalesceMs = coalesceMs;
+        this.callback = callback;
+    }
+
+    /**
+     * Feeds one scan result, delivering a delta to the callback now or after the coalescing window.
+     */
+    public void onModels(List<PBS_WifiDisplayModel> models) {
+        if (coalesceMs <= 0) {
+            emit(update(models));
+            return;
+        }
+        synchronized (this) {
+            pendingModels = models;
+            if (flushScheduled) {
+                suppressedScans++;
+                return;
+            }
+            flushScheduled = true;
+        }
+        timer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, coalesceMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        List<PBS_WifiDisplayModel> models;
+        synchronized (this) {
+            models = pendingModels;
+            pendingModels = null;
+            flushScheduled = false;
+        }
+        if (models != null) {
+            emit(update(models));
+        }
+    }
+
+    private void emit(String delta) {
+        if (delta != null && callback != null) {
+            callback.CallBack(delta);
+        }
+    }
+
+    /**
+     * @return the delta against the previous scan, or null if nothing changed
+     */
+    public synchronized String update(List<PBS_WifiDisplayModel> models) {
+        scans++;
+        generation++;
+        added.setLength(0);
+        changed.setLength(0);
+        removed.setLength(0);
+        if (models != null) {
+            for (PBS_WifiDisplayModel model : models) {
+                if (model == null) {
+                    continue;
+                }
+                String address = model.getDeviceAddress() != null ? model.getDeviceAddress() : "";
+                Entry entry = entries.get(address);
+                boolean isNew = entry == null;
+                if (isNew) {
+                    entry = new Entry();
+                    entries.put(address, entry);
+                }
+                entry.seen = generation;
+                if (entry.update(model)) {
+                    append(isNew ? added : changed, entry.json);
+                }
+            }
+        }
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            if (next.getValue().seen != generation) {
+                append(removed, JSONObject.quote(next.getKey()));
+                iterator.remove();
+            }
+        }
+        if (added.length() == 0 && changed.length() == 0 && removed.length() == 0) {
+            suppressedScans++;
+            return null;
+        }
+        sequence++;
+        return new StringBuilder(added.length() + changed.length() + removed.length() + 64)
+                .append("{\"seq\":").append(sequence)
+                .append(",\"added\":[").append(added)
+                .append("],\"changed\":[").append(changed)
+                .append("],\"removed\":[").append(removed)
+                .append("]}").toString();
+    }
+
+    /**
+     * @return every known device as a JSON array, in the format of the full scan callback
+     */
+    public synchronized String snapshot() {
+        StringBuilder builder = new StringBuilder("[");
+        boolean first = true;
+        for (Entry entry : entries.values()) {
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append(entry.json);
+            first = false;
+        }
+        return builder.append(']').toString();
+    }
+
+    public synchronized int getSequence() {
+        return sequence;
+    }
+
+    public synchronized long getScans() {
+        return scans;
+    }
+
+    /**
+     * @return scans that produced no delta, either because they matched the previous one or were
+     * merged into a later one
+     */
+    public synchronized long getSuppressedScans() {
+        return suppressedScans;
+    }
+
+    private static void append(StringBuilder builder, String json) {
+        if (builder.length() > 0) {
+            builder.append(',');
+        }
+        builder.append(json);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ToBWifiDisplayDelta");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+}
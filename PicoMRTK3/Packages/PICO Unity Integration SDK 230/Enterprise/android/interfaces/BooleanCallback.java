@@ -0,0 +1,14 @@
+package com.picoxr.tobservice.interfaces;
+
+/**
+ * {@link BoolCallback} with a primitive result. It can be passed wherever a {@code BoolCallback}
+ * is taken; the wrapper then delivers the result without boxing it.
+ */
+public interface BooleanCallback extends BoolCallback {
+    void CallBack(boolean var1);
+
+    @Override
+    default void CallBack(Boolean var1) {
+        CallBack(var1 != null && var1);
+    }
+}
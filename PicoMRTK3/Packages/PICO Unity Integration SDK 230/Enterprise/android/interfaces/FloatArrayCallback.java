@@ -0,0 +1,5 @@
+package com.picoxr.tobservice.interfaces;
+
+public interface FloatArrayCallback {
+    void CallBack(float[] var1);
+}